@@ -0,0 +1,78 @@
+package lessurl;
+
+import org.openjdk.jmh.annotations.*;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 기간 통계에서 클릭 원본 행 10,000건(7일)을 세는 비용을 ClickAggregator와 이전 방식으로 비교한다.
+ * legacy는 변경 전 StatsHandler.readRange의 행 처리(Instant.parse, 포매터, 맵 merge, 매번 Referer 정규화)를 그대로 옮긴 것이다.
+ *
+ * 실행: ./gradlew jmh  (gc.alloc.rate.norm으로 호출당 할당량을 본다)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ClickAggregatorBenchmark {
+
+    private static final LocalDate FROM = LocalDate.of(2026, 10, 1);
+    private static final LocalDate TO = FROM.plusDays(6);
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(ZoneOffset.UTC);
+
+    private final List<Map<String, AttributeValue>> rows = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        String[] referers = {"direct", "https://www.google.com/search?q=lessurl", "https://t.co/abc", "https://news.example.com/articles/1"};
+        String[] countries = {"KR", "KR", "JP", "US"};
+        String[] devices = {"MOBILE", "PC", "MOBILE", "TABLET"};
+        Instant start = FROM.atStartOfDay(ZoneOffset.UTC).toInstant();
+        for (int i = 0; i < 10_000; i++) {
+            Map<String, AttributeValue> item = new HashMap<>();
+            item.put("timestamp", AttributeValue.builder().s(start.plusSeconds(i * 60L).plusNanos(i * 1_000L).toString()).build());
+            item.put("referer", AttributeValue.builder().s(referers[i % referers.length]).build());
+            item.put("country", AttributeValue.builder().s(countries[i % 3]).build());
+            item.put("deviceType", AttributeValue.builder().s(devices[i % 4]).build());
+            rows.add(item);
+        }
+    }
+
+    @Benchmark
+    public ClickRollups.Window aggregator() {
+        ClickAggregator aggregator = new ClickAggregator(FROM, TO);
+        for (Map<String, AttributeValue> item : rows) aggregator.accept(item);
+        return aggregator.toWindow();
+    }
+
+    @Benchmark
+    public ClickRollups.Window legacy() {
+        ClickRollups.Window window = new ClickRollups.Window();
+        Set<String> archivedDays = new HashSet<>();
+        for (Map<String, AttributeValue> item : rows) {
+            String timestamp = item.get("timestamp").s();
+            if (archivedDays.contains(timestamp.substring(0, 10))) continue;
+            Instant at = Instant.parse(timestamp);
+            window.clicks++;
+            window.clicksByDay.merge(DAY_FORMATTER.format(at), 1L, Long::sum);
+            window.clicksByHour.merge(Integer.toString(at.atZone(ZoneOffset.UTC).getHour()), 1L, Long::sum);
+            window.referers.merge(ClickRollups.refererSource(item.containsKey("referer") ? item.get("referer").s() : "direct"), 1L, Long::sum);
+            window.countries.merge(item.containsKey("country") ? item.get("country").s() : "unknown", 1L, Long::sum);
+            window.devices.merge(item.containsKey("deviceType") ? item.get("deviceType").s() : "PC", 1L, Long::sum);
+        }
+        return window;
+    }
+}
@@ -0,0 +1,134 @@
+package lessurl;
+
+import org.openjdk.jmh.annotations.*;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 링크 한 건을 저장할 때 ShortenHandler가 보내는 DynamoDB 요청 수를 ID 방식별로 비교한다.
+ * random은 변경 전 저장 루프(랜덤 ID -> GetItem -> CustomAliasIndex Query -> 조건부 PutItem)를 그대로 옮긴 것이다.
+ *
+ * 실행: ./gradlew jmh
+ * 처리량 모드이므로 보조 카운터의 readRequests/writeRequests를 주 점수(링크/초)로 나누면 링크당 요청 수가 된다.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IdAllocationBenchmark {
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Requests {
+        public long readRequests;
+        public long writeRequests;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            readRequests = 0;
+            writeRequests = 0;
+        }
+    }
+
+    /**
+     * 조건부 PutItem과 카운터 UpdateItem만 흉내 내는 메모리 테이블.
+     */
+    static final class InMemoryUrls implements DynamoDbClient {
+        final Set<String> keys = new HashSet<>();
+        long counter;
+        Requests requests;
+
+        @Override
+        public GetItemResponse getItem(GetItemRequest request) {
+            requests.readRequests++;
+            return keys.contains(request.key().get("shortId").s())
+                    ? GetItemResponse.builder().item(request.key()).build()
+                    : GetItemResponse.builder().build();
+        }
+
+        @Override
+        public QueryResponse query(QueryRequest request) {
+            requests.readRequests++;
+            return QueryResponse.builder().count(0).build();
+        }
+
+        @Override
+        public PutItemResponse putItem(PutItemRequest request) {
+            requests.writeRequests++;
+            if (!keys.add(request.item().get("shortId").s())) {
+                throw ConditionalCheckFailedException.builder().message("exists").build();
+            }
+            return PutItemResponse.builder().build();
+        }
+
+        @Override
+        public UpdateItemResponse updateItem(UpdateItemRequest request) {
+            requests.writeRequests++;
+            counter += Long.parseLong(request.expressionAttributeValues().get(":block").n());
+            return UpdateItemResponse.builder()
+                    .attributes(Map.of("nextValue", AttributeValue.builder().n(Long.toString(counter)).build()))
+                    .build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private InMemoryUrls table;
+    private SequenceIdAllocator allocator;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        table = new InMemoryUrls();
+        allocator = new SequenceIdAllocator(table, "IdSequence", 1000, "benchmark-key");
+    }
+
+    @Benchmark
+    public String random(Requests requests) {
+        table.requests = requests;
+        for (int i = 0; i < 10; i++) {
+            String shortId = IdGenerator.generateId(7);
+            if (table.getItem(GetItemRequest.builder().tableName("urls").key(key(shortId)).build()).hasItem()) continue;
+            if (table.query(QueryRequest.builder().tableName("urls").indexName("CustomAliasIndex").limit(1).build()).count() > 0) continue;
+            try {
+                table.putItem(PutItemRequest.builder().tableName("urls").item(key(shortId)).conditionExpression("attribute_not_exists(shortId)").build());
+                return shortId;
+            } catch (ConditionalCheckFailedException e) {
+                // 다음 후보
+            }
+        }
+        throw new IllegalStateException("ID collision failed");
+    }
+
+    @Benchmark
+    public String sequence(Requests requests) {
+        table.requests = requests;
+        for (int i = 0; i < 10; i++) {
+            String shortId = allocator.next();
+            try {
+                table.putItem(PutItemRequest.builder().tableName("urls").item(key(shortId)).conditionExpression("attribute_not_exists(shortId)").build());
+                return shortId;
+            } catch (ConditionalCheckFailedException e) {
+                // 다음 순번
+            }
+        }
+        throw new IllegalStateException("ID collision failed");
+    }
+
+    private static Map<String, AttributeValue> key(String shortId) {
+        return Map.of("shortId", AttributeValue.builder().s(shortId).build());
+    }
+}
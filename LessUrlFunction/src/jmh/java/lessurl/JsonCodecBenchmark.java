@@ -0,0 +1,106 @@
+package lessurl;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JsonCodec과 이전 방식(pretty printing Gson, Map.class 파싱, 캐스팅으로 Gemini 응답 탐색)을 비교한다.
+ * legacy* 메서드는 변경 전 코드를 그대로 옮긴 것이다.
+ *
+ * 실행: ./gradlew jmh  (gc.alloc.rate.norm으로 호출당 할당량을 본다)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonCodecBenchmark {
+
+    private static final String GEMINI_RESPONSE = """
+            {"candidates":[{"content":{"parts":[{"text":"이 링크는 주로 평일 오전 모바일에서 조회되며, 검색 유입 비중이 높습니다. 한국과 일본 방문이 대부분입니다."}],"role":"model"},\
+            "finishReason":"STOP","avgLogprobs":-0.31,"safetyRatings":[{"category":"HARM_CATEGORY_HATE_SPEECH","probability":"NEGLIGIBLE"},\
+            {"category":"HARM_CATEGORY_DANGEROUS_CONTENT","probability":"NEGLIGIBLE"},{"category":"HARM_CATEGORY_HARASSMENT","probability":"NEGLIGIBLE"}]}],\
+            "usageMetadata":{"promptTokenCount":412,"candidatesTokenCount":58,"totalTokenCount":470},"modelVersion":"gemini-2.5-flash-lite"}""";
+    private static final String CLICK_MESSAGE = RedirectHandler.clickPayload("abc1234", "6694f83c9f476da3",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_4 like Mac OS X) AppleWebKit/605.1.15 Mobile/15E148", "https://www.google.com/", "KR", "MOBILE", null);
+
+    private final Gson legacyGson = new GsonBuilder().setPrettyPrinting().create();
+    private final Gson gson = JsonCodec.GSON;
+    private Map<String, Object> statsResponse;
+
+    @Setup
+    public void setUp() {
+        Map<String, Long> byDay = new HashMap<>();
+        Map<String, Long> byHour = new HashMap<>();
+        Map<String, Long> byReferer = new HashMap<>();
+        for (int d = 1; d <= 7; d++) byDay.put("2026-10-0" + d, 100L + d);
+        for (int h = 0; h < 24; h++) byHour.put(Integer.toString(h), 10L + h);
+        for (int r = 0; r < 20; r++) byReferer.put("https://referer" + r + ".example.com/", 5L + r);
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("shortId", "abc1234");
+        stats.put("originalUrl", "https://www.example.com/articles/2024/05/some-long-article-slug");
+        stats.put("title", "예시 기사");
+        stats.put("clicksByDay", byDay);
+        stats.put("clicksByHour", byHour);
+        stats.put("clicksByReferer", byReferer);
+        stats.put("countryStats", Map.of("KR", 512.0, "JP", 120.0, "US", 33.0));
+        stats.put("deviceStats", Map.of("MOBILE", 480.0, "PC", 160.0, "TABLET", 25.0));
+        stats.put("aiInsight", "이 링크는 주로 평일 오전 모바일에서 조회됩니다.");
+        stats.put("period", "7d");
+        stats.put("peakHour", 9);
+        statsResponse = Map.of("clicks", 665, "stats", stats);
+    }
+
+    @Benchmark
+    public String statsResponse() {
+        return gson.toJson(statsResponse);
+    }
+
+    @Benchmark
+    public String legacyStatsResponse() {
+        return legacyGson.toJson(statsResponse);
+    }
+
+    @Benchmark
+    public String geminiText() {
+        return JsonCodec.geminiText(GEMINI_RESPONSE);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public String legacyGeminiText() {
+        Map<String, Object> map = legacyGson.fromJson(GEMINI_RESPONSE, Map.class);
+        List<Object> cand = (List<Object>) map.get("candidates");
+        Map<String, Object> cont = (Map<String, Object>) ((Map<String, Object>) cand.get(0)).get("content");
+        List<Object> parts = (List<Object>) cont.get("parts");
+        return (String) ((Map<String, Object>) parts.get(0)).get("text");
+    }
+
+    @Benchmark
+    public JsonCodec.ClickEvent clickEvent() throws Exception {
+        return JsonCodec.CLICK_EVENT.fromJson(CLICK_MESSAGE);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Map<String, String> legacyClickEvent() {
+        return legacyGson.fromJson(CLICK_MESSAGE, Map.class);
+    }
+
+    /**
+     * 응답 크기 비교용. 측정이 끝난 뒤 한 번 출력한다.
+     */
+    @TearDown(Level.Trial)
+    public void printSizes() {
+        System.out.printf("%nstats response bytes: compact=%d pretty=%d%n",
+                gson.toJson(statsResponse).getBytes(java.nio.charset.StandardCharsets.UTF_8).length,
+                legacyGson.toJson(statsResponse).getBytes(java.nio.charset.StandardCharsets.UTF_8).length);
+    }
+}
@@ -0,0 +1,107 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 리다이렉트 요청 한 건에서 실행되는 CPU 구간(IP 해시, 기기 판별, 이벤트 JSON, 응답 조립)을 이전 구현과 비교한다.
+ * legacy* 메서드는 변경 전 RedirectHandler/BaseHandler 코드를 그대로 옮긴 것이다.
+ *
+ * 실행: ./gradlew jmh  (build.gradle의 jmh 블록에서 gc 프로파일러를 켜 두었으므로 gc.alloc.rate.norm으로 요청당 할당량을 본다)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RedirectHotPathBenchmark {
+
+    private static final String IP = "203.0.113.57";
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36";
+    private static final String ORIGINAL_URL = "https://www.example.com/articles/2024/05/some-long-article-slug?utm_source=lessurl";
+
+    private final Gson gson = new Gson();
+
+    @Benchmark
+    public String hashIp() {
+        return RedirectHandler.hashIp(IP);
+    }
+
+    @Benchmark
+    public String legacyHashIp() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] encodedhash = digest.digest(IP.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hexString = new StringBuilder(2 * encodedhash.length);
+            for (byte b : encodedhash) {
+                String hex = Integer.toHexString(0xff & b);
+                if (hex.length() == 1) hexString.append('0');
+                hexString.append(hex);
+            }
+            return hexString.toString().substring(0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            return "unknown";
+        }
+    }
+
+    @Benchmark
+    public String deviceType() {
+        return RedirectHandler.deviceType(USER_AGENT);
+    }
+
+    @Benchmark
+    public String legacyDeviceType() {
+        String lowerUA = USER_AGENT.toLowerCase();
+        if (lowerUA.contains("mobile") || lowerUA.contains("android") || lowerUA.contains("iphone")) {
+            return "Mobile";
+        } else if (lowerUA.contains("tablet") || lowerUA.contains("ipad")) {
+            return "Tablet";
+        }
+        return "PC";
+    }
+
+    @Benchmark
+    public String clickPayload() {
+        return RedirectHandler.clickPayload("abc1234", "6694f83c9f476da3", USER_AGENT, "direct", "KR", "PC", null);
+    }
+
+    @Benchmark
+    public String legacyClickPayload() {
+        Map<String, String> payload = new HashMap<>();
+        payload.put("shortId", "abc1234");
+        payload.put("ip", "6694f83c9f476da3");
+        payload.put("userAgent", USER_AGENT);
+        payload.put("referer", "direct");
+        payload.put("country", "KR");
+        payload.put("deviceType", "PC");
+        return gson.toJson(payload);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent redirectResponse() {
+        return BaseHandler.redirectResponse("*", 301, ORIGINAL_URL, "no-cache, no-store, must-revalidate");
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent legacyRedirectResponse() {
+        APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
+        response.setStatusCode(301);
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+        headers.put("Access-Control-Allow-Origin", "*");
+        response.setHeaders(headers);
+        response.setBody("");
+        response.getHeaders().put("Location", ORIGINAL_URL);
+        response.getHeaders().put("Cache-Control", "no-cache, no-store, must-revalidate");
+        return response;
+    }
+}
@@ -0,0 +1,93 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * alias 포인터 도입 이전에 만들어진 커스텀 alias 링크에 포인터 아이템을 채워 넣는 일회성 마이그레이션.
+ * 콘솔이나 CLI에서 직접 호출한다. 입력: {"startKey": "이전 실행이 돌려준 shortId", "dryRun": true}
+ * 시간이 부족하면 마지막으로 읽은 키를 돌려주므로 같은 입력에 startKey만 바꿔 다시 호출하면 이어서 진행된다.
+ */
+public class AliasBackfillHandler extends BaseHandler<Map<String, Object>, String> {
+
+    private static final long TIME_BUDGET_MARGIN_MS = 10_000;
+
+    @Override
+    public String handleRequest(Map<String, Object> input, Context context) {
+        LambdaLogger logger = context.getLogger();
+        boolean dryRun = input != null && Boolean.TRUE.equals(input.get("dryRun"));
+        String startKey = input != null ? (String) input.get("startKey") : null;
+
+        Map<String, AttributeValue> exclusiveStartKey = startKey != null
+                ? Map.of("shortId", AttributeValue.builder().s(startKey).build())
+                : null;
+
+        int scanned = 0, created = 0, existing = 0, conflicts = 0;
+
+        do {
+            ScanResponse page = ddb.scan(ScanRequest.builder()
+                    .tableName(this.urlsTable)
+                    .filterExpression("attribute_exists(customAlias)")
+                    .projectionExpression("shortId, customAlias, originalUrl, createdAt, redirectPolicy")
+                    .exclusiveStartKey(exclusiveStartKey)
+                    .build());
+
+            for (Map<String, AttributeValue> item : page.items()) {
+                scanned++;
+                String shortId = item.get("shortId").s();
+                String alias = item.get("customAlias").s();
+                String createdAt = item.containsKey("createdAt") ? item.get("createdAt").s() : java.time.Instant.now().toString();
+
+                if (dryRun) {
+                    logger.log("[DryRun] " + alias + " -> " + shortId);
+                    continue;
+                }
+
+                try {
+                    ddb.putItem(PutItemRequest.builder()
+                            .tableName(this.urlsTable)
+                            .item(LinkResolver.aliasPointerItem(alias, shortId, item.get("originalUrl").s(), createdAt, RedirectPolicy.of(item)))
+                            .conditionExpression("attribute_not_exists(shortId)")
+                            .build());
+                    created++;
+                } catch (ConditionalCheckFailedException e) {
+                    if (pointsTo(alias, shortId)) {
+                        existing++;
+                    } else {
+                        conflicts++;
+                        logger.log("[Conflict] alias " + alias + " is already used by another item, link " + shortId + " not migrated");
+                    }
+                }
+            }
+
+            exclusiveStartKey = page.hasLastEvaluatedKey() && !page.lastEvaluatedKey().isEmpty() ? page.lastEvaluatedKey() : null;
+        } while (exclusiveStartKey != null && context.getRemainingTimeInMillis() > TIME_BUDGET_MARGIN_MS);
+
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("scanned", scanned);
+        summary.put("created", created);
+        summary.put("alreadyMigrated", existing);
+        summary.put("conflicts", conflicts);
+        summary.put("dryRun", dryRun);
+        summary.put("nextStartKey", exclusiveStartKey != null ? exclusiveStartKey.get("shortId").s() : null);
+
+        String result = gson.toJson(summary);
+        logger.log("[AliasBackfill] " + result);
+        return result;
+    }
+
+    private boolean pointsTo(String alias, String shortId) {
+        GetItemResponse res = ddb.getItem(GetItemRequest.builder()
+                .tableName(this.urlsTable)
+                .key(Map.of("shortId", AttributeValue.builder().s(alias).build()))
+                .consistentRead(true)
+                .build());
+        return res.hasItem()
+                && LinkResolver.isAliasPointer(res.item())
+                && shortId.equals(res.item().get(LinkResolver.TARGET_ID).s());
+    }
+}
@@ -0,0 +1,194 @@
+package lessurl;
+
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 클릭 이벤트를 모아 SendMessageBatch로 보내는 전송기. 로그 수집 핸들러(CDN 로그, 리다이렉트 클릭 로그)가 쓴다.
+ * emit()은 버퍼에 넣기만 하고, 배치가 차면 백그라운드 스레드에서 전송한다. 호출 측은 묶음(파일, 로그 배치)이 끝날 때
+ * awaitDelivery()로 배치가 덜 찬 버퍼까지 모두 전송에 올리고 flushTimeout 만큼 기다린다.
+ * 로그 수집은 응답 지연이 없으므로 이벤트를 버리지 않는다. 기한 안에 못 보낸 이벤트는 queueDepth로, 재시도 끝에 실패한 이벤트는 failed로 남는다.
+ */
+public class AnalyticsEmitter {
+
+    // SQS SendMessageBatch 한 번에 보낼 수 있는 최대 엔트리 수
+    public static final int SQS_MAX_BATCH = 10;
+    private static final int MAX_ATTEMPTS = 2;
+
+    private final SqsClient sqs;
+    private final String queueUrl;
+    private final int batchSize;
+    private final long flushTimeoutMillis;
+
+    private final ArrayDeque<Pending> buffer = new ArrayDeque<>();
+    private final List<Future<?>> inFlight = new ArrayList<>();
+    private final ExecutorService sender = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "analytics-emitter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicInteger inFlightEvents = new AtomicInteger();
+    private final AtomicLong emitted = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    private record Pending(String body, int attempts) {}
+
+    public AnalyticsEmitter(SqsClient sqs, String queueUrl, int batchSize, long flushTimeoutMillis) {
+        this.sqs = sqs;
+        this.queueUrl = queueUrl;
+        this.batchSize = Math.max(1, Math.min(SQS_MAX_BATCH, batchSize));
+        this.flushTimeoutMillis = flushTimeoutMillis;
+    }
+
+    /**
+     * 로그 수집용 설정. 10개가 찰 때마다 보내고, 호출 측이 묶음(파일, 로그 배치)마다 flush()로 나머지를 보낸다.
+     */
+    public static AnalyticsEmitter forIngestion(SqsClient sqs, String queueUrl) {
+        return new AnalyticsEmitter(sqs, queueUrl, SQS_MAX_BATCH, 60_000);
+    }
+
+    public void emit(String messageBody) {
+        if (queueUrl == null) return;
+        emitted.incrementAndGet();
+        synchronized (this) {
+            buffer.addLast(new Pending(messageBody, 0));
+            while (buffer.size() >= batchSize) submitBatch();
+        }
+    }
+
+    /**
+     * 호출이 끝나기 전에 부른다. 배치가 덜 찼어도 버퍼를 모두 전송 대기열에 올리고,
+     * flushTimeout 안에서 전송 완료와 실패분 재전송을 기다린다. 기한을 넘긴 전송은 다음 호출에서 샌드박스가 깨어날 때 이어진다.
+     */
+    public void awaitDelivery() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushTimeoutMillis);
+        while (true) {
+            List<Future<?>> pending;
+            synchronized (this) {
+                while (!buffer.isEmpty()) submitBatch();
+                pending = new ArrayList<>(inFlight);
+            }
+            for (Future<?> f : pending) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) break;
+                try {
+                    f.get(remaining, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    // 남은 전송은 백그라운드 스레드가 이어 가고, 호출 측이 중단을 볼 수 있게 플래그를 되살린다
+                    Thread.currentThread().interrupt();
+                    System.err.println("[Analytics Emitter] Interrupted while awaiting delivery, " + queueDepth() + " events pending");
+                    return;
+                } catch (TimeoutException e) {
+                    break;
+                } catch (ExecutionException e) {
+                    System.err.println("[Analytics Emitter] Send task failed: " + e.getCause());
+                }
+            }
+            synchronized (this) {
+                inFlight.removeIf(Future::isDone);
+                // 실패해 버퍼로 돌아온 이벤트가 없거나 시간이 다 됐으면 끝낸다
+                if (buffer.isEmpty() || deadline - System.nanoTime() <= 0) return;
+            }
+        }
+    }
+
+    /**
+     * awaitDelivery()와 같다. 호출 중간에 버퍼를 비울 때 쓴다.
+     */
+    public void flush() {
+        awaitDelivery();
+    }
+
+    private void submitBatch() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize && !buffer.isEmpty()) batch.add(buffer.pollFirst());
+        if (batch.isEmpty()) return;
+        inFlight.removeIf(Future::isDone);
+        inFlightEvents.addAndGet(batch.size());
+        inFlight.add(sender.submit(() -> {
+            try {
+                send(batch);
+            } finally {
+                inFlightEvents.addAndGet(-batch.size());
+            }
+        }));
+    }
+
+    private void send(List<Pending> batch) {
+        List<SendMessageBatchRequestEntry> entries = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            entries.add(SendMessageBatchRequestEntry.builder()
+                    .id(Integer.toString(i))
+                    .messageBody(batch.get(i).body())
+                    .build());
+        }
+
+        List<Pending> retry = new ArrayList<>();
+        try {
+            SendMessageBatchResponse res = sqs.sendMessageBatch(SendMessageBatchRequest.builder()
+                    .queueUrl(queueUrl)
+                    .entries(entries)
+                    .build());
+            batches.incrementAndGet();
+            int failedCount = 0;
+            if (res != null && res.hasFailed()) {
+                for (BatchResultErrorEntry error : res.failed()) {
+                    retry.add(batch.get(Integer.parseInt(error.id())));
+                    failedCount++;
+                }
+            }
+            sent.addAndGet(batch.size() - failedCount);
+        } catch (Exception e) {
+            System.err.println("[Analytics Emitter] SendMessageBatch failed: " + e.getMessage());
+            retry.addAll(batch);
+        }
+
+        if (retry.isEmpty()) return;
+        synchronized (this) {
+            for (Pending p : retry) {
+                if (p.attempts() + 1 >= MAX_ATTEMPTS) {
+                    failed.incrementAndGet();
+                } else {
+                    buffer.addFirst(new Pending(p.body(), p.attempts() + 1));
+                }
+            }
+        }
+    }
+
+    public synchronized int queueDepth() {
+        return buffer.size() + inFlightEvents.get();
+    }
+
+    public long sent() { return sent.get(); }
+    public long failed() { return failed.get(); }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queueDepth", queueDepth());
+        stats.put("emitted", emitted.get());
+        stats.put("sent", sent.get());
+        stats.put("batches", batches.get());
+        stats.put("failed", failed.get());
+        return stats;
+    }
+}
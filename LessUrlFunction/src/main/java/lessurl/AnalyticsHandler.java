@@ -2,114 +2,533 @@ package lessurl;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
 import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.google.gson.Gson;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.Put;
 import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+import software.amazon.awssdk.services.dynamodb.model.Update;
 import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.sqs.SqsClient;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
 
-public class AnalyticsHandler extends BaseHandler<SQSEvent, String> {
+/**
+ * 클릭 이벤트 소비자. SQS 배치 하나를 shortId별로 묶어 카운터는 항목마다 한 번의 ADD로 올린다.
+ *
+ * 클릭 행은 clickId(로그 수집 핸들러가 원본 로그 항목에서 만든 값, 없으면 SQS messageId)를 갖고 attribute_not_exists 조건부
+ * PutItem으로 하나씩 넣는다. 수집 호출이 재시도되어 같은 클릭이 새 메시지로 다시 와도 clickId가 같다. 재전달된 메시지는
+ * 조건 실패로 드러나므로, 카운터 ADD는 이번에 들어간 행과 반영이 덜 된 재전달 행만 모아 보낸다. 카운터·트렌드·롤업은 여러 컨테이너가
+ * 동시에 건드리는 항목이라 트랜잭션에 묶지 않는다 (묶으면 서로 TransactionConflict로 취소되고 쓰기 용량도 2배가 든다).
+ * 카운터·트렌드·롤업(시간, 일) 중 반영이 끝난 대상은 행의 countersApplied 집합에 적는다. 재전달된 메시지의 행에 빠진 대상이
+ * 있으면 그 대상만 다시 더하므로, 갱신이 재시도 끝에 실패해도 메시지를 돌려주면 이중 집계 없이 이어서 반영된다.
+ * 행을 끝내 쓰지 못했거나 반영하지 못한 대상이 남은 메시지는 batchItemFailures로 돌려 SQS가 다시 전달하게 하고, 반복해서 실패하면 DLQ로 간다.
+ * 총 클릭 수는 리다이렉트가 읽는 링크 아이템 대신 샤드 카운터(ClickCounters)에 더한다. 배치에 한 링크가 몰리면 샤드를 늘린다.
+ * 트렌드 문서와 시간·일 롤업도 같은 샤드 수로 나눠, 배치마다 링크별로 고른 샤드 하나에 카운터와 함께 더한다.
+ * 두 항목의 유입 출처는 갱신 결과(ALL_NEW)를 보고 REFERER_CAP개를 넘은 만큼 "other"로 접는다.
+ */
+public class AnalyticsHandler extends BaseHandler<SQSEvent, SQSBatchResponse> {
+
+    private static final int MAX_WRITE_ATTEMPTS = 4;
+    // 트렌드 문서가 없을 때 맵 경로 ADD가 받는 오류 코드
+    private static final String VALIDATION_EXCEPTION = "ValidationException";
+    static final long DEFAULT_CLICK_RETENTION_DAYS = 30;
+    static final int DEFAULT_REFERER_CAP = 100;
+    // 클릭 행에 반영을 마친 대상을 적는 문자열 집합
+    static final String COUNTERS_APPLIED = "countersApplied";
+    static final String TOTAL = "total";
+    static final String TREND = "trend";
+    static final String HOURLY = "hourly";
+    static final String DAILY = "daily";
+    static final Set<String> COUNTER_TARGETS = Set.of(TOTAL, TREND, HOURLY, DAILY);
+
+    private static final ExecutorService WRITE_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
 
     private final String clicksTable;
     private final String trendInsightsTable;
+    private final String clickRollupsTable;
+    private final String clickCountersTable;
+    private final long clicksPerShard;
+    private final long clickRetentionSeconds;
+    private final int writeConcurrency;
+    private final int refererCap;
+    // 컨테이너가 확인한 링크별 샤드 수. 샤드 수는 줄지 않으므로 오래된 값이어도 그 범위 안에 쓰는 것은 안전하다
+    private final TtlCache<Integer> knownShards = new TtlCache<>(10_000, 1L << 20, 10 * 60_000L, 0, v -> 0);
+
+    /**
+     * 클릭 하나. timestamp는 같은 메시지면 재전달되어도 같은 값이다.
+     * pending은 아직 더하지 않은 대상, applied는 이번 배치에서 반영을 마친 대상이다.
+     */
+    static final class Click {
+        final String clickId;
+        final String messageId;
+        final JsonCodec.ClickEvent event;
+        final String country;
+        final String deviceType;
+        final Set<String> pending = new HashSet<>(COUNTER_TARGETS);
+        final Set<String> applied = new HashSet<>();
+        String timestamp;
+
+        Click(String clickId, String messageId, JsonCodec.ClickEvent event, String timestamp) {
+            this.clickId = clickId;
+            this.messageId = messageId;
+            this.event = event;
+            this.country = orDefault(event.country(), "unknown");
+            this.deviceType = orDefault(event.deviceType(), "PC");
+            this.timestamp = timestamp;
+        }
+
+        String shortId() {
+            return event.shortId();
+        }
+
+        Instant at() {
+            return Instant.parse(timestamp);
+        }
+    }
 
     public AnalyticsHandler() {
         super();
         this.clicksTable = System.getenv("CLICKS_TABLE");
         this.trendInsightsTable = System.getenv("TREND_INSIGHTS_TABLE");
+        this.clickRollupsTable = System.getenv("CLICK_ROLLUPS_TABLE");
+        this.clickCountersTable = System.getenv("CLICK_COUNTERS_TABLE");
+        this.clicksPerShard = envLong("CLICKS_PER_COUNTER_SHARD", 20);
+        this.clickRetentionSeconds = envLong("CLICK_RETENTION_DAYS", DEFAULT_CLICK_RETENTION_DAYS) * 86_400;
+        this.writeConcurrency = (int) envLong("ANALYTICS_WRITE_CONCURRENCY", 16);
+        this.refererCap = (int) envLong("REFERER_CAP", DEFAULT_REFERER_CAP);
+    }
+
+    protected AnalyticsHandler(DynamoDbClient ddb, LambdaClient lambda, SqsClient sqs, Gson gson, String urlsTable, String clicksTable, String trendInsightsTable, String clickRollupsTable,
+                               String clickCountersTable, long clicksPerShard) {
+        super(ddb, lambda, sqs, gson, urlsTable, "*");
+        this.clicksTable = clicksTable;
+        this.trendInsightsTable = trendInsightsTable;
+        this.clickRollupsTable = clickRollupsTable;
+        this.clickCountersTable = clickCountersTable;
+        this.clicksPerShard = clicksPerShard;
+        this.clickRetentionSeconds = DEFAULT_CLICK_RETENTION_DAYS * 86_400;
+        this.writeConcurrency = 4;
+        this.refererCap = DEFAULT_REFERER_CAP;
     }
 
     @Override
-    public String handleRequest(SQSEvent event, Context context) {
+    public SQSBatchResponse handleRequest(SQSEvent event, Context context) {
         LambdaLogger logger = context.getLogger();
-        int successCount = 0;
+        List<SQSBatchResponse.BatchItemFailure> failures = new ArrayList<>();
+        List<Click> clicks = new ArrayList<>();
+        // 행 쓰기가 동시에 시각을 밀 수 있으므로 동시성 집합을 쓴다
+        Set<String> rowKeys = ConcurrentHashMap.newKeySet();
+        Set<String> clickIds = new HashSet<>();
 
         for (SQSEvent.SQSMessage msg : event.getRecords()) {
             try {
-                @SuppressWarnings("unchecked")
-                Map<String, String> input = gson.fromJson(msg.getBody(), Map.class);
-                processAnalytics(input, logger);
-                successCount++;
+                JsonCodec.ClickEvent click = JsonCodec.CLICK_EVENT.fromJson(msg.getBody());
+                if (click == null || click.shortId() == null) throw new IllegalArgumentException("shortId is missing");
+                String clickId = click.clickId() != null ? click.clickId() : msg.getMessageId();
+                // 재시도로 다시 보낸 클릭이 원래 메시지와 같은 배치에 들어온 경우. 하나만 처리하면 된다
+                if (!clickIds.add(clickId)) continue;
+                Click c = new Click(clickId, msg.getMessageId(), click, clickTimestamp(click, clickId, msg));
+                uniqueTimestamp(c, rowKeys);
+                clicks.add(c);
             } catch (Exception e) {
-                logger.log("[Error] Failed to process SQS message " + msg.getMessageId() + ": " + e.getMessage());
+                // 형식이 깨진 메시지는 재시도해도 같으므로 버린다
+                logger.log("[Error] Invalid click message " + msg.getMessageId() + ": " + e.getMessage());
             }
         }
 
-        logger.log(String.format("[Batch Success] Processed %d/%d messages", successCount, event.getRecords().size()));
-        return "SUCCESS";
+        Map<String, Integer> shards = counterShards(clicks, logger);
+        RowResult rows = insertRows(clicks, rowKeys, logger);
+        for (Click c : rows.failed) failures.add(new SQSBatchResponse.BatchItemFailure(c.messageId));
+        List<Click> toApply = new ArrayList<>(rows.inserted);
+        toApply.addAll(rows.unapplied);
+        int counterFailures = applyCounters(counterUpdates(toApply, shards), logger);
+        markApplied(toApply, logger);
+        for (Click c : toApply) {
+            if (!c.applied.containsAll(c.pending)) failures.add(new SQSBatchResponse.BatchItemFailure(c.messageId));
+        }
+
+        logger.log(String.format("[Batch] Applied %d/%d clicks, %d duplicates skipped, %d resumed, %d retried, %d counter updates failed",
+                rows.inserted.size(), event.getRecords().size(), rows.duplicates, rows.unapplied.size(), failures.size(), counterFailures));
+        return new SQSBatchResponse(failures);
     }
 
-    private void processAnalytics(Map<String, String> input, LambdaLogger logger) {
-        String shortId = input.get("shortId");
-        String ip = input.getOrDefault("ip", "unknown");
-        String userAgent = input.getOrDefault("userAgent", "unknown");
-        String referer = input.getOrDefault("referer", "direct");
-        String country = input.getOrDefault("country", "unknown");
-        String deviceType = input.getOrDefault("deviceType", "PC");
+    /**
+     * CDN 로그에서 온 이벤트는 실제 클릭 시각을 싣는다. 없으면 큐에 들어간 시각을 쓴다.
+     * 밀리초 아래 자리는 clickId로 채워 같은 시각의 클릭끼리 키가 겹치지 않게 한다. 재전달되어도 같은 값이다.
+     */
+    static String clickTimestamp(JsonCodec.ClickEvent click, String clickId, SQSEvent.SQSMessage msg) {
+        Instant at;
+        if (click.clickedAt() != null) {
+            at = Instant.parse(click.clickedAt());
+        } else {
+            String sent = msg.getAttributes() != null ? msg.getAttributes().get("SentTimestamp") : null;
+            at = sent != null ? Instant.ofEpochMilli(Long.parseLong(sent)) : Instant.now();
+        }
+        at = at.minusNanos(at.getNano() % 1_000_000);
+        return at.plusNanos(subMillisNanos(clickId)).toString();
+    }
 
+    private static long subMillisNanos(String clickId) {
         try {
-            ddb.updateItem(UpdateItemRequest.builder()
-                    .tableName(this.urlsTable)
-                    .key(Map.of("shortId", AttributeValue.builder().s(shortId).build()))
-                    .updateExpression("ADD clickCount :inc")
-                    .expressionAttributeValues(Map.of(":inc", AttributeValue.builder().n("1").build()))
-                    .build());
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(clickId.getBytes(StandardCharsets.UTF_8));
+            long v = ((digest[0] & 0xFFL) << 16) | ((digest[1] & 0xFFL) << 8) | (digest[2] & 0xFFL);
+            return v % 1_000_000;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-            Map<String, AttributeValue> logItem = new HashMap<>();
-            logItem.put("shortId", AttributeValue.builder().s(shortId).build());
-            logItem.put("timestamp", AttributeValue.builder().s(Instant.now().toString()).build());
-            logItem.put("ip", AttributeValue.builder().s(ip).build());
-            logItem.put("userAgent", AttributeValue.builder().s(userAgent).build());
-            logItem.put("referer", AttributeValue.builder().s(referer).build());
-            logItem.put("country", AttributeValue.builder().s(country).build());
-            logItem.put("deviceType", AttributeValue.builder().s(deviceType).build());
+    // 그래도 같은 배치에서 (shortId, timestamp)가 겹치면 한쪽 행이 조건 실패로 빠지므로 1ns씩 밀어 구분한다
+    private static void uniqueTimestamp(Click c, Set<String> rowKeys) {
+        while (!rowKeys.add(c.shortId() + "\n" + c.timestamp)) {
+            c.timestamp = Instant.parse(c.timestamp).plusNanos(1).toString();
+        }
+    }
 
-            ddb.putItem(PutItemRequest.builder()
-                    .tableName(this.clicksTable)
-                    .item(logItem)
-                    .build());
+    /**
+     * 링크마다 이번 배치에서 쓸 샤드 수를 정한다. 배치 안 클릭 수로 필요한 샤드 수를 가늠하고,
+     * 지금보다 많아야 하면 링크 아이템의 counterShards를 먼저 올린다. 올리지 못하면 이미 확인된 범위만 쓴다.
+     */
+    private Map<String, Integer> counterShards(List<Click> clicks, LambdaLogger logger) {
+        Map<String, Long> perLink = new HashMap<>();
+        for (Click c : clicks) perLink.merge(c.shortId(), 1L, Long::sum);
 
-            updateTrendInsights(shortId, country, deviceType, logger);
-        } catch (Exception e) {
-            logger.log("[Error] processAnalytics failed for " + shortId + ": " + e.getMessage());
-            throw e; 
+        Map<String, Integer> shards = new HashMap<>();
+        perLink.forEach((shortId, n) -> {
+            TtlCache.Lookup<Integer> cached = knownShards.get(shortId);
+            int known = cached.isHit() ? cached.value() : 1;
+            int wanted = ClickCounters.shardsFor(n, clicksPerShard);
+            if (wanted > known) {
+                try {
+                    ddb.updateItem(UpdateItemRequest.builder()
+                            .tableName(this.urlsTable)
+                            .key(Map.of("shortId", AttributeValue.builder().s(shortId).build()))
+                            .updateExpression("SET #s = :n")
+                            .conditionExpression("attribute_exists(shortId) AND (attribute_not_exists(#s) OR #s < :n)")
+                            .expressionAttributeNames(Map.of("#s", ClickCounters.SHARDS))
+                            .expressionAttributeValues(Map.of(":n", AttributeValue.builder().n(Integer.toString(wanted)).build()))
+                            .build());
+                    logger.log("[Counter] " + shortId + " now spreads clicks over " + wanted + " shards");
+                    known = wanted;
+                } catch (ConditionalCheckFailedException e) {
+                    // 다른 컨테이너가 이미 같거나 더 많이 올렸다 (없는 링크면 어느 샤드에 쓰든 읽히지 않는다)
+                    known = wanted;
+                } catch (Exception e) {
+                    logger.log("[Warning] Failed to raise counter shards for " + shortId + ": " + e.getMessage());
+                }
+                knownShards.put(shortId, known);
+            }
+            shards.put(shortId, known);
+        });
+        return shards;
+    }
+
+    private enum RowOutcome { INSERTED, DUPLICATE, UNAPPLIED, FAILED }
+
+    private static final class RowResult {
+        final List<Click> inserted = new ArrayList<>();
+        final List<Click> unapplied = new ArrayList<>();
+        final List<Click> failed = new ArrayList<>();
+        int duplicates;
+    }
+
+    /**
+     * 클릭 행을 writeConcurrency개씩 동시에 조건부로 넣는다. 같은 행끼리는 서로 다른 항목이라 충돌하지 않는다.
+     */
+    private RowResult insertRows(List<Click> clicks, Set<String> rowKeys, LambdaLogger logger) {
+        Semaphore permits = new Semaphore(writeConcurrency);
+        List<Future<RowOutcome>> futures = new ArrayList<>(clicks.size());
+        for (Click c : clicks) futures.add(WRITE_EXECUTOR.submit(() -> limited(permits, () -> insertRow(c, rowKeys, logger))));
+
+        RowResult result = new RowResult();
+        for (int i = 0; i < clicks.size(); i++) {
+            RowOutcome outcome;
+            try {
+                outcome = futures.get(i).get();
+            } catch (Exception e) {
+                outcome = RowOutcome.FAILED;
+            }
+            switch (outcome) {
+                case INSERTED -> result.inserted.add(clicks.get(i));
+                case DUPLICATE -> result.duplicates++;
+                case UNAPPLIED -> result.unapplied.add(clicks.get(i));
+                case FAILED -> result.failed.add(clicks.get(i));
+            }
+        }
+        if (!result.failed.isEmpty()) logger.log("[Error] " + result.failed.size() + " click rows left unwritten, returning them to the queue");
+        return result;
+    }
+
+    /**
+     * 이미 같은 clickId의 행이 있으면 재전달이다. 행에 적힌 대상을 빼고 남은 것이 있으면 그것만 다시 더하고, 없으면 건너뛴다.
+     * 다른 클릭과 키가 겹친 경우는 시각을 밀어 다시 넣는다.
+     */
+    private RowOutcome insertRow(Click c, Set<String> rowKeys, LambdaLogger logger) throws InterruptedException {
+        for (int attempt = 0; attempt < MAX_WRITE_ATTEMPTS; attempt++) {
+            if (attempt > 0) Thread.sleep(50L << attempt);
+            try {
+                ddb.putItem(PutItemRequest.builder()
+                        .tableName(this.clicksTable)
+                        .item(row(c))
+                        .conditionExpression("attribute_not_exists(shortId)")
+                        .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                        .build());
+                return RowOutcome.INSERTED;
+            } catch (ConditionalCheckFailedException e) {
+                AttributeValue existing = e.hasItem() ? e.item().get("clickId") : null;
+                if (existing != null && c.clickId.equals(existing.s())) {
+                    AttributeValue applied = e.item().get(COUNTERS_APPLIED);
+                    if (applied != null && applied.hasSs()) c.pending.removeAll(applied.ss());
+                    return c.pending.isEmpty() ? RowOutcome.DUPLICATE : RowOutcome.UNAPPLIED;
+                }
+                c.timestamp = Instant.parse(c.timestamp).plusNanos(1).toString();
+                uniqueTimestamp(c, rowKeys);
+            } catch (Exception e) {
+                logger.log("[Warning] Click row write failed (attempt " + (attempt + 1) + "): " + e.getMessage());
+            }
+        }
+        return RowOutcome.FAILED;
+    }
+
+    /**
+     * 합산한 갱신 하나와 그 갱신에 더해진 클릭들. 갱신이 성공하면 클릭마다 target을 반영한 것으로 적는다.
+     */
+    record CounterUpdate(Update update, String target, List<Click> clicks) {}
+
+    /**
+     * 링크·버킷별로 합산한 카운터 갱신. 항목마다 한 번의 UpdateItem이 된다. 클릭마다 아직 더하지 않은 대상에만 넣는다.
+     * 링크마다 확인된 샤드 범위에서 하나를 골라 카운터·트렌드 문서·롤업을 모두 그 샤드에 쓴다.
+     */
+    private List<CounterUpdate> counterUpdates(List<Click> clicks, Map<String, Integer> shards) {
+        Map<String, List<Click>> totals = new LinkedHashMap<>();
+        Map<String, List<Click>> trends = new LinkedHashMap<>();
+        Map<String, Map<String, List<Click>>> rollups = new LinkedHashMap<>();
+
+        for (Click c : clicks) {
+            if (c.pending.contains(TOTAL)) totals.computeIfAbsent(c.shortId(), k -> new ArrayList<>()).add(c);
+            if (c.pending.contains(TREND)) trends.computeIfAbsent(c.shortId(), k -> new ArrayList<>()).add(c);
+            Map<String, List<Click>> buckets = rollups.computeIfAbsent(c.shortId(), k -> new LinkedHashMap<>());
+            if (c.pending.contains(HOURLY)) buckets.computeIfAbsent(ClickRollups.hourBucket(c.at()), k -> new ArrayList<>()).add(c);
+            if (c.pending.contains(DAILY)) buckets.computeIfAbsent(ClickRollups.dayBucket(c.at()), k -> new ArrayList<>()).add(c);
+        }
+
+        Map<String, Integer> shard = new HashMap<>();
+        for (Click c : clicks) shard.computeIfAbsent(c.shortId(), shortId -> ThreadLocalRandom.current().nextInt(shards.getOrDefault(shortId, 1)));
+
+        String now = Instant.now().toString();
+        List<CounterUpdate> updates = new ArrayList<>();
+        totals.forEach((shortId, linkClicks) -> updates.add(new CounterUpdate(
+                ClickCounters.increment(this.clickCountersTable, shortId, shard.get(shortId), linkClicks.size()), TOTAL, linkClicks)));
+        trends.forEach((shortId, linkClicks) -> {
+            Map<String, Map<String, Long>> deltas = new LinkedHashMap<>();
+            for (Click c : linkClicks) {
+                deltas.computeIfAbsent(TrendDocument.COUNTRIES, k -> new LinkedHashMap<>()).merge(c.country, 1L, Long::sum);
+                deltas.computeIfAbsent(TrendDocument.DEVICES, k -> new LinkedHashMap<>()).merge(c.deviceType, 1L, Long::sum);
+                deltas.computeIfAbsent(TrendDocument.REFERERS, k -> new LinkedHashMap<>()).merge(ClickRollups.refererSource(c.event.referer()), 1L, Long::sum);
+            }
+            updates.add(new CounterUpdate(TrendDocument.add(this.trendInsightsTable, shortId, shard.get(shortId), deltas, now), TREND, linkClicks));
+        });
+        rollups.forEach((shortId, buckets) -> buckets.forEach((bucket, bucketClicks) -> {
+            boolean daily = bucket.startsWith(ClickRollups.DAY);
+            Map<String, Long> values = new LinkedHashMap<>();
+            for (Click c : bucketClicks) ClickRollups.count(values, daily, c.at(), c.country, c.deviceType, c.event.referer());
+            updates.add(new CounterUpdate(ClickRollups.update(this.clickRollupsTable, shortId, bucket, shard.get(shortId), values),
+                    daily ? DAILY : HOURLY, bucketClicks));
+        }));
+        return updates;
+    }
+
+    /**
+     * 카운터 갱신을 동시에 보내고 재시도 끝에 실패한 수를 돌려준다. 성공한 갱신의 대상은 클릭마다 applied에 넣는다.
+     */
+    private int applyCounters(List<CounterUpdate> updates, LambdaLogger logger) {
+        Semaphore permits = new Semaphore(writeConcurrency);
+        List<Future<Boolean>> futures = new ArrayList<>(updates.size());
+        for (CounterUpdate update : updates) futures.add(WRITE_EXECUTOR.submit(() -> limited(permits, () -> applyCounter(update.update(), logger))));
+
+        int failed = 0;
+        for (int i = 0; i < updates.size(); i++) {
+            CounterUpdate update = updates.get(i);
+            boolean applied;
+            try {
+                applied = futures.get(i).get();
+            } catch (Exception e) {
+                applied = false;
+            }
+            if (applied) {
+                for (Click c : update.clicks()) c.applied.add(update.target());
+            } else {
+                failed++;
+                logger.log("[Error] Counter update failed for " + update.update().tableName() + " " + update.update().key()
+                        + ", returning " + update.clicks().size() + " clicks to the queue");
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * 반영을 마친 대상을 클릭 행의 countersApplied에 더한다. 실패하면 재전달 때 그 대상이 한 번 더 더해질 수 있으므로
+     * 로그만 남기고, 이미 반영된 클릭을 큐로 돌려보내지는 않는다.
+     */
+    private void markApplied(List<Click> clicks, LambdaLogger logger) {
+        Semaphore permits = new Semaphore(writeConcurrency);
+        List<Future<?>> futures = new ArrayList<>(clicks.size());
+        for (Click c : clicks) {
+            if (c.applied.isEmpty()) continue;
+            futures.add(WRITE_EXECUTOR.submit(() -> limited(permits, () -> {
+                for (int attempt = 0; attempt < MAX_WRITE_ATTEMPTS; attempt++) {
+                    if (attempt > 0) Thread.sleep(50L << attempt);
+                    try {
+                        ddb.updateItem(UpdateItemRequest.builder()
+                                .tableName(this.clicksTable)
+                                .key(Map.of("shortId", AttributeValue.builder().s(c.shortId()).build(),
+                                        "timestamp", AttributeValue.builder().s(c.timestamp).build()))
+                                .updateExpression("ADD #a :t")
+                                .conditionExpression("clickId = :id")
+                                .expressionAttributeNames(Map.of("#a", COUNTERS_APPLIED))
+                                .expressionAttributeValues(Map.of(
+                                        ":t", AttributeValue.builder().ss(c.applied).build(),
+                                        ":id", AttributeValue.builder().s(c.clickId).build()))
+                                .build());
+                        return null;
+                    } catch (ConditionalCheckFailedException e) {
+                        // 행이 이미 TTL로 지워졌다
+                        return null;
+                    } catch (Exception e) {
+                        if (attempt == MAX_WRITE_ATTEMPTS - 1) logger.log("[Warning] Failed to mark counters applied for " + c.clickId + ": " + e.getMessage());
+                    }
+                }
+                return null;
+            })));
+        }
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (Exception e) {
+                // 실패는 위에서 로그로 남겼다
+            }
         }
     }
 
-    private void updateTrendInsights(String shortId, String country, String deviceType, LambdaLogger logger) {
+    private boolean applyCounter(Update update, LambdaLogger logger) throws InterruptedException {
+        for (int attempt = 0; attempt < MAX_WRITE_ATTEMPTS; attempt++) {
+            if (attempt > 0) Thread.sleep(50L << attempt);
+            try {
+                boolean hasReferers = update.tableName().equals(this.trendInsightsTable) || update.tableName().equals(this.clickRollupsTable);
+                UpdateItemRequest request = updateRequest(update);
+                UpdateItemResponse response = ddb.updateItem(hasReferers ? request.toBuilder().returnValues(ReturnValue.ALL_NEW).build() : request);
+                if (hasReferers && response != null && response.hasAttributes()) foldReferers(update.tableName(), response.attributes(), logger);
+                return true;
+            } catch (DynamoDbException e) {
+                String code = e.awsErrorDetails() != null ? e.awsErrorDetails().errorCode() : null;
+                if (VALIDATION_EXCEPTION.equals(code) && update.tableName().equals(this.trendInsightsTable)) {
+                    createTrendDocument(update.key(), logger);
+                } else {
+                    logger.log("[Warning] Counter update failed (attempt " + (attempt + 1) + "): " + e.getMessage());
+                }
+            }
+        }
+        return false;
+    }
+
+    static UpdateItemRequest updateRequest(Update update) {
+        UpdateItemRequest.Builder builder = UpdateItemRequest.builder()
+                .tableName(update.tableName())
+                .key(update.key())
+                .updateExpression(update.updateExpression())
+                .expressionAttributeValues(update.expressionAttributeValues());
+        if (update.hasExpressionAttributeNames()) builder.expressionAttributeNames(update.expressionAttributeNames());
+        if (update.conditionExpression() != null) builder.conditionExpression(update.conditionExpression());
+        return builder.build();
+    }
+
+    /**
+     * 유입 출처가 refererCap개를 넘은 항목은 작은 출처들을 "other"로 옮긴다. 실패해도 클릭은 이미 더해졌으므로 다음 갱신에 맡긴다.
+     */
+    private void foldReferers(String table, Map<String, AttributeValue> item, LambdaLogger logger) {
+        Update fold = table.equals(this.trendInsightsTable)
+                ? TrendDocument.foldReferers(table, item, refererCap)
+                : ClickRollups.foldReferers(table, item, refererCap);
+        if (fold == null) return;
         try {
-            ddb.updateItem(UpdateItemRequest.builder()
-                    .tableName(this.trendInsightsTable)
-                    .key(Map.of(
-                            "shortId", AttributeValue.builder().s(shortId).build(),
-                            "category", AttributeValue.builder().s("COUNTRY").build()
-                    ))
-                    .updateExpression("ADD #c :inc SET lastUpdated = :now")
-                    .expressionAttributeNames(Map.of("#c", country))
-                    .expressionAttributeValues(Map.of(
-                            ":inc", AttributeValue.builder().n("1").build(),
-                            ":now", AttributeValue.builder().s(Instant.now().toString()).build()
-                    ))
-                    .build());
+            ddb.updateItem(updateRequest(fold));
+        } catch (ConditionalCheckFailedException e) {
+            // 그 사이 다른 소비자가 접을 출처에 더했다
+        } catch (Exception e) {
+            logger.log("[Warning] Failed to fold referers of " + item.get("shortId").s() + ": " + e.getMessage());
+        }
+    }
 
-            ddb.updateItem(UpdateItemRequest.builder()
-                    .tableName(this.trendInsightsTable)
-                    .key(Map.of(
-                            "shortId", AttributeValue.builder().s(shortId).build(),
-                            "category", AttributeValue.builder().s("DEVICE").build()
-                    ))
-                    .updateExpression("ADD #d :inc SET lastUpdated = :now")
-                    .expressionAttributeNames(Map.of("#d", deviceType))
-                    .expressionAttributeValues(Map.of(
-                            ":inc", AttributeValue.builder().n("1").build(),
-                            ":now", AttributeValue.builder().s(Instant.now().toString()).build()
-                    ))
+    /**
+     * 트렌드 문서가 아직 없는 링크는 맵 경로 ADD가 ValidationException으로 거절된다. 빈 문서를 만들어 두면 다음 시도에서 들어간다.
+     */
+    private void createTrendDocument(Map<String, AttributeValue> key, LambdaLogger logger) {
+        Put create = TrendDocument.create(this.trendInsightsTable, key);
+        try {
+            ddb.putItem(PutItemRequest.builder()
+                    .tableName(create.tableName())
+                    .item(create.item())
+                    .conditionExpression(create.conditionExpression())
                     .build());
+        } catch (ConditionalCheckFailedException e) {
+            // 다른 컨테이너가 먼저 만들었다
         } catch (Exception e) {
-            logger.log("[Error] updateTrendInsights failed: " + e.getMessage());
+            logger.log("[Warning] Failed to create trend document for " + key.get("shortId").s() + ": " + e.getMessage());
+        }
+    }
+
+    private static <T> T limited(Semaphore permits, Callable<T> call) throws Exception {
+        permits.acquire();
+        try {
+            return call.call();
+        } finally {
+            permits.release();
         }
     }
+
+    private Map<String, AttributeValue> row(Click c) {
+        JsonCodec.ClickEvent input = c.event;
+        Map<String, AttributeValue> logItem = new HashMap<>();
+        logItem.put("shortId", AttributeValue.builder().s(input.shortId()).build());
+        logItem.put("timestamp", AttributeValue.builder().s(c.timestamp).build());
+        logItem.put("clickId", AttributeValue.builder().s(c.clickId).build());
+        logItem.put("ip", AttributeValue.builder().s(orDefault(input.ip(), "unknown")).build());
+        logItem.put("userAgent", AttributeValue.builder().s(orDefault(input.userAgent(), "unknown")).build());
+        logItem.put("referer", AttributeValue.builder().s(orDefault(input.referer(), "direct")).build());
+        logItem.put("country", AttributeValue.builder().s(c.country).build());
+        logItem.put("deviceType", AttributeValue.builder().s(c.deviceType).build());
+        // 원본 행은 보관 기간이 지나면 TTL로 지워지고, 그 전에 ClickArchiveHandler가 세그먼트로 옮긴다
+        logItem.put("expiresAt", AttributeValue.builder().n(Long.toString(c.at().getEpochSecond() + clickRetentionSeconds)).build());
+        return logItem;
+    }
+
+    // 빈 문자열은 속성 이름으로 쓸 수 없어 카운터 갱신이 거절되므로 기본값으로 바꾼다
+    private static String orDefault(String value, String defaultValue) {
+        return value != null && !value.isEmpty() ? value : defaultValue;
+    }
 }
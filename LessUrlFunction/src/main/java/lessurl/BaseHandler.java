@@ -5,7 +5,6 @@ import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
@@ -25,12 +24,15 @@ public abstract class BaseHandler<I, O> implements RequestHandler<I, O> {
         protected final String urlsTable;
         protected final String serviceMonitorTable;
         protected final String corsOrigin;
+        // 모든 응답에 공통인 헤더. 요청마다 새로 조립하지 않고 복사한다
+        private final Map<String, String> jsonHeaders;
     
         public BaseHandler() {
-            this.gson = new GsonBuilder().setPrettyPrinting().create();
+            this.gson = JsonCodec.GSON;
             this.urlsTable = System.getenv("URLS_TABLE");
             this.serviceMonitorTable = System.getenv("SERVICE_MONITOR_TABLE");
             this.corsOrigin = System.getenv("CORS_ALLOWED_ORIGIN");
+            this.jsonHeaders = baseHeaders(this.corsOrigin);
     
             System.out.println("Initializing BaseHandler. CORS Origin: " + this.corsOrigin);
     
@@ -65,8 +67,30 @@ public abstract class BaseHandler<I, O> implements RequestHandler<I, O> {
             this.urlsTable = urlsTable;
             this.serviceMonitorTable = System.getenv("SERVICE_MONITOR_TABLE");
             this.corsOrigin = corsOrigin;
+            this.jsonHeaders = baseHeaders(corsOrigin);
         }
+
+        private static Map<String, String> baseHeaders(String corsOrigin) {
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Content-Type", "application/json");
+            if (corsOrigin != null) {
+                headers.put("Access-Control-Allow-Origin", corsOrigin);
+            }
+            return Map.copyOf(headers);
+        }
+
     
+        protected static long envLong(String name, long defaultValue) {
+            String value = System.getenv(name);
+            if (value == null || value.isBlank()) return defaultValue;
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                System.err.println("[Config Warning] Invalid number for " + name + ": " + value);
+                return defaultValue;
+            }
+        }
+
         protected void recordMetric(String type, Map<String, Object> data) {
             if (this.serviceMonitorTable == null) return;
             try {
@@ -87,12 +111,8 @@ public abstract class BaseHandler<I, O> implements RequestHandler<I, O> {
         protected APIGatewayProxyResponseEvent createResponse(int statusCode, Object body) {        APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
         response.setStatusCode(statusCode);
         
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Content-Type", "application/json");
-        if (corsOrigin != null) {
-            headers.put("Access-Control-Allow-Origin", corsOrigin);
-        }
-        response.setHeaders(headers);
+        // 호출 측에서 헤더를 추가할 수 있도록 가변 복사본을 넘긴다
+        response.setHeaders(new HashMap<>(jsonHeaders));
         
         if (body instanceof String) {
             response.setBody((String) body);
@@ -102,6 +122,32 @@ public abstract class BaseHandler<I, O> implements RequestHandler<I, O> {
         return response;
     }
 
+    /**
+     * 본문 없는 리다이렉트 응답. 만든 뒤 헤더를 고치지 않으므로 HashMap 대신 불변 맵 하나로 끝낸다.
+     */
+    protected APIGatewayProxyResponseEvent createRedirectResponse(int statusCode, String location, String cacheControl) {
+        return redirectResponse(corsOrigin, statusCode, location, cacheControl);
+    }
+
+    static APIGatewayProxyResponseEvent redirectResponse(String corsOrigin, int statusCode, String location, String cacheControl) {
+        APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
+        response.setStatusCode(statusCode);
+        response.setHeaders(corsOrigin != null
+                ? Map.of("Content-Type", "application/json", "Access-Control-Allow-Origin", corsOrigin, "Location", location, "Cache-Control", cacheControl)
+                : Map.of("Content-Type", "application/json", "Location", location, "Cache-Control", cacheControl));
+        response.setBody("");
+        return response;
+    }
+
+    protected String formatShortUrl(String baseUrl, String path, APIGatewayProxyRequestEvent input) {
+        if (baseUrl != null && !baseUrl.isEmpty()) return String.format("%s/%s", baseUrl, path);
+        String domain = input.getHeaders().get("Host");
+        String stage = input.getRequestContext().getStage();
+        String proto = input.getHeaders().getOrDefault("X-Forwarded-Proto", "https");
+        if (domain != null && domain.contains("localhost")) return String.format("http://%s/%s", domain, path);
+        return String.format("%s://%s/%s/%s", proto, domain, stage, path);
+    }
+
     protected APIGatewayProxyResponseEvent createErrorResponse(int statusCode, String message) {
         return createResponse(statusCode, Map.of("error", message));
     }
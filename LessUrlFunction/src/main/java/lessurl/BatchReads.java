@@ -0,0 +1,51 @@
+package lessurl;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 한 테이블의 여러 키를 BatchGetItem 100개 단위로 읽는다. UnprocessedKeys는 짧게 물러났다가 다시 요청하고,
+ * 몇 번 뒤에도 남으면 일부만 돌려주지 않고 실패한다. 결과 순서는 키 순서와 다르며 없는 키는 빠진다.
+ */
+final class BatchReads {
+
+    static final int MAX_KEYS = 100;
+    private static final int MAX_ATTEMPTS = 4;
+
+    private BatchReads() {
+    }
+
+    static List<Map<String, AttributeValue>> get(DynamoDbClient ddb, String table, List<Map<String, AttributeValue>> keys, boolean consistentRead) {
+        List<Map<String, AttributeValue>> items = new ArrayList<>(keys.size());
+        for (int from = 0; from < keys.size(); from += MAX_KEYS) {
+            Map<String, KeysAndAttributes> request = Map.of(table, KeysAndAttributes.builder()
+                    .keys(keys.subList(from, Math.min(keys.size(), from + MAX_KEYS)))
+                    .consistentRead(consistentRead)
+                    .build());
+            for (int attempt = 0; attempt < MAX_ATTEMPTS && !request.isEmpty(); attempt++) {
+                if (attempt > 0) backoff(attempt);
+                BatchGetItemResponse res = ddb.batchGetItem(BatchGetItemRequest.builder().requestItems(request).build());
+                items.addAll(res.responses().getOrDefault(table, List.of()));
+                request = res.hasUnprocessedKeys() ? res.unprocessedKeys() : Map.of();
+            }
+            if (!request.isEmpty()) throw new IllegalStateException("Keys of " + table + " left unread after retries");
+        }
+        return items;
+    }
+
+    private static void backoff(int attempt) {
+        try {
+            Thread.sleep(50L << attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,482 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+
+import java.lang.reflect.Type;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * POST /shorten/batch. 여러 URL을 한 번에 검사하고 BatchWriteItem으로 저장한다.
+ * 요청 본문: {"urls": ["https://...", ...], "visibility": "PRIVATE", "redirectPolicy": "TRACKED"}. customAlias는 받지 않는다.
+ *
+ * URL은 청크 단위로 처리한다. 청크마다 Safe Browsing은 한 번에 묻고 Gemini는 동시 실행 수를 제한해 병렬로 부른다.
+ * 남은 실행 시간이 부족하면 처리한 청크까지의 결과와 nextIndex를 돌려주므로, 호출 측은 나머지 URL만 다시 보내면 된다.
+ *
+ * 저장 방식은 ID 모드에 따라 다르다. 순번 모드는 BatchWriteItem으로 한 번에 쓰고, 조건식이 없으므로 이전 무작위 링크와의 충돌만 미리 확인한다.
+ * 이 확인은 확인과 쓰기 사이에 같은 ID를 새로 쓰는 쪽이 없을 때만 안전하므로, 무작위 모드(ID_MODE=random)는 항목마다 조건부 PutItem으로 쓴다.
+ */
+public class BatchShortenHandler extends BaseHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    static final String CREATED = "CREATED";
+    static final String INVALID = "INVALID";
+    static final String MALICIOUS = "MALICIOUS";
+    static final String FAILED = "FAILED";
+
+    private static final int WRITE_BATCH_SIZE = 25;
+    private static final int MAX_WRITE_ATTEMPTS = 5;
+    private static final int MAX_ID_ATTEMPTS = 3;
+    private static final Type REQUEST_TYPE = new TypeToken<Map<String, Object>>() {}.getType();
+    private static final int SQS_BATCH_SIZE = 10;
+
+    private static final ExecutorService CHECK_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final UrlSafetyChecker safetyChecker;
+    private final VerdictCache verdictCache;
+    private final LinkDeltaLog linkDeltaLog;
+    private final SequenceIdAllocator idAllocator;
+    private final String titleQueueUrl;
+    private final int maxUrls;
+    private final int chunkSize;
+    private final int checkConcurrency;
+    private final long checkDeadlineMillis;
+    // 청크 하나를 끝내는 데 필요한 여유 시간. 남은 시간이 이보다 적으면 다음 청크를 시작하지 않는다
+    private final long reserveMillis;
+
+    record ItemResult(int index, String url, String status, String shortId, String shortUrl, String error) {}
+
+    private record Candidate(int index, String url, UrlNormalizer.Normalized normalized) {}
+
+    public BatchShortenHandler() {
+        super();
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(15))
+                .build();
+        this.safetyChecker = new UrlSafetyChecker(httpClient, gson, System.getenv("GEMINI_API_KEY"), System.getenv("SAFE_BROWSING_API_KEY"), SafeBrowsingLocalDb.fromEnv());
+        this.verdictCache = VerdictCache.fromEnv(ddb);
+        this.linkDeltaLog = LinkDeltaLog.fromEnv(ddb);
+        this.idAllocator = SequenceIdAllocator.fromEnv(ddb);
+        this.titleQueueUrl = System.getenv("TITLE_QUEUE_URL");
+        this.maxUrls = (int) envLong("BATCH_SHORTEN_MAX_URLS", 1000);
+        this.chunkSize = (int) envLong("BATCH_SHORTEN_CHUNK_SIZE", 100);
+        this.checkConcurrency = (int) envLong("BATCH_SHORTEN_CHECK_CONCURRENCY", 16);
+        this.checkDeadlineMillis = envLong("BATCH_SHORTEN_CHECK_DEADLINE_MS", 10_000);
+        this.reserveMillis = envLong("BATCH_SHORTEN_RESERVE_MS", 15_000);
+    }
+
+    protected BatchShortenHandler(DynamoDbClient ddb, LambdaClient lambda, SqsClient sqs, Gson gson, String urlsTable, String geminiApiKey, String safeBrowsingApiKey, HttpClient httpClient, VerdictCache verdictCache, SequenceIdAllocator idAllocator, String titleQueueUrl, int maxUrls, int chunkSize) {
+        super(ddb, lambda, sqs, gson, urlsTable, "*");
+        this.safetyChecker = new UrlSafetyChecker(httpClient, gson, geminiApiKey, safeBrowsingApiKey);
+        this.verdictCache = verdictCache;
+        this.linkDeltaLog = LinkDeltaLog.disabled();
+        this.idAllocator = idAllocator;
+        this.titleQueueUrl = titleQueueUrl;
+        this.maxUrls = maxUrls;
+        this.chunkSize = chunkSize;
+        this.checkConcurrency = 4;
+        this.checkDeadlineMillis = 2_500;
+        this.reserveMillis = 1_000;
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
+        LambdaLogger logger = context.getLogger();
+        long startTime = System.currentTimeMillis();
+
+        try {
+            String body = input.getBody();
+            if (body == null || body.isEmpty()) return createErrorResponse(400, "Body is empty");
+
+            Map<String, Object> requestData = gson.fromJson(body, REQUEST_TYPE);
+            if (!(requestData.get("urls") instanceof List<?> rawUrls) || rawUrls.isEmpty()) return createErrorResponse(400, "urls is required");
+            if (rawUrls.size() > maxUrls) return createErrorResponse(400, "Too many URLs (max " + maxUrls + ")");
+
+            String visibility = String.valueOf(requestData.getOrDefault("visibility", "PRIVATE")).toUpperCase();
+            RedirectPolicy redirectPolicy = RedirectPolicy.parse((String) requestData.get("redirectPolicy"));
+            if (redirectPolicy == null) return createErrorResponse(400, "Invalid redirectPolicy");
+
+            List<ItemResult> results = new ArrayList<>(rawUrls.size());
+            int processed = 0;
+            while (processed < rawUrls.size()) {
+                if (processed > 0 && context.getRemainingTimeInMillis() < reserveMillis) break;
+                int end = Math.min(processed + chunkSize, rawUrls.size());
+                results.addAll(processChunk(rawUrls.subList(processed, end), processed, visibility, redirectPolicy, input, context, logger));
+                processed = end;
+            }
+
+            long created = results.stream().filter(r -> CREATED.equals(r.status())).count();
+            recordMetric("PERFORMANCE", Map.of("path", "/shorten/batch", "duration", System.currentTimeMillis() - startTime,
+                    "total", rawUrls.size(), "processed", processed, "created", created));
+
+            Map<String, Object> responseBody = new HashMap<>();
+            responseBody.put("results", results);
+            responseBody.put("total", rawUrls.size());
+            responseBody.put("processed", processed);
+            responseBody.put("created", created);
+            if (processed < rawUrls.size()) responseBody.put("nextIndex", processed);
+            return createResponse(200, responseBody);
+
+        } catch (Exception e) {
+            logger.log("[Error] " + e.getMessage());
+            recordMetric("ERROR_5XX", Map.of("path", "/shorten/batch", "message", String.valueOf(e.getMessage())));
+            return createErrorResponse(500, "Server Error: " + e.getMessage());
+        }
+    }
+
+    private List<ItemResult> processChunk(List<?> rawUrls, int offset, String visibility, RedirectPolicy redirectPolicy,
+                                          APIGatewayProxyRequestEvent input, Context context, LambdaLogger logger) {
+        ItemResult[] results = new ItemResult[rawUrls.size()];
+        List<Candidate> candidates = new ArrayList<>();
+
+        for (int i = 0; i < rawUrls.size(); i++) {
+            Object raw = rawUrls.get(i);
+            String url = raw instanceof String s ? s.trim() : "";
+            if (url.isEmpty()) {
+                results[i] = new ItemResult(offset + i, url, INVALID, null, null, "URL is required");
+                continue;
+            }
+            if (!url.startsWith("http")) url = "https://" + url;
+            UrlNormalizer.Normalized normalized = UrlNormalizer.normalize(url);
+            if (normalized == null) {
+                results[i] = new ItemResult(offset + i, url, INVALID, null, null, "Invalid URL");
+                continue;
+            }
+            candidates.add(new Candidate(offset + i, url, normalized));
+        }
+
+        long deadlineMillis = Math.min(checkDeadlineMillis, Math.max(0, context.getRemainingTimeInMillis() - reserveMillis));
+        Map<String, String> maliciousReasons = checkSafety(candidates, deadlineMillis, logger);
+
+        List<Candidate> accepted = new ArrayList<>();
+        for (Candidate c : candidates) {
+            String reason = maliciousReasons.get(c.normalized().url());
+            if (reason != null) {
+                results[c.index() - offset] = new ItemResult(c.index(), c.url(), MALICIOUS, null, null, "유해 URL이 감지되었습니다.");
+                recordMetric("MALICIOUS_URL", Map.of("url", c.url(), "reason", reason, "path", "/shorten/batch"));
+            } else {
+                accepted.add(c);
+            }
+        }
+
+        if (!accepted.isEmpty()) {
+            for (ItemResult r : save(accepted, visibility, redirectPolicy, input, logger)) results[r.index() - offset] = r;
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * 악성으로 판정된 정규화 URL과 사유. 캐시에 없는 URL만 원격으로 검사하며 기한 안에 끝나지 않은 검사는 통과시킨다(단건과 같은 fail-open).
+     */
+    private Map<String, String> checkSafety(List<Candidate> candidates, long deadlineMillis, LambdaLogger logger) {
+        Map<String, String> malicious = new HashMap<>();
+        // 같은 청크 안의 중복 URL은 한 번만 검사한다
+        Map<String, Candidate> unchecked = new LinkedHashMap<>();
+        // 도메인 SAFE 재사용으로 Gemini만 생략하는 URL. Safe Browsing은 그대로 검사한다
+        Set<String> domainSafe = new HashSet<>();
+        for (Candidate c : candidates) {
+            String key = c.normalized().url();
+            if (malicious.containsKey(key) || unchecked.containsKey(key)) continue;
+            VerdictCache.Hit hit = verdictCache.lookup(c.normalized());
+            if (hit == null || hit.isDomainSafe()) {
+                unchecked.put(key, c);
+                if (hit != null) domainSafe.add(key);
+            } else if (hit.verdict() == VerdictCache.Verdict.MALICIOUS) {
+                malicious.put(key, "CACHED_" + hit.scope().toUpperCase() + (hit.reason() != null ? ":" + hit.reason() : ""));
+            }
+        }
+        if (unchecked.isEmpty()) return malicious;
+
+        List<String> urls = unchecked.values().stream().map(Candidate::url).toList();
+        List<Future<Set<String>>> safeBrowsing = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i += UrlSafetyChecker.SAFE_BROWSING_MAX_ENTRIES) {
+            List<String> slice = urls.subList(i, Math.min(i + UrlSafetyChecker.SAFE_BROWSING_MAX_ENTRIES, urls.size()));
+            safeBrowsing.add(CHECK_EXECUTOR.submit(() -> safetyChecker.matchSafeBrowsing(slice)));
+        }
+        Semaphore permits = new Semaphore(checkConcurrency);
+        Map<String, Future<Boolean>> gemini = new LinkedHashMap<>();
+        for (Candidate c : unchecked.values()) {
+            if (domainSafe.contains(c.normalized().url())) continue;
+            gemini.put(c.normalized().url(), CHECK_EXECUTOR.submit(() -> {
+                permits.acquire();
+                try {
+                    return safetyChecker.isMaliciousWithGemini(c.url());
+                } finally {
+                    permits.release();
+                }
+            }));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        Set<String> safeBrowsingMatches = new HashSet<>();
+        boolean safeBrowsingComplete = true;
+        for (Future<Set<String>> f : safeBrowsing) {
+            try {
+                safeBrowsingMatches.addAll(f.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (Exception e) {
+                f.cancel(true);
+                safeBrowsingComplete = false;
+                logger.log("[Warning] Batch Safe Browsing lookup incomplete: " + e);
+            }
+        }
+
+        int abandoned = 0;
+        for (Candidate c : unchecked.values()) {
+            String key = c.normalized().url();
+            Future<Boolean> f = gemini.get(key);
+            Boolean aiMalicious = null;
+            if (f != null) {
+                try {
+                    aiMalicious = f.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (Exception e) {
+                    f.cancel(true);
+                    abandoned++;
+                }
+            }
+            boolean sbMalicious = safeBrowsingMatches.contains(c.url());
+            if (Boolean.TRUE.equals(aiMalicious) || sbMalicious) {
+                String reason = Boolean.TRUE.equals(aiMalicious) ? (sbMalicious ? "BOTH" : "AI") : "SAFE_BROWSING";
+                malicious.put(key, reason);
+                verdictCache.record(c.normalized(), VerdictCache.Verdict.MALICIOUS, reason);
+            } else if (aiMalicious != null && safeBrowsingComplete && safetyChecker.isEnabled()) {
+                verdictCache.record(c.normalized(), VerdictCache.Verdict.SAFE, null);
+            }
+        }
+        if (abandoned > 0) logger.log("[Warning] " + abandoned + " batch URL checks exceeded " + deadlineMillis + "ms");
+        return malicious;
+    }
+
+    private List<ItemResult> save(List<Candidate> accepted, String visibility, RedirectPolicy redirectPolicy,
+                                  APIGatewayProxyRequestEvent input, LambdaLogger logger) {
+        String createdAt = Instant.now().toString();
+        boolean deferTitle = titleQueueUrl != null && !titleQueueUrl.isEmpty();
+        String baseUrl = System.getenv("BASE_URL");
+
+        String[] ids = new String[accepted.size()];
+        Set<Integer> noId = new HashSet<>();
+        // 저장하지 못한 shortId와 사유
+        Map<String, String> unsaved = idAllocator != null
+                ? writeBatched(accepted, ids, noId, createdAt, visibility, redirectPolicy, deferTitle, logger)
+                : putConditionally(accepted, ids, noId, createdAt, visibility, redirectPolicy, deferTitle, logger);
+        if (!noId.isEmpty()) logger.log("[Warning] " + noId.size() + " batch URLs still collided after " + MAX_ID_ATTEMPTS + " ID attempts");
+
+        List<ItemResult> results = new ArrayList<>(accepted.size());
+        Map<String, Candidate> byId = new LinkedHashMap<>();
+        for (int i = 0; i < accepted.size(); i++) {
+            Candidate c = accepted.get(i);
+            if (noId.contains(i)) {
+                results.add(new ItemResult(c.index(), c.url(), FAILED, null, null, "Could not allocate a unique ID"));
+            } else if (unsaved.containsKey(ids[i])) {
+                results.add(new ItemResult(c.index(), c.url(), FAILED, null, null, unsaved.get(ids[i])));
+            } else {
+                byId.put(ids[i], c);
+                results.add(new ItemResult(c.index(), c.url(), CREATED, ids[i], formatShortUrl(baseUrl, ids[i], input), null));
+            }
+        }
+        if (deferTitle) enqueueTitleJobs(new ArrayList<>(byId.keySet()), byId, logger);
+        return results;
+    }
+
+    /**
+     * 순번 모드. 할당기가 준 ID는 다른 컨테이너와 겹치지 않으므로, 이전에 무작위로 만든 링크와 겹치는지만 미리 확인하고 BatchWriteItem으로 저장한다.
+     * 미리 확인한 뒤 같은 ID를 새로 쓰는 쪽이 없으므로 조건식 없이 써도 덮어쓰지 않는다.
+     */
+    private Map<String, String> writeBatched(List<Candidate> accepted, String[] ids, Set<Integer> noId, String createdAt, String visibility,
+                                             RedirectPolicy redirectPolicy, boolean deferTitle, LambdaLogger logger) {
+        // 겹친 자리에 새로 받은 ID도 다시 확인하고, 끝까지 겹치는 항목은 저장하지 않고 실패로 돌려준다
+        Set<String> inBatch = new HashSet<>();
+        List<Integer> unchecked = new ArrayList<>(accepted.size());
+        for (int i = 0; i < accepted.size(); i++) unchecked.add(i);
+        for (int attempt = 0; attempt < MAX_ID_ATTEMPTS && !unchecked.isEmpty(); attempt++) {
+            List<String> candidates = new ArrayList<>(unchecked.size());
+            for (int i : unchecked) {
+                ids[i] = nextUniqueId(inBatch);
+                candidates.add(ids[i]);
+            }
+            Set<String> taken = existingIds(candidates);
+            List<Integer> retry = new ArrayList<>();
+            for (int i : unchecked) {
+                if (taken.contains(ids[i])) retry.add(i);
+            }
+            unchecked = retry;
+        }
+        noId.addAll(unchecked);
+
+        List<String> writeIds = new ArrayList<>(accepted.size());
+        List<WriteRequest> writes = new ArrayList<>(accepted.size());
+        for (int i = 0; i < accepted.size(); i++) {
+            if (noId.contains(i)) continue;
+            writeIds.add(ids[i]);
+            writes.add(WriteRequest.builder().putRequest(PutRequest.builder()
+                    .item(ShortenHandler.linkItem(ids[i], accepted.get(i).url(), createdAt, visibility, TitleGenerator.PLACEHOLDER, deferTitle, redirectPolicy))
+                    .build()).build());
+        }
+
+        Map<String, String> unsaved = new HashMap<>();
+        for (int i = 0; i < writes.size(); i += WRITE_BATCH_SIZE) {
+            List<WriteRequest> slice = writes.subList(i, Math.min(i + WRITE_BATCH_SIZE, writes.size()));
+            List<String> sliceIds = writeIds.subList(i, Math.min(i + WRITE_BATCH_SIZE, writeIds.size()));
+            try {
+                // 링크보다 먼저 기록해야 리다이렉트의 Bloom filter가 새 링크를 404로 막지 않는다
+                linkDeltaLog.record(Instant.parse(createdAt), sliceIds);
+                for (String id : writeWithRetry(slice)) unsaved.put(id, "Write failed");
+            } catch (Exception e) {
+                logger.log("[Error] Batch write failed: " + e.getMessage());
+                for (String id : sliceIds) unsaved.put(id, e.getMessage());
+            }
+        }
+        return unsaved;
+    }
+
+    /**
+     * 무작위 모드. 다른 요청이 같은 ID를 동시에 만들 수 있어 미리 확인해도 덮어쓸 수 있으므로, 항목마다 attribute_not_exists 조건부 PutItem으로 쓴다.
+     * 쓰기 요청이 BatchWriteItem보다 25배 많아지는 대신 겹친 항목만 새 ID로 다시 쓴다. 호출은 checkConcurrency개까지 동시에 보낸다.
+     */
+    private Map<String, String> putConditionally(List<Candidate> accepted, String[] ids, Set<Integer> noId, String createdAt, String visibility,
+                                                 RedirectPolicy redirectPolicy, boolean deferTitle, LambdaLogger logger) {
+        Map<String, String> unsaved = new ConcurrentHashMap<>();
+        Set<String> inBatch = new HashSet<>();
+        List<Integer> pending = new ArrayList<>(accepted.size());
+        for (int i = 0; i < accepted.size(); i++) pending.add(i);
+        Semaphore permits = new Semaphore(checkConcurrency);
+
+        for (int attempt = 0; attempt < MAX_ID_ATTEMPTS && !pending.isEmpty(); attempt++) {
+            List<String> attemptIds = new ArrayList<>(pending.size());
+            for (int i : pending) {
+                ids[i] = nextUniqueId(inBatch);
+                attemptIds.add(ids[i]);
+            }
+            try {
+                // 링크보다 먼저 기록해야 리다이렉트의 Bloom filter가 새 링크를 404로 막지 않는다
+                for (int i = 0; i < attemptIds.size(); i += WRITE_BATCH_SIZE) {
+                    linkDeltaLog.record(Instant.parse(createdAt), attemptIds.subList(i, Math.min(i + WRITE_BATCH_SIZE, attemptIds.size())));
+                }
+            } catch (Exception e) {
+                logger.log("[Error] Batch write failed: " + e.getMessage());
+                for (String id : attemptIds) unsaved.put(id, e.getMessage());
+                return unsaved;
+            }
+
+            Map<Integer, Future<Boolean>> puts = new LinkedHashMap<>();
+            for (int i : pending) {
+                Map<String, AttributeValue> item = ShortenHandler.linkItem(ids[i], accepted.get(i).url(), createdAt, visibility, TitleGenerator.PLACEHOLDER, deferTitle, redirectPolicy);
+                puts.put(i, CHECK_EXECUTOR.submit(() -> {
+                    permits.acquire();
+                    try {
+                        ddb.putItem(PutItemRequest.builder()
+                                .tableName(this.urlsTable)
+                                .item(item)
+                                .conditionExpression("attribute_not_exists(shortId)")
+                                .build());
+                        return true;
+                    } catch (ConditionalCheckFailedException e) {
+                        return false;
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            List<Integer> collided = new ArrayList<>();
+            for (Map.Entry<Integer, Future<Boolean>> put : puts.entrySet()) {
+                try {
+                    if (!put.getValue().get()) collided.add(put.getKey());
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    logger.log("[Error] Conditional write failed: " + cause.getMessage());
+                    unsaved.put(ids[put.getKey()], String.valueOf(cause.getMessage()));
+                }
+            }
+            pending = collided;
+        }
+        noId.addAll(pending);
+        return unsaved;
+    }
+
+    // 같은 배치 안에서 겹친 ID를 두 항목에 주지 않는다
+    private String nextUniqueId(Set<String> inBatch) {
+        String id;
+        do {
+            id = nextId();
+        } while (!inBatch.add(id));
+        return id;
+    }
+
+    /**
+     * 재시도 후에도 처리되지 않은 항목의 shortId.
+     */
+    private Set<String> writeWithRetry(List<WriteRequest> writes) throws InterruptedException {
+        Map<String, List<WriteRequest>> pending = Map.of(this.urlsTable, writes);
+        for (int attempt = 0; attempt < MAX_WRITE_ATTEMPTS && !pending.isEmpty(); attempt++) {
+            if (attempt > 0) Thread.sleep(50L << attempt);
+            BatchWriteItemResponse res = ddb.batchWriteItem(BatchWriteItemRequest.builder().requestItems(pending).build());
+            pending = res.hasUnprocessedItems() && !res.unprocessedItems().isEmpty() ? res.unprocessedItems() : Map.of();
+        }
+        Set<String> unsaved = new HashSet<>();
+        for (WriteRequest w : pending.getOrDefault(this.urlsTable, List.of())) unsaved.add(w.putRequest().item().get("shortId").s());
+        return unsaved;
+    }
+
+    private Set<String> existingIds(List<String> ids) {
+        Set<String> taken = new HashSet<>();
+        for (int i = 0; i < ids.size(); i += 100) {
+            List<Map<String, AttributeValue>> keys = new ArrayList<>();
+            for (String id : new LinkedHashSet<>(ids.subList(i, Math.min(i + 100, ids.size())))) {
+                keys.add(Map.of("shortId", AttributeValue.builder().s(id).build()));
+            }
+            Map<String, KeysAndAttributes> pending = Map.of(this.urlsTable, KeysAndAttributes.builder().keys(keys).projectionExpression("shortId").build());
+            for (int attempt = 0; attempt < 3 && !pending.isEmpty(); attempt++) {
+                BatchGetItemResponse res = ddb.batchGetItem(BatchGetItemRequest.builder().requestItems(pending).build());
+                for (Map<String, AttributeValue> item : res.responses().getOrDefault(this.urlsTable, List.of())) taken.add(item.get("shortId").s());
+                pending = res.hasUnprocessedKeys() && !res.unprocessedKeys().isEmpty() ? res.unprocessedKeys() : Map.of();
+            }
+            // 확인하지 못한 키는 사용 중인 것으로 보고 새 ID를 받는다
+            for (KeysAndAttributes left : pending.values()) {
+                for (Map<String, AttributeValue> key : left.keys()) taken.add(key.get("shortId").s());
+            }
+        }
+        return taken;
+    }
+
+    private String nextId() {
+        return idAllocator != null ? idAllocator.next() : IdGenerator.generateId(7);
+    }
+
+    // 링크 저장 후에 넣는다. 실패하면 제목이 임시 값으로 남을 뿐이다
+    private void enqueueTitleJobs(List<String> savedIds, Map<String, Candidate> byId, LambdaLogger logger) {
+        for (int i = 0; i < savedIds.size(); i += SQS_BATCH_SIZE) {
+            List<SendMessageBatchRequestEntry> entries = new ArrayList<>();
+            for (String shortId : savedIds.subList(i, Math.min(i + SQS_BATCH_SIZE, savedIds.size()))) {
+                entries.add(SendMessageBatchRequestEntry.builder()
+                        .id(shortId)
+                        .messageBody(gson.toJson(Map.of("shortId", shortId, "url", byId.get(shortId).url())))
+                        .build());
+            }
+            try {
+                var res = sqs.sendMessageBatch(SendMessageBatchRequest.builder().queueUrl(titleQueueUrl).entries(entries).build());
+                if (res.hasFailed() && !res.failed().isEmpty()) logger.log("[Warning] Failed to enqueue " + res.failed().size() + " title jobs");
+            } catch (Exception e) {
+                logger.log("[Warning] Failed to enqueue title jobs: " + e.getMessage());
+            }
+        }
+    }
+}
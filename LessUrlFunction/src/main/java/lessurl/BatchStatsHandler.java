@@ -0,0 +1,238 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.sqs.SqsClient;
+
+import java.lang.reflect.Type;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * POST /stats/batch — 여러 링크의 통계 요약을 한 요청으로 돌려준다 (리포팅 도구용).
+ *
+ * 요청: {"ids": ["abc1234", "my-alias", ...], "period": "7d", "includeInsight": false}
+ * 식별자 해석, 총 클릭 수(카운터 샤드), 누적 트렌드 문서는 모두 BatchGetItem으로 묶어 읽고,
+ * 링크별 롤업 Query만 가상 스레드에서 BATCH_STATS_CONCURRENCY개씩 동시에 실행한다.
+ * AI 인사이트는 기본으로 빼고, includeInsight면 저장된 인사이트만 붙인다 (Gemini는 호출하지 않는다).
+ */
+public class BatchStatsHandler extends BaseHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    static final int MAX_IDS = 100;
+    private static final Type REQUEST_TYPE = new TypeToken<Map<String, Object>>() {}.getType();
+
+    private static final ExecutorService FETCH_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final String clickRollupsTable;
+    private final String clickCountersTable;
+    private final String trendInsightsTable;
+    private final String aiAnalyticTable;
+    private final LinkResolver linkResolver;
+    private final int concurrency;
+    // 모든 링크 조회가 이 안에 끝나야 한다. 넘긴 링크는 error만 채워 돌려준다
+    private final long deadlineMillis;
+
+    /**
+     * 링크 하나의 요약. null인 필드는 응답에서 빠진다.
+     */
+    record LinkSummary(String id, String shortId, String originalUrl, String title, long totalClicks, Long periodClicks,
+                       Map<String, Long> clicksByDay, Integer peakHour, String topCountry, String topDevice, String topReferer,
+                       String lastUpdated, String aiInsight, String error) {}
+
+    public BatchStatsHandler() {
+        super();
+        this.clickRollupsTable = System.getenv("CLICK_ROLLUPS_TABLE");
+        this.clickCountersTable = System.getenv("CLICK_COUNTERS_TABLE");
+        this.trendInsightsTable = System.getenv("TREND_INSIGHTS_TABLE");
+        this.aiAnalyticTable = System.getenv("AI_ANALYTIC_TABLE");
+        this.linkResolver = new LinkResolver(ddb, urlsTable);
+        this.concurrency = (int) envLong("BATCH_STATS_CONCURRENCY", 16);
+        this.deadlineMillis = envLong("BATCH_STATS_DEADLINE_MS", 20_000);
+    }
+
+    protected BatchStatsHandler(DynamoDbClient ddb, LambdaClient lambda, SqsClient sqs, Gson gson, String urlsTable, String clickRollupsTable,
+                                String clickCountersTable, String trendInsightsTable, String aiAnalyticTable, int concurrency, long deadlineMillis) {
+        super(ddb, lambda, sqs, gson, urlsTable, "*");
+        this.clickRollupsTable = clickRollupsTable;
+        this.clickCountersTable = clickCountersTable;
+        this.trendInsightsTable = trendInsightsTable;
+        this.aiAnalyticTable = aiAnalyticTable;
+        this.linkResolver = new LinkResolver(ddb, urlsTable, false);
+        this.concurrency = concurrency;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
+        LambdaLogger logger = context.getLogger();
+        long startTime = System.currentTimeMillis();
+
+        List<String> ids = new ArrayList<>();
+        ClickRollups.Period period;
+        boolean includeInsight;
+        try {
+            String body = input.getBody();
+            if (body == null || body.isEmpty()) return createErrorResponse(400, "Body is empty");
+
+            Map<String, Object> requestData = gson.fromJson(body, REQUEST_TYPE);
+            if (!(requestData.get("ids") instanceof List<?> rawIds) || rawIds.isEmpty()) return createErrorResponse(400, "ids is required");
+            Set<String> unique = new LinkedHashSet<>();
+            for (Object raw : rawIds) {
+                if (!(raw instanceof String s) || s.isBlank()) return createErrorResponse(400, "ids must be non-empty strings");
+                unique.add(s.trim());
+            }
+            if (unique.size() > MAX_IDS) return createErrorResponse(400, "Too many ids (max " + MAX_IDS + ")");
+            ids.addAll(unique);
+            period = ClickRollups.Period.of((String) requestData.get("period"));
+            includeInsight = Boolean.TRUE.equals(requestData.get("includeInsight"));
+        } catch (RuntimeException e) {
+            return createErrorResponse(400, "Invalid request: " + e.getMessage());
+        }
+
+        try {
+            Map<String, LinkResolver.Link> links = linkResolver.resolveAllFull(ids);
+            // alias와 shortId를 함께 보내면 같은 링크가 두 번 나오므로 조회는 링크당 한 번만 한다
+            Map<String, Map<String, AttributeValue>> urlItems = new LinkedHashMap<>();
+            for (LinkResolver.Link link : links.values()) urlItems.putIfAbsent(link.shortId(), link.item());
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+            Instant now = Instant.now();
+            Future<Map<String, Long>> totalsFuture = FETCH_EXECUTOR.submit(
+                    () -> ClickCounters.totals(ddb, this.clickCountersTable, new ArrayList<>(urlItems.values())));
+            Future<Map<String, Map<String, AttributeValue>>> trendsFuture = FETCH_EXECUTOR.submit(() -> trendDocuments(urlItems));
+
+            Semaphore permits = new Semaphore(concurrency);
+            Map<String, Future<ClickRollups.Window>> windows = new HashMap<>();
+            Map<String, Future<Map<String, AttributeValue>>> insights = new HashMap<>();
+            for (String shortId : urlItems.keySet()) {
+                windows.put(shortId, FETCH_EXECUTOR.submit(() -> limited(permits,
+                        () -> ClickRollups.read(ddb, this.clickRollupsTable, shortId, period, now))));
+                if (includeInsight && this.aiAnalyticTable != null) {
+                    insights.put(shortId, FETCH_EXECUTOR.submit(() -> limited(permits,
+                            () -> InsightCache.latest(ddb, this.aiAnalyticTable, shortId, period.label))));
+                }
+            }
+
+            Map<String, Long> totals = totalsFuture.get(remaining(deadline), TimeUnit.NANOSECONDS);
+            Map<String, Map<String, AttributeValue>> trends;
+            try {
+                trends = trendsFuture.get(remaining(deadline), TimeUnit.NANOSECONDS);
+            } catch (Exception e) {
+                trendsFuture.cancel(true);
+                logger.log("[Warning] Batch trend documents skipped: " + e);
+                trends = Map.of();
+            }
+
+            List<LinkSummary> summaries = new ArrayList<>(links.size());
+            List<String> notFound = new ArrayList<>();
+            int failed = 0;
+            for (String id : ids) {
+                LinkResolver.Link link = links.get(id);
+                if (link == null) {
+                    notFound.add(id);
+                    continue;
+                }
+                String shortId = link.shortId();
+                Map<String, AttributeValue> item = urlItems.get(shortId);
+                Map<String, AttributeValue> trend = trends.get(shortId);
+                String originalUrl = item.get("originalUrl").s();
+                String title = item.containsKey("title") ? item.get("title").s() : "Untitled";
+                long totalClicks = totals.getOrDefault(shortId, 0L);
+                String lastUpdated = trend != null && trend.containsKey("lastUpdated") ? trend.get("lastUpdated").s() : null;
+
+                ClickRollups.Window window;
+                Future<ClickRollups.Window> windowFuture = windows.get(shortId);
+                try {
+                    window = windowFuture.get(remaining(deadline), TimeUnit.NANOSECONDS);
+                } catch (Exception e) {
+                    windowFuture.cancel(true);
+                    failed++;
+                    summaries.add(new LinkSummary(id, shortId, originalUrl, title, totalClicks, null, null, null, null, null, null,
+                            lastUpdated, null, "Click stats unavailable"));
+                    continue;
+                }
+
+                String aiInsight = null;
+                Future<Map<String, AttributeValue>> insightFuture = insights.get(shortId);
+                if (insightFuture != null) {
+                    try {
+                        Map<String, AttributeValue> cached = insightFuture.get(remaining(deadline), TimeUnit.NANOSECONDS);
+                        if (cached != null) aiInsight = cached.get(InsightCache.INSIGHT).s();
+                    } catch (Exception e) {
+                        insightFuture.cancel(true);
+                    }
+                }
+
+                String peakHour = top(window.clicksByHour);
+                summaries.add(new LinkSummary(id, shortId, originalUrl, title, totalClicks, window.clicks, window.clicksByDay,
+                        peakHour != null ? Integer.parseInt(peakHour) : null,
+                        top(window.countries), top(window.devices), top(window.referers), lastUpdated, aiInsight, null));
+            }
+
+            recordMetric("PERFORMANCE", Map.of("path", "/stats/batch", "duration", System.currentTimeMillis() - startTime,
+                    "requested", ids.size(), "found", summaries.size(), "failed", failed));
+
+            Map<String, Object> responseBody = new HashMap<>();
+            responseBody.put("period", period.label);
+            responseBody.put("links", summaries);
+            responseBody.put("notFound", notFound);
+            return createResponse(200, responseBody);
+
+        } catch (Exception e) {
+            logger.log("[Error] BatchStatsHandler: " + e);
+            recordMetric("ERROR_5XX", Map.of("path", "/stats/batch", "message", String.valueOf(e.getMessage())));
+            return createErrorResponse(500, "Internal Server Error");
+        }
+    }
+
+    // 링크마다 counterShards만큼의 샤드 문서를 한꺼번에 읽어 링크별로 합친다
+    private Map<String, Map<String, AttributeValue>> trendDocuments(Map<String, Map<String, AttributeValue>> urlItems) {
+        List<Map<String, AttributeValue>> keys = new ArrayList<>(urlItems.size());
+        urlItems.forEach((shortId, item) -> {
+            for (int shard = 0; shard < ClickCounters.shardCount(item); shard++) keys.add(TrendDocument.key(shortId, shard));
+        });
+        Map<String, List<Map<String, AttributeValue>>> shards = new HashMap<>();
+        for (Map<String, AttributeValue> doc : BatchReads.get(ddb, this.trendInsightsTable, keys, false)) {
+            shards.computeIfAbsent(doc.get("shortId").s(), k -> new ArrayList<>()).add(doc);
+        }
+        Map<String, Map<String, AttributeValue>> trends = new HashMap<>();
+        shards.forEach((shortId, docs) -> trends.put(shortId, TrendDocument.merge(docs)));
+        return trends;
+    }
+
+    private static <T> T limited(Semaphore permits, Callable<T> call) throws Exception {
+        permits.acquire();
+        try {
+            return call.call();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static long remaining(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    private static String top(Map<String, Long> counts) {
+        return counts.entrySet().stream().max(Map.Entry.comparingByValue()).map(Map.Entry::getKey).orElse(null);
+    }
+}
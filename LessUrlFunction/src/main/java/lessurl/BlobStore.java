@@ -0,0 +1,35 @@
+package lessurl;
+
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * 키로 바이트 덩어리를 읽고 쓰는 저장소. 클릭 아카이브 세그먼트를 저장한다.
+ * 배포 환경은 S3, 테스트와 로컬 실행은 파일 시스템 구현을 쓴다.
+ */
+public interface BlobStore {
+
+    /**
+     * 없는 키면 null.
+     */
+    byte[] get(String key) throws IOException;
+
+    void put(String key, byte[] data) throws IOException;
+
+    boolean exists(String key) throws IOException;
+
+    /**
+     * CLICK_ARCHIVE_BUCKET이 있으면 S3, 없고 CLICK_ARCHIVE_DIR이 있으면 로컬 디렉터리. 둘 다 없으면 null(아카이브 없음).
+     */
+    static BlobStore fromEnv() {
+        String bucket = System.getenv("CLICK_ARCHIVE_BUCKET");
+        if (bucket != null && !bucket.isEmpty()) {
+            return new S3BlobStore(S3Client.builder().httpClient(UrlConnectionHttpClient.create()).build(), bucket);
+        }
+        String dir = System.getenv("CLICK_ARCHIVE_DIR");
+        return dir != null && !dir.isEmpty() ? new LocalBlobStore(Path.of(dir)) : null;
+    }
+}
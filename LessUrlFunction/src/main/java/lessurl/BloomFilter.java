@@ -0,0 +1,114 @@
+package lessurl;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * shortId/alias 존재 여부를 판별하는 Bloom filter.
+ * mightContain()이 false면 해당 키는 확실히 없다. 비트는 추가만 되므로 조회는 락 없이 수행한다.
+ */
+public final class BloomFilter {
+
+    private static final int MAGIC = 0x4C55424C; // "LUBL"
+    private static final int VERSION = 1;
+
+    private final AtomicLongArray words;
+    private final long numBits;
+    private final int numHashes;
+
+    private BloomFilter(AtomicLongArray words, long numBits, int numHashes) {
+        this.words = words;
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+    }
+
+    /**
+     * @param expectedInsertions 예상 원소 수
+     * @param fpp                목표 false-positive 확률 (0 < fpp < 1)
+     */
+    public static BloomFilter create(long expectedInsertions, double fpp) {
+        if (fpp <= 0 || fpp >= 1) throw new IllegalArgumentException("fpp must be in (0, 1): " + fpp);
+        long n = Math.max(1, expectedInsertions);
+        long m = Math.max(64, (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+        int k = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+        int wordCount = Math.toIntExact((m + 63) >>> 6);
+        return new BloomFilter(new AtomicLongArray(wordCount), (long) wordCount << 6, k);
+    }
+
+    public void put(CharSequence key) {
+        long h1 = hash(key);
+        long h2 = fmix64(h1 ^ 0x9E3779B97F4A7C15L) | 1L;
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, numBits);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = words.get(word);
+                if ((current & mask) != 0) break;
+            } while (!words.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    public boolean mightContain(CharSequence key) {
+        long h1 = hash(key);
+        long h2 = fmix64(h1 ^ 0x9E3779B97F4A7C15L) | 1L;
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, numBits);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    public long numBits() { return numBits; }
+    public int numHashes() { return numHashes; }
+
+    public void writeTo(OutputStream out, long snapshotAt) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeLong(snapshotAt);
+        data.writeInt(numHashes);
+        data.writeInt(words.length());
+        for (int i = 0; i < words.length(); i++) data.writeLong(words.get(i));
+        data.flush();
+    }
+
+    public record Snapshot(BloomFilter filter, long snapshotAt) {}
+
+    public static Snapshot readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) throw new IOException("Not a link filter snapshot");
+        int version = data.readInt();
+        if (version != VERSION) throw new IOException("Unsupported link filter snapshot version: " + version);
+        long snapshotAt = data.readLong();
+        int numHashes = data.readInt();
+        int wordCount = data.readInt();
+        AtomicLongArray words = new AtomicLongArray(wordCount);
+        for (int i = 0; i < wordCount; i++) words.set(i, data.readLong());
+        return new Snapshot(new BloomFilter(words, (long) wordCount << 6, numHashes), snapshotAt);
+    }
+
+    // FNV-1a로 문자를 섞은 뒤 murmur3 finalizer로 비트를 고르게 퍼뜨린다. 할당 없이 계산한다.
+    private static long hash(CharSequence key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return fmix64(h);
+    }
+
+    private static long fmix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
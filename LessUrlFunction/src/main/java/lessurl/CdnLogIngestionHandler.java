@@ -0,0 +1,165 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.S3Event;
+import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification;
+import com.google.gson.Gson;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.sqs.SqsClient;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * CloudFront 표준 로그(gzip)를 읽어 CACHEABLE 링크의 클릭을 분석 큐로 보낸다.
+ * CACHEABLE 링크만 301로 응답하므로 로그에서 301 행만 고르면 된다. TRACKED 링크(302)는 RedirectFunction이 클릭 로그로 남긴다.
+ * 표준 로그에는 국가 정보가 없어 country는 unknown으로 남는다.
+ */
+public class CdnLogIngestionHandler extends BaseHandler<S3Event, String> {
+
+    private final S3Client s3;
+    private final AnalyticsEmitter analyticsEmitter;
+    private final LinkResolver linkResolver;
+
+    // requestId는 x-edge-request-id, line은 파일 안의 줄 번호. 둘 중 하나로 재시도에도 같은 clickId를 만든다
+    record CdnClick(String path, String clickedAt, String ip, String userAgent, String referer, String requestId, int line) {}
+
+    public CdnLogIngestionHandler() {
+        super();
+        this.s3 = S3Client.builder().httpClient(UrlConnectionHttpClient.create()).build();
+        this.analyticsEmitter = AnalyticsEmitter.forIngestion(sqs, System.getenv("ANALYTICS_QUEUE_URL"));
+        this.linkResolver = new LinkResolver(ddb, urlsTable);
+    }
+
+    protected CdnLogIngestionHandler(DynamoDbClient ddb, LambdaClient lambda, SqsClient sqs, Gson gson, String urlsTable, S3Client s3, AnalyticsEmitter analyticsEmitter) {
+        super(ddb, lambda, sqs, gson, urlsTable, "*");
+        this.s3 = s3;
+        this.analyticsEmitter = analyticsEmitter;
+        this.linkResolver = new LinkResolver(ddb, urlsTable);
+    }
+
+    @Override
+    public String handleRequest(S3Event event, Context context) {
+        LambdaLogger logger = context.getLogger();
+        // 같은 파일 안에서 반복되는 링크는 한 번만 해석한다. 값이 ""이면 없는 링크
+        Map<String, String> resolved = new HashMap<>();
+        int emitted = 0;
+        int skipped = 0;
+        long failedBefore = analyticsEmitter.failed();
+
+        for (S3EventNotification.S3EventNotificationRecord record : event.getRecords()) {
+            String bucket = record.getS3().getBucket().getName();
+            String key = record.getS3().getObject().getUrlDecodedKey();
+
+            List<CdnClick> clicks;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(s3.getObject(GetObjectRequest.builder().bucket(bucket).key(key).build())), StandardCharsets.UTF_8))) {
+                clicks = parseClicks(reader);
+            } catch (IOException e) {
+                // 재시도해도 같은 파일이므로 실패를 남기고 다음 파일로 넘어간다
+                logger.log("[Error] Failed to read CDN log " + key + ": " + e.getMessage());
+                continue;
+            }
+
+            for (CdnClick click : clicks) {
+                String shortId = resolved.computeIfAbsent(click.path(), id -> {
+                    LinkResolver.Link link = linkResolver.resolve(id);
+                    return link != null ? link.shortId() : "";
+                });
+                if (shortId.isEmpty()) {
+                    skipped++;
+                    continue;
+                }
+                analyticsEmitter.emit(RedirectHandler.clickPayload(shortId, RedirectHandler.hashIp(click.ip()), click.userAgent(),
+                        click.referer(), "unknown", RedirectHandler.deviceType(click.userAgent()), click.clickedAt(), clickId(bucket, key, click)));
+                emitted++;
+            }
+            // 10개를 못 채운 마지막 배치와, 실패해 버퍼로 돌아온 항목까지 보낸다
+            analyticsEmitter.flush();
+        }
+
+        long failed = analyticsEmitter.failed() - failedBefore;
+        String summary = String.format("emitted=%d skipped=%d failed=%d", emitted, skipped, failed);
+        logger.log("[CdnLog] " + summary);
+        // queueDepth는 flush 기한 안에 못 보내 다음 호출로 넘어간 클릭 수다
+        recordMetric("CDN_LOG_INGESTION", Map.of(
+                "invocation", Map.of("emitted", emitted, "skipped", skipped, "failed", failed),
+                "emitter", analyticsEmitter.stats()));
+        // 재시도 끝에도 못 보낸 클릭이 있으면 S3 이벤트 호출을 실패시켜 비동기 재시도와 실패 대상으로 넘긴다
+        if (failed > 0) throw new IllegalStateException("Failed to enqueue " + failed + " clicks: " + summary);
+        return summary;
+    }
+
+    /**
+     * 실패한 S3 이벤트가 재시도되면 파일 전체를 다시 보내므로, 로그 행에서 정해지는 값으로 clickId를 만들어 AnalyticsHandler가 한 번만 세게 한다.
+     */
+    static String clickId(String bucket, String key, CdnClick click) {
+        return click.requestId() != null ? "cdn#" + click.requestId() : "cdn#" + bucket + "/" + key + "#" + click.line();
+    }
+
+    /**
+     * #Fields 헤더로 열 위치를 찾아 CDN이 응답한 301 리다이렉트 행만 고른다.
+     */
+    static List<CdnClick> parseClicks(BufferedReader reader) throws IOException {
+        List<CdnClick> clicks = new ArrayList<>();
+        Map<String, Integer> columns = Map.of();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.startsWith("#Fields:")) {
+                String[] names = line.substring("#Fields:".length()).trim().split(" ");
+                columns = new HashMap<>();
+                for (int i = 0; i < names.length; i++) columns.put(names[i], i);
+                continue;
+            }
+            if (line.isEmpty() || line.startsWith("#") || columns.isEmpty()) continue;
+
+            String[] values = line.split("\t");
+            if (!"301".equals(field(values, columns, "sc-status")) || !"GET".equals(field(values, columns, "cs-method"))) continue;
+
+            String stem = field(values, columns, "cs-uri-stem");
+            if (stem == null || stem.length() < 2 || stem.indexOf('/', 1) >= 0) continue;
+
+            String referer = field(values, columns, "cs(Referer)");
+            String userAgent = field(values, columns, "cs(User-Agent)");
+            String requestId = field(values, columns, "x-edge-request-id");
+            clicks.add(new CdnClick(
+                    stem.substring(1),
+                    field(values, columns, "date") + "T" + field(values, columns, "time") + "Z",
+                    field(values, columns, "c-ip"),
+                    userAgent == null || userAgent.equals("-") ? "unknown" : decode(userAgent),
+                    referer == null || referer.equals("-") ? "direct" : decode(referer),
+                    requestId == null || requestId.equals("-") ? null : requestId,
+                    lineNumber));
+        }
+        return clicks;
+    }
+
+    private static String field(String[] values, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        return index != null && index < values.length ? values[index] : null;
+    }
+
+    // CloudFront는 공백 등을 %XX로 인코딩해 기록한다. '+'는 리터럴이므로 먼저 보존한다
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value.replace("+", "%2B"), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return value;
+        }
+    }
+}
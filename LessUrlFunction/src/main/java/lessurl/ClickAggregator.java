@@ -0,0 +1,158 @@
+package lessurl;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 기간 안의 클릭 원본을 페이지가 오는 대로 한 번씩만 훑어 일·시간대·유입·국가·기기별로 세는 집계기.
+ *
+ * 일과 시간대는 기간 길이의 long 배열에 센다. 시각은 Instant.toString 형식(yyyy-MM-ddTHH:...Z)이 고정이므로
+ * 파싱하지 않고 자리로 잘라 읽으며, 행이 시각순으로 오기 때문에 날짜는 직전 행과 달라질 때만 계산한다.
+ * 문자열 키별 카운터는 long[1]을 값으로 둬 박싱 없이 더하고, Referer의 출처 정규화 결과도 원본 값별로 기억한다.
+ */
+final class ClickAggregator {
+
+    static final String PROJECTION = "#ts, referer, country, deviceType";
+
+    private final long fromEpochDay;
+    private final long[] byDay;
+    private final long[] byHour = new long[24];
+    private final boolean[] skipDay;
+    private final Map<String, long[]> referers = new HashMap<>();
+    private final Map<String, long[]> countries = new HashMap<>();
+    private final Map<String, long[]> devices = new HashMap<>();
+    private final Map<String, String> refererSources = new HashMap<>();
+    private long clicks;
+
+    private String lastTimestamp;
+    private int lastDay = -1;
+
+    ClickAggregator(LocalDate from, LocalDate to) {
+        this.fromEpochDay = from.toEpochDay();
+        int days = Math.toIntExact(to.toEpochDay() - fromEpochDay + 1);
+        this.byDay = new long[days];
+        this.skipDay = new boolean[days];
+    }
+
+    /**
+     * 다른 곳(아카이브 세그먼트)에서 이미 센 날. 이 날의 원본 행은 건너뛴다.
+     */
+    void skip(LocalDate day) {
+        int i = (int) (day.toEpochDay() - fromEpochDay);
+        if (i >= 0 && i < skipDay.length) skipDay[i] = true;
+    }
+
+    /**
+     * shortId의 from..to 클릭을 필요한 속성만 읽어 센다. 1MB 페이지를 LastEvaluatedKey가 없을 때까지 이어 읽는다.
+     */
+    void query(DynamoDbClient ddb, String table, String shortId, LocalDate from, LocalDate to) {
+        Map<String, AttributeValue> startKey = null;
+        do {
+            QueryResponse page = ddb.query(QueryRequest.builder()
+                    .tableName(table)
+                    .keyConditionExpression("shortId = :id AND #ts BETWEEN :from AND :to")
+                    .projectionExpression(PROJECTION)
+                    .expressionAttributeNames(Map.of("#ts", "timestamp"))
+                    .expressionAttributeValues(Map.of(
+                            ":id", AttributeValue.builder().s(shortId).build(),
+                            // 같은 날의 모든 ISO-8601 시각은 "yyyy-MM-ddT"보다 뒤, "yyyy-MM-ddU"보다 앞에 정렬된다
+                            ":from", AttributeValue.builder().s(from + "T").build(),
+                            ":to", AttributeValue.builder().s(to + "U").build()))
+                    .exclusiveStartKey(startKey)
+                    .build());
+            for (Map<String, AttributeValue> item : page.items()) accept(item);
+            startKey = page.hasLastEvaluatedKey() && !page.lastEvaluatedKey().isEmpty() ? page.lastEvaluatedKey() : null;
+        } while (startKey != null);
+    }
+
+    /**
+     * 클릭 테이블의 행 하나.
+     */
+    void accept(Map<String, AttributeValue> item) {
+        String ts = item.get("timestamp").s();
+        int day;
+        int hour;
+        if (ts.length() >= 13 && ts.charAt(10) == 'T') {
+            day = lastTimestamp != null && ts.regionMatches(0, lastTimestamp, 0, 10) ? lastDay : dayIndex(ts);
+            hour = (ts.charAt(11) - '0') * 10 + (ts.charAt(12) - '0');
+        } else {
+            // 예상과 다른 형식(확장 연도 등)은 정식으로 파싱한다
+            Instant at = Instant.parse(ts);
+            day = (int) (Math.floorDiv(at.getEpochSecond(), 86_400L) - fromEpochDay);
+            hour = (int) (Math.floorMod(at.getEpochSecond(), 86_400L) / 3600);
+        }
+        lastTimestamp = ts;
+        lastDay = day;
+        if (day < 0 || day >= byDay.length || skipDay[day]) return;
+
+        count(day, hour, string(item, "country", "unknown"), string(item, "deviceType", "PC"), string(item, "referer", "direct"));
+    }
+
+    /**
+     * 아카이브 세그먼트의 행 하나. 건너뛸 날 표시와 상관없이 센다.
+     */
+    void accept(ClickArchive.Row row) {
+        long seconds = row.at().getEpochSecond();
+        int day = (int) (Math.floorDiv(seconds, 86_400L) - fromEpochDay);
+        if (day < 0 || day >= byDay.length) return;
+        count(day, (int) (Math.floorMod(seconds, 86_400L) / 3600), row.country(), row.deviceType(), row.referer());
+    }
+
+    private void count(int day, int hour, String country, String device, String referer) {
+        clicks++;
+        byDay[day]++;
+        byHour[hour]++;
+        increment(countries, country);
+        increment(devices, device);
+        increment(referers, refererSources.computeIfAbsent(referer, ClickRollups::refererSource));
+    }
+
+    private int dayIndex(String ts) {
+        int year = digits(ts, 0, 4);
+        int month = digits(ts, 5, 2);
+        int dayOfMonth = digits(ts, 8, 2);
+        return (int) (LocalDate.of(year, month, dayOfMonth).toEpochDay() - fromEpochDay);
+    }
+
+    private static int digits(String s, int from, int length) {
+        int v = 0;
+        for (int i = from; i < from + length; i++) v = v * 10 + (s.charAt(i) - '0');
+        return v;
+    }
+
+    private static void increment(Map<String, long[]> counters, String key) {
+        long[] counter = counters.get(key);
+        if (counter == null) counters.put(key, new long[]{1});
+        else counter[0]++;
+    }
+
+    private static String string(Map<String, AttributeValue> item, String name, String defaultValue) {
+        AttributeValue v = item.get(name);
+        return v != null && v.s() != null ? v.s() : defaultValue;
+    }
+
+    /**
+     * 롤업에서 읽을 때와 같은 모양으로 돌려준다. 클릭이 없는 일·시간대는 넣지 않는다.
+     */
+    ClickRollups.Window toWindow() {
+        ClickRollups.Window window = new ClickRollups.Window();
+        window.clicks = clicks;
+        for (int i = 0; i < byDay.length; i++) {
+            if (byDay[i] > 0) window.clicksByDay.put(LocalDate.ofEpochDay(fromEpochDay + i).toString(), byDay[i]);
+        }
+        for (int h = 0; h < 24; h++) {
+            if (byHour[h] > 0) window.clicksByHour.put(Integer.toString(h), byHour[h]);
+        }
+        referers.forEach((k, v) -> window.referers.put(k, v[0]));
+        countries.forEach((k, v) -> window.countries.put(k, v[0]));
+        devices.forEach((k, v) -> window.devices.put(k, v[0]));
+        return window;
+    }
+}
@@ -0,0 +1,178 @@
+package lessurl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * TTL로 지워지기 전의 클릭 행을 링크·일 단위 세그먼트로 압축해 BlobStore에 보관한다. 키: clicks/{shortId}/{yyyy-MM-dd}.seg
+ *
+ * 세그먼트는 열 단위로 저장한다. 시각은 그날 0시부터의 나노초를 정렬해 앞 행과의 차이만 가변 길이로 쓰고,
+ * referer·userAgent·country·deviceType은 열마다 사전(고유 문자열 목록)과 행별 사전 번호로 쓴다.
+ * 같은 값이 반복되는 열이 많아 gzip이 잘 듣는다. ip와 clickId는 통계에 쓰이지 않으므로 보관하지 않는다.
+ *
+ * 형식: "LUCS" | version(1) | gzip( epochDay(long) | 행 수 | 시각 열 | 문자열 열 × 4 ), 정수는 모두 varint.
+ */
+final class ClickArchive {
+
+    private static final int MAGIC = 0x4C554353; // "LUCS"
+    private static final int VERSION = 1;
+    private static final long NANOS_PER_DAY = 86_400_000_000_000L;
+
+    /**
+     * 보관하는 클릭 한 건.
+     */
+    record Row(Instant at, String referer, String userAgent, String country, String deviceType) {
+    }
+
+    private final BlobStore store;
+
+    ClickArchive(BlobStore store) {
+        this.store = store;
+    }
+
+    static String key(String shortId, LocalDate day) {
+        return "clicks/" + shortId + "/" + day + ".seg";
+    }
+
+    boolean exists(String shortId, LocalDate day) throws IOException {
+        return store.exists(key(shortId, day));
+    }
+
+    void write(String shortId, LocalDate day, List<Row> rows) throws IOException {
+        store.put(key(shortId, day), encode(day, rows));
+    }
+
+    /**
+     * 세그먼트가 없으면 null.
+     */
+    List<Row> read(String shortId, LocalDate day) throws IOException {
+        byte[] data = store.get(key(shortId, day));
+        return data != null ? decode(data) : null;
+    }
+
+    static byte[] encode(LocalDate day, List<Row> rows) throws IOException {
+        List<Row> sorted = new ArrayList<>(rows);
+        sorted.sort((a, b) -> a.at().compareTo(b.at()));
+        long dayStart = day.atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(MAGIC);
+        header.writeByte(VERSION);
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeLong(day.toEpochDay());
+            writeVarLong(out, sorted.size());
+
+            long previous = 0;
+            for (Row row : sorted) {
+                long offset = (row.at().getEpochSecond() - dayStart) * 1_000_000_000L + row.at().getNano();
+                if (offset < 0 || offset >= NANOS_PER_DAY) throw new IllegalArgumentException("Click outside " + day + ": " + row.at());
+                writeVarLong(out, offset - previous);
+                previous = offset;
+            }
+
+            writeColumn(out, sorted, Row::referer);
+            writeColumn(out, sorted, Row::userAgent);
+            writeColumn(out, sorted, Row::country);
+            writeColumn(out, sorted, Row::deviceType);
+        }
+        return bytes.toByteArray();
+    }
+
+    static List<Row> decode(byte[] data) throws IOException {
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(data));
+        if (header.readInt() != MAGIC) throw new IOException("Not a click segment");
+        int version = header.readUnsignedByte();
+        if (version != VERSION) throw new IOException("Unsupported click segment version " + version);
+
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(header))) {
+            long dayStart = LocalDate.ofEpochDay(in.readLong()).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+            int count = Math.toIntExact(readVarLong(in));
+
+            Instant[] times = new Instant[count];
+            long offset = 0;
+            for (int i = 0; i < count; i++) {
+                offset += readVarLong(in);
+                times[i] = Instant.ofEpochSecond(dayStart + offset / 1_000_000_000L, offset % 1_000_000_000L);
+            }
+            String[] referers = readColumn(in, count);
+            String[] userAgents = readColumn(in, count);
+            String[] countries = readColumn(in, count);
+            String[] devices = readColumn(in, count);
+
+            List<Row> rows = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                rows.add(new Row(times[i], referers[i], userAgents[i], countries[i], devices[i]));
+            }
+            return rows;
+        }
+    }
+
+    private static void writeColumn(DataOutputStream out, List<Row> rows, Function<Row, String> column) throws IOException {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        int[] refs = new int[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            String value = column.apply(rows.get(i));
+            refs[i] = ids.computeIfAbsent(value != null ? value : "", v -> {
+                dictionary.add(v);
+                return dictionary.size() - 1;
+            });
+        }
+        writeVarLong(out, dictionary.size());
+        for (String value : dictionary) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, utf8.length);
+            out.write(utf8);
+        }
+        for (int ref : refs) writeVarLong(out, ref);
+    }
+
+    private static String[] readColumn(DataInputStream in, int count) throws IOException {
+        String[] dictionary = new String[Math.toIntExact(readVarLong(in))];
+        for (int i = 0; i < dictionary.length; i++) {
+            byte[] utf8 = new byte[Math.toIntExact(readVarLong(in))];
+            in.readFully(utf8);
+            dictionary[i] = new String(utf8, StandardCharsets.UTF_8);
+        }
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) values[i] = dictionary[Math.toIntExact(readVarLong(in))];
+        return values;
+    }
+
+    // 부호 없는 LEB128: 7비트씩, 이어지는 바이트가 있으면 최상위 비트를 켠다
+    private static void writeVarLong(OutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) throw new IOException("Truncated click segment");
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Malformed varint in click segment");
+    }
+}
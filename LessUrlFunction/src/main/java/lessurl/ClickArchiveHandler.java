@@ -0,0 +1,151 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+import com.google.gson.Gson;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.sqs.SqsClient;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 클릭 행이 TTL로 지워지기 전에 링크·일 단위 세그먼트(ClickArchive)로 압축해 두는 일일 작업.
+ *
+ * 늦게 도착하는 CDN 로그를 기다리도록 ARCHIVE_LAG_DAYS(기본 2일) 전의 날을 처리하고, 놓친 날을 메우려고 그 앞
+ * ARCHIVE_CATCHUP_DAYS(기본 3일)도 다시 본다. 그날 클릭이 있었던 링크는 롤업 테이블의 BucketIndex(일 버킷 → shortId)로
+ * 찾으므로 클릭 테이블 전체를 스캔하지 않는다. 이미 세그먼트가 있는 링크는 건너뛰므로 시간이 모자라 끊겨도 다음 실행이 이어서 한다.
+ */
+public class ClickArchiveHandler extends BaseHandler<ScheduledEvent, String> {
+
+    private static final long TIME_BUDGET_MARGIN_MS = 30_000;
+
+    private final String clicksTable;
+    private final String clickRollupsTable;
+    private final ClickArchive archive;
+    private final long lagDays;
+    private final long catchupDays;
+
+    public ClickArchiveHandler() {
+        super();
+        this.clicksTable = System.getenv("CLICKS_TABLE");
+        this.clickRollupsTable = System.getenv("CLICK_ROLLUPS_TABLE");
+        this.archive = new ClickArchive(BlobStore.fromEnv());
+        this.lagDays = envLong("ARCHIVE_LAG_DAYS", 2);
+        this.catchupDays = envLong("ARCHIVE_CATCHUP_DAYS", 3);
+    }
+
+    protected ClickArchiveHandler(DynamoDbClient ddb, LambdaClient lambda, SqsClient sqs, Gson gson, String clicksTable, String clickRollupsTable,
+                                  ClickArchive archive, long lagDays, long catchupDays) {
+        super(ddb, lambda, sqs, gson, null, "*");
+        this.clicksTable = clicksTable;
+        this.clickRollupsTable = clickRollupsTable;
+        this.archive = archive;
+        this.lagDays = lagDays;
+        this.catchupDays = catchupDays;
+    }
+
+    @Override
+    public String handleRequest(ScheduledEvent event, Context context) {
+        LambdaLogger logger = context.getLogger();
+        LocalDate newest = LocalDate.now(ZoneOffset.UTC).minusDays(lagDays);
+        int written = 0, skipped = 0, rows = 0;
+        boolean complete = true;
+
+        days:
+        for (LocalDate day = newest.minusDays(catchupDays); !day.isAfter(newest); day = day.plusDays(1)) {
+            for (String shortId : linksClickedOn(day)) {
+                if (context.getRemainingTimeInMillis() < TIME_BUDGET_MARGIN_MS) {
+                    complete = false;
+                    break days;
+                }
+                try {
+                    if (archive.exists(shortId, day)) {
+                        skipped++;
+                        continue;
+                    }
+                    List<ClickArchive.Row> clicks = clicksOn(shortId, day);
+                    if (clicks.isEmpty()) continue;
+                    archive.write(shortId, day, clicks);
+                    written++;
+                    rows += clicks.size();
+                } catch (Exception e) {
+                    logger.log("[Error] Failed to archive clicks of " + shortId + " on " + day + ": " + e.getMessage());
+                }
+            }
+        }
+
+        String result = String.format("archived %d segments (%d clicks), %d already archived%s",
+                written, rows, skipped, complete ? "" : ", stopped early for time");
+        logger.log("[ClickArchive] " + result);
+        return result;
+    }
+
+    // 샤드로 나뉜 링크는 샤드 0 버킷이 없을 수도 있으므로 샤드 버킷마다 찾아 합친다
+    private Collection<String> linksClickedOn(LocalDate day) {
+        Set<String> links = new LinkedHashSet<>();
+        for (int shard = 0; shard < ClickCounters.MAX_SHARDS; shard++) {
+            String bucket = ClickRollups.shardBucket(ClickRollups.DAY + day, shard);
+            Map<String, AttributeValue> startKey = null;
+            do {
+                QueryResponse page = ddb.query(QueryRequest.builder()
+                        .tableName(this.clickRollupsTable)
+                        .indexName("BucketIndex")
+                        .keyConditionExpression("#b = :day")
+                        .expressionAttributeNames(Map.of("#b", "bucket"))
+                        .expressionAttributeValues(Map.of(":day", AttributeValue.builder().s(bucket).build()))
+                        .exclusiveStartKey(startKey)
+                        .build());
+                for (Map<String, AttributeValue> item : page.items()) links.add(item.get("shortId").s());
+                startKey = page.hasLastEvaluatedKey() && !page.lastEvaluatedKey().isEmpty() ? page.lastEvaluatedKey() : null;
+            } while (startKey != null);
+        }
+        return links;
+    }
+
+    private List<ClickArchive.Row> clicksOn(String shortId, LocalDate day) {
+        List<ClickArchive.Row> rows = new ArrayList<>();
+        Map<String, AttributeValue> startKey = null;
+        do {
+            QueryResponse page = ddb.query(QueryRequest.builder()
+                    .tableName(this.clicksTable)
+                    .keyConditionExpression("shortId = :id AND #ts BETWEEN :from AND :to")
+                    .projectionExpression("#ts, referer, userAgent, country, deviceType")
+                    .expressionAttributeNames(Map.of("#ts", "timestamp"))
+                    .expressionAttributeValues(Map.of(
+                            ":id", AttributeValue.builder().s(shortId).build(),
+                            // 같은 날의 모든 ISO-8601 시각은 "yyyy-MM-ddT"보다 뒤, "yyyy-MM-ddU"보다 앞에 정렬된다
+                            ":from", AttributeValue.builder().s(day + "T").build(),
+                            ":to", AttributeValue.builder().s(day + "U").build()))
+                    .exclusiveStartKey(startKey)
+                    .build());
+            for (Map<String, AttributeValue> item : page.items()) {
+                rows.add(new ClickArchive.Row(
+                        Instant.parse(item.get("timestamp").s()),
+                        stringOr(item, "referer", "direct"),
+                        stringOr(item, "userAgent", "unknown"),
+                        stringOr(item, "country", "unknown"),
+                        stringOr(item, "deviceType", "PC")));
+            }
+            startKey = page.hasLastEvaluatedKey() && !page.lastEvaluatedKey().isEmpty() ? page.lastEvaluatedKey() : null;
+        } while (startKey != null);
+        return rows;
+    }
+
+    private static String stringOr(Map<String, AttributeValue> item, String name, String defaultValue) {
+        AttributeValue v = item.get(name);
+        return v != null && v.s() != null ? v.s() : defaultValue;
+    }
+}
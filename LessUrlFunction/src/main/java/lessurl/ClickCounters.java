@@ -0,0 +1,76 @@
+package lessurl;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 링크 클릭 수를 여러 파티션(샤드)에 나눠 더하는 카운터. 키는 "shortId#샤드번호"이고 값은 clicks 하나다.
+ *
+ * 링크 아이템의 counterShards가 지금까지 쓰인 샤드 수이며 줄어들지 않는다. 쓰는 쪽은 샤드를 늘릴 때 먼저 이 값을 올린 뒤
+ * 그 범위 안에서 무작위 샤드에 더하므로, 읽는 쪽은 counterShards만큼 읽어 합치면 빠지는 샤드가 없다.
+ * 샤드 도입 이전에 링크 아이템에 쌓인 clickCount는 그대로 두고 합계에 더한다.
+ */
+final class ClickCounters {
+
+    static final String SHARDS = "counterShards";
+    static final int MAX_SHARDS = 16;
+
+    private ClickCounters() {
+    }
+
+    static String key(String shortId, int shard) {
+        return shortId + "#" + shard;
+    }
+
+    /**
+     * 배치 하나에 같은 링크 클릭이 clicksPerShard개 넘게 몰리면 샤드를 2배씩 늘린다 (1, 2, 4, ... MAX_SHARDS).
+     */
+    static int shardsFor(long clicksInBatch, long clicksPerShard) {
+        int shards = 1;
+        while (shards < MAX_SHARDS && clicksInBatch > clicksPerShard * shards) shards <<= 1;
+        return shards;
+    }
+
+    static int shardCount(Map<String, AttributeValue> urlItem) {
+        AttributeValue v = urlItem.get(SHARDS);
+        return v != null && v.n() != null ? Math.max(1, Math.min(MAX_SHARDS, Integer.parseInt(v.n()))) : 1;
+    }
+
+    static Update increment(String table, String shortId, int shard, long n) {
+        return Update.builder()
+                .tableName(table)
+                .key(Map.of("counterKey", AttributeValue.builder().s(key(shortId, shard)).build()))
+                .updateExpression("ADD clicks :inc")
+                .expressionAttributeValues(Map.of(":inc", AttributeValue.builder().n(Long.toString(n)).build()))
+                .build();
+    }
+
+    /**
+     * 링크 아이템들의 총 클릭 수 (shortId → 합계). 모든 샤드 키를 BatchReads로 읽는다.
+     */
+    static Map<String, Long> totals(DynamoDbClient ddb, String table, List<Map<String, AttributeValue>> urlItems) {
+        Map<String, Long> totals = new HashMap<>();
+        List<Map<String, AttributeValue>> keys = new ArrayList<>();
+        for (Map<String, AttributeValue> item : urlItems) {
+            String shortId = item.get("shortId").s();
+            totals.put(shortId, item.containsKey("clickCount") ? Long.parseLong(item.get("clickCount").n()) : 0L);
+            for (int shard = 0; shard < shardCount(item); shard++) {
+                keys.add(Map.of("counterKey", AttributeValue.builder().s(key(shortId, shard)).build()));
+            }
+        }
+
+        // 샤드 항목은 증가만 하므로 최종적 일관성 읽기로 충분하다
+        for (Map<String, AttributeValue> counter : BatchReads.get(ddb, table, keys, false)) {
+            String counterKey = counter.get("counterKey").s();
+            String shortId = counterKey.substring(0, counterKey.lastIndexOf('#'));
+            totals.merge(shortId, Long.parseLong(counter.get("clicks").n()), Long::sum);
+        }
+        return totals;
+    }
+}
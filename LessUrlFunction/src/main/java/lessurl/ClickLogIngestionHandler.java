@@ -0,0 +1,122 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.CloudWatchLogsEvent;
+import com.google.gson.Gson;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.sqs.SqsClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * RedirectFunction 로그 그룹의 구독 필터로 받은 클릭 로그 줄을 분석 큐로 보낸다.
+ * 리다이렉트는 클릭을 로그 한 줄(RedirectHandler.CLICK_LOG_MARKER + 이벤트 JSON)로만 남기고 응답하므로,
+ * SQS 왕복과 재시도는 모두 이 함수에서 일어난다. 구독 전달은 몇 초 늦을 수 있어 로그 시각을 clickedAt으로 넣는다.
+ */
+public class ClickLogIngestionHandler extends BaseHandler<CloudWatchLogsEvent, String> {
+
+    private final AnalyticsEmitter analyticsEmitter;
+
+    // CloudWatch Logs 구독 페이로드 (base64 + gzip을 푼 JSON). 필요한 필드만 읽는다
+    record LogsData(String messageType, List<LogEvent> logEvents) {}
+
+    // id는 CloudWatch Logs가 붙인 로그 항목 ID로, 같은 페이로드가 다시 전달되어도 같다
+    record LogEvent(String id, long timestamp, String message) {}
+
+    public ClickLogIngestionHandler() {
+        super();
+        this.analyticsEmitter = AnalyticsEmitter.forIngestion(sqs, System.getenv("ANALYTICS_QUEUE_URL"));
+    }
+
+    protected ClickLogIngestionHandler(DynamoDbClient ddb, LambdaClient lambda, SqsClient sqs, Gson gson, String urlsTable, AnalyticsEmitter analyticsEmitter) {
+        super(ddb, lambda, sqs, gson, urlsTable, "*");
+        this.analyticsEmitter = analyticsEmitter;
+    }
+
+    @Override
+    public String handleRequest(CloudWatchLogsEvent event, Context context) {
+        LambdaLogger logger = context.getLogger();
+        LogsData data;
+        try {
+            data = decode(event.getAwsLogs().getData());
+        } catch (IOException | RuntimeException e) {
+            // 재시도해도 같은 페이로드이므로 실패를 남기고 끝낸다
+            logger.log("[Error] Failed to decode click log payload: " + e.getMessage());
+            return "emitted=0 skipped=0 failed=0";
+        }
+
+        int emitted = 0;
+        int skipped = 0;
+        long failedBefore = analyticsEmitter.failed();
+        // 구독을 만들 때 보내는 확인 메시지(CONTROL_MESSAGE)에는 클릭이 없다
+        if ("DATA_MESSAGE".equals(data.messageType()) && data.logEvents() != null) {
+            for (LogEvent logEvent : data.logEvents()) {
+                String payload = clickPayload(logEvent);
+                if (payload == null) {
+                    skipped++;
+                    continue;
+                }
+                analyticsEmitter.emit(payload);
+                emitted++;
+            }
+            // 10개를 못 채운 마지막 배치와, 실패해 버퍼로 돌아온 항목까지 보낸다
+            analyticsEmitter.flush();
+        }
+
+        long failed = analyticsEmitter.failed() - failedBefore;
+        String summary = String.format("emitted=%d skipped=%d failed=%d", emitted, skipped, failed);
+        logger.log("[ClickLog] " + summary);
+        // queueDepth는 flush 기한 안에 못 보내 다음 호출로 넘어간 클릭 수다
+        recordMetric("CLICK_LOG_INGESTION", Map.of(
+                "invocation", Map.of("emitted", emitted, "skipped", skipped, "failed", failed),
+                "emitter", analyticsEmitter.stats()));
+        // 재시도 끝에도 못 보낸 클릭이 있으면 호출을 실패시켜 Lambda 비동기 재시도와 실패 대상으로 넘긴다
+        if (failed > 0) throw new IllegalStateException("Failed to enqueue " + failed + " clicks: " + summary);
+        return summary;
+    }
+
+    LogsData decode(String base64) throws IOException {
+        byte[] compressed = Base64.getDecoder().decode(base64);
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(compressed)), StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, LogsData.class);
+        }
+    }
+
+    /**
+     * 로그 줄에서 마커 뒤의 이벤트 JSON을 읽어 clickedAt과 clickId를 붙인 분석 큐 메시지를 만든다. 클릭 로그가 아니거나 깨졌으면 null.
+     * 실패한 호출이 재시도되면 같은 클릭을 다시 보내므로, clickId를 로그 항목 ID로 정해 AnalyticsHandler가 한 번만 세게 한다.
+     */
+    static String clickPayload(LogEvent logEvent) {
+        String message = logEvent.message();
+        int marker = message != null ? message.indexOf(RedirectHandler.CLICK_LOG_MARKER) : -1;
+        if (marker < 0) return null;
+
+        JsonCodec.ClickEvent click;
+        try {
+            click = JsonCodec.GSON.fromJson(message.substring(marker + RedirectHandler.CLICK_LOG_MARKER.length()).trim(), JsonCodec.ClickEvent.class);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        if (click == null || click.shortId() == null) return null;
+
+        String clickedAt = click.clickedAt() != null ? click.clickedAt() : Instant.ofEpochMilli(logEvent.timestamp()).toString();
+        return RedirectHandler.clickPayload(click.shortId(), orUnknown(click.ip()), orUnknown(click.userAgent()),
+                click.referer() != null ? click.referer() : "direct", orUnknown(click.country()), orUnknown(click.deviceType()), clickedAt,
+                logEvent.id() != null ? "log#" + logEvent.id() : null);
+    }
+
+    private static String orUnknown(String value) {
+        return value != null ? value : "unknown";
+    }
+}
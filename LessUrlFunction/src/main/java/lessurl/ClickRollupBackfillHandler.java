@@ -0,0 +1,98 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 롤업 도입 이전의 클릭 행으로 시간·일 롤업을 채우는 일회성 마이그레이션. 콘솔이나 CLI에서 직접 호출한다.
+ * 입력: {"until": "롤업을 쓰는 AnalyticsHandler가 배포된 시각", "days": 90, "startKey": {"shortId": "...", "timestamp": "..."}}
+ * until 이후의 클릭은 이미 롤업에 들어가 있으므로 건너뛴다. 시간이 부족하면 다음 startKey를 돌려준다.
+ * ADD로 더하므로 같은 구간을 두 번 돌리면 두 번 더해진다. 중단됐을 때는 돌려받은 startKey로만 이어서 실행한다.
+ */
+public class ClickRollupBackfillHandler extends BaseHandler<Map<String, Object>, String> {
+
+    private static final long TIME_BUDGET_MARGIN_MS = 10_000;
+
+    private final String clicksTable = System.getenv("CLICKS_TABLE");
+    private final String clickRollupsTable = System.getenv("CLICK_ROLLUPS_TABLE");
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public String handleRequest(Map<String, Object> input, Context context) {
+        LambdaLogger logger = context.getLogger();
+        if (input == null || input.get("until") == null) throw new IllegalArgumentException("until is required");
+        Instant until = Instant.parse((String) input.get("until"));
+        int days = input.get("days") instanceof Number n ? n.intValue() : 90;
+        String since = until.minus(days, ChronoUnit.DAYS).toString();
+
+        Map<String, AttributeValue> exclusiveStartKey = null;
+        if (input.get("startKey") instanceof Map<?, ?> key) {
+            exclusiveStartKey = Map.of(
+                    "shortId", AttributeValue.builder().s((String) ((Map<String, Object>) key).get("shortId")).build(),
+                    "timestamp", AttributeValue.builder().s((String) ((Map<String, Object>) key).get("timestamp")).build());
+        }
+
+        int scanned = 0, buckets = 0;
+        do {
+            ScanResponse page = ddb.scan(ScanRequest.builder()
+                    .tableName(this.clicksTable)
+                    .filterExpression("#ts >= :since AND #ts < :until")
+                    .projectionExpression("shortId, #ts, country, deviceType, referer")
+                    .expressionAttributeNames(Map.of("#ts", "timestamp"))
+                    .expressionAttributeValues(Map.of(
+                            ":since", AttributeValue.builder().s(since).build(),
+                            ":until", AttributeValue.builder().s(until.toString()).build()))
+                    .exclusiveStartKey(exclusiveStartKey)
+                    .build());
+
+            // 페이지 안에서 (shortId, bucket)별로 합친 뒤 버킷마다 한 번씩 더한다
+            Map<String, Map<String, Map<String, Long>>> rollups = new LinkedHashMap<>();
+            for (Map<String, AttributeValue> item : page.items()) {
+                scanned++;
+                Instant at = Instant.parse(item.get("timestamp").s());
+                String country = item.containsKey("country") ? item.get("country").s() : "unknown";
+                String device = item.containsKey("deviceType") ? item.get("deviceType").s() : "PC";
+                String referer = item.containsKey("referer") ? item.get("referer").s() : "direct";
+                Map<String, Map<String, Long>> link = rollups.computeIfAbsent(item.get("shortId").s(), k -> new LinkedHashMap<>());
+                ClickRollups.count(link.computeIfAbsent(ClickRollups.hourBucket(at), k -> new LinkedHashMap<>()), false, at, country, device, referer);
+                ClickRollups.count(link.computeIfAbsent(ClickRollups.dayBucket(at), k -> new LinkedHashMap<>()), true, at, country, device, referer);
+            }
+
+            for (Map.Entry<String, Map<String, Map<String, Long>>> link : rollups.entrySet()) {
+                for (Map.Entry<String, Map<String, Long>> bucket : link.getValue().entrySet()) {
+                    // 이미 보관 기간이 지난 시간 버킷은 쓰자마자 TTL로 지워지므로 건너뛴다
+                    if (ClickRollups.expiresAt(bucket.getKey()) <= Instant.now().getEpochSecond()) continue;
+                    Update update = ClickRollups.update(this.clickRollupsTable, link.getKey(), bucket.getKey(), bucket.getValue());
+                    ddb.updateItem(UpdateItemRequest.builder()
+                            .tableName(update.tableName())
+                            .key(update.key())
+                            .updateExpression(update.updateExpression())
+                            .expressionAttributeNames(update.expressionAttributeNames())
+                            .expressionAttributeValues(update.expressionAttributeValues())
+                            .build());
+                    buckets++;
+                }
+            }
+
+            exclusiveStartKey = page.hasLastEvaluatedKey() && !page.lastEvaluatedKey().isEmpty() ? page.lastEvaluatedKey() : null;
+        } while (exclusiveStartKey != null && context.getRemainingTimeInMillis() > TIME_BUDGET_MARGIN_MS);
+
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("scanned", scanned);
+        summary.put("bucketUpdates", buckets);
+        summary.put("nextStartKey", exclusiveStartKey != null
+                ? Map.of("shortId", exclusiveStartKey.get("shortId").s(), "timestamp", exclusiveStartKey.get("timestamp").s())
+                : null);
+
+        String result = gson.toJson(summary);
+        logger.log("[RollupBackfill] " + result);
+        return result;
+    }
+}
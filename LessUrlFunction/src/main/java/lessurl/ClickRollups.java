@@ -0,0 +1,292 @@
+package lessurl;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 링크별 시간 버킷 클릭 집계(롤업). 분석 소비자가 클릭 행을 넣은 뒤 더하고, 통계 화면은 원본 클릭 대신 이 항목만 읽는다.
+ *
+ * 키는 shortId + bucket("HOUR#2026-10-16T05" 또는 "DAY#2026-10-16", UTC)이다.
+ * 값은 최상위 숫자 속성으로 둔다: clicks, c#국가, d#기기, r#유입 출처, 일 버킷에는 시간대 분포 h#0~h#23도 둔다.
+ * ADD는 없는 부모 맵을 만들지 못하므로 중첩 맵 대신 접두사로 구분한다.
+ * r# 속성은 출처가 REFERER_CAP개를 넘으면 쓰는 쪽이 클릭이 적은 것부터 r#other로 합쳐 항목이 끝없이 커지지 않게 한다.
+ * 시간 버킷은 24시간 창에만 쓰이므로 짧게, 일 버킷은 90일 창보다 넉넉하게 보관하고 TTL(expiresAt)로 지운다.
+ * 클릭이 몰리는 링크는 클릭 카운터와 같은 샤드 수만큼 버킷을 나눠 쓴다. 샤드 0은 bucket 그대로, 나머지는 "DAY#2026-10-16#1"처럼
+ * 뒤에 샤드 번호를 붙인다. 같은 버킷의 샤드는 정렬 키가 이어지므로 기간 Query 한 번에 함께 읽힌다.
+ */
+final class ClickRollups {
+
+    static final String HOUR = "HOUR#";
+    static final String DAY = "DAY#";
+    static final String CLICKS = "clicks";
+    static final String COUNTRY = "c#";
+    static final String DEVICE = "d#";
+    static final String REFERER = "r#";
+    static final String HOUR_OF_DAY = "h#";
+    static final String OTHER_REFERER = "other";
+    // 한 번의 접기에서 지우는 출처 수. 식 길이(4KB) 안에 들도록 제한하고, 남은 것은 다음 갱신에서 마저 접는다
+    static final int MAX_FOLD = 50;
+    // '#'(0x23)보다 큰 문자. 버킷 범위의 끝에 붙이면 마지막 버킷의 샤드까지 BETWEEN에 들어온다
+    private static final String SHARD_RANGE_END = "~";
+
+    static final Duration HOURLY_RETENTION = Duration.ofDays(3);
+    static final Duration DAILY_RETENTION = Duration.ofDays(400);
+
+    private static final DateTimeFormatter HOUR_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(ZoneOffset.UTC);
+
+    /**
+     * 통계 조회 기간. 24h는 시간 버킷, 나머지는 일 버킷을 읽으므로 읽는 항목 수는 클릭 수와 무관하게 최대 25/7/30/90개다.
+     */
+    enum Period {
+        H24("24h", true, 24), D7("7d", false, 7), D30("30d", false, 30), D90("90d", false, 90);
+
+        final String label;
+        final boolean hourly;
+        final int buckets;
+
+        Period(String label, boolean hourly, int buckets) {
+            this.label = label;
+            this.hourly = hourly;
+            this.buckets = buckets;
+        }
+
+        static Period of(String label) {
+            if (label == null || label.isEmpty()) return D7;
+            for (Period p : values()) {
+                if (p.label.equals(label)) return p;
+            }
+            throw new IllegalArgumentException("period must be one of 24h, 7d, 30d, 90d");
+        }
+    }
+
+    /**
+     * 기간 안의 롤업을 합친 결과. 키 형식은 원본 클릭으로 집계하던 때와 같다 (일: yyyy-MM-dd, 시간대: 0~23).
+     */
+    static final class Window {
+        long clicks;
+        final Map<String, Long> clicksByDay = new TreeMap<>();
+        final Map<String, Long> clicksByHour = new HashMap<>();
+        final Map<String, Long> referers = new HashMap<>();
+        final Map<String, Long> countries = new HashMap<>();
+        final Map<String, Long> devices = new HashMap<>();
+    }
+
+    private ClickRollups() {
+    }
+
+    static String hourBucket(Instant at) {
+        return HOUR + HOUR_FORMATTER.format(at);
+    }
+
+    static String dayBucket(Instant at) {
+        return DAY + DAY_FORMATTER.format(at);
+    }
+
+    static String shardBucket(String bucket, int shard) {
+        return shard == 0 ? bucket : bucket + "#" + shard;
+    }
+
+    // 샤드 번호를 뗀 버킷 ("DAY#2026-10-16#3" → "DAY#2026-10-16")
+    static String baseBucket(String bucket) {
+        int shard = bucket.indexOf('#', bucket.indexOf('#') + 1);
+        return shard < 0 ? bucket : bucket.substring(0, shard);
+    }
+
+    /**
+     * 클릭 하나를 버킷의 합계에 더한다. 일 버킷이면 시간대 분포도 함께 센다.
+     */
+    static void count(Map<String, Long> bucket, boolean daily, Instant at, String country, String device, String referer) {
+        bucket.merge(CLICKS, 1L, Long::sum);
+        bucket.merge(COUNTRY + country, 1L, Long::sum);
+        bucket.merge(DEVICE + device, 1L, Long::sum);
+        bucket.merge(REFERER + refererSource(referer), 1L, Long::sum);
+        if (daily) bucket.merge(HOUR_OF_DAY + at.atZone(ZoneOffset.UTC).getHour(), 1L, Long::sum);
+    }
+
+    /**
+     * 유입 출처는 scheme://host까지만 남긴다. 전체 URL을 속성 이름으로 쓰면 버킷 항목이 끝없이 커진다.
+     */
+    static String refererSource(String referer) {
+        if (referer == null || referer.isEmpty() || "direct".equals(referer)) return "direct";
+        try {
+            URI uri = URI.create(referer.trim());
+            if (uri.getScheme() != null && uri.getHost() != null) {
+                return uri.getScheme().toLowerCase(Locale.ROOT) + "://" + uri.getHost().toLowerCase(Locale.ROOT);
+            }
+        } catch (IllegalArgumentException ignored) {
+            // 깨진 Referer 헤더
+        }
+        return OTHER_REFERER;
+    }
+
+    /**
+     * 유입 출처가 cap개를 넘으면 클릭이 적은 것부터 "other"로 합칠 대상(출처 → 현재 값)을 고른다. "other"는 세지 않는다.
+     * 넘지 않으면 빈 맵.
+     */
+    static Map<String, Long> refererOverflow(Map<String, Long> referers, int cap) {
+        List<Map.Entry<String, Long>> named = new ArrayList<>();
+        for (Map.Entry<String, Long> e : referers.entrySet()) {
+            if (!OTHER_REFERER.equals(e.getKey())) named.add(e);
+        }
+        Map<String, Long> overflow = new LinkedHashMap<>();
+        if (named.size() <= cap) return overflow;
+        named.sort(Map.Entry.<String, Long>comparingByValue().thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder())));
+        for (Map.Entry<String, Long> e : named.subList(0, Math.min(named.size() - cap, MAX_FOLD))) overflow.put(e.getKey(), e.getValue());
+        return overflow;
+    }
+
+    /**
+     * 갱신 후의 버킷 항목(ALL_NEW)에서 r# 속성이 cap개를 넘으면 작은 것들을 r#other로 옮기는 갱신. 넘지 않으면 null.
+     * 옮기는 속성의 값이 그대로일 때만 적용되므로 그 사이 다른 소비자가 더한 클릭은 잃지 않는다 (조건 실패면 다음 갱신이 다시 접는다).
+     */
+    static Update foldReferers(String table, Map<String, AttributeValue> item, int cap) {
+        Map<String, Long> referers = new HashMap<>();
+        item.forEach((name, value) -> {
+            if (name.startsWith(REFERER) && value.n() != null) referers.put(name.substring(REFERER.length()), Long.parseLong(value.n()));
+        });
+        Map<String, Long> overflow = refererOverflow(referers, cap);
+        if (overflow.isEmpty()) return null;
+
+        Map<String, String> names = new HashMap<>();
+        Map<String, AttributeValue> values = new HashMap<>();
+        List<String> removes = new ArrayList<>(overflow.size());
+        List<String> conditions = new ArrayList<>(overflow.size());
+        long folded = 0;
+        int i = 0;
+        for (Map.Entry<String, Long> e : overflow.entrySet()) {
+            names.put("#x" + i, REFERER + e.getKey());
+            values.put(":x" + i, AttributeValue.builder().n(Long.toString(e.getValue())).build());
+            removes.add("#x" + i);
+            conditions.add("#x" + i + " = :x" + i);
+            folded += e.getValue();
+            i++;
+        }
+        names.put("#o", REFERER + OTHER_REFERER);
+        values.put(":o", AttributeValue.builder().n(Long.toString(folded)).build());
+
+        return Update.builder()
+                .tableName(table)
+                .key(Map.of("shortId", item.get("shortId"), "bucket", item.get("bucket")))
+                .updateExpression("REMOVE " + String.join(", ", removes) + " ADD #o :o")
+                .conditionExpression(String.join(" AND ", conditions))
+                .expressionAttributeNames(names)
+                .expressionAttributeValues(values)
+                .build();
+    }
+
+    /**
+     * 버킷 하나에 합계를 한 번의 ADD로 더하고 만료 시각을 늦춘다 (예: ADD #a0 :a0, #a1 :a1 SET expiresAt = :exp).
+     */
+    static Update update(String table, String shortId, String bucket, Map<String, Long> counts) {
+        return update(table, shortId, bucket, 0, counts);
+    }
+
+    static Update update(String table, String shortId, String bucket, int shard, Map<String, Long> counts) {
+        Map<String, String> names = new HashMap<>();
+        Map<String, AttributeValue> values = new HashMap<>();
+        List<String> adds = new ArrayList<>(counts.size());
+        int i = 0;
+        for (Map.Entry<String, Long> e : counts.entrySet()) {
+            names.put("#a" + i, e.getKey());
+            values.put(":a" + i, AttributeValue.builder().n(Long.toString(e.getValue())).build());
+            adds.add("#a" + i + " :a" + i);
+            i++;
+        }
+        values.put(":exp", AttributeValue.builder().n(Long.toString(expiresAt(bucket))).build());
+
+        return Update.builder()
+                .tableName(table)
+                .key(Map.of(
+                        "shortId", AttributeValue.builder().s(shortId).build(),
+                        "bucket", AttributeValue.builder().s(shardBucket(bucket, shard)).build()
+                ))
+                .updateExpression("ADD " + String.join(", ", adds) + " SET expiresAt = :exp")
+                .expressionAttributeNames(names)
+                .expressionAttributeValues(values)
+                .build();
+    }
+
+    // 보관 기간은 버킷이 끝나는 시각부터 센다
+    static long expiresAt(String bucket) {
+        if (bucket.startsWith(HOUR)) {
+            Instant start = Instant.parse(bucket.substring(HOUR.length()) + ":00:00Z");
+            return start.plus(1, ChronoUnit.HOURS).plus(HOURLY_RETENTION).getEpochSecond();
+        }
+        Instant start = Instant.parse(bucket.substring(DAY.length()) + "T00:00:00Z");
+        return start.plus(1, ChronoUnit.DAYS).plus(DAILY_RETENTION).getEpochSecond();
+    }
+
+    /**
+     * 기간에 해당하는 버킷 범위(샤드 포함)를 한 번의 Query(BETWEEN)로 읽어 합친다.
+     */
+    static Window read(DynamoDbClient ddb, String table, String shortId, Period period, Instant now) {
+        String from, to;
+        if (period.hourly) {
+            from = hourBucket(now.minus(period.buckets - 1, ChronoUnit.HOURS));
+            to = hourBucket(now);
+        } else {
+            from = dayBucket(now.minus(period.buckets - 1, ChronoUnit.DAYS));
+            to = dayBucket(now);
+        }
+
+        Window window = new Window();
+        Map<String, AttributeValue> startKey = null;
+        do {
+            QueryResponse res = ddb.query(QueryRequest.builder()
+                    .tableName(table)
+                    .keyConditionExpression("shortId = :id AND #b BETWEEN :from AND :to")
+                    .expressionAttributeNames(Map.of("#b", "bucket"))
+                    .expressionAttributeValues(Map.of(
+                            ":id", AttributeValue.builder().s(shortId).build(),
+                            ":from", AttributeValue.builder().s(from).build(),
+                            ":to", AttributeValue.builder().s(to + SHARD_RANGE_END).build()
+                    ))
+                    .exclusiveStartKey(startKey)
+                    .build());
+            for (Map<String, AttributeValue> item : res.items()) merge(window, item);
+            startKey = res.hasLastEvaluatedKey() && !res.lastEvaluatedKey().isEmpty() ? res.lastEvaluatedKey() : null;
+        } while (startKey != null);
+        return window;
+    }
+
+    static void merge(Window window, Map<String, AttributeValue> item) {
+        String bucket = baseBucket(item.get("bucket").s());
+        boolean hourly = bucket.startsWith(HOUR);
+        String day = hourly ? bucket.substring(HOUR.length(), HOUR.length() + 10) : bucket.substring(DAY.length());
+        long clicks = item.containsKey(CLICKS) ? Long.parseLong(item.get(CLICKS).n()) : 0;
+
+        window.clicks += clicks;
+        window.clicksByDay.merge(day, clicks, Long::sum);
+        if (hourly) {
+            String hour = Integer.toString(Integer.parseInt(bucket.substring(HOUR.length() + 11)));
+            window.clicksByHour.merge(hour, clicks, Long::sum);
+        }
+        item.forEach((name, value) -> {
+            if (value.n() == null) return;
+            long n = Long.parseLong(value.n());
+            if (name.startsWith(COUNTRY)) window.countries.merge(name.substring(COUNTRY.length()), n, Long::sum);
+            else if (name.startsWith(DEVICE)) window.devices.merge(name.substring(DEVICE.length()), n, Long::sum);
+            else if (name.startsWith(REFERER)) window.referers.merge(name.substring(REFERER.length()), n, Long::sum);
+            else if (!hourly && name.startsWith(HOUR_OF_DAY)) window.clicksByHour.merge(name.substring(HOUR_OF_DAY.length()), n, Long::sum);
+        });
+    }
+}
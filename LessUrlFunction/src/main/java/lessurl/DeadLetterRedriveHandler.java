@@ -0,0 +1,46 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import software.amazon.awssdk.services.sqs.model.ListMessageMoveTasksRequest;
+import software.amazon.awssdk.services.sqs.model.ListMessageMoveTasksResultEntry;
+import software.amazon.awssdk.services.sqs.model.StartMessageMoveTaskRequest;
+
+import java.util.Map;
+
+/**
+ * DLQ에 쌓인 메시지를 원래 큐로 되돌리는 운영 도구. 장애 원인을 고친 뒤 콘솔이나 CLI에서 직접 호출한다.
+ * 입력: {"queue": "analytics" | "title", "maxPerSecond": 50, "status": true}
+ * status가 true면 이동하지 않고 최근 이동 작업의 상태만 돌려준다.
+ * 되돌린 클릭은 clickId 조건으로 이미 반영된 것이 걸러지므로 여러 번 실행해도 이중 집계되지 않는다.
+ */
+public class DeadLetterRedriveHandler extends BaseHandler<Map<String, Object>, String> {
+
+    @Override
+    public String handleRequest(Map<String, Object> input, Context context) {
+        LambdaLogger logger = context.getLogger();
+        String queue = input != null && input.get("queue") != null ? (String) input.get("queue") : "analytics";
+        String dlqArn = switch (queue) {
+            case "analytics" -> System.getenv("ANALYTICS_DLQ_ARN");
+            case "title" -> System.getenv("TITLE_DLQ_ARN");
+            default -> throw new IllegalArgumentException("Unknown queue: " + queue);
+        };
+
+        if (input != null && Boolean.TRUE.equals(input.get("status"))) {
+            StringBuilder sb = new StringBuilder();
+            for (ListMessageMoveTasksResultEntry task : sqs.listMessageMoveTasks(ListMessageMoveTasksRequest.builder().sourceArn(dlqArn).maxResults(3).build()).results()) {
+                sb.append(String.format("status=%s moved=%d/%d failure=%s%n", task.status(), task.approximateNumberOfMessagesMoved(),
+                        task.approximateNumberOfMessagesToMove(), task.failureReason()));
+            }
+            return sb.length() > 0 ? sb.toString() : "no move tasks";
+        }
+
+        // 대상 큐를 지정하지 않으면 SQS가 각 메시지의 원래 큐로 돌려보낸다
+        StartMessageMoveTaskRequest.Builder request = StartMessageMoveTaskRequest.builder().sourceArn(dlqArn);
+        if (input != null && input.get("maxPerSecond") instanceof Number rate) request.maxNumberOfMessagesPerSecond(rate.intValue());
+        String taskHandle = sqs.startMessageMoveTask(request.build()).taskHandle();
+
+        logger.log("[Redrive] Started moving " + queue + " DLQ messages back: " + taskHandle);
+        return taskHandle;
+    }
+}
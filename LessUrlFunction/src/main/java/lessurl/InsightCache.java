@@ -0,0 +1,116 @@
+package lessurl;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * 생성한 AI 인사이트를 AIAnalytic 테이블에 쌓아 두고 다시 쓴다.
+ *
+ * 항목 키는 shortId + generatedAt("7d#2026-10-16T05:00:00Z"처럼 기간 라벨을 앞에 붙인 생성 시각)이므로
+ * 기간별 최신 인사이트는 begins_with 역순 Query 한 번(Limit 1)으로 읽는다.
+ * fingerprint는 인사이트 문장이 달라질 만한 값(클릭 규모, 상위 국가·기기·유입, 피크 시간)만 요약한 것이라
+ * 클릭이 몇 건 늘어난 정도로는 바뀌지 않는다. 지난 항목은 TTL(expiresAt)로 지운다.
+ */
+final class InsightCache {
+
+    static final String FINGERPRINT = "fingerprint";
+    static final String INSIGHT = "insight";
+    static final String REFRESH_REQUESTED_AT = "refreshRequestedAt";
+
+    static final Duration RETENTION = Duration.ofDays(30);
+    // 같은 링크·기간의 재생성 요청은 이 간격 안에 한 번만 큐에 넣는다
+    static final Duration REFRESH_COOLDOWN = Duration.ofMinutes(5);
+
+    private static final int TOP = 3;
+
+    private InsightCache() {
+    }
+
+    /**
+     * 기간의 가장 최근 항목. 없으면 null.
+     */
+    static Map<String, AttributeValue> latest(DynamoDbClient ddb, String table, String shortId, String period) {
+        QueryResponse res = ddb.query(QueryRequest.builder()
+                .tableName(table)
+                .keyConditionExpression("shortId = :id AND begins_with(generatedAt, :p)")
+                .expressionAttributeValues(Map.of(
+                        ":id", AttributeValue.builder().s(shortId).build(),
+                        ":p", AttributeValue.builder().s(period + "#").build()))
+                .scanIndexForward(false)
+                .limit(1)
+                .build());
+        return res.hasItems() && !res.items().isEmpty() ? res.items().get(0) : null;
+    }
+
+    static PutItemRequest put(String table, String shortId, String period, String fingerprint, String insight, Instant now) {
+        return PutItemRequest.builder()
+                .tableName(table)
+                .item(Map.of(
+                        "shortId", AttributeValue.builder().s(shortId).build(),
+                        "generatedAt", AttributeValue.builder().s(period + "#" + now).build(),
+                        FINGERPRINT, AttributeValue.builder().s(fingerprint).build(),
+                        INSIGHT, AttributeValue.builder().s(insight).build(),
+                        "expiresAt", AttributeValue.builder().n(Long.toString(now.plus(RETENTION).getEpochSecond())).build()))
+                .build();
+    }
+
+    /**
+     * 재생성 요청 자격을 얻는다. 다른 요청이 REFRESH_COOLDOWN 안에 이미 얻었으면 false.
+     */
+    static boolean claimRefresh(DynamoDbClient ddb, String table, Map<String, AttributeValue> cached, Instant now) {
+        try {
+            ddb.updateItem(UpdateItemRequest.builder()
+                    .tableName(table)
+                    .key(Map.of("shortId", cached.get("shortId"), "generatedAt", cached.get("generatedAt")))
+                    .updateExpression("SET #r = :now")
+                    .conditionExpression("attribute_not_exists(#r) OR #r < :cutoff")
+                    .expressionAttributeNames(Map.of("#r", REFRESH_REQUESTED_AT))
+                    .expressionAttributeValues(Map.of(
+                            ":now", AttributeValue.builder().s(now.toString()).build(),
+                            ":cutoff", AttributeValue.builder().s(now.minus(REFRESH_COOLDOWN).toString()).build()))
+                    .build());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 인사이트 입력의 요약. 클릭 수는 2배 단위 구간으로만 반영한다.
+     */
+    static String fingerprint(String period, long periodClicks, Map<String, Long> countries, Map<String, Long> devices,
+                              Map<String, Long> referers, String peakHour) {
+        StringBuilder sb = new StringBuilder(period)
+                .append('|').append(64 - Long.numberOfLeadingZeros(Math.max(periodClicks, 0)))
+                .append('|').append(peakHour);
+        top(sb.append('|'), countries);
+        top(sb.append('|'), devices);
+        top(sb.append('|'), referers);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void top(StringBuilder sb, Map<String, Long> counts) {
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(TOP)
+                .forEach(e -> sb.append(e.getKey()).append(','));
+    }
+}
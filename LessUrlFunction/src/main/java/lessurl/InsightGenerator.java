@@ -0,0 +1,71 @@
+package lessurl;
+
+import com.google.gson.Gson;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gemini로 통계 요약(AI 인사이트)을 만든다. 통계 화면에서 캐시가 없을 때와 InsightRefreshHandler가 쓴다.
+ */
+public class InsightGenerator {
+
+    public static final String NOT_ENOUGH_DATA = "충분한 방문 데이터가 수집된 후 정밀 AI 분석이 제공됩니다.";
+    public static final String UNAVAILABLE = "데이터 분석 중 오류가 발생했습니다. 잠시 후 다시 확인해주세요.";
+    private static final String ENDPOINT = "https://generativelanguage.googleapis.com/v1/models/gemini-2.5-flash-lite:generateContent?key=";
+
+    private final HttpClient httpClient;
+    private final Gson gson;
+    private final String geminiApiKey;
+
+    public InsightGenerator(HttpClient httpClient, Gson gson, String geminiApiKey) {
+        this.httpClient = httpClient;
+        this.gson = gson;
+        this.geminiApiKey = geminiApiKey;
+    }
+
+    public boolean isEnabled() {
+        return this.geminiApiKey != null && !this.geminiApiKey.isEmpty();
+    }
+
+    /**
+     * 실패하면(키 없음, 비정상 응답, 네트워크 오류) null. 캐시에 넣지 않도록 호출 측이 구분한다.
+     */
+    public String generate(Map<String, Object> stats) {
+        if (!isEnabled()) return null;
+        try {
+            String prompt = String.format(
+                "당신은 데이터 분석 전문가입니다. 아래 제공된 URL 클릭 통계 데이터를 종합적으로 분석하여, " +
+                "사용자 행동 패턴과 유의미한 비즈니스 인사이트를 한국어로 아주 명확하고 전문적으로 요약해줘. " +
+                "불필요한 인사말은 생략하고 3문장 이내로 핵심만 작성해.\n\n" +
+                "데이터: %s", gson.toJson(stats));
+
+            Map<String, Object> requestMap = Map.of(
+                "contents", List.of(Map.of("parts", List.of(Map.of("text", prompt)))),
+                "generationConfig", Map.of(
+                    "temperature", 0.7,
+                    "maxOutputTokens", 500
+                )
+            );
+            HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(ENDPOINT + this.geminiApiKey))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(requestMap)))
+                .build();
+
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 200) {
+                String result = JsonCodec.geminiText(response.body());
+                if (result != null) return result.trim().replaceAll("\\*", "");
+            }
+            System.err.println("Gemini API Error: " + response.statusCode() + " - " + response.body());
+        } catch (Exception e) {
+            System.err.println("Gemini Exception: " + e.getMessage());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,89 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.ToNumberPolicy;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.sqs.SqsClient;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * StatsHandler가 INSIGHT_QUEUE_URL로 넘긴 인사이트 재생성 작업을 처리한다 (stale-while-revalidate의 revalidate 쪽).
+ * 메시지에는 조회 시점의 통계와 fingerprint가 들어 있다. 그 사이 다른 작업이 같은 fingerprint로 이미 만들었으면 건너뛰고,
+ * Gemini 호출이 실패한 메시지만 batchItemFailures로 돌려 SQS가 다시 전달하게 한다.
+ */
+public class InsightRefreshHandler extends BaseHandler<SQSEvent, SQSBatchResponse> {
+
+    // 통계의 정수 값이 프롬프트에 12.0처럼 들어가지 않도록 정수는 long으로 읽는다
+    private static final Gson STATS_GSON = new GsonBuilder().setObjectToNumberStrategy(ToNumberPolicy.LONG_OR_DOUBLE).create();
+
+    private final String aiAnalyticTable;
+    private final InsightGenerator insightGenerator;
+
+    private record InsightJob(String shortId, String period, String fingerprint, Map<String, Object> stats) {}
+
+    public InsightRefreshHandler() {
+        super();
+        this.aiAnalyticTable = System.getenv("AI_ANALYTIC_TABLE");
+        this.insightGenerator = new InsightGenerator(HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(15))
+                .build(), gson, System.getenv("GEMINI_API_KEY"));
+    }
+
+    protected InsightRefreshHandler(DynamoDbClient ddb, LambdaClient lambda, SqsClient sqs, Gson gson, String aiAnalyticTable, InsightGenerator insightGenerator) {
+        super(ddb, lambda, sqs, gson, null, "*");
+        this.aiAnalyticTable = aiAnalyticTable;
+        this.insightGenerator = insightGenerator;
+    }
+
+    @Override
+    public SQSBatchResponse handleRequest(SQSEvent event, Context context) {
+        LambdaLogger logger = context.getLogger();
+        List<SQSBatchResponse.BatchItemFailure> failures = new ArrayList<>();
+        int refreshed = 0, skipped = 0;
+
+        for (SQSEvent.SQSMessage msg : event.getRecords()) {
+            InsightJob job;
+            try {
+                job = STATS_GSON.fromJson(msg.getBody(), InsightJob.class);
+            } catch (Exception e) {
+                // 형식이 깨진 메시지는 재시도해도 같으므로 버린다
+                logger.log("[Error] Invalid insight job " + msg.getMessageId() + ": " + e.getMessage());
+                continue;
+            }
+            try {
+                Map<String, AttributeValue> cached = InsightCache.latest(ddb, this.aiAnalyticTable, job.shortId(), job.period());
+                if (cached != null && job.fingerprint().equals(cached.get(InsightCache.FINGERPRINT).s())) {
+                    skipped++;
+                    continue;
+                }
+                String insight = insightGenerator.generate(job.stats());
+                if (insight == null) {
+                    failures.add(new SQSBatchResponse.BatchItemFailure(msg.getMessageId()));
+                    continue;
+                }
+                ddb.putItem(InsightCache.put(this.aiAnalyticTable, job.shortId(), job.period(), job.fingerprint(), insight, Instant.now()));
+                refreshed++;
+            } catch (Exception e) {
+                logger.log("[Error] Failed to refresh insight for " + job.shortId() + ": " + e.getMessage());
+                failures.add(new SQSBatchResponse.BatchItemFailure(msg.getMessageId()));
+            }
+        }
+
+        logger.log(String.format("[Insight] Refreshed %d, skipped %d up-to-date, %d retried", refreshed, skipped, failures.size()));
+        return new SQSBatchResponse(failures);
+    }
+}
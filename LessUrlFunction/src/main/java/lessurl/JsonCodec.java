@@ -0,0 +1,160 @@
+package lessurl;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+/**
+ * 핸들러가 공유하는 JSON 코덱. 응답은 공백 없이 직렬화한다.
+ * 자주 오가는 본문(단축 요청, 클릭 이벤트)은 Map으로 풀지 않고 직접 작성한 TypeAdapter로 읽으며,
+ * Gemini 응답은 필요한 text 필드까지만 스트리밍으로 따라간다.
+ */
+public final class JsonCodec {
+
+    /**
+     * POST /shorten 본문. 없는 필드는 null.
+     */
+    public record ShortenRequest(String url, String customAlias, String visibility, String redirectPolicy) {}
+
+    /**
+     * 분석 큐 메시지 (RedirectHandler.clickPayload 형식). 없는 필드는 null.
+     * clickId는 로그 수집 핸들러가 원본 로그에서 만든 값으로, 같은 클릭을 다시 보내도 같다.
+     */
+    public record ClickEvent(String shortId, String ip, String userAgent, String referer, String country, String deviceType, String clickedAt,
+                             String clickId) {}
+
+    /**
+     * Safe Browsing threatListUpdates:fetch 응답. SafeBrowsingSyncHandler가 읽는 필드만 둔다. 없는 목록 필드는 null.
+     */
+    public record ListUpdates(List<ListUpdateResponse> listUpdateResponses) {}
+
+    public record ListUpdateResponse(String threatType, String responseType, List<ThreatEntrySet> additions, Checksum checksum) {}
+
+    // RAW 압축만 요청하므로 rawHashes만 읽는다. rawHashes.rawHashes는 prefixSize 바이트 접두사를 이어 붙인 base64
+    public record ThreatEntrySet(RawHashes rawHashes) {}
+
+    public record RawHashes(int prefixSize, String rawHashes) {}
+
+    public record Checksum(String sha256) {}
+
+    public static final TypeAdapter<ShortenRequest> SHORTEN_REQUEST = new TypeAdapter<ShortenRequest>() {
+        @Override
+        public void write(JsonWriter out, ShortenRequest value) throws IOException {
+            out.beginObject();
+            out.name("url").value(value.url());
+            out.name("customAlias").value(value.customAlias());
+            out.name("visibility").value(value.visibility());
+            out.name("redirectPolicy").value(value.redirectPolicy());
+            out.endObject();
+        }
+
+        @Override
+        public ShortenRequest read(JsonReader in) throws IOException {
+            String url = null, customAlias = null, visibility = null, redirectPolicy = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "url" -> url = nextString(in);
+                    case "customAlias" -> customAlias = nextString(in);
+                    case "visibility" -> visibility = nextString(in);
+                    case "redirectPolicy" -> redirectPolicy = nextString(in);
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return new ShortenRequest(url, customAlias, visibility, redirectPolicy);
+        }
+    }.nullSafe();
+
+    public static final TypeAdapter<ClickEvent> CLICK_EVENT = new TypeAdapter<ClickEvent>() {
+        @Override
+        public void write(JsonWriter out, ClickEvent value) throws IOException {
+            out.beginObject();
+            out.name("shortId").value(value.shortId());
+            out.name("ip").value(value.ip());
+            out.name("userAgent").value(value.userAgent());
+            out.name("referer").value(value.referer());
+            out.name("country").value(value.country());
+            out.name("deviceType").value(value.deviceType());
+            if (value.clickedAt() != null) out.name("clickedAt").value(value.clickedAt());
+            if (value.clickId() != null) out.name("clickId").value(value.clickId());
+            out.endObject();
+        }
+
+        @Override
+        public ClickEvent read(JsonReader in) throws IOException {
+            String shortId = null, ip = null, userAgent = null, referer = null, country = null, deviceType = null, clickedAt = null, clickId = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "shortId" -> shortId = nextString(in);
+                    case "ip" -> ip = nextString(in);
+                    case "userAgent" -> userAgent = nextString(in);
+                    case "referer" -> referer = nextString(in);
+                    case "country" -> country = nextString(in);
+                    case "deviceType" -> deviceType = nextString(in);
+                    case "clickedAt" -> clickedAt = nextString(in);
+                    case "clickId" -> clickId = nextString(in);
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return new ClickEvent(shortId, ip, userAgent, referer, country, deviceType, clickedAt, clickId);
+        }
+    }.nullSafe();
+
+    public static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(ShortenRequest.class, SHORTEN_REQUEST)
+            .registerTypeAdapter(ClickEvent.class, CLICK_EVENT)
+            .create();
+
+    private JsonCodec() {}
+
+    private static String nextString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    /**
+     * Gemini generateContent 응답에서 candidates[0].content.parts[0].text만 읽는다. 경로가 없으면 null.
+     * 나머지 필드(safetyRatings, usageMetadata 등)는 객체로 만들지 않고 건너뛴다.
+     */
+    public static String geminiText(String responseBody) {
+        if (responseBody == null) return null;
+        try (JsonReader in = new JsonReader(new StringReader(responseBody))) {
+            if (!enterObjectField(in, "candidates") || !enterFirstElement(in)) return null;
+            if (!enterObjectField(in, "content") || !enterObjectField(in, "parts") || !enterFirstElement(in)) return null;
+            if (!enterObjectField(in, "text")) return null;
+            return nextString(in);
+        } catch (IOException | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    // 현재 위치의 객체로 들어가 name 필드의 값 직전까지 이동한다
+    private static boolean enterObjectField(JsonReader in, String name) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) return false;
+        in.beginObject();
+        while (in.hasNext()) {
+            if (in.nextName().equals(name)) return in.peek() != JsonToken.NULL;
+            in.skipValue();
+        }
+        return false;
+    }
+
+    private static boolean enterFirstElement(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_ARRAY) return false;
+        in.beginArray();
+        return in.hasNext();
+    }
+}
@@ -0,0 +1,99 @@
+package lessurl;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 새로 만들어진 shortId/alias를 시간 버킷별로 기록하는 로그 테이블.
+ * Bloom filter 스냅샷 이후에 생성된 키를 리다이렉트 컨테이너가 따라잡을 때 사용한다. 항목은 TTL로 만료된다.
+ */
+public class LinkDeltaLog {
+
+    private static final DateTimeFormatter HOUR_BUCKET = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH").withZone(ZoneId.of("UTC"));
+
+    private final DynamoDbClient ddb;
+    private final String tableName;
+    private final long retentionSeconds;
+
+    public LinkDeltaLog(DynamoDbClient ddb, String tableName, long retentionSeconds) {
+        this.ddb = ddb;
+        this.tableName = tableName;
+        this.retentionSeconds = retentionSeconds;
+    }
+
+    public static LinkDeltaLog fromEnv(DynamoDbClient ddb) {
+        return new LinkDeltaLog(ddb, System.getenv("LINK_DELTA_TABLE"),
+                BaseHandler.envLong("LINK_DELTA_RETENTION_HOURS", 48) * 3600);
+    }
+
+    public static LinkDeltaLog disabled() {
+        return new LinkDeltaLog(null, null, 0);
+    }
+
+    public boolean isEnabled() {
+        return tableName != null && !tableName.isEmpty();
+    }
+
+    public long retentionMillis() {
+        return retentionSeconds * 1000;
+    }
+
+    public void record(Instant createdAt, List<String> ids) {
+        if (!isEnabled() || ids.isEmpty()) return;
+
+        List<WriteRequest> writes = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Map<String, AttributeValue> item = new HashMap<>();
+            item.put("bucket", AttributeValue.builder().s(HOUR_BUCKET.format(createdAt)).build());
+            item.put("entryKey", AttributeValue.builder().s(createdAt + "#" + id).build());
+            item.put("linkId", AttributeValue.builder().s(id).build());
+            item.put("expiresAt", AttributeValue.builder().n(Long.toString(createdAt.getEpochSecond() + retentionSeconds)).build());
+            writes.add(WriteRequest.builder().putRequest(PutRequest.builder().item(item).build()).build());
+        }
+
+        Map<String, List<WriteRequest>> pending = Map.of(tableName, writes);
+        for (int attempt = 0; attempt < 3 && !pending.isEmpty(); attempt++) {
+            BatchWriteItemResponse res = ddb.batchWriteItem(BatchWriteItemRequest.builder().requestItems(pending).build());
+            pending = res.hasUnprocessedItems() ? res.unprocessedItems() : Map.of();
+        }
+        if (!pending.isEmpty()) throw new RuntimeException("Failed to record link delta for " + ids);
+    }
+
+    /**
+     * since 이후(포함) 기록된 키를 반환한다. 시간 버킷 단위로 조회하므로 구간이 길수록 Query 수가 늘어난다.
+     */
+    public List<String> idsSince(Instant since, Instant until) {
+        List<String> ids = new ArrayList<>();
+        if (!isEnabled()) return ids;
+
+        Instant bucket = since.truncatedTo(ChronoUnit.HOURS);
+        while (!bucket.isAfter(until)) {
+            Map<String, AttributeValue> startKey = null;
+            do {
+                QueryResponse res = ddb.query(QueryRequest.builder()
+                        .tableName(tableName)
+                        .keyConditionExpression("#b = :b AND entryKey >= :since")
+                        .expressionAttributeNames(Map.of("#b", "bucket"))
+                        .expressionAttributeValues(Map.of(
+                                ":b", AttributeValue.builder().s(HOUR_BUCKET.format(bucket)).build(),
+                                ":since", AttributeValue.builder().s(since.toString()).build()))
+                        .projectionExpression("linkId")
+                        .exclusiveStartKey(startKey)
+                        .build());
+                for (Map<String, AttributeValue> item : res.items()) ids.add(item.get("linkId").s());
+                startKey = res.hasLastEvaluatedKey() && !res.lastEvaluatedKey().isEmpty() ? res.lastEvaluatedKey() : null;
+            } while (startKey != null);
+            bucket = bucket.plus(1, ChronoUnit.HOURS);
+        }
+        return ids;
+    }
+}
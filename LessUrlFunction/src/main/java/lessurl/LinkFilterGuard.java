@@ -0,0 +1,229 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.LambdaRuntime;
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.BufferedInputStream;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 리다이렉트 경로 앞단의 존재 여부 필터.
+ * S3의 Bloom filter 스냅샷을 초기화(또는 SnapStart 복원) 시점에 읽고, 스냅샷 이후 생성된 키는 LinkDeltaLog에서 따라잡는다.
+ * 델타는 요청과 무관하게 백그라운드 스레드가 syncInterval마다 당긴다. 필터에 없는 ID라도 처음 본 미스는 방금 만든 링크일 수 있으므로
+ * 기존 조회로 넘기고, 그 미스 시각에서 missGrace가 지난 구간까지 델타를 반영한 뒤에도 없을 때만 DynamoDB 조회 없이 404로 끝낸다.
+ * 마지막 동기화가 syncInterval 두 번보다 오래됐으면(샌드박스가 얼었다 깨어난 직후, 델타 조회 실패) 방금 만든 링크일 수 있으므로
+ * 미스도 기존 조회 경로로 넘긴다. 필터가 없거나 너무 오래되어 델타로 따라잡을 수 없을 때도 항상 true를 돌려준다(fail-open).
+ */
+public class LinkFilterGuard implements Resource {
+
+    // createdAt을 정한 뒤 델타 기록이 조회에 보이기까지의 지연(검사 이후 BatchWriteItem 재시도, 최종적 일관성 읽기)과
+    // 컨테이너 간 시계 차이를 덮는 겹침 구간. 겹친 만큼 매 동기화가 같은 항목을 다시 읽으므로 실제 지연보다 조금만 크게 둔다
+    private static final long SYNC_OVERLAP_MS = 2_000;
+
+    private final S3Client s3;
+    private final String bucket;
+    private final String key;
+    private final LinkDeltaLog deltaLog;
+    private final long syncIntervalMillis;
+    private final long maxStalenessMillis;
+    private final long reloadIntervalMillis;
+    private final long maxSyncGapMillis;
+    private final long missGraceMillis;
+    private final LambdaLogger logger;
+
+    private volatile BloomFilter filter;
+    private volatile long snapshotAt;
+    private volatile long syncedThrough;
+    private volatile long loadedAt;
+
+    private final AtomicBoolean reloading = new AtomicBoolean();
+    private final AtomicBoolean syncing = new AtomicBoolean();
+    // 스냅샷 로드와 델타 동기화를 한 스레드에서 차례로 처리한다
+    private final ScheduledExecutorService loader = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "link-filter-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // 필터에 없던 ID와 처음 미스가 난 시각. 커지면 비우고 다시 조회 경로부터 시작한다
+    private static final int MAX_PENDING_MISSES = 10_000;
+    private final Map<String, Long> pendingMisses = new ConcurrentHashMap<>();
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong deltaSyncs = new AtomicLong();
+
+    LinkFilterGuard(S3Client s3, String bucket, String key, LinkDeltaLog deltaLog, long syncIntervalMillis, long reloadIntervalMillis, long missGraceMillis, LambdaLogger logger) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.key = key;
+        this.deltaLog = deltaLog;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.maxStalenessMillis = 2 * syncIntervalMillis;
+        this.reloadIntervalMillis = reloadIntervalMillis;
+        // 델타 로그 보존 기간을 넘긴 구간은 따라잡을 수 없으므로 한 시간 여유를 둔다
+        this.maxSyncGapMillis = Math.max(0, deltaLog.retentionMillis() - 3_600_000);
+        this.missGraceMillis = missGraceMillis;
+        this.logger = logger;
+    }
+
+    public static LinkFilterGuard fromEnv(DynamoDbClient ddb) {
+        String bucket = System.getenv("BLOOM_SNAPSHOT_BUCKET");
+        LinkDeltaLog deltaLog = LinkDeltaLog.fromEnv(ddb);
+        if (bucket == null || bucket.isEmpty() || !deltaLog.isEnabled()) return disabled();
+
+        LinkFilterGuard guard = new LinkFilterGuard(
+                S3Client.builder().httpClient(UrlConnectionHttpClient.create()).build(),
+                bucket,
+                System.getenv().getOrDefault("BLOOM_SNAPSHOT_KEY", "link-filter/latest.bin"),
+                deltaLog,
+                BaseHandler.envLong("BLOOM_DELTA_SYNC_INTERVAL_MS", 5_000),
+                BaseHandler.envLong("BLOOM_RELOAD_INTERVAL_MINUTES", 60) * 60_000,
+                BaseHandler.envLong("BLOOM_MISS_GRACE_MS", 1_000),
+                LambdaRuntime.getLogger());
+        guard.load();
+        Core.getGlobalContext().register(guard);
+        return guard;
+    }
+
+    public static LinkFilterGuard disabled() {
+        return new LinkFilterGuard(null, null, null, LinkDeltaLog.disabled(), 0, 0, 0, LambdaRuntime.getLogger());
+    }
+
+    public boolean isEnabled() {
+        return s3 != null;
+    }
+
+    /**
+     * false면 해당 ID는 확실히 존재하지 않는다.
+     */
+    public boolean mightExist(String id) {
+        if (!isEnabled()) return true;
+
+        long now = System.currentTimeMillis();
+        if (now - loadedAt >= reloadIntervalMillis) reloadInBackground();
+
+        BloomFilter current = filter;
+        if (current == null || now - syncedThrough > maxSyncGapMillis) {
+            reloadInBackground();
+            return true;
+        }
+        if (current.mightContain(id)) return true;
+
+        // 요청 스레드는 델타를 조회하거나 기다리지 않는다. 동기화가 밀려 있으면 방금 만든 링크일 수 있으므로 기존 조회로 넘긴다
+        if (now - syncedThrough > maxStalenessMillis) return true;
+
+        // 처음 본 미스는 다른 컨테이너가 방금 만든 링크일 수 있다. 링크는 첫 요청보다 먼저 만들어지므로
+        // 첫 미스 시각에서 missGrace(델타 기록 지연)가 지난 구간까지 동기화한 뒤에도 없으면 확실히 없다
+        Long firstMiss = pendingMisses.get(id);
+        if (firstMiss == null) {
+            if (pendingMisses.size() >= MAX_PENDING_MISSES) pendingMisses.clear();
+            pendingMisses.putIfAbsent(id, now);
+            return true;
+        }
+        if (syncedThrough < firstMiss + missGraceMillis) return true;
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * 스냅샷을 읽고 스냅샷 이후의 델타를 반영한다. 실패하면 필터를 비활성 상태로 두고 조회 경로를 그대로 쓴다.
+     */
+    synchronized void load() {
+        try (ResponseInputStream<GetObjectResponse> in = s3.getObject(GetObjectRequest.builder().bucket(bucket).key(key).build())) {
+            BloomFilter.Snapshot snapshot = BloomFilter.readFrom(new BufferedInputStream(in));
+            long now = System.currentTimeMillis();
+            if (now - snapshot.snapshotAt() > maxSyncGapMillis) {
+                // 델타 로그가 이미 만료한 구간이 비므로 이 스냅샷으로는 없다고 판정할 수 없다
+                throw new IllegalStateException("Snapshot " + Instant.ofEpochMilli(snapshot.snapshotAt()) + " is older than the delta log retention");
+            }
+            applyDelta(snapshot.filter(), snapshot.snapshotAt(), now);
+
+            this.filter = snapshot.filter();
+            this.snapshotAt = snapshot.snapshotAt();
+            this.syncedThrough = now;
+            this.loadedAt = now;
+            logger.log("[LinkFilter] Loaded snapshot " + Instant.ofEpochMilli(snapshotAt) + " (" + snapshot.filter().numBits() + " bits)");
+            startSyncLoop();
+        } catch (Exception e) {
+            this.loadedAt = System.currentTimeMillis();
+            logger.log("[LinkFilter] Failed to load snapshot, guard stays open: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 마지막 동기화 이후의 델타를 반영한다. 실패하면 syncedThrough가 그대로 남아, 밀린 시간이 길어지면 미스도 기존 조회로 넘어간다.
+     */
+    synchronized void syncDelta() {
+        BloomFilter current = filter;
+        if (current == null) return;
+        long now = System.currentTimeMillis();
+        try {
+            applyDelta(current, syncedThrough, now);
+            syncedThrough = now;
+            deltaSyncs.incrementAndGet();
+        } catch (Exception e) {
+            logger.log("[LinkFilter] Delta sync failed, misses fall back to lookups: " + e.getMessage());
+        }
+    }
+
+    // 샌드박스가 얼어 있는 동안 밀린 실행은 깨어난 직후 한 번 돌고 다시 syncInterval 간격으로 이어진다
+    private void startSyncLoop() {
+        if (syncIntervalMillis <= 0 || !syncing.compareAndSet(false, true)) return;
+        loader.scheduleWithFixedDelay(this::syncDelta, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void applyDelta(BloomFilter target, long since, long until) {
+        List<String> ids = deltaLog.idsSince(Instant.ofEpochMilli(since - SYNC_OVERLAP_MS), Instant.ofEpochMilli(until));
+        for (String id : ids) target.put(id);
+    }
+
+    private void reloadInBackground() {
+        if (!reloading.compareAndSet(false, true)) return;
+        loader.submit(() -> {
+            try {
+                load();
+            } finally {
+                reloading.set(false);
+            }
+        });
+    }
+
+    @Override
+    public void beforeCheckpoint(Context<? extends Resource> context) {
+    }
+
+    @Override
+    public void afterRestore(Context<? extends Resource> context) {
+        // SnapStart 스냅샷은 배포 시점의 필터를 담고 있으므로 복원 직후 최신 스냅샷을 다시 읽는다
+        loadedAt = 0;
+        reloadInBackground();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", isEnabled() && filter != null);
+        stats.put("rejected", rejected.get());
+        stats.put("deltaSyncs", deltaSyncs.get());
+        stats.put("pendingMisses", pendingMisses.size());
+        stats.put("snapshotAt", snapshotAt);
+        return stats;
+    }
+}
@@ -0,0 +1,77 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * urls 테이블 전체의 shortId/alias로 Bloom filter를 다시 만들어 S3 스냅샷으로 저장하는 주기 작업.
+ * 스캔 도중 생성된 키는 스냅샷 시각 이후의 LinkDeltaLog로 리다이렉트 컨테이너가 따라잡는다.
+ */
+public class LinkFilterRebuildHandler extends BaseHandler<ScheduledEvent, String> {
+
+    private final S3Client s3 = S3Client.builder().httpClient(UrlConnectionHttpClient.create()).build();
+
+    @Override
+    public String handleRequest(ScheduledEvent event, Context context) {
+        LambdaLogger logger = context.getLogger();
+        String bucket = System.getenv("BLOOM_SNAPSHOT_BUCKET");
+        String key = System.getenv().getOrDefault("BLOOM_SNAPSHOT_KEY", "link-filter/latest.bin");
+        double fpp = Double.parseDouble(System.getenv().getOrDefault("BLOOM_FPP", "0.01"));
+        long minExpected = envLong("BLOOM_MIN_EXPECTED_INSERTIONS", 100_000);
+
+        long startedAt = System.currentTimeMillis();
+        List<String> ids = new ArrayList<>();
+        Map<String, AttributeValue> startKey = null;
+
+        do {
+            ScanResponse page = ddb.scan(ScanRequest.builder()
+                    .tableName(this.urlsTable)
+                    .projectionExpression("shortId, customAlias")
+                    .exclusiveStartKey(startKey)
+                    .build());
+            for (Map<String, AttributeValue> item : page.items()) {
+                String id = item.get("shortId").s();
+                // 카운터·중복 제거용 내부 키는 '#'을 포함하므로 리다이렉트 대상이 아니다
+                if (id.indexOf('#') < 0) ids.add(id);
+                if (item.containsKey("customAlias")) ids.add(item.get("customAlias").s());
+            }
+            startKey = page.hasLastEvaluatedKey() && !page.lastEvaluatedKey().isEmpty() ? page.lastEvaluatedKey() : null;
+        } while (startKey != null);
+
+        // 다음 재빌드 전까지 델타로 늘어날 키를 감안해 여유 있게 잡는다
+        BloomFilter filter = BloomFilter.create(Math.max(minExpected, (long) (ids.size() * 1.5)), fpp);
+        for (String id : ids) filter.put(id);
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            filter.writeTo(out, startedAt);
+            s3.putObject(PutObjectRequest.builder()
+                            .bucket(bucket)
+                            .key(key)
+                            .contentType("application/octet-stream")
+                            .metadata(Map.of("keys", Integer.toString(ids.size()), "fpp", Double.toString(fpp)))
+                            .build(),
+                    RequestBody.fromBytes(out.toByteArray()));
+        } catch (Exception e) {
+            logger.log("[Error] Failed to publish link filter snapshot: " + e.getMessage());
+            throw new RuntimeException(e);
+        }
+
+        String summary = String.format("keys=%d bits=%d hashes=%d tookMs=%d", ids.size(), filter.numBits(), filter.numHashes(), System.currentTimeMillis() - startedAt);
+        logger.log("[LinkFilter] Rebuilt snapshot: " + summary);
+        return summary;
+    }
+}
@@ -0,0 +1,193 @@
+package lessurl;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * shortId 또는 커스텀 alias를 링크로 해석한다.
+ * alias는 ShortenHandler가 링크와 함께 트랜잭션으로 저장하는 포인터 아이템(키 = alias 그대로)으로 존재하므로
+ * 어떤 식별자든 강한 일관성 GetItem 한 번으로 해석된다.
+ * 포인터가 없는 과거 데이터는 ALIAS_INDEX_FALLBACK이 켜진 경우에만 CustomAliasIndex로 찾는다.
+ */
+public class LinkResolver {
+
+    public static final String LINK_TYPE = "linkType";
+    public static final String TYPE_ALIAS = "ALIAS";
+    public static final String TARGET_ID = "targetId";
+    // 같은 URL 재단축을 찾기 위한 포인터(ShortenHandler 중복 제거). 리다이렉트 대상이 아니다
+    public static final String TYPE_URL_HASH = "URL_HASH";
+    public static final String URL_HASH_PREFIX = "urlhash#";
+
+    private final DynamoDbClient ddb;
+    private final String urlsTable;
+    private final boolean aliasIndexFallback;
+
+    /**
+     * @param shortId 실제 링크의 shortId (alias로 요청해도 원본 링크의 ID)
+     * @param item    GetItem 결과. alias 포인터로 해석된 경우 포인터 아이템이며 originalUrl만 보장된다.
+     */
+    public record Link(String shortId, Map<String, AttributeValue> item) {
+        public boolean isAliasPointer() {
+            return LinkResolver.isAliasPointer(item);
+        }
+
+        public String originalUrl() {
+            return item.get("originalUrl").s();
+        }
+
+        // 포인터 아이템에도 링크의 정책이 복사되어 있다
+        public RedirectPolicy redirectPolicy() {
+            return RedirectPolicy.of(item);
+        }
+    }
+
+    public LinkResolver(DynamoDbClient ddb, String urlsTable) {
+        this(ddb, urlsTable, "true".equalsIgnoreCase(System.getenv("ALIAS_INDEX_FALLBACK")));
+    }
+
+    public LinkResolver(DynamoDbClient ddb, String urlsTable, boolean aliasIndexFallback) {
+        this.ddb = ddb;
+        this.urlsTable = urlsTable;
+        this.aliasIndexFallback = aliasIndexFallback;
+    }
+
+    /**
+     * 리다이렉트처럼 originalUrl만 필요한 경우의 해석. 찾지 못하면 null.
+     */
+    public Link resolve(String id) {
+        Map<String, AttributeValue> item = getItem(id);
+        if (item != null) {
+            if (isUrlHashPointer(item)) return null;
+            if (isAliasPointer(item)) return new Link(item.get(TARGET_ID).s(), item);
+            return new Link(id, item);
+        }
+        return resolveByAliasIndex(id);
+    }
+
+    /**
+     * 통계처럼 링크 아이템 전체(clickCount, title 등)가 필요한 경우의 해석. 찾지 못하면 null.
+     */
+    public Link resolveFull(String id) {
+        Link link = resolve(id);
+        if (link == null || !link.isAliasPointer()) return link;
+
+        Map<String, AttributeValue> target = getItem(link.shortId());
+        return target != null ? new Link(link.shortId(), target) : null;
+    }
+
+    /**
+     * resolveFull의 여러 건 버전. 요청한 식별자 → 링크이며 찾지 못한 식별자는 빠진다.
+     * 식별자들을 BatchGetItem으로 한 번에 읽고, alias 포인터였던 것만 원본 링크를 한 번 더 묶어 읽는다.
+     */
+    public Map<String, Link> resolveAllFull(List<String> ids) {
+        Map<String, Map<String, AttributeValue>> items = batchGetItems(ids);
+        Map<String, Link> links = new LinkedHashMap<>();
+        List<String> targets = new ArrayList<>();
+        for (String id : ids) {
+            Map<String, AttributeValue> item = items.get(id);
+            if (item == null || isUrlHashPointer(item)) continue;
+            if (isAliasPointer(item)) targets.add(item.get(TARGET_ID).s());
+            else links.put(id, new Link(id, item));
+        }
+
+        Map<String, Map<String, AttributeValue>> targetItems = targets.isEmpty() ? Map.of() : batchGetItems(targets);
+        for (String id : ids) {
+            Map<String, AttributeValue> item = items.get(id);
+            if (item != null && isAliasPointer(item)) {
+                String targetId = item.get(TARGET_ID).s();
+                Map<String, AttributeValue> target = targetItems.get(targetId);
+                if (target != null) links.put(id, new Link(targetId, target));
+            } else if (item == null) {
+                // 포인터가 없는 과거 alias는 하나씩 인덱스로 찾는다 (ALIAS_INDEX_FALLBACK이 꺼져 있으면 바로 null)
+                Link legacy = resolveByAliasIndex(id);
+                if (legacy != null) links.put(id, legacy);
+            }
+        }
+        return links;
+    }
+
+    private Map<String, Map<String, AttributeValue>> batchGetItems(List<String> ids) {
+        List<Map<String, AttributeValue>> keys = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(ids)) keys.add(Map.of("shortId", AttributeValue.builder().s(id).build()));
+        Map<String, Map<String, AttributeValue>> items = new HashMap<>();
+        for (Map<String, AttributeValue> item : BatchReads.get(ddb, this.urlsTable, keys, true)) {
+            items.put(item.get("shortId").s(), item);
+        }
+        return items;
+    }
+
+    private Map<String, AttributeValue> getItem(String id) {
+        GetItemResponse res = ddb.getItem(GetItemRequest.builder()
+                .tableName(this.urlsTable)
+                .key(Map.of("shortId", AttributeValue.builder().s(id).build()))
+                .consistentRead(true)
+                .build());
+        return res != null && res.hasItem() ? res.item() : null;
+    }
+
+    private Link resolveByAliasIndex(String alias) {
+        if (!aliasIndexFallback) return null;
+
+        QueryResponse res = ddb.query(QueryRequest.builder()
+                .tableName(this.urlsTable)
+                .indexName("CustomAliasIndex")
+                .keyConditionExpression("customAlias = :alias")
+                .expressionAttributeValues(Map.of(":alias", AttributeValue.builder().s(alias).build()))
+                .limit(1)
+                .build());
+
+        if (res != null && res.hasItems() && !res.items().isEmpty()) {
+            Map<String, AttributeValue> item = res.items().get(0);
+            return new Link(item.get("shortId").s(), item);
+        }
+        return null;
+    }
+
+    public static boolean isAliasPointer(Map<String, AttributeValue> item) {
+        return item.containsKey(LINK_TYPE) && TYPE_ALIAS.equals(item.get(LINK_TYPE).s());
+    }
+
+    public static boolean isUrlHashPointer(Map<String, AttributeValue> item) {
+        return item.containsKey(LINK_TYPE) && TYPE_URL_HASH.equals(item.get(LINK_TYPE).s());
+    }
+
+    /**
+     * URL 해시 포인터 아이템. 키에 '#'이 들어가므로 shortId/alias와 겹치지 않는다.
+     */
+    public static Map<String, AttributeValue> urlHashPointerItem(String key, String targetId, String createdAt) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("shortId", AttributeValue.builder().s(key).build());
+        item.put(LINK_TYPE, AttributeValue.builder().s(TYPE_URL_HASH).build());
+        item.put(TARGET_ID, AttributeValue.builder().s(targetId).build());
+        item.put("createdAt", AttributeValue.builder().s(createdAt).build());
+        return item;
+    }
+
+    /**
+     * alias 포인터 아이템. 키가 alias 자체이므로 shortId 네임스페이스와 같은 키 공간을 공유하고,
+     * attribute_not_exists(shortId) 조건 하나로 alias/ID 충돌이 함께 막힌다.
+     */
+    public static Map<String, AttributeValue> aliasPointerItem(String alias, String targetId, String originalUrl, String createdAt, RedirectPolicy redirectPolicy) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("shortId", AttributeValue.builder().s(alias).build());
+        item.put(LINK_TYPE, AttributeValue.builder().s(TYPE_ALIAS).build());
+        item.put(TARGET_ID, AttributeValue.builder().s(targetId).build());
+        item.put("originalUrl", AttributeValue.builder().s(originalUrl).build());
+        item.put("createdAt", AttributeValue.builder().s(createdAt).build());
+        if (redirectPolicy == RedirectPolicy.CACHEABLE) {
+            item.put(RedirectPolicy.ATTRIBUTE, AttributeValue.builder().s(redirectPolicy.name()).build());
+        }
+        return item;
+    }
+}
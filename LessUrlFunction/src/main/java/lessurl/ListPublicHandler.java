@@ -13,12 +13,16 @@ import java.util.stream.Collectors;
 
 public class ListPublicHandler extends BaseHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
 
+    private final String clickCountersTable;
+
     public ListPublicHandler() {
         super();
+        this.clickCountersTable = System.getenv("CLICK_COUNTERS_TABLE");
     }
 
-    protected ListPublicHandler(software.amazon.awssdk.services.dynamodb.DynamoDbClient ddb, software.amazon.awssdk.services.lambda.LambdaClient lambda, software.amazon.awssdk.services.sqs.SqsClient sqs, com.google.gson.Gson gson, String urlsTable) {
+    protected ListPublicHandler(software.amazon.awssdk.services.dynamodb.DynamoDbClient ddb, software.amazon.awssdk.services.lambda.LambdaClient lambda, software.amazon.awssdk.services.sqs.SqsClient sqs, com.google.gson.Gson gson, String urlsTable, String clickCountersTable) {
         super(ddb, lambda, sqs, gson, urlsTable, "*");
+        this.clickCountersTable = clickCountersTable;
     }
 
     @Override
@@ -33,11 +37,14 @@ public class ListPublicHandler extends BaseHandler<APIGatewayProxyRequestEvent,
                     .limit(20)
                     .build());
 
+            // 20개 링크의 샤드 카운터를 BatchGetItem으로 한꺼번에 읽어 합친다
+            Map<String, Long> clicks = ClickCounters.totals(ddb, this.clickCountersTable, res.items());
+
             List<Map<String, String>> items = res.items().stream().map(item -> {
                 Map<String, String> m = Map.of(
                     "shortId", item.get("shortId").s(),
                     "title", item.get("title") != null ? item.get("title").s() : "No Title",
-                    "clickCount", item.get("clickCount").n(),
+                    "clickCount", Long.toString(clicks.get(item.get("shortId").s())),
                     "createdAt", item.get("createdAt").s()
                 );
                 return m;
@@ -7,30 +7,91 @@ import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent
 import com.google.gson.Gson;
 import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
-import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
-import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
-import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
 import software.amazon.awssdk.services.lambda.LambdaClient;
-import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
 
 import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class RedirectHandler extends BaseHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
 
-    private final String analyticsQueueUrl;
+    private static final String NOT_FOUND_BODY = "{\"error\":\"URL not found\"}";
+    private static final String NO_STORE = "no-cache, no-store, must-revalidate";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    // CloudFront 오리진 설정에서 EDGE_ORIGIN_SECRET 값으로 붙이는 헤더. 값이 맞으면 CACHEABLE 링크의 클릭은 CDN 로그로 집계된다
+    static final String EDGE_HEADER = "X-LessUrl-Edge";
+    // CDN을 거친 요청의 sourceIp는 엣지 서버 주소이므로 뷰어 주소("ip:port")는 이 헤더에서 읽는다
+    static final String VIEWER_ADDRESS_HEADER = "CloudFront-Viewer-Address";
+    // 클릭 이벤트 로그 줄의 접두사. 구독 필터가 이 줄만 골라 ClickLogIngestionHandler로 넘기고, 그쪽이 분석 큐로 보낸다
+    static final String CLICK_LOG_MARKER = "LESSURL_CLICK ";
+
+    // 요청 스레드마다 재사용하는 버퍼. MessageDigest는 스레드 안전하지 않으므로 스레드별로 둔다
+    private static final ThreadLocal<HashScratch> HASH_SCRATCH = ThreadLocal.withInitial(HashScratch::new);
+    private static final ThreadLocal<StringBuilder> PAYLOAD_BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(512));
+    // 지표 기록(PutItem)은 응답과 무관하므로 요청 스레드 밖에서 실행한다
+    private static final ExecutorService METRIC_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "redirect-metrics");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final TtlCache<CachedLink> linkCache;
+    private final LinkResolver linkResolver;
+    private final LinkFilterGuard linkFilterGuard;
+    // 비어 있으면 어떤 요청도 CDN을 거친 것으로 보지 않는다
+    private final byte[] edgeSecret;
+    private final long metricIntervalMillis = envLong("REDIRECT_METRIC_INTERVAL_SECONDS", 60) * 1000;
+    private volatile long lastMetricReport = System.currentTimeMillis();
+    private final String cacheableCacheControl = "public, max-age=" + envLong("REDIRECT_CACHE_MAX_AGE_SECONDS", 3600)
+            + ", s-maxage=" + envLong("REDIRECT_CACHE_S_MAXAGE_SECONDS", 86400);
+
+    // 단축 링크는 생성 이후 바뀌지 않으므로 웜 컨테이너에서 원본 URL을 재사용한다
+    record CachedLink(String shortId, String originalUrl, RedirectPolicy redirectPolicy) {}
 
     public RedirectHandler() {
         super();
-        this.analyticsQueueUrl = System.getenv("ANALYTICS_QUEUE_URL");
+        this.linkCache = createLinkCache();
+        this.linkResolver = new LinkResolver(ddb, urlsTable);
+        this.linkFilterGuard = LinkFilterGuard.fromEnv(ddb);
+        this.edgeSecret = secretBytes(System.getenv("EDGE_ORIGIN_SECRET"));
+    }
+
+    protected RedirectHandler(DynamoDbClient ddb, LambdaClient lambda, software.amazon.awssdk.services.sqs.SqsClient sqs, String urlsTable) {
+        this(ddb, lambda, sqs, urlsTable, createLinkCache(), LinkFilterGuard.disabled());
     }
 
-    protected RedirectHandler(DynamoDbClient ddb, LambdaClient lambda, software.amazon.awssdk.services.sqs.SqsClient sqs, String urlsTable, String analyticsQueueUrl) {
+    protected RedirectHandler(DynamoDbClient ddb, LambdaClient lambda, software.amazon.awssdk.services.sqs.SqsClient sqs, String urlsTable, TtlCache<CachedLink> linkCache, LinkFilterGuard linkFilterGuard) {
+        this(ddb, lambda, sqs, urlsTable, linkCache, linkFilterGuard, System.getenv("EDGE_ORIGIN_SECRET"));
+    }
+
+    protected RedirectHandler(DynamoDbClient ddb, LambdaClient lambda, software.amazon.awssdk.services.sqs.SqsClient sqs, String urlsTable, TtlCache<CachedLink> linkCache, LinkFilterGuard linkFilterGuard, String edgeSecret) {
         super(ddb, lambda, sqs, new Gson(), urlsTable, "*");
-        this.analyticsQueueUrl = analyticsQueueUrl;
+        this.linkCache = linkCache;
+        this.linkResolver = new LinkResolver(ddb, urlsTable);
+        this.linkFilterGuard = linkFilterGuard;
+        this.edgeSecret = secretBytes(edgeSecret);
+    }
+
+    private static byte[] secretBytes(String secret) {
+        return secret == null || secret.isEmpty() ? null : secret.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static TtlCache<CachedLink> createLinkCache() {
+        return new TtlCache<>(
+                (int) envLong("LINK_CACHE_MAX_ENTRIES", 10_000),
+                envLong("LINK_CACHE_MAX_BYTES", 16L * 1024 * 1024),
+                envLong("LINK_CACHE_TTL_SECONDS", 300) * 1000,
+                envLong("LINK_CACHE_NEGATIVE_TTL_SECONDS", 5) * 1000,
+                link -> 2L * (link.shortId().length() + link.originalUrl().length()));
+    }
+
+    TtlCache<CachedLink> linkCache() {
+        return linkCache;
     }
 
     @Override
@@ -38,52 +99,37 @@ public class RedirectHandler extends BaseHandler<APIGatewayProxyRequestEvent, AP
         String inputId = input.getPathParameters() != null ? input.getPathParameters().get("shortId") : null;
 
         if (inputId == null || inputId.isEmpty() || inputId.equals("/")) {
-            APIGatewayProxyResponseEvent response = createResponse(301, "");
-            response.getHeaders().put("Location", "https://www.lessurl.site");
-            return response;
+            return createRedirectResponse(301, "https://www.lessurl.site", NO_STORE);
         }
 
         String shortId = inputId.trim();
 
         try {
-            GetItemResponse getResponse = ddb.getItem(GetItemRequest.builder()
-                    .tableName(this.urlsTable)
-                    .key(Map.of("shortId", AttributeValue.builder().s(shortId).build()))
-                    .build());
-
-            Map<String, AttributeValue> item;
-
-            if (getResponse.hasItem()) {
-                item = getResponse.item();
-            } else {
-                software.amazon.awssdk.services.dynamodb.model.QueryResponse queryResponse = ddb.query(software.amazon.awssdk.services.dynamodb.model.QueryRequest.builder()
-                        .tableName(this.urlsTable)
-                        .indexName("CustomAliasIndex")
-                        .keyConditionExpression("customAlias = :alias")
-                        .expressionAttributeValues(Map.of(":alias", AttributeValue.builder().s(shortId).build()))
-                        .limit(1)
-                        .build());
-                
-                if (queryResponse.hasItems() && !queryResponse.items().isEmpty()) {
-                    item = queryResponse.items().get(0);
-                    shortId = item.get("shortId").s();
-                } else {
-                    return createErrorResponse(404, "URL not found");
-                }
+            TtlCache.Lookup<CachedLink> cached = linkCache.get(shortId);
+            if (cached.isNegative()) {
+                return notFound();
             }
-
-            String originalUrl = item.get("originalUrl").s();
-
-            try {
-                sendToAnalyticsQueue(shortId, input, context.getLogger());
-            } catch (Exception e) {
-                context.getLogger().log("[Warning] Failed to send to analytics queue: " + e.getMessage());
+            if (!cached.isHit() && !linkFilterGuard.mightExist(shortId)) {
+                // Bloom filter 기준 확실히 없는 ID. DynamoDB를 조회하지 않는다
+                return notFound();
+            }
+            CachedLink link = cached.isHit() ? cached.value() : loadLink(shortId);
+            if (link == null) {
+                return notFound();
             }
 
-            APIGatewayProxyResponseEvent response = createResponse(301, "");
-            response.getHeaders().put("Location", originalUrl);
-            response.getHeaders().put("Cache-Control", "no-cache, no-store, must-revalidate");
+            APIGatewayProxyResponseEvent response;
+            boolean viaEdge = isEdgeRequest(input);
+            if (link.redirectPolicy() == RedirectPolicy.CACHEABLE) {
+                // CDN을 거친 요청은 CdnLogIngestionHandler가 CDN 로그로 집계하므로 여기서 보내면 중복이 된다
+                if (!viaEdge) emitClick(link, input, false, context);
+                response = createRedirectResponse(301, link.originalUrl(), cacheableCacheControl);
+            } else {
+                emitClick(link, input, viaEdge, context);
+                response = createRedirectResponse(302, link.originalUrl(), NO_STORE);
+            }
 
+            reportMetricsIfDue();
             return response;
 
         } catch (Exception e) {
@@ -91,63 +137,221 @@ public class RedirectHandler extends BaseHandler<APIGatewayProxyRequestEvent, AP
             return createErrorResponse(500, "Internal Server Error");
         }
     }
+
+    // 방금 만든 링크가 아직 필터나 음성 캐시에 반영되지 않아 404가 날 수 있으므로 CDN과 브라우저가 저장하지 않게 한다
+    private APIGatewayProxyResponseEvent notFound() {
+        APIGatewayProxyResponseEvent response = createResponse(404, NOT_FOUND_BODY);
+        response.getHeaders().put("Cache-Control", NO_STORE);
+        return response;
+    }
+
+    private void emitClick(CachedLink link, APIGatewayProxyRequestEvent input, boolean viaEdge, Context context) {
+        try {
+            logClick(link.shortId(), input, viaEdge, context.getLogger());
+        } catch (Exception e) {
+            context.getLogger().log("[Warning] Failed to log click: " + e.getMessage());
+        }
+    }
+
+    // API Gateway 도메인으로 직접 들어온 요청도 헤더는 붙일 수 있으므로 값이 비밀과 같을 때만 믿는다 (비교 시간은 값과 무관)
+    private boolean isEdgeRequest(APIGatewayProxyRequestEvent input) {
+        if (edgeSecret == null || input.getHeaders() == null) return false;
+        String value = input.getHeaders().get(EDGE_HEADER);
+        return value != null && MessageDigest.isEqual(edgeSecret, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private CachedLink loadLink(String inputId) {
+        LinkResolver.Link resolved = linkResolver.resolve(inputId);
+        if (resolved == null) {
+            linkCache.putNegative(inputId);
+            return null;
+        }
+
+        CachedLink link = new CachedLink(resolved.shortId(), resolved.originalUrl(), resolved.redirectPolicy());
+        linkCache.put(inputId, link);
+        return link;
+    }
     
-    private void sendToAnalyticsQueue(String shortId, APIGatewayProxyRequestEvent input, LambdaLogger logger) {
-        if (this.analyticsQueueUrl == null) return;
+    /**
+     * 클릭 이벤트를 로그 한 줄로 남긴다. SQS 전송은 로그 구독(ClickLogIngestionHandler)이 응답과 무관하게 처리하므로
+     * 리다이렉트는 SQS 왕복을 기다리지 않는다. 로그에 쓴 뒤에는 샌드박스가 얼거나 회수되어도 이벤트가 남는다.
+     */
+    private void logClick(String shortId, APIGatewayProxyRequestEvent input, boolean viaEdge, LambdaLogger logger) {
+        Map<String, String> headers = input.getHeaders();
+        String ip = viaEdge ? viewerIp(headers.get(VIEWER_ADDRESS_HEADER)) : null;
+        if (ip == null) {
+            ip = "unknown";
+            if (input.getRequestContext() != null && input.getRequestContext().getIdentity() != null) {
+                ip = input.getRequestContext().getIdentity().getSourceIp();
+            }
+        }
+
+        String userAgent = headers != null ? headers.getOrDefault("User-Agent", "unknown") : "unknown";
+        String referer = headers != null ? headers.getOrDefault("Referer", "direct") : "direct";
+        String country = headers != null ? headers.getOrDefault("CloudFront-Viewer-Country", "unknown") : "unknown";
+
+        logger.log(CLICK_LOG_MARKER + clickPayload(shortId, hashIp(ip), userAgent, referer, country, deviceType(userAgent), null));
+    }
 
-        String ip = "unknown";
-        if (input.getRequestContext() != null && input.getRequestContext().getIdentity() != null) {
-            ip = input.getRequestContext().getIdentity().getSourceIp();
+    /**
+     * CloudFront-Viewer-Address("203.0.113.7:46532", IPv6는 "2001:db8::1:46532")에서 포트를 뗀 주소.
+     */
+    static String viewerIp(String viewerAddress) {
+        if (viewerAddress == null) return null;
+        int port = viewerAddress.lastIndexOf(':');
+        return port > 0 ? viewerAddress.substring(0, port) : null;
+    }
+
+    /**
+     * 모바일 토큰(mobile/android/iphone)이 하나라도 있으면 Mobile, 없고 태블릿 토큰(tablet/ipad)이 있으면 Tablet.
+     * toLowerCase() 사본과 토큰별 반복 검색 대신 User-Agent를 한 번만 훑는다.
+     */
+    static String deviceType(String userAgent) {
+        boolean tablet = false;
+        int length = userAgent.length();
+        for (int i = 0; i < length; i++) {
+            switch (userAgent.charAt(i) | 0x20) {
+                case 'm' -> { if (matchesAt(userAgent, i, "mobile")) return "Mobile"; }
+                case 'a' -> { if (matchesAt(userAgent, i, "android")) return "Mobile"; }
+                case 'i' -> {
+                    if (matchesAt(userAgent, i, "iphone")) return "Mobile";
+                    if (matchesAt(userAgent, i, "ipad")) tablet = true;
+                }
+                case 't' -> { if (matchesAt(userAgent, i, "tablet")) tablet = true; }
+                default -> { }
+            }
         }
+        return tablet ? "Tablet" : "PC";
+    }
 
-        Map<String, String> headers = input.getHeaders() != null ? input.getHeaders() : new HashMap<>();
-        String userAgent = headers.getOrDefault("User-Agent", "unknown");
-        String referer = headers.getOrDefault("Referer", "direct");
-        String country = headers.getOrDefault("CloudFront-Viewer-Country", "unknown");
-
-        String deviceType = "PC";
-        String lowerUA = userAgent.toLowerCase();
-        if (lowerUA.contains("mobile") || lowerUA.contains("android") || lowerUA.contains("iphone")) {
-            deviceType = "Mobile";
-        } else if (lowerUA.contains("tablet") || lowerUA.contains("ipad")) {
-            deviceType = "Tablet";
+    // token은 소문자 ASCII 알파벳이어야 하며, 이 경우 (c | 0x20)으로 대소문자를 접을 수 있다
+    private static boolean matchesAt(String text, int offset, String token) {
+        if (offset + token.length() > text.length()) return false;
+        for (int j = 1; j < token.length(); j++) {
+            if ((text.charAt(offset + j) | 0x20) != token.charAt(j)) return false;
         }
+        return true;
+    }
 
-        Map<String, String> payload = new HashMap<>();
-        payload.put("shortId", shortId);
-        payload.put("ip", hashIp(ip));
-        payload.put("userAgent", userAgent);
-        payload.put("referer", referer);
-        payload.put("country", country);
-        payload.put("deviceType", deviceType);
+    // AnalyticsHandler가 읽는 클릭 이벤트 JSON. 필드가 고정이므로 Map + Gson 대신 직접 쓴다.
+    // clickedAt은 CDN 로그처럼 처리 시각과 클릭 시각이 다른 경우에만 넣는다.
+    static String clickPayload(String shortId, String ipHash, String userAgent, String referer, String country, String deviceType, String clickedAt) {
+        return clickPayload(shortId, ipHash, userAgent, referer, country, deviceType, clickedAt, null);
+    }
 
-        SendMessageRequest sendMsgRequest = SendMessageRequest.builder()
-                .queueUrl(this.analyticsQueueUrl)
-                .messageBody(gson.toJson(payload))
-                .build();
+    // clickId는 로그 수집 핸들러가 원본 로그 항목에서 만든 값이다. 재시도로 다시 보내도 같아 AnalyticsHandler가 중복을 거른다
+    static String clickPayload(String shortId, String ipHash, String userAgent, String referer, String country, String deviceType, String clickedAt,
+                               String clickId) {
+        StringBuilder sb = PAYLOAD_BUILDER.get();
+        sb.setLength(0);
+        sb.append("{\"shortId\":");
+        appendJsonString(sb, shortId);
+        sb.append(",\"ip\":");
+        appendJsonString(sb, ipHash);
+        sb.append(",\"userAgent\":");
+        appendJsonString(sb, userAgent);
+        sb.append(",\"referer\":");
+        appendJsonString(sb, referer);
+        sb.append(",\"country\":");
+        appendJsonString(sb, country);
+        sb.append(",\"deviceType\":");
+        appendJsonString(sb, deviceType);
+        if (clickedAt != null) {
+            sb.append(",\"clickedAt\":");
+            appendJsonString(sb, clickedAt);
+        }
+        if (clickId != null) {
+            sb.append(",\"clickId\":");
+            appendJsonString(sb, clickId);
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private static void appendJsonString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        sb.append("\\u").append(HEX[(c >> 12) & 0xf]).append(HEX[(c >> 8) & 0xf]).append(HEX[(c >> 4) & 0xf]).append(HEX[c & 0xf]);
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    // 캐시/필터 지표는 일정 주기로만 모니터 테이블에 남기고, 기록 자체는 지표 전용 스레드에서 수행한다
+    private void reportMetricsIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - lastMetricReport < metricIntervalMillis) return;
+        lastMetricReport = now;
 
-        sqs.sendMessage(sendMsgRequest);
-        logger.log("[Success] Sent to AnalyticsQueue for " + shortId);
+        Map<String, Object> data = new HashMap<>();
+        data.put("linkCache", linkCache.stats());
+        data.put("linkFilter", linkFilterGuard.stats());
+        METRIC_EXECUTOR.submit(() -> recordMetric("REDIRECT_PIPELINE", data));
     }
 
-    private String hashIp(String ip) {
+    /**
+     * SHA-256 앞 8바이트의 16진수 표현. 다이제스트와 입력/출력 버퍼는 스레드별로 재사용한다.
+     */
+    static String hashIp(String ip) {
         if (ip == null || ip.equals("unknown")) return "unknown";
+        HashScratch scratch = HASH_SCRATCH.get();
+        if (scratch.digest == null) return "unknown";
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] encodedhash = digest.digest(ip.getBytes(StandardCharsets.UTF_8));
-            return bytesToHex(encodedhash).substring(0, 16);
-        } catch (NoSuchAlgorithmException e) {
+            scratch.digest.reset();
+            if (!scratch.updateAscii(ip)) scratch.digest.update(ip.getBytes(StandardCharsets.UTF_8));
+            scratch.digest.digest(scratch.out, 0, scratch.out.length);
+        } catch (DigestException e) {
             return "unknown";
         }
+
+        char[] hex = scratch.hex;
+        for (int i = 0; i < 8; i++) {
+            int b = scratch.out[i] & 0xff;
+            hex[i * 2] = HEX[b >>> 4];
+            hex[i * 2 + 1] = HEX[b & 0xf];
+        }
+        return new String(hex);
     }
 
-    private String bytesToHex(byte[] hash) {
-        StringBuilder hexString = new StringBuilder(2 * hash.length);
-        for (byte b : hash) {
-            String hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1) hexString.append('0');
-            hexString.append(hex);
+    private static final class HashScratch {
+        final MessageDigest digest;
+        final byte[] in = new byte[64];
+        final byte[] out = new byte[32];
+        final char[] hex = new char[16];
+
+        HashScratch() {
+            MessageDigest md;
+            try {
+                md = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                md = null;
+            }
+            this.digest = md;
+        }
+
+        // IP 주소는 ASCII이므로 getBytes() 없이 재사용 버퍼에 옮겨 담는다. 그 외 입력은 false를 돌려 호출 측이 처리한다
+        boolean updateAscii(String value) {
+            if (value.length() > in.length) return false;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c >= 0x80) return false;
+                in[i] = (byte) c;
+            }
+            digest.update(in, 0, value.length());
+            return true;
         }
-        return hexString.toString();
     }
 }
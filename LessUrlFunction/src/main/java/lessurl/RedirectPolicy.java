@@ -0,0 +1,35 @@
+package lessurl;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.Map;
+
+/**
+ * 링크별 리다이렉트 방식.
+ * TRACKED: 302 + no-store. 매 클릭이 RedirectFunction을 거치며 클릭 이벤트를 직접 보낸다 (기본값).
+ * CACHEABLE: 301 + max-age/s-maxage. CDN과 브라우저가 응답을 재사용하고, 클릭 수는 CDN 로그에서 집계한다.
+ */
+public enum RedirectPolicy {
+    TRACKED,
+    CACHEABLE;
+
+    public static final String ATTRIBUTE = "redirectPolicy";
+
+    /**
+     * 요청 값 해석. 비어 있으면 TRACKED, 알 수 없는 값이면 null.
+     */
+    public static RedirectPolicy parse(String value) {
+        if (value == null || value.isBlank()) return TRACKED;
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // 속성이 없는 과거 링크는 TRACKED로 본다
+    public static RedirectPolicy of(Map<String, AttributeValue> item) {
+        AttributeValue value = item.get(ATTRIBUTE);
+        return value != null && CACHEABLE.name().equals(value.s()) ? CACHEABLE : TRACKED;
+    }
+}
@@ -0,0 +1,213 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.LambdaRuntime;
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Safe Browsing 위협 목록의 해시 접두사(4바이트)를 정렬된 int 배열로 들고 있는 로컬 데이터베이스.
+ * SafeBrowsingSyncHandler가 S3에 올린 스냅샷을 초기화(또는 SnapStart 복원) 시점에 읽고 주기적으로 다시 읽는다.
+ *
+ * 접두사에 걸리지 않은 URL은 목록에 없는 것이므로 원격 호출 없이 안전으로 끝난다.
+ * 걸린 경우에만 UrlSafetyChecker가 fullHashes:find로 전체 해시를 확인한다.
+ * 스냅샷이 없거나 maxAge보다 오래되면 isReady()가 false가 되어 기존 threatMatches:find 경로를 쓴다.
+ */
+public class SafeBrowsingLocalDb implements Resource {
+
+    private static final int MAGIC = 0x4C555342; // "LUSB"
+    private static final int VERSION = 1;
+    public static final int PREFIX_BYTES = 4;
+
+    public record Snapshot(int[] prefixes, long snapshotAt) {}
+
+    private final S3Client s3;
+    private final String bucket;
+    private final String key;
+    private final long reloadIntervalMillis;
+    private final long maxAgeMillis;
+    private final LambdaLogger logger;
+
+    private volatile int[] prefixes;
+    private volatile long snapshotAt;
+    private volatile long loadedAt;
+    private volatile String etag;
+
+    private final AtomicBoolean reloading = new AtomicBoolean();
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "safe-browsing-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong localMisses = new AtomicLong();
+    private final AtomicLong prefixHits = new AtomicLong();
+
+    SafeBrowsingLocalDb(S3Client s3, String bucket, String key, long reloadIntervalMillis, long maxAgeMillis, LambdaLogger logger) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.key = key;
+        this.reloadIntervalMillis = reloadIntervalMillis;
+        this.maxAgeMillis = maxAgeMillis;
+        this.logger = logger;
+    }
+
+    public static SafeBrowsingLocalDb fromEnv() {
+        String bucket = System.getenv("SAFE_BROWSING_SNAPSHOT_BUCKET");
+        if (bucket == null || bucket.isEmpty() || "false".equalsIgnoreCase(System.getenv("SAFE_BROWSING_LOCAL_DB"))) return disabled();
+
+        SafeBrowsingLocalDb db = new SafeBrowsingLocalDb(
+                S3Client.builder().httpClient(UrlConnectionHttpClient.create()).build(),
+                bucket,
+                System.getenv().getOrDefault("SAFE_BROWSING_SNAPSHOT_KEY", "safe-browsing/prefixes.bin"),
+                BaseHandler.envLong("SAFE_BROWSING_RELOAD_INTERVAL_MINUTES", 30) * 60_000,
+                BaseHandler.envLong("SAFE_BROWSING_MAX_AGE_HOURS", 6) * 3_600_000,
+                LambdaRuntime.getLogger());
+        db.load();
+        Core.getGlobalContext().register(db);
+        return db;
+    }
+
+    public static SafeBrowsingLocalDb disabled() {
+        return new SafeBrowsingLocalDb(null, null, null, 0, 0, LambdaRuntime.getLogger());
+    }
+
+    /**
+     * 로컬 판정을 믿어도 되는 상태인지. 오래된 목록은 새로 등록된 위협을 놓치므로 원격 조회로 돌린다.
+     */
+    public boolean isReady() {
+        if (s3 == null) return false;
+        long now = System.currentTimeMillis();
+        if (now - loadedAt >= reloadIntervalMillis) reloadInBackground();
+        return prefixes != null && now - snapshotAt <= maxAgeMillis;
+    }
+
+    /**
+     * 접두사가 목록에 있는 전체 해시만 돌려준다. 비어 있으면 URL은 목록에 없다.
+     */
+    public List<byte[]> prefixMatches(List<byte[]> fullHashes) {
+        int[] current = prefixes;
+        List<byte[]> matched = new ArrayList<>(0);
+        if (current == null) return matched;
+        for (byte[] hash : fullHashes) {
+            if (Arrays.binarySearch(current, prefixOf(hash)) >= 0) matched.add(hash);
+        }
+        if (matched.isEmpty()) localMisses.incrementAndGet();
+        else prefixHits.incrementAndGet();
+        return matched;
+    }
+
+    public static int prefixOf(byte[] hash) {
+        return ((hash[0] & 0xFF) << 24) | ((hash[1] & 0xFF) << 16) | ((hash[2] & 0xFF) << 8) | (hash[3] & 0xFF);
+    }
+
+    /**
+     * 스냅샷이 바뀌었을 때만 읽는다. 실패하면 기존 배열을 그대로 쓰고, maxAge가 지나면 원격 조회로 넘어간다.
+     */
+    synchronized void load() {
+        GetObjectRequest.Builder request = GetObjectRequest.builder().bucket(bucket).key(key);
+        if (etag != null && prefixes != null) request.ifNoneMatch(etag);
+        try (ResponseInputStream<GetObjectResponse> in = s3.getObject(request.build())) {
+            Snapshot snapshot = readFrom(new BufferedInputStream(in, 64 * 1024));
+            this.prefixes = snapshot.prefixes();
+            this.snapshotAt = snapshot.snapshotAt();
+            this.etag = in.response().eTag();
+            this.loadedAt = System.currentTimeMillis();
+            logger.log("[SafeBrowsing] Loaded snapshot " + Instant.ofEpochMilli(snapshotAt) + " (" + snapshot.prefixes().length + " prefixes)");
+        } catch (S3Exception e) {
+            this.loadedAt = System.currentTimeMillis();
+            if (e.statusCode() != 304) logger.log("[SafeBrowsing] Failed to load snapshot: " + e.getMessage());
+        } catch (Exception e) {
+            this.loadedAt = System.currentTimeMillis();
+            logger.log("[SafeBrowsing] Failed to load snapshot: " + e.getMessage());
+        }
+    }
+
+    private void reloadInBackground() {
+        if (!reloading.compareAndSet(false, true)) return;
+        loader.submit(() -> {
+            try {
+                load();
+            } finally {
+                reloading.set(false);
+            }
+        });
+    }
+
+    /**
+     * 접두사 배열을 정렬·중복 제거해서 쓴다.
+     */
+    public static void writeTo(OutputStream out, int[] prefixes, long snapshotAt) throws IOException {
+        int[] sorted = Arrays.stream(prefixes).sorted().distinct().toArray();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeLong(snapshotAt);
+        data.writeInt(sorted.length);
+        for (int prefix : sorted) data.writeInt(prefix);
+        data.flush();
+    }
+
+    public static Snapshot readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) throw new IOException("Not a Safe Browsing snapshot");
+        int version = data.readInt();
+        if (version != VERSION) throw new IOException("Unsupported snapshot version " + version);
+        long snapshotAt = data.readLong();
+        int[] prefixes = new int[data.readInt()];
+        for (int i = 0; i < prefixes.length; i++) prefixes[i] = data.readInt();
+        // 이분 탐색의 전제 조건. 쓰는 쪽이 정렬하지만 손상된 파일로 놓치는 일이 없게 확인한다
+        for (int i = 1; i < prefixes.length; i++) {
+            if (prefixes[i - 1] > prefixes[i]) {
+                Arrays.sort(prefixes);
+                break;
+            }
+        }
+        return new Snapshot(prefixes, snapshotAt);
+    }
+
+    @Override
+    public void beforeCheckpoint(Context<? extends Resource> context) {
+    }
+
+    @Override
+    public void afterRestore(Context<? extends Resource> context) {
+        // 스냅샷에 담긴 목록은 배포 시점 것이므로 복원 직후 다시 읽는다
+        loadedAt = 0;
+        reloadInBackground();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("ready", isReady());
+        stats.put("prefixes", prefixes != null ? prefixes.length : 0);
+        stats.put("snapshotAt", snapshotAt);
+        stats.put("localMisses", localMisses.get());
+        stats.put("prefixHits", prefixHits.get());
+        return stats;
+    }
+}
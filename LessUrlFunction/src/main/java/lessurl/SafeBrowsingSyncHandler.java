@@ -0,0 +1,141 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Safe Browsing 위협 목록 전체를 threatListUpdates:fetch로 받아 4바이트 접두사 스냅샷을 S3에 올리는 주기 작업.
+ * 상태를 보관하지 않고 매번 전체 목록(FULL_UPDATE)을 받는다. 목록별 checksum이 맞지 않으면 스냅샷을 바꾸지 않는다.
+ * 4바이트보다 긴 접두사는 앞 4바이트만 남긴다. 로컬에서 더 넓게 걸릴 뿐 fullHashes:find 확인에서 걸러진다.
+ */
+public class SafeBrowsingSyncHandler extends BaseHandler<ScheduledEvent, String> {
+
+    private static final String UPDATES_ENDPOINT = "https://safebrowsing.googleapis.com/v4/threatListUpdates:fetch?key=";
+
+    private final S3Client s3 = S3Client.builder().httpClient(UrlConnectionHttpClient.create()).build();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(15))
+            .build();
+
+    @Override
+    public String handleRequest(ScheduledEvent event, Context context) {
+        LambdaLogger logger = context.getLogger();
+        String apiKey = System.getenv("SAFE_BROWSING_API_KEY");
+        String bucket = System.getenv("SAFE_BROWSING_SNAPSHOT_BUCKET");
+        String key = System.getenv().getOrDefault("SAFE_BROWSING_SNAPSHOT_KEY", "safe-browsing/prefixes.bin");
+        long startedAt = System.currentTimeMillis();
+
+        int[] prefixes;
+        try {
+            prefixes = fetchPrefixes(apiKey);
+        } catch (Exception e) {
+            logger.log("[Error] Failed to fetch Safe Browsing lists: " + e.getMessage());
+            throw new RuntimeException(e);
+        }
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(prefixes.length * SafeBrowsingLocalDb.PREFIX_BYTES + 64);
+            SafeBrowsingLocalDb.writeTo(out, prefixes, startedAt);
+            s3.putObject(PutObjectRequest.builder()
+                            .bucket(bucket)
+                            .key(key)
+                            .contentType("application/octet-stream")
+                            .metadata(Map.of("prefixes", Integer.toString(prefixes.length)))
+                            .build(),
+                    RequestBody.fromBytes(out.toByteArray()));
+        } catch (Exception e) {
+            logger.log("[Error] Failed to publish Safe Browsing snapshot: " + e.getMessage());
+            throw new RuntimeException(e);
+        }
+
+        String summary = String.format("prefixes=%d tookMs=%d", prefixes.length, System.currentTimeMillis() - startedAt);
+        logger.log("[SafeBrowsing] Published snapshot: " + summary);
+        return summary;
+    }
+
+    private int[] fetchPrefixes(String apiKey) throws Exception {
+        List<Map<String, Object>> listRequests = new ArrayList<>();
+        for (String threatType : UrlSafetyChecker.THREAT_TYPES) {
+            listRequests.add(Map.of(
+                    "threatType", threatType,
+                    "platformType", "ANY_PLATFORM",
+                    "threatEntryType", "URL",
+                    "state", "",
+                    "constraints", Map.of("supportedCompressions", List.of("RAW"))));
+        }
+        Map<String, Object> body = Map.of("client", UrlSafetyChecker.CLIENT, "listUpdateRequests", listRequests);
+        HttpRequest req = HttpRequest.newBuilder().uri(URI.create(UPDATES_ENDPOINT + apiKey)).header("Content-Type", "application/json").timeout(Duration.ofSeconds(60)).POST(HttpRequest.BodyPublishers.ofString(gson.toJson(body))).build();
+        HttpResponse<String> res = httpClient.send(req, HttpResponse.BodyHandlers.ofString());
+        if (res.statusCode() != 200) throw new IllegalStateException("Safe Browsing returned " + res.statusCode());
+
+        return prefixesOf(JsonCodec.GSON.fromJson(res.body(), JsonCodec.ListUpdates.class), listRequests.size());
+    }
+
+    /**
+     * 요청한 목록 수만큼의 FULL_UPDATE 응답에서 4바이트 접두사를 모은다. 목록이 빠졌거나 checksum이 맞지 않으면 예외.
+     */
+    static int[] prefixesOf(JsonCodec.ListUpdates updates, int expectedLists) throws Exception {
+        List<JsonCodec.ListUpdateResponse> responses = updates != null ? updates.listUpdateResponses() : null;
+        if (responses == null || responses.size() != expectedLists) throw new IllegalStateException("Incomplete list update response");
+
+        List<int[]> lists = new ArrayList<>();
+        int total = 0;
+        for (JsonCodec.ListUpdateResponse list : responses) {
+            if (!"FULL_UPDATE".equals(list.responseType())) throw new IllegalStateException("Expected FULL_UPDATE for " + list.threatType());
+
+            List<byte[]> entries = new ArrayList<>();
+            for (JsonCodec.ThreatEntrySet addition : list.additions() != null ? list.additions() : List.<JsonCodec.ThreatEntrySet>of()) {
+                JsonCodec.RawHashes raw = addition.rawHashes();
+                if (raw == null || raw.rawHashes() == null) continue;
+                int prefixSize = raw.prefixSize();
+                if (prefixSize < SafeBrowsingLocalDb.PREFIX_BYTES) throw new IllegalStateException("Unexpected prefix size " + prefixSize + " for " + list.threatType());
+                byte[] bytes = Base64.getDecoder().decode(raw.rawHashes());
+                for (int i = 0; i + prefixSize <= bytes.length; i += prefixSize) entries.add(Arrays.copyOfRange(bytes, i, i + prefixSize));
+            }
+            verifyChecksum(list, entries);
+
+            int[] prefixes = new int[entries.size()];
+            for (int i = 0; i < prefixes.length; i++) prefixes[i] = SafeBrowsingLocalDb.prefixOf(entries.get(i));
+            lists.add(prefixes);
+            total += prefixes.length;
+        }
+
+        int[] merged = new int[total];
+        int offset = 0;
+        for (int[] prefixes : lists) {
+            System.arraycopy(prefixes, 0, merged, offset, prefixes.length);
+            offset += prefixes.length;
+        }
+        return merged;
+    }
+
+    // checksum은 목록 전체를 바이트 사전순으로 정렬해 이어 붙인 값의 SHA-256이다
+    private static void verifyChecksum(JsonCodec.ListUpdateResponse list, List<byte[]> entries) throws Exception {
+        JsonCodec.Checksum checksum = list.checksum();
+        if (checksum == null || checksum.sha256() == null) throw new IllegalStateException("Missing checksum for " + list.threatType());
+        entries.sort(Arrays::compareUnsigned);
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        for (byte[] entry : entries) sha256.update(entry);
+        byte[] expected = Base64.getDecoder().decode(checksum.sha256());
+        if (!MessageDigest.isEqual(expected, sha256.digest())) throw new IllegalStateException("Checksum mismatch for " + list.threatType());
+    }
+}
@@ -0,0 +1,254 @@
+package lessurl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Safe Browsing 업데이트 프로토콜(v4)의 URL 정규화와 host/path 조합(suffix/prefix expression).
+ * UrlNormalizer(판정 캐시·중복 제거 키)와 규칙이 다르다. 목록의 해시와 비교하려면 Google이 정한 규칙을 그대로 따라야 한다.
+ *
+ * 문자열은 UTF-8 바이트를 ISO-8859-1로 읽어 문자 하나가 바이트 하나가 되게 다룬다.
+ */
+public final class SafeBrowsingUrl {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final int MAX_HOST_SUFFIXES = 5;
+    private static final int MAX_PATH_PREFIXES = 4;
+
+    private SafeBrowsingUrl() {}
+
+    /**
+     * 정규화된 URL. host에는 포트와 사용자 정보가 없고 path는 항상 '/'로 시작한다. query는 '?'를 포함하며 없으면 null.
+     */
+    public record Canonical(String scheme, String host, String path, String query, boolean ipAddress) {
+        @Override
+        public String toString() {
+            return scheme + "://" + host + path + (query != null ? query : "");
+        }
+    }
+
+    public static Canonical canonicalize(String raw) {
+        if (raw == null) return null;
+        String s = new String(raw.strip().getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+        s = s.replace("\t", "").replace("\r", "").replace("\n", "");
+        int hash = s.indexOf('#');
+        if (hash >= 0) s = s.substring(0, hash);
+        s = unescapeFully(s);
+
+        String scheme = "http";
+        int schemeEnd = s.indexOf("://");
+        if (schemeEnd > 0 && s.substring(0, schemeEnd).chars().allMatch(c -> Character.isLetterOrDigit(c) || c == '+' || c == '-' || c == '.')) {
+            scheme = s.substring(0, schemeEnd).toLowerCase();
+            s = s.substring(schemeEnd + 3);
+        }
+
+        int authorityEnd = s.length();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '/' || c == '?') {
+                authorityEnd = i;
+                break;
+            }
+        }
+        String authority = s.substring(0, authorityEnd);
+        String rest = s.substring(authorityEnd);
+
+        int at = authority.lastIndexOf('@');
+        if (at >= 0) authority = authority.substring(at + 1);
+        int colon = authority.lastIndexOf(':');
+        if (colon >= 0 && !authority.startsWith("[")) authority = authority.substring(0, colon);
+
+        String host = canonicalHost(authority);
+        if (host.isEmpty()) return null;
+        String ip = parseIpv4(host);
+        if (ip != null) host = ip;
+
+        String path = rest;
+        String query = null;
+        int q = rest.indexOf('?');
+        if (q >= 0) {
+            path = rest.substring(0, q);
+            query = rest.substring(q);
+        }
+        path = canonicalPath(path);
+
+        return new Canonical(scheme, escape(host), escape(path), query != null ? escape(query) : null, ip != null);
+    }
+
+    /**
+     * 조회할 host/path 조합. 최대 5개 host × 6개 path.
+     */
+    public static List<String> expressions(Canonical url) {
+        List<String> hosts = new ArrayList<>(MAX_HOST_SUFFIXES);
+        hosts.add(url.host());
+        if (!url.ipAddress()) {
+            String[] labels = url.host().split("\\.");
+            // 마지막 다섯 개 label부터 앞에서 하나씩 떼어 낸다. 최상위 도메인만 남은 경우는 제외한다
+            int start = Math.max(1, labels.length - MAX_HOST_SUFFIXES);
+            for (int i = start; i <= labels.length - 2 && hosts.size() < MAX_HOST_SUFFIXES; i++) {
+                hosts.add(String.join(".", Arrays.copyOfRange(labels, i, labels.length)));
+            }
+        }
+
+        Set<String> paths = new LinkedHashSet<>();
+        if (url.query() != null) paths.add(url.path() + url.query());
+        paths.add(url.path());
+        String prefix = "/";
+        paths.add(prefix);
+        int count = 1;
+        int from = 1;
+        int slash;
+        while (count < MAX_PATH_PREFIXES && (slash = url.path().indexOf('/', from)) >= 0) {
+            prefix = url.path().substring(0, slash + 1);
+            paths.add(prefix);
+            count++;
+            from = slash + 1;
+        }
+
+        List<String> expressions = new ArrayList<>(hosts.size() * paths.size());
+        for (String host : hosts) {
+            for (String path : paths) expressions.add(host + path);
+        }
+        return expressions;
+    }
+
+    /**
+     * 모든 조합의 SHA-256. 정규화할 수 없는 URL이면 빈 목록.
+     */
+    public static List<byte[]> fullHashes(String url) {
+        Canonical canonical = canonicalize(url);
+        if (canonical == null) return List.of();
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            List<byte[]> hashes = new ArrayList<>();
+            for (String expression : expressions(canonical)) {
+                hashes.add(sha256.digest(expression.getBytes(StandardCharsets.ISO_8859_1)));
+            }
+            return hashes;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String unescapeFully(String s) {
+        String previous;
+        do {
+            previous = s;
+            s = unescapeOnce(s);
+        } while (!s.equals(previous));
+        return s;
+    }
+
+    private static String unescapeOnce(String s) {
+        if (s.indexOf('%') < 0) return s;
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '%' && i + 2 < s.length() && hexValue(s.charAt(i + 1)) >= 0 && hexValue(s.charAt(i + 2)) >= 0) {
+                sb.append((char) (hexValue(s.charAt(i + 1)) * 16 + hexValue(s.charAt(i + 2))));
+                i += 2;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        return -1;
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c <= 32 || c >= 127 || c == '#' || c == '%') {
+                if (sb == null) sb = new StringBuilder(s.length() + 8).append(s, 0, i);
+                sb.append('%').append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return sb != null ? sb.toString() : s;
+    }
+
+    // 앞뒤 점 제거, 연속된 점을 하나로, ASCII 소문자
+    private static String canonicalHost(String host) {
+        StringBuilder sb = new StringBuilder(host.length());
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (c == '.' && (sb.isEmpty() || sb.charAt(sb.length() - 1) == '.')) continue;
+            sb.append(c >= 'A' && c <= 'Z' ? (char) (c + 32) : c);
+        }
+        while (!sb.isEmpty() && sb.charAt(sb.length() - 1) == '.') sb.setLength(sb.length() - 1);
+        return sb.toString();
+    }
+
+    /**
+     * inet_aton 규칙(8진수·16진수, 네 부분보다 짧은 표기)으로 읽히면 점 네 개짜리 10진수로 바꾼다. 아니면 null.
+     */
+    static String parseIpv4(String host) {
+        String[] parts = host.split("\\.", -1);
+        if (parts.length > 4) return null;
+        long[] values = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            long value = parseIpPart(parts[i]);
+            if (value < 0) return null;
+            values[i] = value;
+        }
+        long address = 0;
+        for (int i = 0; i < parts.length - 1; i++) {
+            if (values[i] > 255) return null;
+            address |= values[i] << (8 * (3 - i));
+        }
+        long last = values[parts.length - 1];
+        if (last >= 1L << (8 * (5 - parts.length))) return null;
+        address |= last;
+        return ((address >> 24) & 0xFF) + "." + ((address >> 16) & 0xFF) + "." + ((address >> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+
+    private static long parseIpPart(String part) {
+        if (part.isEmpty() || part.length() > 12) return -1;
+        int radix = 10;
+        String digits = part;
+        if (part.length() > 2 && (part.startsWith("0x") || part.startsWith("0X"))) {
+            radix = 16;
+            digits = part.substring(2);
+        } else if (part.length() > 1 && part.charAt(0) == '0') {
+            radix = 8;
+            digits = part.substring(1);
+        }
+        try {
+            return Long.parseLong(digits, radix);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // "."과 ".." 처리, 연속된 '/'를 하나로. 마지막 '/'는 유지한다
+    private static String canonicalPath(String path) {
+        if (path.isEmpty()) return "/";
+        String[] segments = path.split("/", -1);
+        List<String> kept = new ArrayList<>(segments.length);
+        for (String segment : segments) {
+            if (segment.isEmpty() || segment.equals(".")) continue;
+            if (segment.equals("..")) {
+                if (!kept.isEmpty()) kept.remove(kept.size() - 1);
+                continue;
+            }
+            kept.add(segment);
+        }
+        String last = segments[segments.length - 1];
+        boolean trailingSlash = last.isEmpty() || last.equals(".") || last.equals("..");
+        if (kept.isEmpty()) return "/";
+        return "/" + String.join("/", kept) + (trailingSlash ? "/" : "");
+    }
+}
@@ -0,0 +1,146 @@
+package lessurl;
+
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+
+/**
+ * 원자적 카운터(IdSequenceTable)에서 순번 블록을 임대해 7자리 Base62 shortId로 바꾼다.
+ * 순번은 비밀 키를 쓴 Feistel 순열로 섞어 0..62^7-1 범위 안에서 일대일로 대응시키므로,
+ * 같은 순번이 두 번 나오지 않는 한 ID도 겹치지 않고 연속된 순번이 연속된 ID로 보이지도 않는다.
+ *
+ * 컨테이너마다 블록을 따로 받으므로 ID 발급에는 DynamoDB 호출이 없다. 블록당 UpdateItem 한 번이다.
+ * 쓰이지 않고 버려진 블록의 순번은 다시 쓰지 않는다.
+ */
+public class SequenceIdAllocator implements Resource {
+
+    public static final int ID_LENGTH = 7;
+
+    private static final String BASE62_CHARS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    // 62^7. 이 범위 밖의 값은 Feistel 순열을 한 번 더 적용해 범위 안으로 들어올 때까지 걷는다(cycle walking)
+    static final long ID_SPACE = 3_521_614_606_208L;
+    private static final int HALF_BITS = 21; // 2^42 > 62^7
+    private static final long HALF_MASK = (1L << HALF_BITS) - 1;
+    private static final int ROUNDS = 4;
+    private static final String COUNTER_KEY = "counterName";
+    private static final String COUNTER_NAME = "shortId";
+
+    private final DynamoDbClient ddb;
+    private final String tableName;
+    private final long blockSize;
+    private final long[] roundKeys = new long[ROUNDS];
+
+    private long next;
+    private long end;
+
+    SequenceIdAllocator(DynamoDbClient ddb, String tableName, long blockSize, String scrambleKey) {
+        this.ddb = ddb;
+        this.tableName = tableName;
+        this.blockSize = blockSize;
+        long seed = seed(scrambleKey);
+        for (int i = 0; i < ROUNDS; i++) {
+            seed = mix(seed + 0x9E3779B97F4A7C15L);
+            roundKeys[i] = seed;
+        }
+    }
+
+    /**
+     * ID_MODE가 random이거나 카운터 테이블/섞기 키가 없으면 null. 이 경우 호출 측은 기존 랜덤 ID 방식을 쓴다.
+     */
+    public static SequenceIdAllocator fromEnv(DynamoDbClient ddb) {
+        String tableName = System.getenv("ID_SEQUENCE_TABLE");
+        String scrambleKey = System.getenv("ID_SCRAMBLE_KEY");
+        if ("random".equalsIgnoreCase(System.getenv("ID_MODE"))
+                || tableName == null || tableName.isEmpty()
+                || scrambleKey == null || scrambleKey.isEmpty()) {
+            return null;
+        }
+        SequenceIdAllocator allocator = new SequenceIdAllocator(ddb, tableName, BaseHandler.envLong("ID_BLOCK_SIZE", 1000), scrambleKey);
+        Core.getGlobalContext().register(allocator);
+        return allocator;
+    }
+
+    public synchronized String next() {
+        if (next >= end) lease();
+        return encode(scramble(next++));
+    }
+
+    private void lease() {
+        Map<String, AttributeValue> attributes = ddb.updateItem(UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(Map.of(COUNTER_KEY, AttributeValue.builder().s(COUNTER_NAME).build()))
+                .updateExpression("ADD nextValue :block")
+                .expressionAttributeValues(Map.of(":block", AttributeValue.builder().n(Long.toString(blockSize)).build()))
+                .returnValues(ReturnValue.UPDATED_NEW)
+                .build()).attributes();
+        long leasedEnd = Long.parseLong(attributes.get("nextValue").n());
+        if (leasedEnd > ID_SPACE) throw new IllegalStateException("Short ID space exhausted");
+        this.next = leasedEnd - blockSize;
+        this.end = leasedEnd;
+    }
+
+    long scramble(long sequence) {
+        long value = sequence;
+        do {
+            value = feistel(value);
+        } while (value >= ID_SPACE);
+        return value;
+    }
+
+    private long feistel(long value) {
+        long left = value >>> HALF_BITS;
+        long right = value & HALF_MASK;
+        for (long key : roundKeys) {
+            long mixed = left ^ (mix(right ^ key) & HALF_MASK);
+            left = right;
+            right = mixed;
+        }
+        return (left << HALF_BITS) | right;
+    }
+
+    static String encode(long value) {
+        char[] chars = new char[ID_LENGTH];
+        for (int i = ID_LENGTH - 1; i >= 0; i--) {
+            chars[i] = BASE62_CHARS.charAt((int) (value % 62));
+            value /= 62;
+        }
+        return new String(chars);
+    }
+
+    // splitmix64 마무리 함수
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long seed(String scrambleKey) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(scrambleKey.getBytes(StandardCharsets.UTF_8));
+            long seed = 0;
+            for (int i = 0; i < 8; i++) seed = (seed << 8) | (digest[i] & 0xFF);
+            return seed;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public synchronized void beforeCheckpoint(Context<? extends Resource> context) {
+        // 스냅샷에 남은 블록을 복원된 컨테이너들이 나눠 쓰면 ID가 겹친다
+        this.next = this.end;
+    }
+
+    @Override
+    public synchronized void afterRestore(Context<? extends Resource> context) {
+        this.next = this.end;
+    }
+}
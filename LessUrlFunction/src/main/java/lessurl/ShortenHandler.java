@@ -8,38 +8,110 @@ import com.google.gson.Gson;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
 
-import java.net.URI;
 import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class ShortenHandler extends BaseHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
 
-    private final String geminiApiKey;
-    private final String safeBrowsingApiKey;
-    private final HttpClient httpClient;
+    private final UrlSafetyChecker safetyChecker;
+    private final LinkDeltaLog linkDeltaLog;
+    private final long checkDeadlineMillis;
+    private final VerdictCache verdictCache;
+    private final TitleGenerator titleGenerator;
+    // 설정되어 있으면 제목 생성을 TitleEnrichmentHandler로 넘기고 링크는 임시 제목으로 먼저 저장한다
+    private final String titleQueueUrl;
+    // null이면 랜덤 ID를 뽑고 저장 전에 존재 여부를 확인하는 기존 방식(ID_MODE=random)
+    private final SequenceIdAllocator idAllocator;
+    // 켜져 있으면 alias 없는 요청은 같은 URL·공개 범위·정책의 기존 링크를 돌려준다(SHORTEN_DEDUP)
+    private final boolean dedupEnabled;
+    // 포인터 없이 인덱스에만 남은 과거 alias도 확인할지 여부(ALIAS_INDEX_FALLBACK). 포인터가 있는 alias는 조건부 저장이 걸러 낸다
+    private final boolean aliasIndexFallback;
+
+    // 외부 API 호출은 대부분 대기 시간이므로 호출마다 가상 스레드를 쓴다
+    private static final ExecutorService CHECK_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * 동시에 실행한 검사 결과. 기한 안에 끝나지 않은 검사는 기존과 같이 안전/기본 제목으로 본다.
+     */
+    record UrlChecks(boolean aiMalicious, boolean safeBrowsingMalicious, boolean safetyComplete, String title, Map<String, Object> timings) {
+        boolean malicious() {
+            return aiMalicious || safeBrowsingMalicious;
+        }
+    }
 
     public ShortenHandler() {
         super();
-        this.geminiApiKey = System.getenv("GEMINI_API_KEY");
-        this.safeBrowsingApiKey = System.getenv("SAFE_BROWSING_API_KEY");
-        this.httpClient = HttpClient.newBuilder()
+        String geminiApiKey = System.getenv("GEMINI_API_KEY");
+        HttpClient httpClient = HttpClient.newBuilder()
                 .version(HttpClient.Version.HTTP_1_1)
                 .connectTimeout(Duration.ofSeconds(15))
                 .build();
+        this.safetyChecker = new UrlSafetyChecker(httpClient, gson, geminiApiKey, System.getenv("SAFE_BROWSING_API_KEY"), SafeBrowsingLocalDb.fromEnv());
+        this.linkDeltaLog = LinkDeltaLog.fromEnv(ddb);
+        this.checkDeadlineMillis = envLong("SHORTEN_CHECK_DEADLINE_MS", 2500);
+        this.verdictCache = VerdictCache.fromEnv(ddb);
+        this.titleGenerator = new TitleGenerator(httpClient, gson, geminiApiKey);
+        this.titleQueueUrl = System.getenv("TITLE_QUEUE_URL");
+        this.idAllocator = SequenceIdAllocator.fromEnv(ddb);
+        this.dedupEnabled = "true".equalsIgnoreCase(System.getenv("SHORTEN_DEDUP"));
+        this.aliasIndexFallback = "true".equalsIgnoreCase(System.getenv("ALIAS_INDEX_FALLBACK"));
     }
 
     protected ShortenHandler(DynamoDbClient ddb, LambdaClient lambda, software.amazon.awssdk.services.sqs.SqsClient sqs, Gson gson, String urlsTable, String geminiApiKey, String safeBrowsingApiKey, HttpClient httpClient) {
+        this(ddb, lambda, sqs, gson, urlsTable, geminiApiKey, safeBrowsingApiKey, httpClient, envLong("SHORTEN_CHECK_DEADLINE_MS", 2500), VerdictCache.disabled());
+    }
+
+    protected ShortenHandler(DynamoDbClient ddb, LambdaClient lambda, software.amazon.awssdk.services.sqs.SqsClient sqs, Gson gson, String urlsTable, String geminiApiKey, String safeBrowsingApiKey, HttpClient httpClient, long checkDeadlineMillis) {
+        this(ddb, lambda, sqs, gson, urlsTable, geminiApiKey, safeBrowsingApiKey, httpClient, checkDeadlineMillis, VerdictCache.disabled());
+    }
+
+    protected ShortenHandler(DynamoDbClient ddb, LambdaClient lambda, software.amazon.awssdk.services.sqs.SqsClient sqs, Gson gson, String urlsTable, String geminiApiKey, String safeBrowsingApiKey, HttpClient httpClient, long checkDeadlineMillis, VerdictCache verdictCache) {
+        this(ddb, lambda, sqs, gson, urlsTable, geminiApiKey, safeBrowsingApiKey, httpClient, checkDeadlineMillis, verdictCache, null);
+    }
+
+    protected ShortenHandler(DynamoDbClient ddb, LambdaClient lambda, software.amazon.awssdk.services.sqs.SqsClient sqs, Gson gson, String urlsTable, String geminiApiKey, String safeBrowsingApiKey, HttpClient httpClient, long checkDeadlineMillis, VerdictCache verdictCache, String titleQueueUrl) {
+        this(ddb, lambda, sqs, gson, urlsTable, geminiApiKey, safeBrowsingApiKey, httpClient, checkDeadlineMillis, verdictCache, titleQueueUrl, null);
+    }
+
+    protected ShortenHandler(DynamoDbClient ddb, LambdaClient lambda, software.amazon.awssdk.services.sqs.SqsClient sqs, Gson gson, String urlsTable, String geminiApiKey, String safeBrowsingApiKey, HttpClient httpClient, long checkDeadlineMillis, VerdictCache verdictCache, String titleQueueUrl, SequenceIdAllocator idAllocator) {
+        this(ddb, lambda, sqs, gson, urlsTable, geminiApiKey, safeBrowsingApiKey, httpClient, checkDeadlineMillis, verdictCache, titleQueueUrl, idAllocator, false);
+    }
+
+    protected ShortenHandler(DynamoDbClient ddb, LambdaClient lambda, software.amazon.awssdk.services.sqs.SqsClient sqs, Gson gson, String urlsTable, String geminiApiKey, String safeBrowsingApiKey, HttpClient httpClient, long checkDeadlineMillis, VerdictCache verdictCache, String titleQueueUrl, SequenceIdAllocator idAllocator, boolean dedupEnabled) {
+        this(ddb, lambda, sqs, gson, urlsTable, geminiApiKey, safeBrowsingApiKey, httpClient, checkDeadlineMillis, verdictCache, titleQueueUrl, idAllocator, dedupEnabled, false);
+    }
+
+    protected ShortenHandler(DynamoDbClient ddb, LambdaClient lambda, software.amazon.awssdk.services.sqs.SqsClient sqs, Gson gson, String urlsTable, String geminiApiKey, String safeBrowsingApiKey, HttpClient httpClient, long checkDeadlineMillis, VerdictCache verdictCache, String titleQueueUrl, SequenceIdAllocator idAllocator, boolean dedupEnabled,
+                             boolean aliasIndexFallback) {
         super(ddb, lambda, sqs, gson, urlsTable, "*");
-        this.geminiApiKey = geminiApiKey;
-        this.safeBrowsingApiKey = safeBrowsingApiKey;
-        this.httpClient = httpClient;
+        this.safetyChecker = new UrlSafetyChecker(httpClient, gson, geminiApiKey, safeBrowsingApiKey);
+        this.linkDeltaLog = LinkDeltaLog.disabled();
+        this.checkDeadlineMillis = checkDeadlineMillis;
+        this.verdictCache = verdictCache;
+        this.titleGenerator = new TitleGenerator(httpClient, gson, geminiApiKey);
+        this.titleQueueUrl = titleQueueUrl;
+        this.idAllocator = idAllocator;
+        this.dedupEnabled = dedupEnabled;
+        this.aliasIndexFallback = aliasIndexFallback;
     }
 
     @Override
@@ -51,80 +123,139 @@ public class ShortenHandler extends BaseHandler<APIGatewayProxyRequestEvent, API
             String body = input.getBody();
             if (body == null || body.isEmpty()) return createErrorResponse(400, "Body is empty");
 
-            Map<String, String> requestData = gson.fromJson(body, Map.class);
-            String originalUrl = requestData.get("url");
-            String customAlias = requestData.get("customAlias");
-            String visibility = requestData.getOrDefault("visibility", "PRIVATE").toUpperCase();
+            JsonCodec.ShortenRequest requestData = JsonCodec.SHORTEN_REQUEST.fromJson(body);
+            if (requestData == null) return createErrorResponse(400, "Body is empty");
+            String originalUrl = requestData.url();
+            String customAlias = requestData.customAlias();
+            String visibility = (requestData.visibility() != null ? requestData.visibility() : "PRIVATE").toUpperCase();
+            RedirectPolicy redirectPolicy = RedirectPolicy.parse(requestData.redirectPolicy());
 
             if (originalUrl == null || originalUrl.isEmpty()) return createErrorResponse(400, "URL is required");
+            if (redirectPolicy == null) return createErrorResponse(400, "Invalid redirectPolicy");
             if (!originalUrl.startsWith("http")) originalUrl = "https://" + originalUrl;
 
-            boolean isAiMalicious = isUrlMaliciousWithGemini(originalUrl, logger);
-            boolean isSafeBrowsingMalicious = isUrlMaliciousWithSafeBrowsing(originalUrl, logger);
+            UrlNormalizer.Normalized normalized = UrlNormalizer.normalize(originalUrl);
+            VerdictCache.Hit cachedVerdict = normalized != null ? verdictCache.lookup(normalized) : null;
+            if (cachedVerdict != null && cachedVerdict.verdict() == VerdictCache.Verdict.MALICIOUS) {
+                Map<String, Object> monitorData = new HashMap<>();
+                monitorData.put("url", originalUrl);
+                monitorData.put("reason", "CACHED_" + cachedVerdict.scope().toUpperCase() + (cachedVerdict.reason() != null ? ":" + cachedVerdict.reason() : ""));
+                recordMetric("MALICIOUS_URL", monitorData);
+
+                return createErrorResponse(400, "유해 URL이 감지되었습니다.");
+            }
+
+            // 이미 검사를 통과해 저장된 링크이므로 외부 검사, 제목 생성, 저장을 모두 건너뛴다
+            boolean wantsAlias = customAlias != null && !customAlias.trim().isEmpty();
+            String dedupKey = dedupEnabled && !wantsAlias ? dedupKey(originalUrl, visibility, redirectPolicy) : null;
+            Map<String, AttributeValue> duplicate = dedupKey != null ? findDuplicate(dedupKey, originalUrl, logger) : null;
+            if (duplicate != null) {
+                String existingId = duplicate.get("shortId").s();
+                recordMetric("PERFORMANCE", Map.of("path", "/shorten", "duration", System.currentTimeMillis() - startTime, "url", originalUrl, "deduplicated", true));
+
+                Map<String, Object> responseBody = new HashMap<>();
+                responseBody.put("shortId", existingId);
+                responseBody.put("shortUrl", formatShortUrl(System.getenv("BASE_URL"), existingId, input));
+                responseBody.put("title", duplicate.containsKey("title") ? duplicate.get("title").s() : TitleGenerator.PLACEHOLDER);
+                if (duplicate.containsKey(TitleEnrichmentHandler.TITLE_STATUS)) {
+                    responseBody.put(TitleEnrichmentHandler.TITLE_STATUS, duplicate.get(TitleEnrichmentHandler.TITLE_STATUS).s());
+                }
+                responseBody.put("redirectPolicy", redirectPolicy.name());
+                responseBody.put("deduplicated", true);
+                return createResponse(200, responseBody);
+            }
+
+            // URL 단위 SAFE 판정이 있으면 제목 생성만 실행한다. 도메인 SAFE 재사용은 Gemini만 생략하고 Safe Browsing은 URL 그대로 검사한다
+            boolean deferTitle = titleQueueUrl != null && !titleQueueUrl.isEmpty();
+            boolean domainSafe = cachedVerdict != null && cachedVerdict.isDomainSafe();
+            UrlChecks checks = runChecks(originalUrl, logger, cachedVerdict == null, cachedVerdict == null || domainSafe, !deferTitle);
+            if (cachedVerdict != null) checks.timings().put("verdictCache", cachedVerdict.scope());
+
+            if (checks.malicious()) {
+                String reason = checks.aiMalicious() ? (checks.safeBrowsingMalicious() ? "BOTH" : "AI") : "SAFE_BROWSING";
+                if (normalized != null) verdictCache.record(normalized, VerdictCache.Verdict.MALICIOUS, reason);
 
-            if (isAiMalicious || isSafeBrowsingMalicious) {
                 Map<String, Object> monitorData = new HashMap<>();
                 monitorData.put("url", originalUrl);
-                monitorData.put("reason", isAiMalicious ? (isSafeBrowsingMalicious ? "BOTH" : "AI") : "SAFE_BROWSING");
+                monitorData.put("reason", reason);
+                monitorData.put("checks", checks.timings());
                 recordMetric("MALICIOUS_URL", monitorData);
                 
                 return createErrorResponse(400, "유해 URL이 감지되었습니다.");
             }
+            // 기한 초과로 통과시킨 경우(fail-open)나 검사 키가 없는 경우는 SAFE로 저장하지 않는다
+            if (normalized != null && cachedVerdict == null && checks.safetyComplete() && safetyChecker.isEnabled()) {
+                verdictCache.record(normalized, VerdictCache.Verdict.SAFE, null);
+            }
 
-            String aiTitle = generateTitleWithAi(originalUrl, logger);
+            String aiTitle = checks.title();
 
-            if (customAlias != null && !customAlias.trim().isEmpty()) {
-                String alias = customAlias.trim();
+            String alias = (customAlias != null && !customAlias.trim().isEmpty()) ? customAlias.trim() : null;
+            if (alias != null) {
                 if (!alias.matches("^[a-zA-Z0-9_-]{3,20}$")) return createErrorResponse(400, "Invalid alias format");
-                if (isAliasTaken(alias, logger)) return createErrorResponse(400, "이미 사용 중인 이름입니다.");
+                // 같은 이름의 링크·alias 포인터는 저장 트랜잭션의 조건이 걸러 내므로 미리 읽지 않는다
+                if (aliasIndexFallback && isLegacyAlias(alias)) return createErrorResponse(400, "이미 사용 중인 이름입니다.");
             }
 
             String baseUrl = System.getenv("BASE_URL");
             String shortId = null;
             int maxRetries = 10;
             boolean saved = false;
+            String createdAt = Instant.now().toString();
 
             for (int i = 0; i < maxRetries; i++) {
-                shortId = IdGenerator.generateId(7);
-                if (isAliasTaken(shortId, logger)) continue;
-
-                Map<String, AttributeValue> item = new HashMap<>();
-                item.put("shortId", AttributeValue.builder().s(shortId).build());
-                item.put("originalUrl", AttributeValue.builder().s(originalUrl).build());
-                item.put("createdAt", AttributeValue.builder().s(Instant.now().toString()).build());
-                item.put("clickCount", AttributeValue.builder().n("0").build());
-                item.put("visibility", AttributeValue.builder().s(visibility).build());
-                item.put("title", AttributeValue.builder().s(aiTitle).build());
-
-                if (customAlias != null && !customAlias.trim().isEmpty()) {
-                    item.put("customAlias", AttributeValue.builder().s(customAlias.trim()).build());
+                if (idAllocator != null) {
+                    // 발급된 순번은 겹치지 않으므로 사전 확인 없이 조건부 저장만 한다. 충돌은 과거 랜덤 ID나 alias와만 생긴다
+                    shortId = idAllocator.next();
+                } else {
+                    shortId = IdGenerator.generateId(7);
+                    if (isAliasTaken(shortId, logger)) continue;
+                }
+
+                Map<String, AttributeValue> item = linkItem(shortId, originalUrl, createdAt, visibility, aiTitle, deferTitle, redirectPolicy);
+
+                if (alias != null) {
+                    item.put("customAlias", AttributeValue.builder().s(alias).build());
                 }
 
                 try {
-                    ddb.putItem(PutItemRequest.builder()
-                            .tableName(this.urlsTable)
-                            .item(item)
-                            .conditionExpression("attribute_not_exists(shortId)")
-                            .build());
+                    // 링크보다 먼저 기록해야 리다이렉트의 Bloom filter가 새 링크를 404로 막지 않는다
+                    linkDeltaLog.record(Instant.parse(createdAt), alias != null ? List.of(shortId, alias) : List.of(shortId));
+                    if (alias != null) {
+                        saveWithAliasPointer(item, alias, shortId, originalUrl, createdAt, redirectPolicy);
+                    } else {
+                        ddb.putItem(PutItemRequest.builder()
+                                .tableName(this.urlsTable)
+                                .item(item)
+                                .conditionExpression("attribute_not_exists(shortId)")
+                                .build());
+                    }
                     saved = true;
                     break;
                 } catch (ConditionalCheckFailedException e) {
                     if (i == maxRetries - 1) throw new RuntimeException("ID collision failed");
+                } catch (TransactionCanceledException e) {
+                    if (isConditionFailed(e, 1)) return createErrorResponse(400, "이미 사용 중인 이름입니다.");
+                    if (!isConditionFailed(e, 0) || i == maxRetries - 1) throw new RuntimeException("ID collision failed");
                 }
             }
 
             if (!saved) throw new RuntimeException("Failed to save URL");
+            if (deferTitle) enqueueTitleJob(shortId, originalUrl, logger);
+            if (dedupKey != null) saveDedupPointer(dedupKey, shortId, createdAt, logger);
 
-            String finalPath = (customAlias != null && !customAlias.trim().isEmpty()) ? customAlias.trim() : shortId;
+            String finalPath = alias != null ? alias : shortId;
             String shortUrl = formatShortUrl(baseUrl, finalPath, input);
 
             long duration = System.currentTimeMillis() - startTime;
-            recordMetric("PERFORMANCE", Map.of("path", "/shorten", "duration", duration, "url", originalUrl));
+            recordMetric("PERFORMANCE", Map.of("path", "/shorten", "duration", duration, "url", originalUrl, "checks", checks.timings()));
 
-            Map<String, String> responseBody = new HashMap<>();
+            Map<String, Object> responseBody = new HashMap<>();
             responseBody.put("shortId", shortId);
             responseBody.put("shortUrl", shortUrl);
             responseBody.put("title", aiTitle);
+            if (deferTitle) responseBody.put(TitleEnrichmentHandler.TITLE_STATUS, TitleEnrichmentHandler.STATUS_PENDING);
+            responseBody.put("redirectPolicy", redirectPolicy.name());
 
             return createResponse(200, responseBody);
 
@@ -135,6 +266,111 @@ public class ShortenHandler extends BaseHandler<APIGatewayProxyRequestEvent, API
         }
     }
 
+    /**
+     * Gemini 판정, Safe Browsing 조회, 제목 생성을 동시에 실행하고 하나의 기한 안에서 기다린다.
+     * 어느 한쪽이라도 악성으로 판정하면 나머지 호출은 기다리지 않고 취소한다.
+     */
+    UrlChecks runChecks(String url, LambdaLogger logger, boolean includeGemini, boolean includeSafeBrowsing, boolean includeTitle) {
+        Map<String, Long> elapsed = new ConcurrentHashMap<>();
+        CompletionService<Object> completion = new ExecutorCompletionService<>(CHECK_EXECUTOR);
+        Map<Future<Object>, String> names = new LinkedHashMap<>();
+        if (includeGemini) {
+            names.put(completion.submit(timed("gemini", elapsed, () -> safetyChecker.isMaliciousWithGemini(url))), "gemini");
+        }
+        if (includeSafeBrowsing) {
+            names.put(completion.submit(timed("safeBrowsing", elapsed, () -> safetyChecker.isMaliciousWithSafeBrowsing(url))), "safeBrowsing");
+        }
+        if (includeTitle) {
+            names.put(completion.submit(timed("title", elapsed, () -> titleGenerator.generate(url))), "title");
+        }
+
+        boolean aiMalicious = false;
+        boolean safeBrowsingMalicious = false;
+        String title = TitleGenerator.PLACEHOLDER;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(checkDeadlineMillis);
+
+        try {
+            for (int done = 0; done < names.size(); done++) {
+                Future<Object> next = completion.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (next == null) break;
+                Object result = next.get();
+                switch (names.get(next)) {
+                    case "gemini" -> aiMalicious = (Boolean) result;
+                    case "safeBrowsing" -> safeBrowsingMalicious = (Boolean) result;
+                    default -> title = (String) result;
+                }
+                if (aiMalicious || safeBrowsingMalicious) break;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // 각 검사는 내부에서 예외를 삼키므로 여기까지 오지 않는다
+            logger.log("[Warning] URL check failed: " + e.getMessage());
+        }
+
+        List<String> abandoned = new ArrayList<>();
+        names.forEach((future, name) -> {
+            if (!future.isDone()) {
+                future.cancel(true);
+                abandoned.add(name);
+            }
+        });
+        if (!abandoned.isEmpty() && !(aiMalicious || safeBrowsingMalicious)) {
+            logger.log("[Warning] URL checks exceeded " + checkDeadlineMillis + "ms: " + abandoned);
+        }
+
+        Map<String, Object> timings = new HashMap<>(elapsed);
+        timings.put("abandoned", abandoned);
+        boolean safetyComplete = includeGemini && includeSafeBrowsing && !abandoned.contains("gemini") && !abandoned.contains("safeBrowsing");
+        return new UrlChecks(aiMalicious, safeBrowsingMalicious, safetyComplete, title, timings);
+    }
+
+    private static Callable<Object> timed(String name, Map<String, Long> elapsed, Callable<Object> check) {
+        return () -> {
+            long start = System.currentTimeMillis();
+            try {
+                return check.call();
+            } finally {
+                elapsed.put(name + "Ms", System.currentTimeMillis() - start);
+            }
+        };
+    }
+
+    static Map<String, AttributeValue> linkItem(String shortId, String originalUrl, String createdAt, String visibility, String title, boolean titlePending, RedirectPolicy redirectPolicy) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("shortId", AttributeValue.builder().s(shortId).build());
+        item.put("originalUrl", AttributeValue.builder().s(originalUrl).build());
+        item.put("createdAt", AttributeValue.builder().s(createdAt).build());
+        item.put("clickCount", AttributeValue.builder().n("0").build());
+        item.put("visibility", AttributeValue.builder().s(visibility).build());
+        item.put("title", AttributeValue.builder().s(title).build());
+        if (titlePending) item.put(TitleEnrichmentHandler.TITLE_STATUS, AttributeValue.builder().s(TitleEnrichmentHandler.STATUS_PENDING).build());
+        item.put(RedirectPolicy.ATTRIBUTE, AttributeValue.builder().s(redirectPolicy.name()).build());
+        return item;
+    }
+
+    // 링크 아이템과 alias 포인터를 원자적으로 저장한다. 인덱스 0 = 링크, 1 = 포인터
+    private void saveWithAliasPointer(Map<String, AttributeValue> item, String alias, String shortId, String originalUrl, String createdAt, RedirectPolicy redirectPolicy) {
+        ddb.transactWriteItems(TransactWriteItemsRequest.builder()
+                .transactItems(
+                        TransactWriteItem.builder().put(Put.builder()
+                                .tableName(this.urlsTable)
+                                .item(item)
+                                .conditionExpression("attribute_not_exists(shortId)")
+                                .build()).build(),
+                        TransactWriteItem.builder().put(Put.builder()
+                                .tableName(this.urlsTable)
+                                .item(LinkResolver.aliasPointerItem(alias, shortId, originalUrl, createdAt, redirectPolicy))
+                                .conditionExpression("attribute_not_exists(shortId)")
+                                .build()).build())
+                .build());
+    }
+
+    private boolean isConditionFailed(TransactionCanceledException e, int index) {
+        if (!e.hasCancellationReasons() || e.cancellationReasons().size() <= index) return false;
+        return "ConditionalCheckFailed".equals(e.cancellationReasons().get(index).code());
+    }
+
     private boolean isAliasTaken(String value, LambdaLogger logger) {
         try {
             GetItemResponse res = ddb.getItem(GetItemRequest.builder()
@@ -154,55 +390,76 @@ public class ShortenHandler extends BaseHandler<APIGatewayProxyRequestEvent, API
         } catch (Exception e) { return false; }
     }
 
-    private String generateTitleWithAi(String url, LambdaLogger logger) {
-        if (this.geminiApiKey == null || this.geminiApiKey.isEmpty()) return "Untitled Link";
-        try {
-            String prompt = String.format("해당 웹사이트의 공식 명칭이나 제목을 한국어로 아주 짧게 응답해줘. 설명 없이 이름만 응답해. URL: %s", url);
-            String body = String.format("{\"contents\":[{\"parts\":[{\"text\":\"%s\"}]}]}", prompt);
-            HttpRequest request = HttpRequest.newBuilder().uri(URI.create("https://generativelanguage.googleapis.com/v1/models/gemini-2.5-flash-lite:generateContent?key=" + this.geminiApiKey)).header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofString(body)).build();
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() != 200) return "Untitled Link";
-            Map<String, Object> map = gson.fromJson(response.body(), Map.class);
-            List<Object> cand = (List<Object>) map.get("candidates");
-            Map<String, Object> cont = (Map<String, Object>) ((Map<String, Object>) cand.get(0)).get("content");
-            List<Object> parts = (List<Object>) cont.get("parts");
-            return ((String) ((Map<String, Object>) parts.get(0)).get("text")).trim().split("\n")[0];
-        } catch (Exception e) { return "Untitled Link"; }
-    }
-
-    private String formatShortUrl(String baseUrl, String path, APIGatewayProxyRequestEvent input) {
-        if (baseUrl != null && !baseUrl.isEmpty()) return String.format("%s/%s", baseUrl, path);
-        String domain = input.getHeaders().get("Host");
-        String stage = input.getRequestContext().getStage();
-        String proto = input.getHeaders().getOrDefault("X-Forwarded-Proto", "https");
-        if (domain != null && domain.contains("localhost")) return String.format("http://%s/%s", domain, path);
-        return String.format("%s://%s/%s/%s", proto, domain, stage, path);
-    }
-
-    private boolean isUrlMaliciousWithSafeBrowsing(String url, LambdaLogger logger) {
-        if (this.safeBrowsingApiKey == null) return false;
+    // 포인터 없이 링크 아이템의 customAlias로만 남은 과거 alias
+    private boolean isLegacyAlias(String alias) {
         try {
-            String apiUrl = "https://safebrowsing.googleapis.com/v4/threatMatches:find?key=" + this.safeBrowsingApiKey;
-            String body = String.format("{\"client\":{\"clientId\":\"lessurl\",\"clientVersion\":\"1.0\"},\"threatInfo\":{\"threatTypes\":[\"MALWARE\",\"SOCIAL_ENGINEERING\"],\"platformTypes\":[\"ANY_PLATFORM\"],\"threatEntryTypes\":[\"URL\"],\"threatEntries\":[{\"url\":\"%s\"}]}}", url);
-            HttpRequest req = HttpRequest.newBuilder().uri(URI.create(apiUrl)).header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofString(body)).build();
-            HttpResponse<String> res = httpClient.send(req, HttpResponse.BodyHandlers.ofString());
-            return res.statusCode() == 200 && res.body().contains("matches");
+            return ddb.query(QueryRequest.builder()
+                    .tableName(this.urlsTable)
+                    .indexName("CustomAliasIndex")
+                    .keyConditionExpression("customAlias = :v")
+                    .expressionAttributeValues(Map.of(":v", AttributeValue.builder().s(alias).build()))
+                    .limit(1)
+                    .build()).count() > 0;
         } catch (Exception e) { return false; }
     }
 
-    private boolean isUrlMaliciousWithGemini(String url, LambdaLogger logger) {
-        if (this.geminiApiKey == null) return false;
+    private static String dedupKey(String originalUrl, String visibility, RedirectPolicy redirectPolicy) {
+        String canonical = UrlNormalizer.canonical(originalUrl);
+        if (canonical == null) return null;
         try {
-            String prompt = String.format("Analyze this URL for phishing or malware. Respond only with JSON: {\"classification\": \"SAFE\" or \"PHISHING\" or \"MALWARE\"}. URL: %s", url);
-            String body = String.format("{\"contents\":[{\"parts\":[{\"text\":\"%s\"}]}],\"generationConfig\":{\"responseMimeType\":\"application/json\"}}", prompt);
-            HttpRequest req = HttpRequest.newBuilder().uri(URI.create("https://generativelanguage.googleapis.com/v1/models/gemini-2.5-flash-lite:generateContent?key=" + this.geminiApiKey)).header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofString(body)).build();
-            HttpResponse<String> res = httpClient.send(req, HttpResponse.BodyHandlers.ofString());
-            if (res.statusCode() != 200) return false;
-            Map<String, Object> map = gson.fromJson(res.body(), Map.class);
-            List<Object> cand = (List<Object>) map.get("candidates");
-            Map<String, Object> cont = (Map<String, Object>) ((Map<String, Object>) cand.get(0)).get("content");
-            String inner = (String) ((Map<String, Object>) ((List<Object>) cont.get("parts")).get(0)).get("text");
-            return !inner.contains("SAFE");
-        } catch (Exception e) { return false; }
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest((visibility + "\n" + redirectPolicy.name() + "\n" + canonical).getBytes(StandardCharsets.UTF_8));
+            return LinkResolver.URL_HASH_PREFIX + HexFormat.of().formatHex(hash, 0, 16);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 포인터가 가리키는 링크 아이템. 링크가 지워졌거나 해시가 다른 URL과 겹치면 null을 돌려 새로 만든다.
+     */
+    private Map<String, AttributeValue> findDuplicate(String dedupKey, String originalUrl, LambdaLogger logger) {
+        try {
+            GetItemResponse pointer = ddb.getItem(GetItemRequest.builder()
+                    .tableName(this.urlsTable)
+                    .key(Map.of("shortId", AttributeValue.builder().s(dedupKey).build()))
+                    .build());
+            if (!pointer.hasItem() || !pointer.item().containsKey(LinkResolver.TARGET_ID)) return null;
+
+            GetItemResponse link = ddb.getItem(GetItemRequest.builder()
+                    .tableName(this.urlsTable)
+                    .key(Map.of("shortId", pointer.item().get(LinkResolver.TARGET_ID)))
+                    .build());
+            if (!link.hasItem() || !link.item().containsKey("originalUrl")) return null;
+            String requested = UrlNormalizer.canonical(originalUrl);
+            return requested != null && requested.equals(UrlNormalizer.canonical(link.item().get("originalUrl").s())) ? link.item() : null;
+        } catch (Exception e) {
+            logger.log("[Warning] Dedup lookup failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // 링크 저장 후에 덮어쓴다. 동시에 같은 URL이 들어오면 마지막 링크를 가리키며, 두 링크 모두 유효하다
+    private void saveDedupPointer(String dedupKey, String shortId, String createdAt, LambdaLogger logger) {
+        try {
+            ddb.putItem(PutItemRequest.builder()
+                    .tableName(this.urlsTable)
+                    .item(LinkResolver.urlHashPointerItem(dedupKey, shortId, createdAt))
+                    .build());
+        } catch (Exception e) {
+            logger.log("[Warning] Failed to save dedup pointer for " + shortId + ": " + e.getMessage());
+        }
+    }
+
+    // 링크 저장 후에 넣는다. 실패하면 제목이 임시 값으로 남을 뿐 링크 생성은 성공으로 처리한다
+    private void enqueueTitleJob(String shortId, String originalUrl, LambdaLogger logger) {
+        try {
+            sqs.sendMessage(SendMessageRequest.builder()
+                    .queueUrl(titleQueueUrl)
+                    .messageBody(gson.toJson(Map.of("shortId", shortId, "url", originalUrl)))
+                    .build());
+        } catch (Exception e) {
+            logger.log("[Warning] Failed to enqueue title job for " + shortId + ": " + e.getMessage());
+        }
     }
 }
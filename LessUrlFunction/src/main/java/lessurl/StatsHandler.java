@@ -8,45 +8,98 @@ import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 import software.amazon.awssdk.services.lambda.LambdaClient;
 import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
 
-import java.net.URI;
 import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.time.Instant;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
+import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class StatsHandler extends BaseHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
 
-    private final String clicksTable;
+    private final String clickRollupsTable;
+    private final String clickCountersTable;
     private final String trendInsightsTable;
-    private final String geminiApiKey;
-    private final HttpClient httpClient;
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(ZoneId.of("UTC"));
-    private static final DateTimeFormatter HOUR_FORMATTER = DateTimeFormatter.ofPattern("H").withZone(ZoneId.of("UTC"));
+    private final LinkResolver linkResolver;
+    private final String clicksTable;
+    private final ClickArchive archive;
+    private final String aiAnalyticTable;
+    private final InsightGenerator insightGenerator;
+    private final String insightQueueUrl;
+
+    // from/to로 지정하는 기간은 하루에 세그먼트 하나씩 읽으므로 길이를 제한한다
+    private static final int MAX_RANGE_DAYS = 92;
+    private static final long DEFAULT_CALL_TIMEOUT_MS = 5_000;
+    private static final long DEFAULT_INSIGHT_TIMEOUT_MS = 20_000;
+
+    // 조회는 대부분 DynamoDB/S3 응답 대기이므로 호출마다 가상 스레드를 쓴다
+    private static final ExecutorService FETCH_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final long callTimeoutMillis;
+    private final long insightTimeoutMillis;
+    // 직렬화한 응답 본문을 ETag별로 보관한다. 같은 버전의 다음 조회는 집계와 직렬화를 건너뛴다
+    private final TtlCache<String> responseCache = new TtlCache<>(1_000, 16L * 1024 * 1024, 10 * 60_000L, 0, body -> 2L * body.length());
 
     public StatsHandler() {
         super();
-        this.clicksTable = System.getenv("CLICKS_TABLE");
+        this.clickRollupsTable = System.getenv("CLICK_ROLLUPS_TABLE");
+        this.clickCountersTable = System.getenv("CLICK_COUNTERS_TABLE");
         this.trendInsightsTable = System.getenv("TREND_INSIGHTS_TABLE");
-        this.geminiApiKey = System.getenv("GEMINI_API_KEY");
-        this.httpClient = HttpClient.newBuilder()
+        this.linkResolver = new LinkResolver(ddb, urlsTable);
+        this.clicksTable = System.getenv("CLICKS_TABLE");
+        BlobStore store = BlobStore.fromEnv();
+        this.archive = store != null ? new ClickArchive(store) : null;
+        this.aiAnalyticTable = System.getenv("AI_ANALYTIC_TABLE");
+        this.insightGenerator = new InsightGenerator(HttpClient.newBuilder()
                 .version(HttpClient.Version.HTTP_1_1)
                 .connectTimeout(Duration.ofSeconds(15))
-                .build();
+                .build(), gson, System.getenv("GEMINI_API_KEY"));
+        this.insightQueueUrl = System.getenv("INSIGHT_QUEUE_URL");
+        this.callTimeoutMillis = envLong("STATS_CALL_TIMEOUT_MS", DEFAULT_CALL_TIMEOUT_MS);
+        this.insightTimeoutMillis = envLong("STATS_INSIGHT_TIMEOUT_MS", DEFAULT_INSIGHT_TIMEOUT_MS);
+    }
+
+    protected StatsHandler(DynamoDbClient ddb, LambdaClient lambda, SqsClient sqs, Gson gson, String urlsTable, String clickRollupsTable, String clickCountersTable, String trendInsightsTable) {
+        this(ddb, lambda, sqs, gson, urlsTable, clickRollupsTable, clickCountersTable, trendInsightsTable, null, null);
     }
 
-    protected StatsHandler(DynamoDbClient ddb, LambdaClient lambda, SqsClient sqs, Gson gson, String urlsTable, String clicksTable, String trendInsightsTable) {
+    protected StatsHandler(DynamoDbClient ddb, LambdaClient lambda, SqsClient sqs, Gson gson, String urlsTable, String clickRollupsTable, String clickCountersTable, String trendInsightsTable,
+                           String clicksTable, ClickArchive archive) {
+        this(ddb, lambda, sqs, gson, urlsTable, clickRollupsTable, clickCountersTable, trendInsightsTable, clicksTable, archive, null, null, null);
+    }
+
+    protected StatsHandler(DynamoDbClient ddb, LambdaClient lambda, SqsClient sqs, Gson gson, String urlsTable, String clickRollupsTable, String clickCountersTable, String trendInsightsTable,
+                           String clicksTable, ClickArchive archive, String aiAnalyticTable, InsightGenerator insightGenerator, String insightQueueUrl) {
+        this(ddb, lambda, sqs, gson, urlsTable, clickRollupsTable, clickCountersTable, trendInsightsTable, clicksTable, archive, aiAnalyticTable, insightGenerator, insightQueueUrl,
+                DEFAULT_CALL_TIMEOUT_MS, DEFAULT_INSIGHT_TIMEOUT_MS);
+    }
+
+    protected StatsHandler(DynamoDbClient ddb, LambdaClient lambda, SqsClient sqs, Gson gson, String urlsTable, String clickRollupsTable, String clickCountersTable, String trendInsightsTable,
+                           String clicksTable, ClickArchive archive, String aiAnalyticTable, InsightGenerator insightGenerator, String insightQueueUrl,
+                           long callTimeoutMillis, long insightTimeoutMillis) {
         super(ddb, lambda, sqs, gson, urlsTable, "*");
         this.clicksTable = clicksTable;
+        this.archive = archive;
+        this.clickRollupsTable = clickRollupsTable;
+        this.clickCountersTable = clickCountersTable;
         this.trendInsightsTable = trendInsightsTable;
-        this.geminiApiKey = null;
-        this.httpClient = null;
+        this.linkResolver = new LinkResolver(ddb, urlsTable);
+        this.aiAnalyticTable = aiAnalyticTable;
+        this.insightGenerator = insightGenerator;
+        this.insightQueueUrl = insightQueueUrl;
+        this.callTimeoutMillis = callTimeoutMillis;
+        this.insightTimeoutMillis = insightTimeoutMillis;
     }
 
     @Override
@@ -57,87 +110,81 @@ public class StatsHandler extends BaseHandler<APIGatewayProxyRequestEvent, APIGa
             return createErrorResponse(400, "ID is required");
         }
 
+        Map<String, String> query = input.getQueryStringParameters() != null ? input.getQueryStringParameters() : Map.of();
+        ClickRollups.Period period = null;
+        LocalDate from = null, to = null;
         try {
-            GetItemResponse urlRes = ddb.getItem(GetItemRequest.builder()
-                    .tableName(this.urlsTable)
-                    .key(Map.of("shortId", AttributeValue.builder().s(inputId).build()))
-                    .build());
-
-            Map<String, AttributeValue> urlItem;
-            String shortId;
-
-            if (urlRes.hasItem()) {
-                urlItem = urlRes.item();
-                shortId = inputId;
-            } else {
-                QueryResponse aliasRes = ddb.query(QueryRequest.builder()
-                        .tableName(this.urlsTable)
-                        .indexName("CustomAliasIndex")
-                        .keyConditionExpression("customAlias = :a")
-                        .expressionAttributeValues(Map.of(":a", AttributeValue.builder().s(inputId).build()))
-                        .limit(1)
-                        .build());
-                
-                if (aliasRes.hasItems() && !aliasRes.items().isEmpty()) {
-                    urlItem = aliasRes.items().get(0);
-                    shortId = urlItem.get("shortId").s();
-                } else {
-                    return createErrorResponse(404, "URL not found");
+            if (query.containsKey("from") || query.containsKey("to")) {
+                from = LocalDate.parse(query.get("from"));
+                to = LocalDate.parse(query.get("to"));
+                if (to.isBefore(from) || ChronoUnit.DAYS.between(from, to) >= MAX_RANGE_DAYS) {
+                    return createErrorResponse(400, "from..to must span 1 to " + MAX_RANGE_DAYS + " days");
                 }
+            } else {
+                period = ClickRollups.Period.of(query.get("period"));
             }
+        } catch (RuntimeException e) {
+            return createErrorResponse(400, e.getMessage());
+        }
+        String periodLabel = period != null ? period.label : from + ".." + to;
 
-            int totalClicks = urlItem.containsKey("clickCount") ? Integer.parseInt(urlItem.get("clickCount").n()) : 0;
-
-            String sevenDaysAgo = Instant.now().minus(7, ChronoUnit.DAYS).toString();
-            QueryResponse clicksRes = ddb.query(QueryRequest.builder()
-                    .tableName(this.clicksTable)
-                    .keyConditionExpression("shortId = :id AND #ts >= :since")
-                    .expressionAttributeNames(Map.of("#ts", "timestamp"))
-                    .expressionAttributeValues(Map.of(
-                            ":id", AttributeValue.builder().s(shortId).build(),
-                            ":since", AttributeValue.builder().s(sevenDaysAgo).build()
-                    ))
-                    .build());
-
-            List<Map<String, AttributeValue>> clickLogs = clicksRes.items();
-
-            Map<String, Long> clicksByDay = clickLogs.stream()
-                    .collect(Collectors.groupingBy(
-                            item -> DATE_FORMATTER.format(Instant.parse(item.get("timestamp").s())),
-                            Collectors.counting()
-                    ));
-
-            Map<String, Long> clicksByHour = clickLogs.stream()
-                    .collect(Collectors.groupingBy(
-                            item -> HOUR_FORMATTER.format(Instant.parse(item.get("timestamp").s())),
-                            Collectors.counting()
-                    ));
-
-            Map<String, Long> clicksByReferer = clickLogs.stream()
-                    .collect(Collectors.groupingBy(
-                            item -> item.containsKey("referer") ? item.get("referer").s() : "direct",
-                            Collectors.counting()
-                    ));
-
-            QueryResponse trendRes = ddb.query(QueryRequest.builder()
-                    .tableName(this.trendInsightsTable)
-                    .keyConditionExpression("shortId = :id")
-                    .expressionAttributeValues(Map.of(":id", AttributeValue.builder().s(shortId).build()))
-                    .build());
+        try {
+            LinkResolver.Link link = linkResolver.resolveFull(inputId);
+            if (link == null) {
+                return createErrorResponse(404, "URL not found");
+            }
 
-            Map<String, Double> countryStats = new HashMap<>();
-            Map<String, Double> deviceStats = new HashMap<>();
-
-            for (Map<String, AttributeValue> item : trendRes.items()) {
-                String category = item.get("category").s();
-                item.forEach((k, v) -> {
-                    if (!k.equals("shortId") && !k.equals("category") && !k.equals("lastUpdated")) {
-                        if ("COUNTRY".equals(category)) countryStats.put(k, Double.parseDouble(v.n()));
-                        else if ("DEVICE".equals(category)) deviceStats.put(k, Double.parseDouble(v.n()));
-                    }
-                });
+            Map<String, AttributeValue> urlItem = link.item();
+            String shortId = link.shortId();
+
+            // 링크 생성 이후 누적 분포는 트렌드 문서(샤드를 합친 것)에서 읽는다. 클릭이 반영될 때마다 lastUpdated가 바뀌므로 응답 버전도 여기서 정한다
+            // 늦거나 실패하면 누적 분포를 비우고, 버전을 모르므로 조건부 응답과 캐시 없이 계산한다
+            Future<Map<String, AttributeValue>> trendFuture = FETCH_EXECUTOR.submit(() -> TrendDocument.read(ddb, this.trendInsightsTable, shortId,
+                    ClickCounters.shardCount(urlItem)));
+            Map<String, AttributeValue> trend = awaitOptional(trendFuture, "trendInsights", System.nanoTime(), context);
+            String etag = trend != null
+                    ? etag(shortId, periodLabel, period, urlItem, trend, Instant.now())
+                    : null;
+            if (etag != null) {
+                if (matches(header(input, "If-None-Match"), etag)) return notModified(etag);
+                TtlCache.Lookup<String> cachedResponse = responseCache.get(etag);
+                if (cachedResponse.isHit()) {
+                    recordMetric("STATS_VIEW", Map.of("shortId", shortId));
+                    return withEtag(createResponse(200, cachedResponse.value()), etag);
+                }
             }
 
+            // 304나 응답 캐시로 끝나는 요청은 아래 조회를 하지 않는다. 동기 SDK 호출은 취소해도 멈추지 않으므로 버전을 확인한 뒤에 시작한다
+            // 아래 조회들은 shortId만 있으면 되므로 한꺼번에 시작하고, 각자 시작 시점부터의 기한 안에서 기다린다
+            long started = System.nanoTime();
+            boolean insightCacheEnabled = this.aiAnalyticTable != null && this.insightGenerator != null && this.insightGenerator.isEnabled();
+            Future<Long> totalFuture = FETCH_EXECUTOR.submit(() -> ClickCounters.totals(ddb, this.clickCountersTable, List.of(urlItem)).get(shortId));
+            ClickRollups.Period rollupPeriod = period;
+            LocalDate rangeFrom = from, rangeTo = to;
+            Future<ClickRollups.Window> windowFuture = FETCH_EXECUTOR.submit(() -> rollupPeriod != null
+                    ? ClickRollups.read(ddb, this.clickRollupsTable, shortId, rollupPeriod, Instant.now())
+                    : readRange(shortId, rangeFrom, rangeTo));
+            Future<Map<String, AttributeValue>> cachedInsightFuture = insightCacheEnabled
+                    ? FETCH_EXECUTOR.submit(() -> InsightCache.latest(ddb, this.aiAnalyticTable, shortId, periodLabel))
+                    : null;
+
+            long totalClicks = await(totalFuture, "clickCounters", started, this.callTimeoutMillis);
+            ClickRollups.Window window = await(windowFuture, "clicks", started, this.callTimeoutMillis);
+            Map<String, Long> clicksByDay = window.clicksByDay;
+            Map<String, Long> clicksByHour = window.clicksByHour;
+            Map<String, Long> clicksByReferer = window.referers;
+            Map<String, Long> countryStats = window.countries;
+            Map<String, Long> deviceStats = window.devices;
+
+            Map<String, Object> allTime = new HashMap<>();
+            allTime.put("countries", TrendDocument.read(trend, TrendDocument.COUNTRIES));
+            allTime.put("devices", TrendDocument.read(trend, TrendDocument.DEVICES));
+            allTime.put("referers", TrendDocument.read(trend, TrendDocument.REFERERS));
+            // 인사이트 캐시는 없어도 화면을 그릴 수 있으므로 늦거나 실패하면 새로 만든다
+            Map<String, AttributeValue> cachedInsight = cachedInsightFuture != null
+                    ? awaitOptional(cachedInsightFuture, "aiAnalytic", started, context)
+                    : null;
+
             String peakHour = clicksByHour.entrySet().stream()
                     .max(Map.Entry.comparingByValue())
                     .map(Map.Entry::getKey)
@@ -145,14 +192,19 @@ public class StatsHandler extends BaseHandler<APIGatewayProxyRequestEvent, APIGa
 
             Map<String, Object> allStats = new HashMap<>();
             allStats.put("totalClicks", totalClicks);
+            allStats.put("period", periodLabel);
+            allStats.put("periodClicks", window.clicks);
             allStats.put("dailyTrends", clicksByDay);
             allStats.put("hourlyDistribution", clicksByHour);
             allStats.put("peakHour", peakHour);
             allStats.put("referers", clicksByReferer);
             allStats.put("countries", countryStats);
             allStats.put("devices", deviceStats);
+            allStats.put("allTime", allTime);
 
-            String aiInsight = generateAiInsight(allStats, context);
+            String fingerprint = InsightCache.fingerprint(periodLabel, window.clicks, countryStats, deviceStats, clicksByReferer, peakHour);
+            // 캐시가 없으면 Gemini를 기다려야 하므로 응답 조립과 지표 기록을 그동안 진행한다
+            Future<String> insightFuture = FETCH_EXECUTOR.submit(() -> aiInsight(shortId, periodLabel, fingerprint, allStats, cachedInsight, context));
 
             Map<String, Object> statsDetails = new HashMap<>();
             statsDetails.put("shortId", shortId);
@@ -163,8 +215,9 @@ public class StatsHandler extends BaseHandler<APIGatewayProxyRequestEvent, APIGa
             statsDetails.put("clicksByReferer", clicksByReferer);
             statsDetails.put("countryStats", countryStats);
             statsDetails.put("deviceStats", deviceStats);
-            statsDetails.put("aiInsight", aiInsight);
-            statsDetails.put("period", "7d");
+            statsDetails.put("allTime", allTime);
+            statsDetails.put("period", periodLabel);
+            statsDetails.put("periodClicks", window.clicks);
             statsDetails.put("peakHour", Integer.parseInt(peakHour));
 
             Map<String, Object> responseData = new HashMap<>();
@@ -173,60 +226,181 @@ public class StatsHandler extends BaseHandler<APIGatewayProxyRequestEvent, APIGa
 
             recordMetric("STATS_VIEW", Map.of("shortId", shortId));
 
-            return createResponse(200, responseData);
+            String aiInsight;
+            try {
+                aiInsight = insightFuture.get(this.insightTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                insightFuture.cancel(true);
+                context.getLogger().log("[Warning] AI insight exceeded " + this.insightTimeoutMillis + "ms for " + shortId);
+                aiInsight = InsightGenerator.UNAVAILABLE;
+            }
+            statsDetails.put("aiInsight", aiInsight);
+
+            // 이전 인사이트를 보여 주는 중(재생성 대기)이거나 생성에 실패한 응답은 저장하지 않아야 다음 조회에 새 인사이트가 나간다
+            boolean insightSettled = !InsightGenerator.UNAVAILABLE.equals(aiInsight)
+                    && (cachedInsight == null || fingerprint.equals(cachedInsight.get(InsightCache.FINGERPRINT).s()));
+            if (etag == null || !insightSettled) return createResponse(200, responseData);
+            String body = gson.toJson(responseData);
+            responseCache.put(etag, body);
+            return withEtag(createResponse(200, body), etag);
 
+        } catch (TimeoutException e) {
+            context.getLogger().log("[Error] StatsHandler: " + e.getMessage());
+            return createErrorResponse(504, "Stats query timed out");
         } catch (Exception e) {
             context.getLogger().log("[Error] StatsHandler: " + e.getMessage());
             return createErrorResponse(500, "Internal Server Error");
         }
     }
 
-    private String generateAiInsight(Map<String, Object> stats, Context context) {
-        if (this.geminiApiKey == null || (int)stats.get("totalClicks") < 1) 
-            return "충분한 방문 데이터가 수집된 후 정밀 AI 분석이 제공됩니다.";
-            
+    /**
+     * 임의 기간 조회. 아카이브 세그먼트가 있는 날은 세그먼트에서, 없는 날(아직 보관 기간 안)은 클릭 원본에서 센다.
+     */
+    private ClickRollups.Window readRange(String shortId, LocalDate from, LocalDate to) throws Exception {
+        ClickAggregator aggregator = new ClickAggregator(from, to);
+        // 세그먼트는 날마다 따로 있는 객체이므로 모두 동시에 요청하고 날짜 순서대로 받는다
+        List<Future<List<ClickArchive.Row>>> segments = new ArrayList<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            LocalDate segmentDay = day;
+            segments.add(archive != null ? FETCH_EXECUTOR.submit(() -> archive.read(shortId, segmentDay)) : null);
+        }
+        LocalDate rawFrom = null;
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            Future<List<ClickArchive.Row>> segment = segments.get((int) ChronoUnit.DAYS.between(from, day));
+            List<ClickArchive.Row> rows = segment != null ? segment.get() : null;
+            if (rows == null) {
+                if (rawFrom == null) rawFrom = day;
+                continue;
+            }
+            aggregator.skip(day);
+            for (ClickArchive.Row row : rows) aggregator.accept(row);
+        }
+        if (rawFrom != null && clicksTable != null) aggregator.query(ddb, clicksTable, shortId, rawFrom, to);
+        return aggregator.toWindow();
+    }
+
+    /**
+     * 응답 버전. 링크 항목(clickCount·샤드 수·제목)과 트렌드 문서의 lastUpdated가 같고 기간 창이 같은 시간(24h)·날(그 외) 안이면 같은 값이다.
+     * 304도 링크 GetItem 뒤에 트렌드 읽기(샤드가 여럿이면 BatchGetItem)까지 두 번 차례로 읽어야 정해진다. 클릭 버전을 링크 항목에 두면
+     * 한 번에 정할 수 있지만, 클릭 배치 트랜잭션마다 링크 항목을 쓰게 되어 인기 링크에서 소비자끼리 충돌하고 리다이렉트가 읽는 항목이 뜨거워진다.
+     */
+    static String etag(String shortId, String periodLabel, ClickRollups.Period period, Map<String, AttributeValue> urlItem,
+                       Map<String, AttributeValue> trend, Instant now) {
+        StringBuilder sb = new StringBuilder(shortId).append('|').append(periodLabel)
+                .append('|').append(period != null && period.hourly ? ClickRollups.hourBucket(now) : ClickRollups.dayBucket(now));
+        for (String name : new String[]{"clickCount", ClickCounters.SHARDS, "title", "originalUrl"}) {
+            AttributeValue v = urlItem.get(name);
+            sb.append('|').append(v == null ? "" : v.n() != null ? v.n() : v.s());
+        }
+        AttributeValue lastUpdated = trend != null ? trend.get("lastUpdated") : null;
+        sb.append('|').append(lastUpdated != null ? lastUpdated.s() : "");
         try {
-            String prompt = String.format(
-                "당신은 데이터 분석 전문가입니다. 아래 제공된 URL 클릭 통계 데이터를 종합적으로 분석하여, " +
-                "사용자 행동 패턴과 유의미한 비즈니스 인사이트를 한국어로 아주 명확하고 전문적으로 요약해줘. " +
-                "불필요한 인사말은 생략하고 3문장 이내로 핵심만 작성해.\n\n" +
-                "데이터: %s", gson.toJson(stats));
-
-            Map<String, Object> part = Map.of("text", prompt);
-            Map<String, Object> content = Map.of("parts", List.of(part));
-            Map<String, Object> requestMap = Map.of(
-                "contents", List.of(content),
-                "generationConfig", Map.of(
-                    "temperature", 0.7,
-                    "maxOutputTokens", 500
-                )
-            );
-            String body = gson.toJson(requestMap);
-
-            HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("https://generativelanguage.googleapis.com/v1/models/gemini-2.5-flash-lite:generateContent?key=" + this.geminiApiKey))
-                .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(body))
-                .build();
-
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() == 200) {
-                Map<String, Object> map = gson.fromJson(response.body(), Map.class);
-                List<Object> candidates = (List<Object>) map.get("candidates");
-                if (candidates != null && !candidates.isEmpty()) {
-                    Map<String, Object> candidate = (Map<String, Object>) candidates.get(0);
-                    Map<String, Object> resContent = (Map<String, Object>) candidate.get("content");
-                    List<Object> parts = (List<Object>) resContent.get("parts");
-                    if (parts != null && !parts.isEmpty()) {
-                        String result = (String) ((Map<String, Object>) parts.get(0)).get("text");
-                        return result.trim().replaceAll("\\*", "");
-                    }
-                }
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            return "\"" + HexFormat.of().formatHex(digest, 0, 12) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // API Gateway는 헤더 이름을 클라이언트가 보낸 대소문자 그대로 넘긴다 (HTTP/2는 소문자)
+    private static String header(APIGatewayProxyRequestEvent input, String name) {
+        if (input.getHeaders() == null) return null;
+        for (Map.Entry<String, String> e : input.getHeaders().entrySet()) {
+            if (name.equalsIgnoreCase(e.getKey())) return e.getValue();
+        }
+        return null;
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals(etag) || tag.equals("*")) return true;
+        }
+        return false;
+    }
+
+    private APIGatewayProxyResponseEvent notModified(String etag) {
+        APIGatewayProxyResponseEvent response = withEtag(createResponse(304, ""), etag);
+        response.getHeaders().remove("Content-Type");
+        return response;
+    }
+
+    // no-cache: 브라우저가 저장은 하되 매번 If-None-Match로 다시 확인하게 한다
+    private static APIGatewayProxyResponseEvent withEtag(APIGatewayProxyResponseEvent response, String etag) {
+        response.getHeaders().put("ETag", etag);
+        response.getHeaders().put("Cache-Control", "private, no-cache");
+        response.getHeaders().put("Access-Control-Expose-Headers", "ETag");
+        return response;
+    }
+
+    /**
+     * started부터 timeoutMillis 안에 끝나지 않으면 취소하고 어떤 호출이 늦었는지 담아 던진다.
+     */
+    private static <T> T await(Future<T> future, String call, long started, long timeoutMillis) throws Exception {
+        long remaining = timeoutMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        try {
+            return future.get(Math.max(remaining, 0), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new TimeoutException(call + " exceeded " + timeoutMillis + "ms");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    private <T> T awaitOptional(Future<T> future, String call, long started, Context context) {
+        try {
+            return await(future, call, started, this.callTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            context.getLogger().log("[Warning] StatsHandler " + call + " skipped: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 캐시된 인사이트를 우선 돌려준다. 입력이 크게 바뀌었으면(fingerprint 불일치) 이전 인사이트를 그대로 보여 주고
+     * 재생성은 INSIGHT_QUEUE_URL로 InsightRefreshHandler에 넘긴다. 캐시가 없을 때만 이 요청에서 Gemini를 기다린다.
+     */
+    private String aiInsight(String shortId, String period, String fingerprint, Map<String, Object> stats,
+                             Map<String, AttributeValue> cached, Context context) {
+        if (this.insightGenerator == null || !this.insightGenerator.isEnabled() || (long) stats.get("totalClicks") < 1)
+            return InsightGenerator.NOT_ENOUGH_DATA;
+
+        if (cached != null) {
+            if (fingerprint.equals(cached.get(InsightCache.FINGERPRINT).s())) return cached.get(InsightCache.INSIGHT).s();
+            if (this.insightQueueUrl != null) {
+                requestRefresh(cached, shortId, period, fingerprint, stats, context);
+                return cached.get(InsightCache.INSIGHT).s();
             }
-            context.getLogger().log("Gemini API Error: " + response.statusCode() + " - " + response.body());
+            // 재생성 큐가 없으면 아래에서 바로 다시 만든다
+        }
+
+        String insight = this.insightGenerator.generate(stats);
+        if (insight == null) return InsightGenerator.UNAVAILABLE;
+        if (this.aiAnalyticTable != null) {
+            try {
+                ddb.putItem(InsightCache.put(this.aiAnalyticTable, shortId, period, fingerprint, insight, Instant.now()));
+            } catch (Exception e) {
+                context.getLogger().log("[Warning] Insight cache write failed for " + shortId + ": " + e.getMessage());
+            }
+        }
+        return insight;
+    }
+
+    private void requestRefresh(Map<String, AttributeValue> cached, String shortId, String period, String fingerprint, Map<String, Object> stats, Context context) {
+        try {
+            if (!InsightCache.claimRefresh(ddb, this.aiAnalyticTable, cached, Instant.now())) return;
+            sqs.sendMessage(SendMessageRequest.builder()
+                    .queueUrl(this.insightQueueUrl)
+                    .messageBody(gson.toJson(Map.of("shortId", shortId, "period", period, "fingerprint", fingerprint, "stats", stats)))
+                    .build());
         } catch (Exception e) {
-            context.getLogger().log("Gemini Exception: " + e.getMessage());
+            // 이번에는 이전 인사이트를 보여 주고, 다음 조회가 다시 요청한다
+            context.getLogger().log("[Warning] Insight refresh request failed for " + shortId + ": " + e.getMessage());
         }
-        return "데이터 분석 중 오류가 발생했습니다. 잠시 후 다시 확인해주세요.";
     }
 }
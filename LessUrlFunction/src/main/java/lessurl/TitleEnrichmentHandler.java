@@ -0,0 +1,110 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.google.gson.Gson;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ShortenHandler가 TITLE_QUEUE_URL로 넘긴 제목 생성 작업을 묶어서 처리한다.
+ * 배치 안의 URL을 Gemini 요청 하나로 묻고(응답 배열이 어긋나면 URL마다 따로 묻는다), 실패한 메시지만 batchItemFailures로 돌려 SQS가 다시 전달하게 한다.
+ */
+public class TitleEnrichmentHandler extends BaseHandler<SQSEvent, SQSBatchResponse> {
+
+    public static final String TITLE_STATUS = "titleStatus";
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_DONE = "DONE";
+
+    private final TitleGenerator titleGenerator;
+
+    private record TitleJob(String messageId, String shortId, String url) {}
+
+    public TitleEnrichmentHandler() {
+        super();
+        this.titleGenerator = new TitleGenerator(HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(15))
+                .build(), gson, System.getenv("GEMINI_API_KEY"));
+    }
+
+    protected TitleEnrichmentHandler(DynamoDbClient ddb, LambdaClient lambda, software.amazon.awssdk.services.sqs.SqsClient sqs, Gson gson, String urlsTable, String geminiApiKey, HttpClient httpClient) {
+        super(ddb, lambda, sqs, gson, urlsTable, "*");
+        this.titleGenerator = new TitleGenerator(httpClient, gson, geminiApiKey);
+    }
+
+    @Override
+    public SQSBatchResponse handleRequest(SQSEvent event, Context context) {
+        LambdaLogger logger = context.getLogger();
+        List<SQSBatchResponse.BatchItemFailure> failures = new ArrayList<>();
+        List<TitleJob> jobs = new ArrayList<>();
+
+        for (SQSEvent.SQSMessage msg : event.getRecords()) {
+            try {
+                @SuppressWarnings("unchecked")
+                Map<String, String> body = gson.fromJson(msg.getBody(), Map.class);
+                jobs.add(new TitleJob(msg.getMessageId(), body.get("shortId"), body.get("url")));
+            } catch (Exception e) {
+                // 형식이 깨진 메시지는 재시도해도 같으므로 버린다
+                logger.log("[Error] Invalid title job " + msg.getMessageId() + ": " + e.getMessage());
+            }
+        }
+        if (jobs.isEmpty()) return new SQSBatchResponse(failures);
+
+        List<String> titles;
+        try {
+            titles = titleGenerator.generateBatch(jobs.stream().map(TitleJob::url).toList());
+        } catch (Exception e) {
+            logger.log("[Warning] Batch title generation failed, retrying " + jobs.size() + " jobs: " + e.getMessage());
+            for (TitleJob job : jobs) failures.add(new SQSBatchResponse.BatchItemFailure(job.messageId()));
+            return new SQSBatchResponse(failures);
+        }
+
+        int updated = 0;
+        for (int i = 0; i < jobs.size(); i++) {
+            TitleJob job = jobs.get(i);
+            String title = titles.get(i);
+            if (title == null) {
+                // 모델이 이 항목만 빠뜨린 경우. 다음 전달에서 다른 URL과 함께 다시 묻는다
+                failures.add(new SQSBatchResponse.BatchItemFailure(job.messageId()));
+                continue;
+            }
+            try {
+                saveTitle(job.shortId(), title);
+                updated++;
+            } catch (ConditionalCheckFailedException e) {
+                // 링크가 없거나 이미 제목이 채워졌다
+            } catch (Exception e) {
+                logger.log("[Error] Failed to save title for " + job.shortId() + ": " + e.getMessage());
+                failures.add(new SQSBatchResponse.BatchItemFailure(job.messageId()));
+            }
+        }
+
+        logger.log(String.format("[Title] Updated %d/%d links, %d retried", updated, jobs.size(), failures.size()));
+        return new SQSBatchResponse(failures);
+    }
+
+    private void saveTitle(String shortId, String title) {
+        ddb.updateItem(UpdateItemRequest.builder()
+                .tableName(this.urlsTable)
+                .key(Map.of("shortId", AttributeValue.builder().s(shortId).build()))
+                .updateExpression("SET title = :title, " + TITLE_STATUS + " = :done")
+                .conditionExpression("attribute_exists(shortId) AND " + TITLE_STATUS + " = :pending")
+                .expressionAttributeValues(Map.of(
+                        ":title", AttributeValue.builder().s(title).build(),
+                        ":done", AttributeValue.builder().s(STATUS_DONE).build(),
+                        ":pending", AttributeValue.builder().s(STATUS_PENDING).build()))
+                .build());
+    }
+}
@@ -0,0 +1,103 @@
+package lessurl;
+
+import com.google.gson.Gson;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gemini로 링크 제목을 만든다. 단건(ShortenHandler 인라인 경로)과 여러 URL을 한 요청에 묻는 배치(TitleEnrichmentHandler)를 지원한다.
+ */
+public class TitleGenerator {
+
+    public static final String PLACEHOLDER = "Untitled Link";
+    private static final String ENDPOINT = "https://generativelanguage.googleapis.com/v1/models/gemini-2.5-flash-lite:generateContent?key=";
+    private static final int MAX_TITLE_LENGTH = 100;
+
+    private final HttpClient httpClient;
+    private final Gson gson;
+    private final String geminiApiKey;
+
+    public TitleGenerator(HttpClient httpClient, Gson gson, String geminiApiKey) {
+        this.httpClient = httpClient;
+        this.gson = gson;
+        this.geminiApiKey = geminiApiKey;
+    }
+
+    /**
+     * 실패하면 PLACEHOLDER.
+     */
+    public String generate(String url) {
+        if (this.geminiApiKey == null || this.geminiApiKey.isEmpty()) return PLACEHOLDER;
+        String title = generateOne(url);
+        return title != null ? title : PLACEHOLDER;
+    }
+
+    /**
+     * URL 하나만 묻는다. 실패하면 null.
+     */
+    private String generateOne(String url) {
+        try {
+            String prompt = String.format("해당 웹사이트의 공식 명칭이나 제목을 한국어로 아주 짧게 응답해줘. 설명 없이 이름만 응답해. URL: %s", url);
+            String text = ask(prompt, false);
+            return text != null && !text.isBlank() ? clean(text) : null;
+        } catch (Exception e) { return null; }
+    }
+
+    /**
+     * 입력 순서대로 제목을 돌려준다. 모델 응답이 어긋난 항목은 null.
+     * 호출 자체가 실패하면(429/5xx 등) 예외를 던져 호출 측이 재시도하게 한다.
+     * 응답 배열이 깨졌거나 길이가 입력과 다르면 어느 제목이 어느 URL 것인지 알 수 없으므로, URL마다 따로 다시 묻는다.
+     * 같은 묶음이 같은 식으로 계속 어긋나 전부 DLQ로 가는 것을 막기 위해서다.
+     */
+    public List<String> generateBatch(List<String> urls) throws Exception {
+        List<String> titles = new ArrayList<>(urls.size());
+        if (this.geminiApiKey == null || this.geminiApiKey.isEmpty()) {
+            for (int i = 0; i < urls.size(); i++) titles.add(PLACEHOLDER);
+            return titles;
+        }
+
+        StringBuilder prompt = new StringBuilder("다음 웹사이트들의 공식 명칭이나 제목을 각각 한국어로 아주 짧게 알려줘. "
+                + "설명 없이 입력 순서와 같은 순서의 문자열 JSON 배열로만 응답해.\n");
+        for (int i = 0; i < urls.size(); i++) prompt.append(i + 1).append(". ").append(urls.get(i)).append('\n');
+
+        String text = ask(prompt.toString(), true);
+        if (text == null) throw new IllegalStateException("Gemini title request failed");
+
+        List<?> parsed;
+        try {
+            parsed = gson.fromJson(text, List.class);
+        } catch (Exception e) {
+            parsed = null;
+        }
+        if (parsed == null || parsed.size() != urls.size()) {
+            for (String url : urls) titles.add(generateOne(url));
+            return titles;
+        }
+        for (Object title : parsed) {
+            titles.add(title instanceof String s && !s.isBlank() ? clean(s) : null);
+        }
+        return titles;
+    }
+
+    private String ask(String prompt, boolean json) throws Exception {
+        Map<String, Object> body = json
+                ? Map.of("contents", List.of(Map.of("parts", List.of(Map.of("text", prompt)))),
+                        "generationConfig", Map.of("responseMimeType", "application/json"))
+                : Map.of("contents", List.of(Map.of("parts", List.of(Map.of("text", prompt)))));
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(ENDPOINT + this.geminiApiKey)).header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofString(gson.toJson(body))).build();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) return null;
+        return JsonCodec.geminiText(response.body());
+    }
+
+    private static String clean(String title) {
+        String line = title.trim().split("\n")[0].trim();
+        return line.length() > MAX_TITLE_LENGTH ? line.substring(0, MAX_TITLE_LENGTH) : line;
+    }
+}
@@ -0,0 +1,175 @@
+package lessurl;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 링크별 누적 트렌드 문서. trendInsights 테이블의 (shortId, category="ALL") 항목 하나에 세 개의 맵을 둔다.
+ * { countries: {KR: 12}, devices: {MOBILE: 9}, referers: {"https://google.com": 3, direct: 9}, lastUpdated }
+ *
+ * 배치에서 더할 값은 맵 세 개에 걸쳐 ADD 하나로 올린다. ADD는 없는 부모 맵을 만들지 못하므로 문서가 없으면
+ * 갱신이 ValidationError로 거절되고, 쓰는 쪽이 create()로 빈 문서를 만든 뒤 다시 시도한다.
+ * 이전의 COUNTRY/DEVICE 카테고리 항목은 TrendMigrationHandler가 이 문서로 옮긴다.
+ *
+ * referers는 출처가 REFERER_CAP개를 넘으면 쓰는 쪽이 클릭이 적은 것부터 "other"로 합쳐 문서가 끝없이 커지지 않게 한다.
+ * 클릭이 몰리는 링크는 클릭 카운터(ClickCounters)와 같은 샤드 수만큼 문서를 나눠 쓴다. 샤드 0은 category="ALL",
+ * 나머지는 "ALL#1", "ALL#2", ... 이고, 읽는 쪽은 링크 아이템의 counterShards만큼 읽어 merge()로 합친다.
+ */
+final class TrendDocument {
+
+    static final String CATEGORY = "ALL";
+    static final String COUNTRIES = "countries";
+    static final String DEVICES = "devices";
+    static final String REFERERS = "referers";
+
+    private TrendDocument() {
+    }
+
+    static Map<String, AttributeValue> key(String shortId) {
+        return key(shortId, 0);
+    }
+
+    static Map<String, AttributeValue> key(String shortId, int shard) {
+        return Map.of(
+                "shortId", AttributeValue.builder().s(shortId).build(),
+                "category", AttributeValue.builder().s(shard == 0 ? CATEGORY : CATEGORY + "#" + shard).build());
+    }
+
+    static Put create(String table, String shortId) {
+        return create(table, key(shortId));
+    }
+
+    /**
+     * 빈 문서(샤드 하나). 이미 있으면 조건 실패로 끝나므로 덮어쓰지 않는다.
+     */
+    static Put create(String table, Map<String, AttributeValue> key) {
+        Map<String, AttributeValue> item = new HashMap<>(key);
+        AttributeValue empty = AttributeValue.builder().m(Map.of()).build();
+        item.put(COUNTRIES, empty);
+        item.put(DEVICES, empty);
+        item.put(REFERERS, empty);
+        item.put("lastUpdated", AttributeValue.builder().s(Instant.now().toString()).build());
+        return Put.builder()
+                .tableName(table)
+                .item(item)
+                .conditionExpression("attribute_not_exists(shortId)")
+                .build();
+    }
+
+    /**
+     * 맵별 증가분을 한 식으로 더한다 (예: ADD countries.#c0 :c0, devices.#d0 :d0, referers.#r0 :r0 SET lastUpdated = :now).
+     */
+    static Update add(String table, String shortId, Map<String, Map<String, Long>> deltas, String now) {
+        return add(table, shortId, 0, deltas, now);
+    }
+
+    static Update add(String table, String shortId, int shard, Map<String, Map<String, Long>> deltas, String now) {
+        Map<String, String> names = new HashMap<>();
+        Map<String, AttributeValue> values = new HashMap<>();
+        List<String> adds = new ArrayList<>();
+        deltas.forEach((map, counts) -> {
+            String p = map.substring(0, 1);
+            int i = 0;
+            for (Map.Entry<String, Long> e : counts.entrySet()) {
+                names.put("#" + p + i, e.getKey());
+                values.put(":" + p + i, AttributeValue.builder().n(Long.toString(e.getValue())).build());
+                adds.add(map + ".#" + p + i + " :" + p + i);
+                i++;
+            }
+        });
+        values.put(":now", AttributeValue.builder().s(now).build());
+
+        return Update.builder()
+                .tableName(table)
+                .key(key(shortId, shard))
+                .updateExpression("ADD " + String.join(", ", adds) + " SET lastUpdated = :now")
+                .expressionAttributeNames(names)
+                .expressionAttributeValues(values)
+                .build();
+    }
+
+    static Map<String, Long> read(Map<String, AttributeValue> item, String map) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        AttributeValue v = item != null ? item.get(map) : null;
+        if (v != null && v.hasM()) v.m().forEach((k, n) -> counts.put(k, Long.parseLong(n.n())));
+        return counts;
+    }
+
+    /**
+     * 갱신 후의 문서(ALL_NEW)에서 referers가 cap개를 넘으면 작은 출처들을 referers.other로 옮기는 갱신. 넘지 않으면 null.
+     * 옮기는 출처의 값이 그대로일 때만 적용되므로 그 사이 더해진 클릭은 잃지 않는다.
+     */
+    static Update foldReferers(String table, Map<String, AttributeValue> item, int cap) {
+        Map<String, Long> overflow = ClickRollups.refererOverflow(read(item, REFERERS), cap);
+        if (overflow.isEmpty()) return null;
+
+        Map<String, String> names = new HashMap<>();
+        Map<String, AttributeValue> values = new HashMap<>();
+        List<String> removes = new ArrayList<>(overflow.size());
+        List<String> conditions = new ArrayList<>(overflow.size());
+        long folded = 0;
+        int i = 0;
+        for (Map.Entry<String, Long> e : overflow.entrySet()) {
+            names.put("#x" + i, e.getKey());
+            values.put(":x" + i, AttributeValue.builder().n(Long.toString(e.getValue())).build());
+            removes.add(REFERERS + ".#x" + i);
+            conditions.add(REFERERS + ".#x" + i + " = :x" + i);
+            folded += e.getValue();
+            i++;
+        }
+        names.put("#o", ClickRollups.OTHER_REFERER);
+        values.put(":o", AttributeValue.builder().n(Long.toString(folded)).build());
+
+        return Update.builder()
+                .tableName(table)
+                .key(Map.of("shortId", item.get("shortId"), "category", item.get("category")))
+                .updateExpression("REMOVE " + String.join(", ", removes) + " ADD " + REFERERS + ".#o :o")
+                .conditionExpression(String.join(" AND ", conditions))
+                .expressionAttributeNames(names)
+                .expressionAttributeValues(values)
+                .build();
+    }
+
+    /**
+     * 링크의 모든 샤드를 읽어 합친 문서. 샤드가 하나면 GetItem 한 번이다. 문서가 없으면 빈 맵.
+     */
+    static Map<String, AttributeValue> read(DynamoDbClient ddb, String table, String shortId, int shards) {
+        if (shards <= 1) return ddb.getItem(GetItemRequest.builder().tableName(table).key(key(shortId)).build()).item();
+        List<Map<String, AttributeValue>> keys = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) keys.add(key(shortId, shard));
+        List<Map<String, AttributeValue>> docs = BatchReads.get(ddb, table, keys, false);
+        return docs.isEmpty() ? Map.of() : merge(docs);
+    }
+
+    /**
+     * 같은 링크의 샤드 문서들을 하나로 합친다. 맵은 항목별로 더하고 lastUpdated는 가장 늦은 값을 쓴다.
+     */
+    static Map<String, AttributeValue> merge(List<Map<String, AttributeValue>> docs) {
+        if (docs.size() == 1) return docs.get(0);
+        Map<String, AttributeValue> merged = new HashMap<>(key(docs.get(0).get("shortId").s()));
+        String lastUpdated = null;
+        for (String map : new String[]{COUNTRIES, DEVICES, REFERERS}) {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            for (Map<String, AttributeValue> doc : docs) read(doc, map).forEach((k, n) -> counts.merge(k, n, Long::sum));
+            Map<String, AttributeValue> values = new LinkedHashMap<>();
+            counts.forEach((k, n) -> values.put(k, AttributeValue.builder().n(Long.toString(n)).build()));
+            merged.put(map, AttributeValue.builder().m(values).build());
+        }
+        for (Map<String, AttributeValue> doc : docs) {
+            AttributeValue v = doc.get("lastUpdated");
+            if (v != null && v.s() != null && (lastUpdated == null || v.s().compareTo(lastUpdated) > 0)) lastUpdated = v.s();
+        }
+        if (lastUpdated != null) merged.put("lastUpdated", AttributeValue.builder().s(lastUpdated).build());
+        return merged;
+    }
+}
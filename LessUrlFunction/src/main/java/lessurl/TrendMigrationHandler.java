@@ -0,0 +1,124 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 이전 트렌드 레이아웃(링크마다 COUNTRY·DEVICE 카테고리 항목, 값은 최상위 속성)을 TrendDocument로 옮기는 일회성 마이그레이션.
+ * 콘솔이나 CLI에서 직접 호출한다. 입력: {"startKey": {"shortId": "...", "category": "..."}, "dryRun": true}
+ *
+ * 링크마다 문서에 값을 더하는 것과 옮긴 옛 항목을 지우는 것을 한 트랜잭션으로 처리하므로, 중간에 끊기거나 여러 번 실행해도
+ * 두 번 더해지지 않는다. 새 클릭이 이미 문서를 만들었어도 그 위에 더한다.
+ */
+public class TrendMigrationHandler extends BaseHandler<Map<String, Object>, String> {
+
+    private static final long TIME_BUDGET_MARGIN_MS = 10_000;
+
+    private final String trendInsightsTable = System.getenv("TREND_INSIGHTS_TABLE");
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public String handleRequest(Map<String, Object> input, Context context) {
+        LambdaLogger logger = context.getLogger();
+        boolean dryRun = input != null && Boolean.TRUE.equals(input.get("dryRun"));
+
+        Map<String, AttributeValue> exclusiveStartKey = null;
+        if (input != null && input.get("startKey") instanceof Map<?, ?> key) {
+            exclusiveStartKey = Map.of(
+                    "shortId", AttributeValue.builder().s((String) ((Map<String, Object>) key).get("shortId")).build(),
+                    "category", AttributeValue.builder().s((String) ((Map<String, Object>) key).get("category")).build());
+        }
+
+        int scanned = 0, migrated = 0, failed = 0;
+        do {
+            ScanResponse page = ddb.scan(ScanRequest.builder()
+                    .tableName(this.trendInsightsTable)
+                    .filterExpression("category IN (:country, :device)")
+                    .expressionAttributeValues(Map.of(
+                            ":country", AttributeValue.builder().s("COUNTRY").build(),
+                            ":device", AttributeValue.builder().s("DEVICE").build()))
+                    .exclusiveStartKey(exclusiveStartKey)
+                    .build());
+
+            Map<String, List<Map<String, AttributeValue>>> byLink = new LinkedHashMap<>();
+            for (Map<String, AttributeValue> item : page.items()) {
+                scanned++;
+                byLink.computeIfAbsent(item.get("shortId").s(), k -> new ArrayList<>()).add(item);
+            }
+
+            for (Map.Entry<String, List<Map<String, AttributeValue>>> link : byLink.entrySet()) {
+                if (dryRun) {
+                    logger.log("[DryRun] " + link.getKey() + ": " + link.getValue().size() + " legacy items");
+                    continue;
+                }
+                try {
+                    migrate(link.getKey(), link.getValue());
+                    migrated++;
+                } catch (Exception e) {
+                    failed++;
+                    logger.log("[Error] Failed to migrate trends of " + link.getKey() + ": " + e.getMessage());
+                }
+            }
+
+            exclusiveStartKey = page.hasLastEvaluatedKey() && !page.lastEvaluatedKey().isEmpty() ? page.lastEvaluatedKey() : null;
+        } while (exclusiveStartKey != null && context.getRemainingTimeInMillis() > TIME_BUDGET_MARGIN_MS);
+
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("scanned", scanned);
+        summary.put("migratedLinks", migrated);
+        summary.put("failedLinks", failed);
+        summary.put("dryRun", dryRun);
+        summary.put("nextStartKey", exclusiveStartKey != null
+                ? Map.of("shortId", exclusiveStartKey.get("shortId").s(), "category", exclusiveStartKey.get("category").s())
+                : null);
+
+        String result = gson.toJson(summary);
+        logger.log("[TrendMigration] " + result);
+        return result;
+    }
+
+    private void migrate(String shortId, List<Map<String, AttributeValue>> legacyItems) {
+        Put create = TrendDocument.create(this.trendInsightsTable, shortId);
+        try {
+            ddb.putItem(PutItemRequest.builder()
+                    .tableName(create.tableName())
+                    .item(create.item())
+                    .conditionExpression(create.conditionExpression())
+                    .build());
+        } catch (ConditionalCheckFailedException e) {
+            // 문서가 이미 있다
+        }
+
+        Map<String, Map<String, Long>> deltas = new LinkedHashMap<>();
+        List<TransactWriteItem> deletes = new ArrayList<>();
+        for (Map<String, AttributeValue> item : legacyItems) {
+            String category = item.get("category").s();
+            Map<String, Long> counts = deltas.computeIfAbsent("COUNTRY".equals(category) ? TrendDocument.COUNTRIES : TrendDocument.DEVICES, k -> new LinkedHashMap<>());
+            item.forEach((name, value) -> {
+                if (value.n() != null && !name.equals("shortId") && !name.equals("category") && !name.equals("lastUpdated")) {
+                    counts.merge(name, Long.parseLong(value.n()), Long::sum);
+                }
+            });
+            deletes.add(TransactWriteItem.builder().delete(Delete.builder()
+                    .tableName(this.trendInsightsTable)
+                    .key(Map.of("shortId", item.get("shortId"), "category", item.get("category")))
+                    .conditionExpression("attribute_exists(shortId)")
+                    .build()).build());
+        }
+        deltas.values().removeIf(Map::isEmpty);
+
+        List<TransactWriteItem> items = new ArrayList<>(deletes);
+        if (!deltas.isEmpty()) {
+            items.add(TransactWriteItem.builder().update(TrendDocument.add(this.trendInsightsTable, shortId, deltas, Instant.now().toString())).build());
+        }
+        ddb.transactWriteItems(TransactWriteItemsRequest.builder().transactItems(items).build());
+    }
+}
@@ -0,0 +1,147 @@
+package lessurl;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * 웜 Lambda 컨테이너 안에서 재사용되는 TTL + LRU 캐시.
+ * 엔트리 수와 대략적인 메모리 사용량(weight) 두 기준으로 크기를 제한하며,
+ * 존재하지 않는 키는 짧은 TTL의 음성(negative) 엔트리로 기억한다.
+ */
+public class TtlCache<V> {
+
+    public enum State { HIT, NEGATIVE, MISS }
+
+    public record Lookup<V>(State state, V value) {
+        public boolean isHit() { return state == State.HIT; }
+        public boolean isNegative() { return state == State.NEGATIVE; }
+    }
+
+    // 엔트리 하나당 대략적인 객체 오버헤드 (LinkedHashMap 노드 + 엔트리 객체 + 키 헤더)
+    private static final long ENTRY_OVERHEAD = 96;
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final ToLongFunction<V> weigher;
+    private final LongSupplier clock;
+
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long weight;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private record Entry<V>(V value, long expiresAt, long weight) {}
+
+    public TtlCache(int maxEntries, long maxWeight, long ttlMillis, long negativeTtlMillis, ToLongFunction<V> weigher) {
+        this(maxEntries, maxWeight, ttlMillis, negativeTtlMillis, weigher, System::currentTimeMillis);
+    }
+
+    TtlCache(int maxEntries, long maxWeight, long ttlMillis, long negativeTtlMillis, ToLongFunction<V> weigher, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.weigher = weigher;
+        this.clock = clock;
+    }
+
+    public Lookup<V> get(String key) {
+        if (maxEntries <= 0) {
+            misses.incrementAndGet();
+            return new Lookup<>(State.MISS, null);
+        }
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.expiresAt() <= clock.getAsLong()) {
+                remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                misses.incrementAndGet();
+                return new Lookup<>(State.MISS, null);
+            }
+            if (entry.value() == null) {
+                negativeHits.incrementAndGet();
+                return new Lookup<>(State.NEGATIVE, null);
+            }
+            hits.incrementAndGet();
+            return new Lookup<>(State.HIT, entry.value());
+        }
+    }
+
+    public void put(String key, V value) {
+        put(key, value, ttlMillis);
+    }
+
+    public void put(String key, V value, long ttl) {
+        if (value == null) throw new IllegalArgumentException("value must not be null, use putNegative()");
+        store(key, value, ttl, ENTRY_OVERHEAD + 2L * key.length() + weigher.applyAsLong(value));
+    }
+
+    public void putNegative(String key) {
+        store(key, null, negativeTtlMillis, ENTRY_OVERHEAD + 2L * key.length());
+    }
+
+    public synchronized void invalidate(String key) {
+        remove(key);
+    }
+
+    private void store(String key, V value, long ttl, long entryWeight) {
+        if (maxEntries <= 0 || ttl <= 0 || entryWeight > maxWeight) return;
+        synchronized (this) {
+            remove(key);
+            entries.put(key, new Entry<>(value, clock.getAsLong() + ttl, entryWeight));
+            weight += entryWeight;
+            evictIfNeeded();
+        }
+    }
+
+    private void remove(String key) {
+        Entry<V> removed = entries.remove(key);
+        if (removed != null) weight -= removed.weight();
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Entry<V>> it = entries.values().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && it.hasNext()) {
+            Entry<V> eldest = it.next();
+            it.remove();
+            weight -= eldest.weight();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hits", hits.get());
+        stats.put("negativeHits", negativeHits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        stats.put("size", size());
+        stats.put("weight", weight());
+        return stats;
+    }
+
+    public long hits() { return hits.get(); }
+    public long negativeHits() { return negativeHits.get(); }
+    public long misses() { return misses.get(); }
+    public long evictions() { return evictions.get(); }
+}
@@ -0,0 +1,132 @@
+package lessurl;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 안전성 판정 캐시의 키를 만들기 위한 URL 정규화.
+ * 같은 페이지를 가리키는 표기 차이(스킴/호스트 대소문자, 기본 포트, 끝 슬래시, 프래그먼트, 추적 파라미터)를 하나로 모은다.
+ * 리다이렉트 대상 URL 자체는 바꾸지 않는다.
+ */
+public final class UrlNormalizer {
+
+    private static final Set<String> TRACKING_PARAMS = Set.of(
+            "fbclid", "gclid", "dclid", "gbraid", "wbraid", "msclkid", "yclid", "igshid", "mc_cid", "mc_eid", "_ga", "_gl", "ref_src");
+
+    // 등록 가능 도메인을 한 단계 더 내려서 봐야 하는 접미사. 공개 접미사 목록 중 실제로 자주 보이는 것만 둔다.
+    // 호스팅 서비스 도메인은 사용자마다 소유자가 다르므로 접미사로 취급해 판정이 서로 번지지 않게 한다.
+    private static final Set<String> MULTI_LABEL_SUFFIXES = Set.of(
+            "co.kr", "or.kr", "ne.kr", "go.kr", "ac.kr", "re.kr", "pe.kr", "ms.kr", "hs.kr", "es.kr", "sc.kr",
+            "co.uk", "org.uk", "ac.uk", "gov.uk", "me.uk", "ltd.uk", "plc.uk",
+            "co.jp", "ne.jp", "or.jp", "ac.jp", "go.jp",
+            "com.au", "net.au", "org.au", "edu.au", "gov.au",
+            "com.cn", "net.cn", "org.cn", "com.tw", "com.hk", "com.sg", "com.br", "com.mx", "com.tr",
+            "co.in", "co.nz", "co.za", "co.id", "co.th",
+            "github.io", "gitlab.io", "blogspot.com", "web.app", "firebaseapp.com", "appspot.com",
+            "netlify.app", "vercel.app", "pages.dev", "workers.dev", "herokuapp.com", "azurewebsites.net",
+            "cloudfront.net", "s3.amazonaws.com", "notion.site", "glitch.me", "repl.co");
+
+    private UrlNormalizer() {}
+
+    public record Normalized(String url, String host, String registrableDomain) {}
+
+    /**
+     * 정규화할 수 없는 URL이면 null. 이 경우 호출 측은 캐시를 건너뛰고 매번 검사한다.
+     */
+    public static Normalized normalize(String rawUrl) {
+        URI uri;
+        try {
+            uri = URI.create(rawUrl.trim());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.ROOT) : null;
+        String host = uri.getHost() != null ? uri.getHost().toLowerCase(Locale.ROOT) : null;
+        if (scheme == null || host == null || !(scheme.equals("http") || scheme.equals("https"))) return null;
+        if (host.endsWith(".")) host = host.substring(0, host.length() - 1);
+
+        StringBuilder sb = new StringBuilder(rawUrl.length());
+        sb.append(scheme).append("://").append(host);
+        int port = uri.getPort();
+        if (port != -1 && !(scheme.equals("http") && port == 80) && !(scheme.equals("https") && port == 443)) {
+            sb.append(':').append(port);
+        }
+
+        String path = uri.getRawPath();
+        if (path == null || path.isEmpty()) path = "/";
+        while (path.length() > 1 && path.endsWith("/")) path = path.substring(0, path.length() - 1);
+        sb.append(path);
+
+        String query = normalizeQuery(uri.getRawQuery());
+        if (!query.isEmpty()) sb.append('?').append(query);
+
+        return new Normalized(sb.toString(), host, registrableDomain(host));
+    }
+
+    /**
+     * 표기 차이(스킴/호스트 대소문자, 기본 포트, 빈 경로)만 없앤 URL. 중복 링크 판별용이다.
+     * normalize와 달리 쿼리와 프래그먼트를 그대로 두므로 결과가 같으면 리다이렉트 대상도 같다. 해석할 수 없으면 null.
+     */
+    public static String canonical(String rawUrl) {
+        URI uri;
+        try {
+            uri = URI.create(rawUrl.trim());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.ROOT) : null;
+        String host = uri.getHost() != null ? uri.getHost().toLowerCase(Locale.ROOT) : null;
+        if (scheme == null || host == null || !(scheme.equals("http") || scheme.equals("https"))) return null;
+
+        StringBuilder sb = new StringBuilder(rawUrl.length());
+        sb.append(scheme).append("://").append(host);
+        int port = uri.getPort();
+        if (port != -1 && !(scheme.equals("http") && port == 80) && !(scheme.equals("https") && port == 443)) {
+            sb.append(':').append(port);
+        }
+        String path = uri.getRawPath();
+        sb.append(path == null || path.isEmpty() ? "/" : path);
+        if (uri.getRawQuery() != null) sb.append('?').append(uri.getRawQuery());
+        if (uri.getRawFragment() != null) sb.append('#').append(uri.getRawFragment());
+        return sb.toString();
+    }
+
+    // 추적 파라미터를 지우고 남은 파라미터를 정렬한다. 값은 인코딩된 그대로 둔다.
+    private static String normalizeQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) return "";
+        List<String> kept = new ArrayList<>();
+        for (String pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String name = (eq >= 0 ? pair.substring(0, eq) : pair).toLowerCase(Locale.ROOT);
+            if (name.startsWith("utm_") || TRACKING_PARAMS.contains(name)) continue;
+            kept.add(pair);
+        }
+        Collections.sort(kept);
+        return String.join("&", kept);
+    }
+
+    /**
+     * 호스트의 등록 가능 도메인 (예: news.example.co.kr -> example.co.kr). IP 주소는 그대로 돌려준다.
+     */
+    public static String registrableDomain(String host) {
+        if (host.startsWith("[") || host.chars().allMatch(c -> c == '.' || Character.isDigit(c))) return host;
+
+        String[] labels = host.split("\\.");
+        if (labels.length <= 2) return host;
+
+        String lastTwo = labels[labels.length - 2] + "." + labels[labels.length - 1];
+        if (MULTI_LABEL_SUFFIXES.contains(lastTwo)) {
+            return labels[labels.length - 3] + "." + lastTwo;
+        }
+        String lastThree = labels[labels.length - 3] + "." + lastTwo;
+        if (labels.length > 3 && MULTI_LABEL_SUFFIXES.contains(lastThree)) {
+            return labels[labels.length - 4] + "." + lastThree;
+        }
+        return lastTwo;
+    }
+}
@@ -0,0 +1,173 @@
+package lessurl;
+
+import com.google.gson.Gson;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Gemini 분류와 Google Safe Browsing 조회. ShortenHandler(단건)와 BatchShortenHandler(일괄)가 함께 쓴다.
+ * 단건 검사는 실패하면 안전으로 본다(기존 동작). 일괄 조회는 실패를 예외로 알려 호출 측이 판정을 캐시하지 않게 한다.
+ *
+ * SafeBrowsingLocalDb가 준비되어 있으면 Safe Browsing은 로컬 접두사 조회로 먼저 거르고,
+ * 접두사에 걸린 URL만 fullHashes:find로 확인한다. 준비되지 않았으면 threatMatches:find를 그대로 쓴다.
+ */
+public class UrlSafetyChecker {
+
+    // threatMatches:find 한 번에 넣을 수 있는 URL 수
+    public static final int SAFE_BROWSING_MAX_ENTRIES = 500;
+
+    private static final String GEMINI_ENDPOINT = "https://generativelanguage.googleapis.com/v1/models/gemini-2.5-flash-lite:generateContent?key=";
+    private static final String SAFE_BROWSING_ENDPOINT = "https://safebrowsing.googleapis.com/v4/threatMatches:find?key=";
+    private static final String FULL_HASHES_ENDPOINT = "https://safebrowsing.googleapis.com/v4/fullHashes:find?key=";
+    // SafeBrowsingSyncHandler가 내려받는 목록과 같아야 한다
+    static final List<String> THREAT_TYPES = List.of("MALWARE", "SOCIAL_ENGINEERING");
+    static final Map<String, String> CLIENT = Map.of("clientId", "lessurl", "clientVersion", "1.0");
+
+    private final HttpClient httpClient;
+    private final Gson gson;
+    private final String geminiApiKey;
+    private final String safeBrowsingApiKey;
+    private final SafeBrowsingLocalDb localDb;
+
+    public UrlSafetyChecker(HttpClient httpClient, Gson gson, String geminiApiKey, String safeBrowsingApiKey) {
+        this(httpClient, gson, geminiApiKey, safeBrowsingApiKey, SafeBrowsingLocalDb.disabled());
+    }
+
+    public UrlSafetyChecker(HttpClient httpClient, Gson gson, String geminiApiKey, String safeBrowsingApiKey, SafeBrowsingLocalDb localDb) {
+        this.httpClient = httpClient;
+        this.gson = gson;
+        this.geminiApiKey = geminiApiKey;
+        this.safeBrowsingApiKey = safeBrowsingApiKey;
+        this.localDb = localDb;
+    }
+
+    /**
+     * 검사 키가 하나도 없으면 모든 URL이 검사 없이 통과하므로 판정을 캐시하지 않는다.
+     */
+    public boolean isEnabled() {
+        return geminiApiKey != null || safeBrowsingApiKey != null;
+    }
+
+    public boolean isMaliciousWithSafeBrowsing(String url) {
+        if (this.safeBrowsingApiKey == null) return false;
+        try {
+            return !matchSafeBrowsing(List.of(url)).isEmpty();
+        } catch (Exception e) { return false; }
+    }
+
+    /**
+     * Safe Browsing에 한 번에 묻고 위협으로 나온 URL만 돌려준다. 최대 SAFE_BROWSING_MAX_ENTRIES개.
+     */
+    @SuppressWarnings("unchecked")
+    public Set<String> matchSafeBrowsing(List<String> urls) throws Exception {
+        Set<String> matched = new HashSet<>();
+        if (this.safeBrowsingApiKey == null || urls.isEmpty()) return matched;
+        if (localDb.isReady()) return matchLocally(urls);
+
+        Map<String, Object> body = Map.of(
+                "client", CLIENT,
+                "threatInfo", Map.of(
+                        "threatTypes", THREAT_TYPES,
+                        "platformTypes", List.of("ANY_PLATFORM"),
+                        "threatEntryTypes", List.of("URL"),
+                        "threatEntries", urls.stream().map(url -> Map.of("url", url)).toList()));
+        HttpRequest req = HttpRequest.newBuilder().uri(URI.create(SAFE_BROWSING_ENDPOINT + this.safeBrowsingApiKey)).header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofString(gson.toJson(body))).build();
+        HttpResponse<String> res = httpClient.send(req, HttpResponse.BodyHandlers.ofString());
+        if (res.statusCode() != 200) throw new IllegalStateException("Safe Browsing returned " + res.statusCode());
+
+        Map<String, Object> map = gson.fromJson(res.body(), Map.class);
+        List<Object> matches = map != null ? (List<Object>) map.get("matches") : null;
+        if (matches == null) return matched;
+        for (Object match : matches) {
+            Map<String, Object> threat = (Map<String, Object>) ((Map<String, Object>) match).get("threat");
+            if (threat != null && threat.get("url") != null) matched.add((String) threat.get("url"));
+        }
+        // 응답에 URL이 빠져 있으면 어떤 항목인지 알 수 없으므로 전부 위협으로 본다
+        if (matched.isEmpty()) matched.addAll(urls);
+        return matched;
+    }
+
+    // 로컬 접두사에 걸린 URL만 모아 fullHashes:find 한 번으로 확인한다
+    private Set<String> matchLocally(List<String> urls) throws Exception {
+        Set<String> matched = new HashSet<>();
+        Map<String, List<byte[]>> candidates = new HashMap<>();
+        for (String url : urls) {
+            List<byte[]> hits = localDb.prefixMatches(SafeBrowsingUrl.fullHashes(url));
+            if (!hits.isEmpty()) candidates.put(url, hits);
+        }
+        if (candidates.isEmpty()) return matched;
+
+        Set<String> listed = findFullHashes(candidates.values().stream().flatMap(List::stream).toList());
+        Base64.Encoder base64 = Base64.getEncoder();
+        candidates.forEach((url, hashes) -> {
+            for (byte[] hash : hashes) {
+                if (listed.contains(base64.encodeToString(hash))) {
+                    matched.add(url);
+                    break;
+                }
+            }
+        });
+        return matched;
+    }
+
+    /**
+     * 접두사로 전체 해시 목록을 받아 온다. 돌려주는 값은 위협 목록에 있는 전체 해시(Base64)다.
+     */
+    @SuppressWarnings("unchecked")
+    private Set<String> findFullHashes(List<byte[]> hashes) throws Exception {
+        Base64.Encoder base64 = Base64.getEncoder();
+        Set<String> prefixes = new LinkedHashSet<>();
+        for (byte[] hash : hashes) prefixes.add(base64.encodeToString(Arrays.copyOf(hash, SafeBrowsingLocalDb.PREFIX_BYTES)));
+        List<Map<String, String>> entries = new ArrayList<>(prefixes.size());
+        for (String prefix : prefixes) entries.add(Map.of("hash", prefix));
+
+        Map<String, Object> body = Map.of(
+                "client", CLIENT,
+                "clientStates", List.of(),
+                "threatInfo", Map.of(
+                        "threatTypes", THREAT_TYPES,
+                        "platformTypes", List.of("ANY_PLATFORM"),
+                        "threatEntryTypes", List.of("URL"),
+                        "threatEntries", entries));
+        HttpRequest req = HttpRequest.newBuilder().uri(URI.create(FULL_HASHES_ENDPOINT + this.safeBrowsingApiKey)).header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofString(gson.toJson(body))).build();
+        HttpResponse<String> res = httpClient.send(req, HttpResponse.BodyHandlers.ofString());
+        if (res.statusCode() != 200) throw new IllegalStateException("Safe Browsing returned " + res.statusCode());
+
+        Set<String> listed = new HashSet<>();
+        Map<String, Object> map = gson.fromJson(res.body(), Map.class);
+        List<Object> matches = map != null ? (List<Object>) map.get("matches") : null;
+        if (matches == null) return listed;
+        for (Object match : matches) {
+            Map<String, Object> threat = (Map<String, Object>) ((Map<String, Object>) match).get("threat");
+            if (threat != null && threat.get("hash") != null) listed.add((String) threat.get("hash"));
+        }
+        return listed;
+    }
+
+    public boolean isMaliciousWithGemini(String url) {
+        if (this.geminiApiKey == null) return false;
+        try {
+            String prompt = String.format("Analyze this URL for phishing or malware. Respond only with JSON: {\"classification\": \"SAFE\" or \"PHISHING\" or \"MALWARE\"}. URL: %s", url);
+            Map<String, Object> body = Map.of(
+                    "contents", List.of(Map.of("parts", List.of(Map.of("text", prompt)))),
+                    "generationConfig", Map.of("responseMimeType", "application/json"));
+            HttpRequest req = HttpRequest.newBuilder().uri(URI.create(GEMINI_ENDPOINT + this.geminiApiKey)).header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofString(gson.toJson(body))).build();
+            HttpResponse<String> res = httpClient.send(req, HttpResponse.BodyHandlers.ofString());
+            if (res.statusCode() != 200) return false;
+            String inner = JsonCodec.geminiText(res.body());
+            return inner != null && !inner.contains("SAFE");
+        } catch (Exception e) { return false; }
+    }
+}
@@ -0,0 +1,205 @@
+package lessurl;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * URL 안전성 판정 캐시. 컨테이너 메모리(TtlCache)와 DynamoDB(UrlVerdictTable, TTL) 두 단계로 둔다.
+ * 판정은 정규화된 URL("url#...") 키로 저장하고, 차단과 검사 생략은 이 URL 판정으로만 한다.
+ * 공유 호스트에서는 같은 등록 가능 도메인에 정상 URL과 피싱 경로가 섞여 있으므로 도메인 판정으로 막거나 통과시키지 않는다.
+ *
+ * VERDICT_DOMAIN_SAFE_REUSE를 켜면(기본 꺼짐) 도메인("domain#...") SAFE 판정도 남겨 scope "domain"으로 돌려준다.
+ * 이 경우에도 Safe Browsing은 URL 그대로 검사하고 Gemini 호출만 생략한다. 같은 도메인에서 악성 URL이 나오면 재사용을 멈춘다.
+ * 판정이 기한 초과 등으로 불완전하면 저장하지 않는다 (ShortenHandler 참고).
+ */
+public class VerdictCache {
+
+    public enum Verdict { SAFE, MALICIOUS }
+
+    /**
+     * @param scope "url" 또는 "domain"
+     */
+    public record Hit(Verdict verdict, String scope, String reason) {
+        /**
+         * 도메인 SAFE 재사용으로 얻은 판정이면 true. URL 검사를 대신하지 않는다.
+         */
+        public boolean isDomainSafe() {
+            return "domain".equals(scope) && verdict == Verdict.SAFE;
+        }
+    }
+
+    private static final String KEY = "verdictKey";
+
+    private final DynamoDbClient ddb;
+    private final String tableName;
+    private final TtlCache<Hit> memory;
+    private final long safeTtlSeconds;
+    private final long maliciousTtlSeconds;
+    private final long domainSafeTtlSeconds;
+    private final boolean domainSafeReuse;
+
+    public VerdictCache(DynamoDbClient ddb, String tableName, TtlCache<Hit> memory, long safeTtlSeconds, long maliciousTtlSeconds, long domainSafeTtlSeconds, boolean domainSafeReuse) {
+        this.ddb = ddb;
+        this.tableName = tableName;
+        this.memory = memory;
+        this.safeTtlSeconds = safeTtlSeconds;
+        this.maliciousTtlSeconds = maliciousTtlSeconds;
+        this.domainSafeTtlSeconds = domainSafeTtlSeconds;
+        this.domainSafeReuse = domainSafeReuse;
+    }
+
+    public static VerdictCache fromEnv(DynamoDbClient ddb) {
+        return new VerdictCache(ddb, System.getenv("URL_VERDICT_TABLE"),
+                new TtlCache<>((int) BaseHandler.envLong("VERDICT_MEMORY_MAX_ENTRIES", 5_000), 4L * 1024 * 1024,
+                        BaseHandler.envLong("VERDICT_MEMORY_TTL_SECONDS", 600) * 1000, 0,
+                        hit -> 64),
+                BaseHandler.envLong("VERDICT_SAFE_TTL_HOURS", 24) * 3600,
+                BaseHandler.envLong("VERDICT_MALICIOUS_TTL_HOURS", 168) * 3600,
+                BaseHandler.envLong("VERDICT_DOMAIN_SAFE_TTL_HOURS", 6) * 3600,
+                "true".equalsIgnoreCase(System.getenv("VERDICT_DOMAIN_SAFE_REUSE")));
+    }
+
+    public static VerdictCache disabled() {
+        return new VerdictCache(null, null, new TtlCache<>(0, 0, 0, 0, hit -> 0), 0, 0, 0, false);
+    }
+
+    private boolean persistent() {
+        return tableName != null && !tableName.isEmpty();
+    }
+
+    /**
+     * 캐시된 URL 판정. 없으면 재사용 설정에 따라 도메인 SAFE 판정, 그것도 없으면 null.
+     * 도메인 MALICIOUS는 돌려주지 않는다 (한 URL 때문에 도메인 전체를 막지 않는다).
+     */
+    public Hit lookup(UrlNormalizer.Normalized url) {
+        String urlKey = "url#" + url.url();
+        String domainKey = "domain#" + url.registrableDomain();
+
+        TtlCache.Lookup<Hit> urlHit = memory.get(urlKey);
+        if (urlHit.isHit()) return urlHit.value();
+        if (domainSafeReuse) {
+            // 도메인 MALICIOUS 표시는 SAFE 재사용만 막으므로, URL 판정은 아래에서 마저 찾는다
+            TtlCache.Lookup<Hit> domainHit = memory.get(domainKey);
+            if (domainHit.isHit() && domainHit.value().isDomainSafe()) return domainHit.value();
+        }
+        if (!persistent()) return null;
+
+        Map<String, Hit> stored = batchGet(domainSafeReuse ? List.of(urlKey, domainKey) : List.of(urlKey));
+        if (stored.containsKey(urlKey)) memory.put(urlKey, stored.get(urlKey));
+        if (!domainSafeReuse) return stored.get(urlKey);
+        if (stored.containsKey(domainKey)) memory.put(domainKey, stored.get(domainKey));
+        if (stored.containsKey(urlKey)) return stored.get(urlKey);
+        return applicableDomainHit(stored.get(domainKey));
+    }
+
+    private static Hit applicableDomainHit(Hit domain) {
+        return domain != null && domain.isDomainSafe() ? domain : null;
+    }
+
+    /**
+     * 두 검사가 모두 끝난 완전한 판정만 넘긴다.
+     */
+    public void record(UrlNormalizer.Normalized url, Verdict verdict, String reason) {
+        long urlTtl = verdict == Verdict.MALICIOUS ? maliciousTtlSeconds : safeTtlSeconds;
+        long domainTtl = verdict == Verdict.MALICIOUS ? maliciousTtlSeconds : domainSafeTtlSeconds;
+        Hit urlHit = new Hit(verdict, "url", reason);
+        Hit domainHit = new Hit(verdict, "domain", reason);
+
+        memory.put("url#" + url.url(), urlHit);
+        // 도메인 항목은 SAFE 재사용을 켰을 때만 쓴다. MALICIOUS 도메인 항목은 차단이 아니라 SAFE 재사용을 멈추는 표시다.
+        // 도메인 SAFE가 이미 기록된 MALICIOUS를 덮어쓰지 않게 한다. 같은 도메인에서 악성 URL이 나온 경우가 우선이다
+        boolean writeDomain = false;
+        if (domainSafeReuse) {
+            TtlCache.Lookup<Hit> existing = memory.get("domain#" + url.registrableDomain());
+            writeDomain = verdict == Verdict.MALICIOUS || !existing.isHit() || existing.value().verdict() != Verdict.MALICIOUS;
+            if (writeDomain) memory.put("domain#" + url.registrableDomain(), domainHit);
+        }
+        if (!persistent()) return;
+
+        long now = System.currentTimeMillis() / 1000;
+        try {
+            List<WriteRequest> writes = new ArrayList<>(2);
+            writes.add(putRequest("url#" + url.url(), urlHit, now + urlTtl));
+            if (verdict == Verdict.MALICIOUS && writeDomain) {
+                writes.add(putRequest("domain#" + url.registrableDomain(), domainHit, now + domainTtl));
+            }
+            Map<String, List<WriteRequest>> pending = Map.of(tableName, writes);
+            for (int attempt = 0; attempt < 3 && !pending.isEmpty(); attempt++) {
+                BatchWriteItemResponse res = ddb.batchWriteItem(BatchWriteItemRequest.builder().requestItems(pending).build());
+                pending = res.hasUnprocessedItems() ? res.unprocessedItems() : Map.of();
+            }
+            if (!pending.isEmpty()) {
+                System.err.println("[VerdictCache] " + pending.get(tableName).size() + " verdict writes left unprocessed for " + url.url());
+            }
+            if (verdict == Verdict.SAFE && writeDomain) putDomainSafe(url.registrableDomain(), domainHit, now + domainTtl);
+        } catch (Exception e) {
+            // 캐시 저장 실패는 다음 요청에서 다시 검사하면 되므로 응답에 영향을 주지 않는다
+            System.err.println("[VerdictCache] Failed to store verdict: " + e.getMessage());
+        }
+    }
+
+    // 다른 컨테이너가 남긴 도메인 MALICIOUS 판정은 조건식으로 보호한다
+    private void putDomainSafe(String domain, Hit hit, long expiresAt) {
+        try {
+            ddb.putItem(PutItemRequest.builder()
+                    .tableName(tableName)
+                    .item(item("domain#" + domain, hit, expiresAt))
+                    .conditionExpression("attribute_not_exists(verdictKey) OR verdict <> :malicious OR expiresAt < :now")
+                    .expressionAttributeValues(Map.of(
+                            ":malicious", AttributeValue.builder().s(Verdict.MALICIOUS.name()).build(),
+                            ":now", AttributeValue.builder().n(Long.toString(System.currentTimeMillis() / 1000)).build()))
+                    .build());
+        } catch (ConditionalCheckFailedException e) {
+            // 이미 악성 도메인으로 기록되어 있다
+        }
+    }
+
+    private Map<String, Hit> batchGet(List<String> keys) {
+        Map<String, Hit> found = new HashMap<>();
+        try {
+            List<Map<String, AttributeValue>> keyMaps = new ArrayList<>(keys.size());
+            for (String key : keys) keyMaps.add(Map.of(KEY, AttributeValue.builder().s(key).build()));
+
+            BatchGetItemResponse res = ddb.batchGetItem(BatchGetItemRequest.builder()
+                    .requestItems(Map.of(tableName, KeysAndAttributes.builder().keys(keyMaps).build()))
+                    .build());
+            long now = System.currentTimeMillis() / 1000;
+            for (Map<String, AttributeValue> item : res.responses().getOrDefault(tableName, List.of())) {
+                // TTL 삭제는 지연될 수 있으므로 만료 시각을 직접 확인한다
+                if (Long.parseLong(item.get("expiresAt").n()) <= now) continue;
+                String key = item.get(KEY).s();
+                found.put(key, new Hit(Verdict.valueOf(item.get("verdict").s()),
+                        key.startsWith("url#") ? "url" : "domain",
+                        item.containsKey("reason") ? item.get("reason").s() : null));
+            }
+        } catch (Exception e) {
+            System.err.println("[VerdictCache] Lookup failed, checking remotely: " + e.getMessage());
+        }
+        return found;
+    }
+
+    private WriteRequest putRequest(String key, Hit hit, long expiresAt) {
+        return WriteRequest.builder().putRequest(PutRequest.builder().item(item(key, hit, expiresAt)).build()).build();
+    }
+
+    private static Map<String, AttributeValue> item(String key, Hit hit, long expiresAt) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put(KEY, AttributeValue.builder().s(key).build());
+        item.put("verdict", AttributeValue.builder().s(hit.verdict().name()).build());
+        if (hit.reason() != null) item.put("reason", AttributeValue.builder().s(hit.reason()).build());
+        item.put("checkedAt", AttributeValue.builder().s(java.time.Instant.now().toString()).build());
+        item.put("expiresAt", AttributeValue.builder().n(Long.toString(expiresAt)).build());
+        return item;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>(memory.stats());
+        stats.put("persistent", persistent());
+        return stats;
+    }
+}
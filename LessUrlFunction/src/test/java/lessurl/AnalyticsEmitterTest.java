@@ -0,0 +1,111 @@
+package lessurl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AnalyticsEmitterTest {
+
+    @Mock
+    private SqsClient mockSqs;
+
+    @Test
+    @DisplayName("배치 크기만큼 이벤트가 모이면 SendMessageBatch 한 번으로 전송한다")
+    void testSizeTriggeredFlush() {
+        // given
+        when(mockSqs.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(SendMessageBatchResponse.builder().build());
+        AnalyticsEmitter emitter = new AnalyticsEmitter(mockSqs, "queue", 3, 5_000);
+
+        // when
+        emitter.emit("{\"n\":1}");
+        emitter.emit("{\"n\":2}");
+        verify(mockSqs, never()).sendMessageBatch(any(SendMessageBatchRequest.class));
+        emitter.emit("{\"n\":3}");
+        emitter.awaitDelivery();
+
+        // then
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(mockSqs, times(1)).sendMessageBatch(captor.capture());
+        assertEquals(3, captor.getValue().entries().size());
+        assertEquals(3, emitter.sent());
+        assertEquals(0, emitter.queueDepth());
+    }
+
+    @Test
+    @DisplayName("이벤트 하나만 쌓였어도 awaitDelivery가 호출 종료 전에 전송한다 (응답 뒤 샌드박스가 얼어도 클릭을 잃지 않는다)")
+    void testAwaitDeliverySendsPartialBatch() {
+        // given: 배치 크기를 채우지 못한 이벤트 하나
+        when(mockSqs.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(SendMessageBatchResponse.builder().build());
+        AnalyticsEmitter emitter = new AnalyticsEmitter(mockSqs, "queue", 10, 5_000);
+        emitter.emit("{\"n\":1}");
+
+        // when
+        emitter.awaitDelivery();
+
+        // then
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(mockSqs, times(1)).sendMessageBatch(captor.capture());
+        assertEquals(1, captor.getValue().entries().size());
+        assertEquals(1, emitter.sent());
+        assertEquals(0, emitter.queueDepth());
+    }
+
+    @Test
+    @DisplayName("awaitDelivery는 실패해 버퍼로 돌아온 이벤트를 기한 안에서 한 번 더 보낸다")
+    void testAwaitDeliveryRetriesFailedSend() {
+        // given
+        when(mockSqs.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenThrow(new RuntimeException("throttled"))
+                .thenReturn(SendMessageBatchResponse.builder().build());
+        AnalyticsEmitter emitter = new AnalyticsEmitter(mockSqs, "queue", 10, 5_000);
+        emitter.emit("{\"n\":1}");
+
+        // when
+        emitter.awaitDelivery();
+
+        // then
+        verify(mockSqs, times(2)).sendMessageBatch(any(SendMessageBatchRequest.class));
+        assertEquals(1, emitter.sent());
+        assertEquals(0, emitter.failed());
+        assertEquals(0, emitter.queueDepth());
+    }
+
+    @Test
+    @DisplayName("기다리는 중 스레드가 중단되면 전송을 백그라운드에 맡기고 바로 돌아오며, 중단 플래그를 되살린다")
+    void testAwaitDeliveryRestoresInterruptFlag() throws Exception {
+        // given
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return SendMessageBatchResponse.builder().build();
+        }).when(mockSqs).sendMessageBatch(any(SendMessageBatchRequest.class));
+        AnalyticsEmitter emitter = new AnalyticsEmitter(mockSqs, "queue", 10, 5_000);
+        emitter.emit("{\"n\":1}");
+
+        // when
+        Thread.currentThread().interrupt();
+        emitter.awaitDelivery();
+        boolean interrupted = Thread.interrupted();
+        release.countDown();
+        emitter.flush();
+
+        // then
+        assertTrue(interrupted);
+        assertEquals(1, emitter.sent());
+    }
+}
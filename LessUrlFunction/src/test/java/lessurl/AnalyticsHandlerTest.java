@@ -0,0 +1,356 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.sqs.SqsClient;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AnalyticsHandlerTest {
+
+    @Mock
+    private DynamoDbClient mockDdb;
+
+    @Mock
+    private LambdaClient mockLambda;
+
+    @Mock
+    private SqsClient mockSqs;
+
+    @Mock
+    private Context mockContext;
+
+    @Mock
+    private LambdaLogger mockLogger;
+
+    private AnalyticsHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(mockContext.getLogger()).thenReturn(mockLogger);
+        handler = new AnalyticsHandler(mockDdb, mockLambda, mockSqs, new Gson(), "urls", "clicks", "trendInsights", "rollups", "counters", 20);
+    }
+
+    private static SQSEvent.SQSMessage message(String id, String body) {
+        SQSEvent.SQSMessage msg = new SQSEvent.SQSMessage();
+        msg.setMessageId(id);
+        msg.setBody(body);
+        msg.setAttributes(Map.of("SentTimestamp", "1760000000000"));
+        return msg;
+    }
+
+    private static SQSEvent event(SQSEvent.SQSMessage... messages) {
+        SQSEvent event = new SQSEvent();
+        event.setRecords(List.of(messages));
+        return event;
+    }
+
+    private List<PutItemRequest> rowPuts() {
+        ArgumentCaptor<PutItemRequest> captor = ArgumentCaptor.forClass(PutItemRequest.class);
+        verify(mockDdb, atLeast(0)).putItem(captor.capture());
+        return captor.getAllValues().stream().filter(req -> req.tableName().equals("clicks")).toList();
+    }
+
+    private List<UpdateItemRequest> updates(String table) {
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(mockDdb, atLeast(0)).updateItem(captor.capture());
+        return captor.getAllValues().stream().filter(req -> req.tableName().equals(table)).toList();
+    }
+
+    @Test
+    @DisplayName("클릭 행은 하나씩 조건부로 넣고, 카운터는 링크·카테고리별로 합산해 트랜잭션 없이 키마다 한 번만 갱신한다")
+    void testAggregatesCountersPerKey() {
+        // given: 같은 링크 3건(그중 2건은 같은 시각에 큐에 들어옴), 다른 링크 1건, 깨진 메시지 1건
+        when(mockDdb.putItem(any(PutItemRequest.class))).thenReturn(PutItemResponse.builder().build());
+        when(mockDdb.updateItem(any(UpdateItemRequest.class))).thenReturn(UpdateItemResponse.builder().build());
+        SQSEvent event = event(
+                message("m1", RedirectHandler.clickPayload("abc1234", "h1", "UA", "direct", "KR", "MOBILE", null)),
+                message("m2", RedirectHandler.clickPayload("abc1234", "h2", "UA", "direct", "KR", "PC", null)),
+                message("m3", RedirectHandler.clickPayload("abc1234", "h3", "UA", "direct", "JP", "MOBILE", "2026-10-16T01:02:03Z")),
+                message("m4", RedirectHandler.clickPayload("xyz9876", "h4", "UA", "direct", "US", "TABLET", null)),
+                message("m5", "not json"));
+
+        // when
+        SQSBatchResponse response = handler.handleRequest(event, mockContext);
+
+        // then
+        assertTrue(response.getBatchItemFailures().isEmpty());
+        verify(mockDdb, never()).transactWriteItems(any(TransactWriteItemsRequest.class));
+        Set<String> keys = new HashSet<>();
+        for (PutItemRequest put : rowPuts()) {
+            keys.add(put.item().get("shortId").s() + "|" + put.item().get("timestamp").s());
+            assertEquals("attribute_not_exists(shortId)", put.conditionExpression());
+        }
+        assertEquals(4, keys.size());
+        assertTrue(keys.stream().anyMatch(k -> k.startsWith("abc1234|2026-10-16T01:02:03.")));
+        // 링크별 카운터·트렌드 문서 2×2 + 롤업 버킷(abc1234는 두 시각이라 시간·일 2개씩, xyz9876은 1개씩) 6
+        assertEquals(2, updates("counters").size());
+        assertEquals(2, updates("trendInsights").size());
+        assertEquals(6, updates("rollups").size());
+        assertTrue(updates("urls").isEmpty());
+
+        UpdateItemRequest abcCount = updates("counters").stream().filter(u -> u.key().get("counterKey").s().equals("abc1234#0")).findFirst().orElseThrow();
+        assertEquals("3", abcCount.expressionAttributeValues().get(":inc").n());
+        UpdateItemRequest abcTrend = updates("trendInsights").stream().filter(u -> u.key().get("shortId").s().equals("abc1234")).findFirst().orElseThrow();
+        assertEquals("ALL", abcTrend.key().get("category").s());
+        assertEquals("ADD countries.#c0 :c0, countries.#c1 :c1, devices.#d0 :d0, devices.#d1 :d1, referers.#r0 :r0 SET lastUpdated = :now", abcTrend.updateExpression());
+        assertEquals(Set.of("KR", "JP", "MOBILE", "PC", "direct"), new HashSet<>(abcTrend.expressionAttributeNames().values()));
+        assertEquals("3", abcTrend.expressionAttributeValues().get(":r0").n());
+
+        UpdateItemRequest abcDay = updates("rollups").stream().filter(u -> u.key().get("shortId").s().equals("abc1234")
+                && u.key().get("bucket").s().equals(ClickRollups.dayBucket(Instant.ofEpochMilli(1760000000000L)))).findFirst().orElseThrow();
+        Map<String, Long> dayCounts = new HashMap<>();
+        abcDay.expressionAttributeNames().forEach((alias, name) ->
+                dayCounts.put(name, Long.parseLong(abcDay.expressionAttributeValues().get(alias.replace('#', ':')).n())));
+        assertEquals(Map.of("clicks", 2L, "c#KR", 2L, "d#MOBILE", 1L, "d#PC", 1L, "r#direct", 2L, "h#8", 2L), dayCounts);
+    }
+
+    @Test
+    @DisplayName("이미 저장된 클릭은 다시 더하지 않고, 행을 끝내 쓰지 못한 클릭만 batchItemFailures로 돌려준다")
+    void testRedeliveredClicksAreNotDoubleCounted() {
+        // given: m1은 이미 저장되고 모두 반영된 행과 clickId가 같아 조건 실패, m2는 계속 스로틀링, m3만 새로 들어간다
+        when(mockDdb.putItem(any(PutItemRequest.class))).thenAnswer(invocation -> {
+            PutItemRequest req = invocation.getArgument(0);
+            String clickId = req.item().get("clickId").s();
+            if (clickId.equals("m1")) {
+                throw ConditionalCheckFailedException.builder().message("exists").item(Map.of("clickId", AttributeValue.builder().s("m1").build(),
+                        AnalyticsHandler.COUNTERS_APPLIED, AttributeValue.builder().ss(AnalyticsHandler.COUNTER_TARGETS).build())).build();
+            }
+            if (clickId.equals("m2")) throw ProvisionedThroughputExceededException.builder().message("throttled").build();
+            return PutItemResponse.builder().build();
+        });
+        when(mockDdb.updateItem(any(UpdateItemRequest.class))).thenReturn(UpdateItemResponse.builder().build());
+        SQSEvent event = event(
+                message("m1", RedirectHandler.clickPayload("abc1234", "h1", "UA", "direct", "KR", "MOBILE", null)),
+                message("m2", RedirectHandler.clickPayload("abc1234", "h2", "UA", "direct", "KR", "MOBILE", null)),
+                message("m3", RedirectHandler.clickPayload("abc1234", "h3", "UA", "direct", "KR", "MOBILE", null)));
+
+        // when
+        SQSBatchResponse response = handler.handleRequest(event, mockContext);
+
+        // then: m1은 한 번만 시도하고, 카운터에는 m3만 더한다
+        assertEquals(List.of("m2"), response.getBatchItemFailures().stream().map(SQSBatchResponse.BatchItemFailure::getItemIdentifier).toList());
+        assertEquals(1, rowPuts().stream().filter(put -> put.item().get("clickId").s().equals("m1")).count());
+        UpdateItemRequest count = updates("counters").get(0);
+        assertEquals("1", count.expressionAttributeValues().get(":inc").n());
+    }
+
+    @Test
+    @DisplayName("다른 클릭과 행 키가 겹치면 시각을 밀어 다시 넣고 한 번만 센다")
+    void testShiftsTimestampOnRowKeyCollision() {
+        // given: 첫 시도는 다른 clickId의 행과 키가 겹친다
+        List<String> timestamps = new ArrayList<>();
+        when(mockDdb.putItem(any(PutItemRequest.class))).thenAnswer(invocation -> {
+            PutItemRequest req = invocation.getArgument(0);
+            timestamps.add(req.item().get("timestamp").s());
+            if (timestamps.size() == 1) {
+                throw ConditionalCheckFailedException.builder().message("exists").item(Map.of("clickId", AttributeValue.builder().s("other").build())).build();
+            }
+            return PutItemResponse.builder().build();
+        });
+        when(mockDdb.updateItem(any(UpdateItemRequest.class))).thenReturn(UpdateItemResponse.builder().build());
+
+        // when
+        SQSBatchResponse response = handler.handleRequest(event(
+                message("m1", RedirectHandler.clickPayload("abc1234", "h1", "UA", "direct", "KR", "PC", null))), mockContext);
+
+        // then
+        assertTrue(response.getBatchItemFailures().isEmpty());
+        assertEquals(2, timestamps.size());
+        assertEquals(Instant.parse(timestamps.get(0)).plusNanos(1), Instant.parse(timestamps.get(1)));
+        assertEquals("1", updates("counters").get(0).expressionAttributeValues().get(":inc").n());
+    }
+
+    @Test
+    @DisplayName("행을 쓴 뒤 카운터 갱신이 끝내 실패하면 반영된 대상만 행에 적고 메시지를 돌려준다")
+    void testCounterFailureRedeliversClick() {
+        // given: 카운터 샤드만 계속 스로틀링된다
+        when(mockDdb.putItem(any(PutItemRequest.class))).thenReturn(PutItemResponse.builder().build());
+        when(mockDdb.updateItem(any(UpdateItemRequest.class))).thenAnswer(invocation -> {
+            UpdateItemRequest req = invocation.getArgument(0);
+            if (req.tableName().equals("counters")) throw ProvisionedThroughputExceededException.builder().message("throttled").build();
+            return UpdateItemResponse.builder().build();
+        });
+
+        // when
+        SQSBatchResponse response = handler.handleRequest(event(
+                message("m1", RedirectHandler.clickPayload("abc1234", "h1", "UA", "direct", "KR", "PC", null))), mockContext);
+
+        // then
+        assertEquals(List.of("m1"), response.getBatchItemFailures().stream().map(SQSBatchResponse.BatchItemFailure::getItemIdentifier).toList());
+        assertEquals(4, updates("counters").size());
+        verify(mockLogger).log(contains("1 counter updates failed"));
+        UpdateItemRequest mark = updates("clicks").get(0);
+        assertEquals("ADD #a :t", mark.updateExpression());
+        assertEquals(Set.of(AnalyticsHandler.TREND, AnalyticsHandler.HOURLY, AnalyticsHandler.DAILY), new HashSet<>(mark.expressionAttributeValues().get(":t").ss()));
+    }
+
+    @Test
+    @DisplayName("재전달된 클릭의 행에 반영되지 않은 대상이 남아 있으면 그 대상만 다시 더한다")
+    void testRedeliveryResumesUnappliedCounters() {
+        // given: m1 행은 있지만 총 클릭 수 카운터는 아직 반영되지 않았다
+        when(mockDdb.putItem(any(PutItemRequest.class))).thenThrow(ConditionalCheckFailedException.builder().message("exists")
+                .item(Map.of("clickId", AttributeValue.builder().s("m1").build(),
+                        AnalyticsHandler.COUNTERS_APPLIED, AttributeValue.builder().ss(AnalyticsHandler.TREND, AnalyticsHandler.HOURLY, AnalyticsHandler.DAILY).build()))
+                .build());
+        when(mockDdb.updateItem(any(UpdateItemRequest.class))).thenReturn(UpdateItemResponse.builder().build());
+
+        // when
+        SQSBatchResponse response = handler.handleRequest(event(
+                message("m1", RedirectHandler.clickPayload("abc1234", "h1", "UA", "direct", "KR", "PC", null))), mockContext);
+
+        // then
+        assertTrue(response.getBatchItemFailures().isEmpty());
+        assertEquals("1", updates("counters").get(0).expressionAttributeValues().get(":inc").n());
+        assertTrue(updates("trendInsights").isEmpty());
+        assertTrue(updates("rollups").isEmpty());
+        assertEquals(List.of(AnalyticsHandler.TOTAL), updates("clicks").get(0).expressionAttributeValues().get(":t").ss());
+    }
+
+    @Test
+    @DisplayName("갱신 후 유입 출처가 REFERER_CAP개를 넘으면 클릭이 가장 적은 출처부터 값이 그대로일 때만 other로 옮긴다")
+    void testFoldsRefererOverflowIntoOther() {
+        // given: 갱신 결과 트렌드 문서와 일 롤업에 출처가 cap + 2개씩 있다 (site0, site1이 가장 적다)
+        when(mockDdb.putItem(any(PutItemRequest.class))).thenReturn(PutItemResponse.builder().build());
+        when(mockDdb.updateItem(any(UpdateItemRequest.class))).thenAnswer(invocation -> {
+            UpdateItemRequest req = invocation.getArgument(0);
+            if (req.conditionExpression() != null || req.returnValues() != ReturnValue.ALL_NEW) return UpdateItemResponse.builder().build();
+            Map<String, AttributeValue> item = new HashMap<>(req.key());
+            Map<String, AttributeValue> referers = new HashMap<>();
+            for (int i = 0; i < AnalyticsHandler.DEFAULT_REFERER_CAP + 2; i++) {
+                AttributeValue n = AttributeValue.builder().n(Integer.toString(i + 1)).build();
+                if (req.tableName().equals("trendInsights")) referers.put("https://site" + i + ".example", n);
+                else if (req.key().get("bucket").s().startsWith(ClickRollups.DAY)) item.put("r#https://site" + i + ".example", n);
+            }
+            referers.put("other", AttributeValue.builder().n("1").build());
+            if (req.tableName().equals("trendInsights")) item.put("referers", AttributeValue.builder().m(referers).build());
+            return UpdateItemResponse.builder().attributes(item).build();
+        });
+
+        // when
+        handler.handleRequest(event(message("m1", RedirectHandler.clickPayload("abc1234", "h1", "UA", "https://site5.example/a", "KR", "PC", null))), mockContext);
+
+        // then
+        List<UpdateItemRequest> trendFolds = updates("trendInsights").stream().filter(u -> u.conditionExpression() != null).toList();
+        assertEquals(1, trendFolds.size());
+        UpdateItemRequest trendFold = trendFolds.get(0);
+        assertEquals("REMOVE referers.#x0, referers.#x1 ADD referers.#o :o", trendFold.updateExpression());
+        assertEquals("referers.#x0 = :x0 AND referers.#x1 = :x1", trendFold.conditionExpression());
+        assertEquals("https://site0.example", trendFold.expressionAttributeNames().get("#x0"));
+        assertEquals("https://site1.example", trendFold.expressionAttributeNames().get("#x1"));
+        assertEquals("other", trendFold.expressionAttributeNames().get("#o"));
+        assertEquals("3", trendFold.expressionAttributeValues().get(":o").n());
+        assertEquals("ALL", trendFold.key().get("category").s());
+
+        // 시간 버킷은 출처가 하나뿐이라 접지 않는다
+        List<UpdateItemRequest> rollupFolds = updates("rollups").stream().filter(u -> u.conditionExpression() != null).toList();
+        assertEquals(1, rollupFolds.size());
+        UpdateItemRequest rollupFold = rollupFolds.get(0);
+        assertEquals("REMOVE #x0, #x1 ADD #o :o", rollupFold.updateExpression());
+        assertEquals(Set.of("r#https://site0.example", "r#https://site1.example", "r#other"), new HashSet<>(rollupFold.expressionAttributeNames().values()));
+        assertTrue(rollupFold.key().get("bucket").s().startsWith(ClickRollups.DAY));
+        assertTrue(updates("counters").stream().allMatch(u -> u.returnValues() == null));
+    }
+
+    @Test
+    @DisplayName("배치에 한 링크의 클릭이 몰리면 링크의 샤드 수를 먼저 올리고 카운터·트렌드·롤업을 그 범위 안의 같은 샤드에 더한다")
+    void testHotLinkSpreadsOverMoreShards() {
+        // given: 샤드당 2건 기준에 같은 링크 7건 → 샤드 4개
+        handler = new AnalyticsHandler(mockDdb, mockLambda, mockSqs, new Gson(), "urls", "clicks", "trendInsights", "rollups", "counters", 2);
+        when(mockDdb.putItem(any(PutItemRequest.class))).thenReturn(PutItemResponse.builder().build());
+        when(mockDdb.updateItem(any(UpdateItemRequest.class))).thenReturn(UpdateItemResponse.builder().build());
+        SQSEvent.SQSMessage[] messages = new SQSEvent.SQSMessage[7];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = message("m" + i, RedirectHandler.clickPayload("viral01", "h" + i, "UA", "direct", "KR", "MOBILE", null));
+        }
+
+        // when: 같은 컨테이너에서 두 배치를 처리한다 (두 번째 배치의 m7은 새 클릭)
+        handler.handleRequest(event(messages), mockContext);
+        handler.handleRequest(event(message("m7", RedirectHandler.clickPayload("viral01", "h7", "UA", "direct", "KR", "MOBILE", null))), mockContext);
+
+        // then: 샤드 수는 한 번만 올리고, 두 번째 배치도 확인된 4개 범위 안에 쓴다
+        List<UpdateItemRequest> raises = updates("urls");
+        assertEquals(1, raises.size());
+        assertEquals("counterShards", raises.get(0).expressionAttributeNames().get("#s"));
+        assertEquals("4", raises.get(0).expressionAttributeValues().get(":n").n());
+
+        List<UpdateItemRequest> counters = updates("counters");
+        assertEquals(2, counters.size());
+        for (UpdateItemRequest counter : counters) {
+            int shard = Integer.parseInt(counter.key().get("counterKey").s().substring("viral01#".length()));
+            assertTrue(shard >= 0 && shard < 4);
+        }
+        assertEquals("7", counters.get(0).expressionAttributeValues().get(":inc").n());
+
+        // 트렌드 문서와 롤업도 배치마다 카운터와 같은 샤드에 쓴다
+        int firstShard = Integer.parseInt(counters.get(0).key().get("counterKey").s().substring("viral01#".length()));
+        String category = updates("trendInsights").get(0).key().get("category").s();
+        assertEquals(firstShard == 0 ? "ALL" : "ALL#" + firstShard, category);
+        for (int i = 0; i < 2; i++) {
+            String bucket = updates("rollups").get(i).key().get("bucket").s();
+            assertEquals(firstShard, bucket.equals(ClickRollups.baseBucket(bucket)) ? 0 : Integer.parseInt(bucket.substring(bucket.lastIndexOf('#') + 1)));
+        }
+    }
+
+    @Test
+    @DisplayName("트렌드 문서가 없는 링크는 맵 경로 갱신이 거절되면 빈 문서를 만든 뒤 다시 쓴다")
+    void testCreatesMissingTrendDocument() {
+        // given: 첫 트렌드 문서 갱신은 ValidationException으로 거절된다
+        List<UpdateItemRequest> trendAttempts = new ArrayList<>();
+        when(mockDdb.updateItem(any(UpdateItemRequest.class))).thenAnswer(invocation -> {
+            UpdateItemRequest req = invocation.getArgument(0);
+            if (req.tableName().equals("trendInsights")) {
+                synchronized (trendAttempts) {
+                    trendAttempts.add(req);
+                    if (trendAttempts.size() == 1) {
+                        throw DynamoDbException.builder().message("The document path provided in the update expression is invalid for update")
+                                .awsErrorDetails(AwsErrorDetails.builder().errorCode("ValidationException").build()).build();
+                    }
+                }
+            }
+            return UpdateItemResponse.builder().build();
+        });
+        when(mockDdb.putItem(any(PutItemRequest.class))).thenReturn(PutItemResponse.builder().build());
+
+        // when
+        SQSBatchResponse response = handler.handleRequest(event(
+                message("m1", RedirectHandler.clickPayload("new0001", "h1", "UA", "https://news.example.com/a?b=1", "KR", "PC", null))), mockContext);
+
+        // then
+        assertTrue(response.getBatchItemFailures().isEmpty());
+        assertEquals(2, trendAttempts.size());
+        ArgumentCaptor<PutItemRequest> captor = ArgumentCaptor.forClass(PutItemRequest.class);
+        verify(mockDdb, times(2)).putItem(captor.capture());
+        PutItemRequest create = captor.getAllValues().stream().filter(req -> req.tableName().equals("trendInsights")).findFirst().orElseThrow();
+        assertEquals("ALL", create.item().get("category").s());
+        assertTrue(create.item().get("referers").hasM());
+        assertEquals("attribute_not_exists(shortId)", create.conditionExpression());
+        assertEquals("https://news.example.com", trendAttempts.get(1).expressionAttributeNames().get("#r0"));
+    }
+}
@@ -0,0 +1,233 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.sqs.SqsClient;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BatchShortenHandlerTest {
+
+    private static final String GEMINI_SAFE = "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"{\\\"classification\\\": \\\"SAFE\\\"}\"}]}}]}";
+
+    private final Gson gson = new Gson();
+
+    @Mock
+    private DynamoDbClient mockDdb;
+
+    @Mock
+    private LambdaClient mockLambda;
+
+    @Mock
+    private SqsClient mockSqs;
+
+    @Mock
+    private Context mockContext;
+
+    @Mock
+    private LambdaLogger mockLogger;
+
+    @Mock
+    private HttpClient mockHttpClient;
+
+    private BatchShortenHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(mockContext.getLogger()).thenReturn(mockLogger);
+        lenient().when(mockContext.getRemainingTimeInMillis()).thenReturn(60_000);
+        handler = new BatchShortenHandler(mockDdb, mockLambda, mockSqs, gson, "TestTable", "test-api-key", "test-safe-browsing-key",
+                mockHttpClient, VerdictCache.disabled(), null, null, 100, 100);
+    }
+
+    private APIGatewayProxyRequestEvent createApiRequest(String body) {
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
+        request.setBody(body);
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Host", "test-api.com");
+        request.setHeaders(headers);
+        APIGatewayProxyRequestEvent.ProxyRequestContext requestContext = new APIGatewayProxyRequestEvent.ProxyRequestContext();
+        requestContext.setStage("prod");
+        request.setRequestContext(requestContext);
+        return request;
+    }
+
+    @SuppressWarnings("unchecked")
+    private HttpResponse<String> httpResponse(String body) {
+        HttpResponse<String> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn(body);
+        return response;
+    }
+
+    @Test
+    @DisplayName("URL별 결과를 돌려주고, Safe Browsing은 한 번에 묻고, 처리되지 않은 쓰기는 다시 보낸다")
+    @SuppressWarnings("unchecked")
+    void testBatchReturnsPerItemResults() throws Exception {
+        // given: 순번 모드
+        SequenceIdAllocator idAllocator = mock(SequenceIdAllocator.class);
+        when(idAllocator.next()).thenReturn("seq0001", "seq0002");
+        handler = new BatchShortenHandler(mockDdb, mockLambda, mockSqs, gson, "TestTable", "test-api-key", "test-safe-browsing-key",
+                mockHttpClient, VerdictCache.disabled(), idAllocator, null, 100, 100);
+        HttpResponse<String> geminiSafe = httpResponse(GEMINI_SAFE);
+        HttpResponse<String> safeBrowsing = httpResponse("{\"matches\":[{\"threatType\":\"MALWARE\",\"threat\":{\"url\":\"https://evil.example.com\"}}]}");
+        when(mockHttpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenAnswer(invocation -> {
+            HttpRequest req = invocation.getArgument(0);
+            return req.uri().getHost().startsWith("safebrowsing") ? safeBrowsing : geminiSafe;
+        });
+        when(mockDdb.batchGetItem(any(BatchGetItemRequest.class))).thenReturn(BatchGetItemResponse.builder().build());
+        when(mockDdb.batchWriteItem(any(BatchWriteItemRequest.class))).thenAnswer(invocation -> {
+            BatchWriteItemRequest req = invocation.getArgument(0);
+            List<WriteRequest> writes = req.requestItems().get("TestTable");
+            // 첫 요청에서는 한 건을 처리하지 못한 것으로 돌려준다
+            return writes.size() > 1
+                    ? BatchWriteItemResponse.builder().unprocessedItems(Map.of("TestTable", List.of(writes.get(0)))).build()
+                    : BatchWriteItemResponse.builder().build();
+        });
+
+        // when
+        APIGatewayProxyResponseEvent response = handler.handleRequest(createApiRequest(
+                "{\"urls\": [\"https://www.google.com\", \"not a url\", \"https://evil.example.com\", \"www.naver.com\"]}"), mockContext);
+
+        // then
+        assertEquals(200, response.getStatusCode());
+        Map<String, Object> body = gson.fromJson(response.getBody(), Map.class);
+        List<Map<String, Object>> results = (List<Map<String, Object>>) body.get("results");
+        assertEquals(List.of("CREATED", "INVALID", "MALICIOUS", "CREATED"), results.stream().map(r -> r.get("status")).toList());
+        assertEquals(2.0, body.get("created"));
+        assertNull(body.get("nextIndex"));
+        assertTrue(((String) results.get(3).get("shortUrl")).endsWith("/prod/" + results.get(3).get("shortId")));
+
+        // Safe Browsing 1회 + Gemini 3회
+        verify(mockHttpClient, times(4)).send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+        ArgumentCaptor<BatchWriteItemRequest> captor = ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+        verify(mockDdb, times(2)).batchWriteItem(captor.capture());
+        assertEquals(2, captor.getAllValues().get(0).requestItems().get("TestTable").size());
+        assertEquals(1, captor.getAllValues().get(1).requestItems().get("TestTable").size());
+        verify(mockDdb, never()).putItem(any(PutItemRequest.class));
+    }
+
+    @Test
+    @DisplayName("겹친 ID 대신 받은 ID도 다시 확인하고, 배치 안에서 같은 ID를 두 번 쓰지 않으며, 끝까지 겹치는 URL만 실패로 돌려준다")
+    @SuppressWarnings("unchecked")
+    void testReplacementIdsAreRecheckedAndUniqueInBatch() throws Exception {
+        // given: 두 번째 URL은 배치 안 중복 뒤에 계속 기존 ID만 받고, 세 번째 URL은 한 번 겹친 뒤 빈 ID를 받는다
+        SequenceIdAllocator idAllocator = mock(SequenceIdAllocator.class);
+        when(idAllocator.next()).thenReturn("dup0001", "dup0001", "taken01", "reused1", "taken02", "free002", "taken03");
+        handler = new BatchShortenHandler(mockDdb, mockLambda, mockSqs, gson, "TestTable", "test-api-key", "test-safe-browsing-key",
+                mockHttpClient, VerdictCache.disabled(), idAllocator, null, 100, 100);
+        HttpResponse<String> geminiSafe = httpResponse(GEMINI_SAFE);
+        HttpResponse<String> safeBrowsing = httpResponse("{}");
+        when(mockHttpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenAnswer(invocation -> {
+            HttpRequest req = invocation.getArgument(0);
+            return req.uri().getHost().startsWith("safebrowsing") ? safeBrowsing : geminiSafe;
+        });
+        when(mockDdb.batchGetItem(any(BatchGetItemRequest.class))).thenAnswer(invocation -> {
+            BatchGetItemRequest req = invocation.getArgument(0);
+            List<Map<String, AttributeValue>> existing = req.requestItems().get("TestTable").keys().stream()
+                    .filter(k -> !k.get("shortId").s().startsWith("dup") && !k.get("shortId").s().startsWith("free"))
+                    .toList();
+            return BatchGetItemResponse.builder().responses(Map.of("TestTable", existing)).build();
+        });
+        when(mockDdb.batchWriteItem(any(BatchWriteItemRequest.class))).thenReturn(BatchWriteItemResponse.builder().build());
+
+        // when
+        APIGatewayProxyResponseEvent response = handler.handleRequest(createApiRequest(
+                "{\"urls\": [\"https://a.example.com\", \"https://b.example.com\", \"https://c.example.com\"]}"), mockContext);
+
+        // then
+        assertEquals(200, response.getStatusCode());
+        Map<String, Object> body = gson.fromJson(response.getBody(), Map.class);
+        List<Map<String, Object>> results = (List<Map<String, Object>>) body.get("results");
+        assertEquals(List.of("CREATED", "FAILED", "CREATED"), results.stream().map(r -> r.get("status")).toList());
+        assertEquals("dup0001", results.get(0).get("shortId"));
+        assertEquals("free002", results.get(2).get("shortId"));
+
+        verify(mockDdb, times(3)).batchGetItem(any(BatchGetItemRequest.class));
+        ArgumentCaptor<BatchWriteItemRequest> captor = ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+        verify(mockDdb).batchWriteItem(captor.capture());
+        assertEquals(List.of("dup0001", "free002"), captor.getValue().requestItems().get("TestTable").stream()
+                .map(w -> w.putRequest().item().get("shortId").s()).toList());
+    }
+
+    @Test
+    @DisplayName("무작위 ID 모드는 미리 확인하지 않고 항목마다 조건부 PutItem으로 쓰며, 그 사이 다른 요청이 가져간 ID만 새 ID로 다시 쓴다")
+    @SuppressWarnings("unchecked")
+    void testRandomIdsUseConditionalPuts() throws Exception {
+        // given: 첫 번째 쓰기는 다른 요청이 방금 같은 ID를 저장해 조건 검사에 걸린다
+        HttpResponse<String> geminiSafe = httpResponse(GEMINI_SAFE);
+        HttpResponse<String> safeBrowsing = httpResponse("{}");
+        when(mockHttpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenAnswer(invocation -> {
+            HttpRequest req = invocation.getArgument(0);
+            return req.uri().getHost().startsWith("safebrowsing") ? safeBrowsing : geminiSafe;
+        });
+        AtomicBoolean collided = new AtomicBoolean();
+        List<String> takenIds = new CopyOnWriteArrayList<>();
+        when(mockDdb.putItem(any(PutItemRequest.class))).thenAnswer(invocation -> {
+            PutItemRequest req = invocation.getArgument(0);
+            if (collided.compareAndSet(false, true)) {
+                takenIds.add(req.item().get("shortId").s());
+                throw ConditionalCheckFailedException.builder().message("taken").build();
+            }
+            return PutItemResponse.builder().build();
+        });
+
+        // when
+        APIGatewayProxyResponseEvent response = handler.handleRequest(createApiRequest(
+                "{\"urls\": [\"https://a.example.com\", \"https://b.example.com\"]}"), mockContext);
+
+        // then
+        assertEquals(200, response.getStatusCode());
+        Map<String, Object> body = gson.fromJson(response.getBody(), Map.class);
+        List<Map<String, Object>> results = (List<Map<String, Object>>) body.get("results");
+        assertEquals(List.of("CREATED", "CREATED"), results.stream().map(r -> r.get("status")).toList());
+        assertFalse(results.stream().anyMatch(r -> takenIds.contains(r.get("shortId"))));
+
+        ArgumentCaptor<PutItemRequest> captor = ArgumentCaptor.forClass(PutItemRequest.class);
+        verify(mockDdb, times(3)).putItem(captor.capture());
+        assertTrue(captor.getAllValues().stream().allMatch(r -> "attribute_not_exists(shortId)".equals(r.conditionExpression())));
+        verify(mockDdb, never()).batchGetItem(any(BatchGetItemRequest.class));
+        verify(mockDdb, never()).batchWriteItem(any(BatchWriteItemRequest.class));
+    }
+
+    @Test
+    @DisplayName("최대 개수를 넘는 요청은 400을 반환한다")
+    void testTooManyUrls() {
+        // given
+        handler = new BatchShortenHandler(mockDdb, mockLambda, mockSqs, gson, "TestTable", "test-api-key", "test-safe-browsing-key",
+                mockHttpClient, VerdictCache.disabled(), null, null, 2, 100);
+
+        // when
+        APIGatewayProxyResponseEvent response = handler.handleRequest(createApiRequest(
+                "{\"urls\": [\"https://a.com\", \"https://b.com\", \"https://c.com\"]}"), mockContext);
+
+        // then
+        assertEquals(400, response.getStatusCode());
+        verifyNoInteractions(mockHttpClient);
+    }
+}
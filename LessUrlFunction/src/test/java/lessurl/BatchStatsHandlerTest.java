@@ -0,0 +1,147 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.sqs.SqsClient;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BatchStatsHandlerTest {
+
+    private final Gson gson = new Gson();
+
+    @Mock
+    private DynamoDbClient mockDdb;
+    @Mock
+    private LambdaClient mockLambda;
+    @Mock
+    private SqsClient mockSqs;
+    @Mock
+    private Context mockContext;
+    @Mock
+    private LambdaLogger mockLogger;
+
+    private BatchStatsHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(mockContext.getLogger()).thenReturn(mockLogger);
+        handler = new BatchStatsHandler(mockDdb, mockLambda, mockSqs, gson, "UrlsTable", "ClickRollupsTable", "ClickCountersTable", "TrendTable", "AiTable", 4, 5_000);
+    }
+
+    @Test
+    @DisplayName("ID와 alias를 BatchGetItem으로 해석하고, 카운터·트렌드도 묶어 읽은 뒤 링크별 롤업만 따로 조회해 요청 순서대로 요약한다")
+    void testSummarizesLinksWithBatchedReads() {
+        // given: abc1234는 링크, my-alias는 def5678을 가리키는 포인터, missing은 없다
+        when(mockDdb.batchGetItem(any(BatchGetItemRequest.class))).thenAnswer(invocation -> {
+            BatchGetItemRequest req = invocation.getArgument(0);
+            String table = req.requestItems().keySet().iterator().next();
+            List<String> keys = req.requestItems().get(table).keys().stream()
+                    .map(k -> k.values().iterator().next().s()).toList();
+            List<Map<String, AttributeValue>> items = new ArrayList<>();
+            switch (table) {
+                case "UrlsTable" -> {
+                    assertTrue(req.requestItems().get(table).consistentRead());
+                    if (keys.contains("abc1234")) items.add(link("abc1234", "https://a.example.com", "3"));
+                    if (keys.contains("my-alias")) items.add(Map.of(
+                            "shortId", s("my-alias"), "linkType", s("ALIAS"), "targetId", s("def5678"), "originalUrl", s("https://b.example.com")));
+                    if (keys.contains("def5678")) items.add(link("def5678", "https://b.example.com", "10"));
+                }
+                case "ClickCountersTable" -> items.add(Map.of("counterKey", s("def5678#0"), "clicks", n("5")));
+                case "TrendTable" -> items.add(Map.of("shortId", s("abc1234"), "category", s("ALL"), "lastUpdated", s("2026-10-16T05:00:00Z")));
+                default -> fail("unexpected table " + table);
+            }
+            return BatchGetItemResponse.builder().responses(Map.of(table, items)).build();
+        });
+        String today = ClickRollups.dayBucket(Instant.now());
+        when(mockDdb.query(any(QueryRequest.class))).thenAnswer(invocation -> {
+            QueryRequest req = invocation.getArgument(0);
+            assertEquals("ClickRollupsTable", req.tableName());
+            String shortId = req.expressionAttributeValues().get(":id").s();
+            return QueryResponse.builder().items(List.of(Map.of(
+                    "shortId", s(shortId), "bucket", s(today), "clicks", n("2"),
+                    "c#" + (shortId.equals("abc1234") ? "KR" : "JP"), n("2"), "d#MOBILE", n("2"), "r#direct", n("2"), "h#9", n("2")))).build();
+        });
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
+        request.setBody(gson.toJson(Map.of("ids", List.of("my-alias", "abc1234", "missing", "abc1234"), "period", "30d")));
+
+        // when
+        APIGatewayProxyResponseEvent response = handler.handleRequest(request, mockContext);
+
+        // then
+        assertEquals(200, response.getStatusCode());
+        Map<?, ?> body = gson.fromJson(response.getBody(), Map.class);
+        assertEquals("30d", body.get("period"));
+        assertEquals(List.of("missing"), body.get("notFound"));
+        List<?> links = (List<?>) body.get("links");
+        assertEquals(2, links.size());
+
+        Map<?, ?> alias = (Map<?, ?>) links.get(0);
+        assertEquals("my-alias", alias.get("id"));
+        assertEquals("def5678", alias.get("shortId"));
+        assertEquals(15.0, alias.get("totalClicks")); // clickCount 10 + 샤드 5
+        assertEquals(2.0, alias.get("periodClicks"));
+        assertEquals("JP", alias.get("topCountry"));
+        assertFalse(alias.containsKey("lastUpdated"));
+
+        Map<?, ?> direct = (Map<?, ?>) links.get(1);
+        assertEquals("abc1234", direct.get("shortId"));
+        assertEquals(3.0, direct.get("totalClicks"));
+        assertEquals(9.0, direct.get("peakHour"));
+        assertEquals("KR", direct.get("topCountry"));
+        assertEquals("2026-10-16T05:00:00Z", direct.get("lastUpdated"));
+        assertFalse(direct.containsKey("aiInsight"));
+
+        // 링크 해석 2번(ID, alias 대상) + 카운터 1번 + 트렌드 1번, 롤업은 링크당 1번
+        verify(mockDdb, times(4)).batchGetItem(any(BatchGetItemRequest.class));
+        verify(mockDdb, times(2)).query(any(QueryRequest.class));
+        verify(mockDdb, never()).getItem(any(GetItemRequest.class));
+    }
+
+    @Test
+    @DisplayName("ID가 없거나 100개를 넘거나 기간이 잘못되면 400을 돌려준다")
+    void testRejectsInvalidRequests() {
+        List<String> tooMany = new ArrayList<>();
+        for (int i = 0; i <= BatchStatsHandler.MAX_IDS; i++) tooMany.add("id" + i);
+
+        for (String body : List.of("", gson.toJson(Map.of("ids", List.of())), gson.toJson(Map.of("ids", tooMany)),
+                gson.toJson(Map.of("ids", List.of("abc1234"), "period", "1y")))) {
+            APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
+            request.setBody(body);
+            assertEquals(400, handler.handleRequest(request, mockContext).getStatusCode(), body);
+        }
+        verifyNoInteractions(mockDdb);
+    }
+
+    private static Map<String, AttributeValue> link(String shortId, String url, String clickCount) {
+        return Map.of("shortId", s(shortId), "originalUrl", s(url), "clickCount", n(clickCount));
+    }
+
+    private static AttributeValue s(String value) {
+        return AttributeValue.builder().s(value).build();
+    }
+
+    private static AttributeValue n(String value) {
+        return AttributeValue.builder().n(value).build();
+    }
+}
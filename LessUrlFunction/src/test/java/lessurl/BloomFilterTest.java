@@ -0,0 +1,50 @@
+package lessurl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+
+    @Test
+    @DisplayName("추가한 키는 항상 존재한다고 판정하고, 없는 키의 오탐률은 목표치 근처에 머문다")
+    void testNoFalseNegativesAndBoundedFpp() {
+        // given
+        BloomFilter filter = BloomFilter.create(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) filter.put("id" + i);
+
+        // when
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("id" + i));
+            if (filter.mightContain("missing" + i)) falsePositives++;
+        }
+
+        // then
+        assertTrue(falsePositives < 200, "false positives: " + falsePositives);
+    }
+
+    @Test
+    @DisplayName("스냅샷으로 저장한 뒤 다시 읽으면 같은 판정과 스냅샷 시각을 유지한다")
+    void testSnapshotRoundTrip() throws Exception {
+        // given
+        BloomFilter filter = BloomFilter.create(1_000, 0.01);
+        filter.put("abc1234");
+        filter.put("my-alias");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // when
+        filter.writeTo(out, 1_700_000_000_000L);
+        BloomFilter.Snapshot snapshot = BloomFilter.readFrom(new ByteArrayInputStream(out.toByteArray()));
+
+        // then
+        assertEquals(1_700_000_000_000L, snapshot.snapshotAt());
+        assertEquals(filter.numBits(), snapshot.filter().numBits());
+        assertTrue(snapshot.filter().mightContain("abc1234"));
+        assertTrue(snapshot.filter().mightContain("my-alias"));
+    }
+}
@@ -0,0 +1,142 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.S3Event;
+import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CdnLogIngestionHandlerTest {
+
+    @Mock
+    private DynamoDbClient mockDdb;
+    @Mock
+    private LambdaClient mockLambda;
+    @Mock
+    private SqsClient mockSqs;
+    @Mock
+    private S3Client mockS3;
+    @Mock
+    private Context mockContext;
+    @Mock
+    private LambdaLogger mockLogger;
+
+    @Test
+    @DisplayName("CloudFront 로그에서 단축 경로에 대한 301 행만 클릭으로 읽고 인코딩된 User-Agent를 복원한다")
+    void testParseClicks() throws Exception {
+        // given
+        String log = String.join("\n",
+                "#Version: 1.0",
+                "#Fields: date time x-edge-location sc-bytes c-ip cs-method cs(Host) cs-uri-stem sc-status cs(Referer) cs(User-Agent) cs-uri-query x-edge-result-type",
+                String.join("\t", "2024-05-01", "12:00:01", "ICN57-C1", "420", "203.0.113.7", "GET", "d111.cloudfront.net", "/abc1234", "301", "-", "Mozilla/5.0%20(iPhone;%20CPU%20iPhone%20OS%2017_0)", "-", "Hit"),
+                String.join("\t", "2024-05-01", "12:00:02", "ICN57-C1", "420", "203.0.113.8", "GET", "d111.cloudfront.net", "/trk0001", "302", "-", "curl/8.0", "-", "Miss"),
+                String.join("\t", "2024-05-01", "12:00:03", "ICN57-C1", "420", "203.0.113.9", "GET", "d111.cloudfront.net", "/", "301", "-", "curl/8.0", "-", "Miss"),
+                String.join("\t", "2024-05-01", "12:00:04", "ICN57-C1", "420", "203.0.113.9", "GET", "d111.cloudfront.net", "/stats/abc1234", "301", "-", "curl/8.0", "-", "Miss"),
+                String.join("\t", "2024-05-01", "12:00:05", "ICN57-C1", "420", "203.0.113.10", "GET", "d111.cloudfront.net", "/my-alias", "301", "https://news.example.com/a", "curl/8.0", "-", "RefreshHit"));
+
+        // when
+        List<CdnLogIngestionHandler.CdnClick> clicks = CdnLogIngestionHandler.parseClicks(new BufferedReader(new StringReader(log)));
+
+        // then
+        assertEquals(2, clicks.size());
+        assertEquals("abc1234", clicks.get(0).path());
+        assertEquals("2024-05-01T12:00:01Z", clicks.get(0).clickedAt());
+        assertEquals("Mozilla/5.0 (iPhone; CPU iPhone OS 17_0)", clicks.get(0).userAgent());
+        assertEquals("direct", clicks.get(0).referer());
+        assertEquals("my-alias", clicks.get(1).path());
+        assertEquals("https://news.example.com/a", clicks.get(1).referer());
+        assertEquals("cdn#logs/E1.2024-05-01-12.gz#3", CdnLogIngestionHandler.clickId("logs", "E1.2024-05-01-12.gz", clicks.get(0)));
+    }
+
+    @Test
+    @DisplayName("x-edge-request-id가 있으면 그 값으로 clickId를 만들어 같은 파일을 다시 읽어도 같은 clickId가 나온다")
+    void testClickIdFromRequestId() throws Exception {
+        // given
+        String log = String.join("\n",
+                "#Version: 1.0",
+                "#Fields: date time c-ip cs-method cs-uri-stem sc-status cs(Referer) cs(User-Agent) x-edge-request-id",
+                String.join("\t", "2024-05-01", "12:00:01", "203.0.113.7", "GET", "/abc1234", "301", "-", "curl/8.0", "SOX4xwn4XV6Q4rgb7XiVGOHms_BGlTAC4KyHmureZmBNrjGdRLiNIQ=="),
+                String.join("\t", "2024-05-01", "12:00:02", "203.0.113.8", "GET", "/abc1234", "301", "-", "curl/8.0", "-"));
+
+        // when
+        List<CdnLogIngestionHandler.CdnClick> first = CdnLogIngestionHandler.parseClicks(new BufferedReader(new StringReader(log)));
+        List<CdnLogIngestionHandler.CdnClick> retried = CdnLogIngestionHandler.parseClicks(new BufferedReader(new StringReader(log)));
+
+        // then
+        assertEquals("cdn#SOX4xwn4XV6Q4rgb7XiVGOHms_BGlTAC4KyHmureZmBNrjGdRLiNIQ==", CdnLogIngestionHandler.clickId("logs", "a.gz", first.get(0)));
+        assertEquals("cdn#logs/a.gz#4", CdnLogIngestionHandler.clickId("logs", "a.gz", first.get(1)));
+        assertEquals(CdnLogIngestionHandler.clickId("logs", "a.gz", first.get(1)), CdnLogIngestionHandler.clickId("logs", "a.gz", retried.get(1)));
+    }
+
+    @Test
+    @DisplayName("로그 파일의 클릭은 10개씩 SendMessageBatch로 묶고, 파일 끝에서 덜 찬 마지막 배치를 한 번 보낸다")
+    void testBatchesClicksPerFile() throws Exception {
+        // given: 같은 CACHEABLE 링크에 대한 301 행 25개
+        List<String> lines = new ArrayList<>(List.of("#Version: 1.0",
+                "#Fields: date time x-edge-location sc-bytes c-ip cs-method cs(Host) cs-uri-stem sc-status cs(Referer) cs(User-Agent) cs-uri-query x-edge-result-type"));
+        for (int i = 0; i < 25; i++) {
+            lines.add(String.join("\t", "2024-05-01", String.format("12:00:%02d", i), "ICN57-C1", "420", "203.0.113." + i, "GET", "d111.cloudfront.net", "/abc1234", "301", "-", "curl/8.0", "-", "Hit"));
+        }
+        ByteArrayOutputStream gz = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gz)) {
+            out.write(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+        }
+        when(mockS3.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(
+                GetObjectResponse.builder().build(), AbortableInputStream.create(new ByteArrayInputStream(gz.toByteArray()))));
+        when(mockDdb.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder()
+                .item(Map.of("shortId", AttributeValue.builder().s("abc1234").build(), "originalUrl", AttributeValue.builder().s("https://www.example.com").build()))
+                .build());
+        when(mockSqs.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(SendMessageBatchResponse.builder().build());
+        when(mockContext.getLogger()).thenReturn(mockLogger);
+
+        CdnLogIngestionHandler handler = new CdnLogIngestionHandler(mockDdb, mockLambda, mockSqs, new Gson(), "UrlsTable", mockS3,
+                AnalyticsEmitter.forIngestion(mockSqs, "analytics-queue"));
+        S3Event event = new S3Event(List.of(new S3EventNotification.S3EventNotificationRecord("ap-northeast-2", "ObjectCreated:Put", "aws:s3", null, "2.1",
+                null, null, new S3EventNotification.S3Entity("cdn", new S3EventNotification.S3BucketEntity("cdn-logs", null, null),
+                new S3EventNotification.S3ObjectEntity("cdn/E123.2024-05-01-12.abcd.gz", 1L, null, null, null), "1.0"), null)));
+
+        // when
+        String summary = handler.handleRequest(event, mockContext);
+
+        // then
+        assertEquals("emitted=25 skipped=0 failed=0", summary);
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(mockSqs, times(3)).sendMessageBatch(captor.capture());
+        assertEquals(List.of(10, 10, 5), captor.getAllValues().stream().map(req -> req.entries().size()).toList());
+        verify(mockDdb, times(1)).getItem(any(GetItemRequest.class));
+    }
+}
@@ -0,0 +1,83 @@
+package lessurl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ClickAggregatorTest {
+
+    @Mock
+    private DynamoDbClient mockDdb;
+
+    @Test
+    @DisplayName("LastEvaluatedKey가 없을 때까지 모든 페이지를 필요한 속성만 읽어 한 번에 센다")
+    void testAggregatesEveryPage() {
+        // given: 3페이지 (1MB에서 잘리던 이전 구현은 첫 페이지만 셌다)
+        List<QueryResponse> pages = List.of(
+                page(true, row("2026-10-01T00:00:00Z", "https://www.google.com/search?q=a", "KR", "MOBILE"),
+                        row("2026-10-01T09:15:00.123456789Z", "https://www.google.com/search?q=b", "KR", "PC")),
+                page(true, row("2026-10-01T23:59:59.999Z", "direct", "JP", "MOBILE"),
+                        row("2026-10-02T09:00:00Z", null, "US", "TABLET")),
+                page(false, row("2026-10-03T09:30:00Z", "not a url", "KR", "MOBILE")));
+        when(mockDdb.query(any(QueryRequest.class))).thenReturn(pages.get(0), pages.get(1), pages.get(2));
+        ClickAggregator aggregator = new ClickAggregator(LocalDate.parse("2026-10-01"), LocalDate.parse("2026-10-03"));
+        aggregator.skip(LocalDate.parse("2026-10-03"));
+        aggregator.accept(new ClickArchive.Row(Instant.parse("2026-10-03T21:00:00Z"), "direct", "ua", "KR", "PC"));
+
+        // when
+        aggregator.query(mockDdb, "clicks", "abc1234", LocalDate.parse("2026-10-01"), LocalDate.parse("2026-10-03"));
+        ClickRollups.Window window = aggregator.toWindow();
+
+        // then: 10-03의 원본 행은 아카이브에서 이미 셌으므로 빠진다
+        assertEquals(5, window.clicks);
+        assertEquals(Map.of("2026-10-01", 3L, "2026-10-02", 1L, "2026-10-03", 1L), window.clicksByDay);
+        assertEquals(Map.of("0", 1L, "9", 2L, "23", 1L, "21", 1L), window.clicksByHour);
+        assertEquals(Map.of("https://www.google.com", 2L, "direct", 3L), window.referers);
+        assertEquals(Map.of("KR", 3L, "JP", 1L, "US", 1L), window.countries);
+
+        ArgumentCaptor<QueryRequest> captor = ArgumentCaptor.forClass(QueryRequest.class);
+        verify(mockDdb, times(3)).query(captor.capture());
+        List<QueryRequest> requests = captor.getAllValues();
+        assertEquals(ClickAggregator.PROJECTION, requests.get(0).projectionExpression());
+        assertFalse(requests.get(0).hasExclusiveStartKey());
+        assertEquals(pages.get(0).lastEvaluatedKey(), requests.get(1).exclusiveStartKey());
+        assertEquals("2026-10-01T", requests.get(0).expressionAttributeValues().get(":from").s());
+    }
+
+    @SafeVarargs
+    private static QueryResponse page(boolean more, Map<String, AttributeValue>... rows) {
+        QueryResponse.Builder page = QueryResponse.builder().items(List.of(rows));
+        if (more) {
+            Map<String, AttributeValue> last = rows[rows.length - 1];
+            page.lastEvaluatedKey(Map.of("shortId", AttributeValue.builder().s("abc1234").build(), "timestamp", last.get("timestamp")));
+        }
+        return page.build();
+    }
+
+    private static Map<String, AttributeValue> row(String timestamp, String referer, String country, String device) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("timestamp", AttributeValue.builder().s(timestamp).build());
+        if (referer != null) item.put("referer", AttributeValue.builder().s(referer).build());
+        item.put("country", AttributeValue.builder().s(country).build());
+        item.put("deviceType", AttributeValue.builder().s(device).build());
+        return item;
+    }
+}
@@ -0,0 +1,153 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.sqs.SqsClient;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ClickArchiveTest {
+
+    @Mock
+    private DynamoDbClient mockDdb;
+    @Mock
+    private LambdaClient mockLambda;
+    @Mock
+    private SqsClient mockSqs;
+    @Mock
+    private Context mockContext;
+    @Mock
+    private LambdaLogger mockLogger;
+
+    @TempDir
+    Path archiveDir;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(mockContext.getLogger()).thenReturn(mockLogger);
+    }
+
+    @Test
+    @DisplayName("하루치 클릭을 열 단위 세그먼트로 압축했다가 시각·문자열 값을 그대로 복원한다")
+    void testSegmentRoundTrip() throws Exception {
+        // given: 몇 가지 값이 반복되는 하루치 클릭 5,000건 (순서는 섞여 있다)
+        LocalDate day = LocalDate.of(2026, 9, 1);
+        Instant start = day.atStartOfDay(ZoneOffset.UTC).toInstant();
+        String[] agents = {"Mozilla/5.0 (iPhone; CPU iPhone OS 17_0 like Mac OS X) AppleWebKit/605.1.15", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) Chrome/126.0"};
+        List<ClickArchive.Row> rows = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            Instant at = start.plusMillis((i * 7919L) % 86_400_000L).plusNanos(i % 1_000_000);
+            rows.add(new ClickArchive.Row(at, i % 3 == 0 ? "direct" : "https://t.co/x" + (i % 4), agents[i % 2], i % 5 == 0 ? "JP" : "KR", i % 2 == 0 ? "MOBILE" : "PC"));
+        }
+
+        // when
+        byte[] segment = ClickArchive.encode(day, rows);
+        List<ClickArchive.Row> decoded = ClickArchive.decode(segment);
+
+        // then
+        List<ClickArchive.Row> expected = new ArrayList<>(rows);
+        expected.sort((a, b) -> a.at().compareTo(b.at()));
+        assertEquals(expected, decoded);
+        // 원본 문자열만 해도 건당 100바이트가 넘는다
+        assertTrue(segment.length < rows.size() * 4, "segment is " + segment.length + " bytes");
+        assertThrows(IllegalArgumentException.class, () -> ClickArchive.encode(day, List.of(new ClickArchive.Row(start.minusNanos(1), "direct", "ua", "KR", "PC"))));
+    }
+
+    @Test
+    @DisplayName("아카이브 작업이 롤업 인덱스로 찾은 링크의 하루치 클릭을 세그먼트로 쓰고, 기간 통계는 세그먼트와 원본을 겹치지 않게 합친다")
+    void testArchiveThenReadRange() throws Exception {
+        // given: 롤업 인덱스에 링크 하나, 그날 클릭 행 3건 (두 페이지)
+        LocalDate day = LocalDate.now(ZoneOffset.UTC).minusDays(2);
+        ClickArchive archive = new ClickArchive(new LocalBlobStore(archiveDir));
+        when(mockContext.getRemainingTimeInMillis()).thenReturn(600_000);
+        when(mockDdb.query(any(QueryRequest.class))).thenAnswer(invocation -> {
+            QueryRequest req = invocation.getArgument(0);
+            if ("BucketIndex".equals(req.indexName())) {
+                boolean target = req.expressionAttributeValues().get(":day").s().equals("DAY#" + day);
+                return QueryResponse.builder().items(target ? List.of(Map.of("shortId", s("arch001"), "bucket", s("DAY#" + day))) : List.of()).build();
+            }
+            if (req.exclusiveStartKey() == null || req.exclusiveStartKey().isEmpty()) {
+                return QueryResponse.builder()
+                        .items(List.of(click(day + "T01:00:00.000000100Z", "https://news.example.com/a"), click(day + "T01:30:00Z", "direct")))
+                        .lastEvaluatedKey(Map.of("shortId", s("arch001"), "timestamp", s(day + "T01:30:00Z")))
+                        .build();
+            }
+            return QueryResponse.builder().items(List.of(click(day + "T23:59:59.999Z", "direct"))).build();
+        });
+        ClickArchiveHandler archiver = new ClickArchiveHandler(mockDdb, mockLambda, mockSqs, new Gson(), "clicks", "rollups", archive, 2, 1);
+
+        // when
+        String result = archiver.handleRequest(new ScheduledEvent(), mockContext);
+        String again = archiver.handleRequest(new ScheduledEvent(), mockContext);
+
+        // then
+        assertTrue(result.startsWith("archived 1 segments (3 clicks)"), result);
+        assertTrue(again.contains("1 already archived"), again);
+        List<ClickArchive.Row> stored = archive.read("arch001", day);
+        assertEquals(3, stored.size());
+        assertEquals(Instant.parse(day + "T01:00:00.000000100Z"), stored.get(0).at());
+
+        // given: 기간 통계 — 아카이브된 날은 세그먼트에서, 그 다음 날은 원본 행에서 읽는다
+        reset(mockDdb);
+        Map<String, AttributeValue> urlItem = Map.of("shortId", s("arch001"), "originalUrl", s("https://target.com"), "clickCount", AttributeValue.builder().n("4").build());
+        when(mockDdb.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder().item(urlItem).build());
+        when(mockDdb.batchGetItem(any(BatchGetItemRequest.class))).thenReturn(BatchGetItemResponse.builder().build());
+        when(mockDdb.query(any(QueryRequest.class))).thenReturn(QueryResponse.builder()
+                .items(List.of(click(day + "T05:00:00Z", "direct"), click(day.plusDays(1) + "T09:00:00Z", "https://news.example.com/b")))
+                .build());
+        StatsHandler stats = new StatsHandler(mockDdb, mockLambda, mockSqs, new Gson(), "urls", "rollups", "counters", "trends", "clicks", archive);
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
+        request.setPathParameters(Map.of("shortId", "arch001"));
+        request.setQueryStringParameters(Map.of("from", day.toString(), "to", day.plusDays(1).toString()));
+
+        // when
+        APIGatewayProxyResponseEvent response = stats.handleRequest(request, mockContext);
+
+        // then: 원본에 남아 있는 아카이브된 날의 행(05:00)은 세지 않는다
+        assertEquals(200, response.getStatusCode());
+        Map<?, ?> body = (Map<?, ?>) new Gson().fromJson(response.getBody(), Map.class).get("stats");
+        assertEquals(Map.of(day.toString(), 3.0, day.plusDays(1).toString(), 1.0), body.get("clicksByDay"));
+        assertEquals(Map.of("https://news.example.com", 2.0, "direct", 2.0), body.get("clicksByReferer"));
+        assertEquals(day + ".." + day.plusDays(1), body.get("period"));
+    }
+
+    private static AttributeValue s(String value) {
+        return AttributeValue.builder().s(value).build();
+    }
+
+    private static Map<String, AttributeValue> click(String timestamp, String referer) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("timestamp", s(timestamp));
+        item.put("referer", s(referer));
+        item.put("userAgent", s("Mozilla/5.0"));
+        item.put("country", s("KR"));
+        item.put("deviceType", s("MOBILE"));
+        return item;
+    }
+}
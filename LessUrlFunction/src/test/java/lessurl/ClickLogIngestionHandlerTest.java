@@ -0,0 +1,205 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.CloudWatchLogsEvent;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ClickLogIngestionHandlerTest {
+
+    private static final long LOGGED_AT = 1_760_590_800_000L; // 2025-10-16T05:00:00Z
+
+    private final Gson gson = new Gson();
+    private int nextLogEventId = 100;
+
+    @Mock
+    private DynamoDbClient mockDdb;
+    @Mock
+    private LambdaClient mockLambda;
+    @Mock
+    private SqsClient mockSqs;
+    @Mock
+    private Context mockContext;
+    @Mock
+    private LambdaLogger mockLogger;
+
+    @Test
+    @DisplayName("리다이렉트가 남긴 클릭 로그 줄만 골라 로그 시각을 clickedAt으로 붙이고 10개씩 묶어 분석 큐로 보낸다")
+    void testForwardsClickLinesInBatches() throws Exception {
+        // given: 클릭 12줄 사이에 다른 로그와 깨진 클릭 줄이 섞여 있다
+        when(mockContext.getLogger()).thenReturn(mockLogger);
+        when(mockSqs.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(SendMessageBatchResponse.builder().build());
+        List<Map<String, Object>> events = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            events.add(logEvent(RedirectHandler.CLICK_LOG_MARKER
+                    + RedirectHandler.clickPayload("abc" + i, "6694f83c9f476da3", "Mozilla/5.0", "direct", "KR", "PC", null)));
+        }
+        events.add(1, logEvent("[Warning] Failed to log click: boom"));
+        events.add(logEvent(RedirectHandler.CLICK_LOG_MARKER + "{\"shortId\":"));
+        ClickLogIngestionHandler handler = new ClickLogIngestionHandler(mockDdb, mockLambda, mockSqs, gson, "UrlsTable",
+                AnalyticsEmitter.forIngestion(mockSqs, "analytics-queue"));
+
+        // when
+        String summary = handler.handleRequest(subscriptionEvent("DATA_MESSAGE", events), mockContext);
+
+        // then
+        assertEquals("emitted=12 skipped=2 failed=0", summary);
+        ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(mockSqs, times(2)).sendMessageBatch(captor.capture());
+        assertEquals(List.of(10, 2), captor.getAllValues().stream().map(req -> req.entries().size()).toList());
+        JsonCodec.ClickEvent first = JsonCodec.GSON.fromJson(captor.getAllValues().get(0).entries().get(0).messageBody(), JsonCodec.ClickEvent.class);
+        assertEquals("abc0", first.shortId());
+        assertEquals("KR", first.country());
+        assertEquals("2025-10-16T05:00:00Z", first.clickedAt());
+    }
+
+    @Test
+    @DisplayName("재시도 끝에도 못 보낸 클릭이 있으면 호출을 실패시켜 Lambda가 다시 시도하게 한다")
+    void testThrowsWhenClicksCannotBeEnqueued() throws Exception {
+        // given: SQS가 계속 실패한다
+        when(mockContext.getLogger()).thenReturn(mockLogger);
+        when(mockSqs.sendMessageBatch(any(SendMessageBatchRequest.class))).thenThrow(SdkException.builder().message("throttled").build());
+        ClickLogIngestionHandler handler = new ClickLogIngestionHandler(mockDdb, mockLambda, mockSqs, gson, "UrlsTable",
+                AnalyticsEmitter.forIngestion(mockSqs, "analytics-queue"));
+        CloudWatchLogsEvent event = subscriptionEvent("DATA_MESSAGE", List.of(logEvent(RedirectHandler.CLICK_LOG_MARKER
+                + RedirectHandler.clickPayload("abc0", "6694f83c9f476da3", "Mozilla/5.0", "direct", "KR", "PC", null))));
+
+        // when & then
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> handler.handleRequest(event, mockContext));
+        assertTrue(e.getMessage().contains("failed=1"));
+    }
+
+    @Test
+    @DisplayName("일부만 보내고 실패한 호출이 재시도되어 같은 클릭을 다시 보내도, 로그 항목 ID로 만든 clickId로 걸러 한 번만 센다")
+    void testRetriedIngestionCountsClicksOnce() throws Exception {
+        // given: 첫 호출에서 첫 배치(10개)만 들어가고 나머지 2개는 두 번 모두 실패한다
+        when(mockContext.getLogger()).thenReturn(mockLogger);
+        List<String> delivered = new ArrayList<>();
+        int[] sends = {0};
+        when(mockSqs.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            sends[0]++;
+            if (sends[0] == 2 || sends[0] == 3) throw SdkException.builder().message("throttled").build();
+            SendMessageBatchRequest req = invocation.getArgument(0);
+            req.entries().forEach(entry -> delivered.add(entry.messageBody()));
+            return SendMessageBatchResponse.builder().build();
+        });
+        List<Map<String, Object>> events = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            events.add(logEvent(RedirectHandler.CLICK_LOG_MARKER
+                    + RedirectHandler.clickPayload("abc" + i, "6694f83c9f476da3", "Mozilla/5.0", "direct", "KR", "PC", null)));
+        }
+        CloudWatchLogsEvent event = subscriptionEvent("DATA_MESSAGE", events);
+        ClickLogIngestionHandler handler = new ClickLogIngestionHandler(mockDdb, mockLambda, mockSqs, gson, "UrlsTable",
+                AnalyticsEmitter.forIngestion(mockSqs, "analytics-queue"));
+
+        // when: 실패한 호출을 Lambda가 같은 페이로드로 다시 실행한다
+        assertThrows(IllegalStateException.class, () -> handler.handleRequest(event, mockContext));
+        handler.handleRequest(event, mockContext);
+
+        // then: 분석 큐에는 22개가 들어갔지만 클릭 행과 카운터는 12개만 반영된다
+        assertEquals(22, delivered.size());
+        Map<String, Map<String, AttributeValue>> rows = new ConcurrentHashMap<>();
+        AtomicLong counted = new AtomicLong();
+        when(mockDdb.putItem(any(PutItemRequest.class))).thenAnswer(invocation -> {
+            PutItemRequest req = invocation.getArgument(0);
+            if (!req.tableName().equals("clicks")) return PutItemResponse.builder().build();
+            String key = req.item().get("shortId").s() + "|" + req.item().get("timestamp").s();
+            Map<String, AttributeValue> existing = rows.putIfAbsent(key, new ConcurrentHashMap<>(req.item()));
+            if (existing != null) throw ConditionalCheckFailedException.builder().message("exists").item(Map.copyOf(existing)).build();
+            return PutItemResponse.builder().build();
+        });
+        when(mockDdb.updateItem(any(UpdateItemRequest.class))).thenAnswer(invocation -> {
+            UpdateItemRequest req = invocation.getArgument(0);
+            if (req.tableName().equals("counters")) counted.addAndGet(Long.parseLong(req.expressionAttributeValues().get(":inc").n()));
+            if (req.tableName().equals("clicks")) {
+                rows.get(req.key().get("shortId").s() + "|" + req.key().get("timestamp").s())
+                        .put(AnalyticsHandler.COUNTERS_APPLIED, req.expressionAttributeValues().get(":t"));
+            }
+            return UpdateItemResponse.builder().build();
+        });
+        AnalyticsHandler analytics = new AnalyticsHandler(mockDdb, mockLambda, mockSqs, gson, "urls", "clicks", "trendInsights", "rollups", "counters", 20);
+        for (List<String> batch : List.of(delivered.subList(0, 10), delivered.subList(10, 22))) {
+            SQSEvent sqsEvent = new SQSEvent();
+            List<SQSEvent.SQSMessage> messages = new ArrayList<>();
+            for (String body : batch) {
+                SQSEvent.SQSMessage msg = new SQSEvent.SQSMessage();
+                msg.setMessageId("q" + messages.size() + "-" + body.hashCode());
+                msg.setBody(body);
+                messages.add(msg);
+            }
+            sqsEvent.setRecords(messages);
+            assertTrue(analytics.handleRequest(sqsEvent, mockContext).getBatchItemFailures().isEmpty());
+        }
+        assertEquals(12, rows.size());
+        assertEquals(12, counted.get());
+    }
+
+    @Test
+    @DisplayName("구독 확인 메시지는 클릭 없이 끝낸다")
+    void testIgnoresControlMessage() throws Exception {
+        // given
+        when(mockContext.getLogger()).thenReturn(mockLogger);
+        ClickLogIngestionHandler handler = new ClickLogIngestionHandler(mockDdb, mockLambda, mockSqs, gson, "UrlsTable",
+                AnalyticsEmitter.forIngestion(mockSqs, "analytics-queue"));
+
+        // when
+        String summary = handler.handleRequest(subscriptionEvent("CONTROL_MESSAGE", List.of(logEvent("CWL CONTROL MESSAGE"))), mockContext);
+
+        // then
+        assertEquals("emitted=0 skipped=0 failed=0", summary);
+        verifyNoInteractions(mockSqs);
+    }
+
+    private Map<String, Object> logEvent(String message) {
+        return Map.of("id", "3734989482049323000000" + nextLogEventId++, "timestamp", LOGGED_AT, "message", message);
+    }
+
+    private CloudWatchLogsEvent subscriptionEvent(String messageType, List<Map<String, Object>> logEvents) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(gson.toJson(Map.of("messageType", messageType, "logGroup", "/lessurl/test/redirect", "logEvents", logEvents))
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        CloudWatchLogsEvent.AWSLogs awsLogs = new CloudWatchLogsEvent.AWSLogs();
+        awsLogs.setData(Base64.getEncoder().encodeToString(out.toByteArray()));
+        CloudWatchLogsEvent event = new CloudWatchLogsEvent();
+        event.setAwsLogs(awsLogs);
+        return event;
+    }
+}
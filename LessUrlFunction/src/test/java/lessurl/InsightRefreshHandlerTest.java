@@ -0,0 +1,103 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.sqs.SqsClient;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InsightRefreshHandlerTest {
+
+    private final Gson gson = new Gson();
+
+    @Mock
+    private DynamoDbClient mockDdb;
+    @Mock
+    private LambdaClient mockLambda;
+    @Mock
+    private SqsClient mockSqs;
+    @Mock
+    private Context mockContext;
+    @Mock
+    private LambdaLogger mockLogger;
+    @Mock
+    private InsightGenerator mockInsightGenerator;
+
+    private InsightRefreshHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(mockContext.getLogger()).thenReturn(mockLogger);
+        handler = new InsightRefreshHandler(mockDdb, mockLambda, mockSqs, gson, "AiTable", mockInsightGenerator);
+    }
+
+    @Test
+    @DisplayName("이미 같은 fingerprint로 만들어진 인사이트는 건너뛰고, 새로 만든 인사이트는 기간 라벨을 붙여 저장하며, 생성 실패만 재시도한다")
+    void testRefreshesOnlyStaleInsights() {
+        // given
+        when(mockDdb.query(any(QueryRequest.class))).thenAnswer(invocation -> {
+            QueryRequest req = invocation.getArgument(0);
+            if (!req.expressionAttributeValues().get(":id").s().equals("done001")) return QueryResponse.builder().build();
+            return QueryResponse.builder().items(List.of(Map.of(
+                    "shortId", AttributeValue.builder().s("done001").build(),
+                    "generatedAt", AttributeValue.builder().s("7d#2026-10-16T00:00:00Z").build(),
+                    "fingerprint", AttributeValue.builder().s("fp-new").build(),
+                    "insight", AttributeValue.builder().s("이미 갱신됨").build()))).build();
+        });
+        when(mockInsightGenerator.generate(any())).thenAnswer(invocation -> {
+            Map<String, Object> stats = invocation.getArgument(0);
+            return stats.get("totalClicks").equals(12L) ? "평일 오전 조회가 많습니다." : null;
+        });
+        SQSEvent event = new SQSEvent();
+        event.setRecords(List.of(
+                message("m1", "done001", "fp-new", 30),
+                message("m2", "link002", "fp-2", 12),
+                message("m3", "link003", "fp-3", 7),
+                message("m4", null, null, 0)));
+        event.getRecords().get(3).setBody("{broken");
+
+        // when
+        SQSBatchResponse response = handler.handleRequest(event, mockContext);
+
+        // then
+        assertEquals(List.of("m3"), response.getBatchItemFailures().stream().map(SQSBatchResponse.BatchItemFailure::getItemIdentifier).toList());
+        verify(mockInsightGenerator, times(2)).generate(any());
+
+        ArgumentCaptor<PutItemRequest> put = ArgumentCaptor.forClass(PutItemRequest.class);
+        verify(mockDdb, times(1)).putItem(put.capture());
+        Map<String, AttributeValue> item = put.getValue().item();
+        assertEquals("AiTable", put.getValue().tableName());
+        assertEquals("link002", item.get("shortId").s());
+        assertTrue(item.get("generatedAt").s().startsWith("7d#"));
+        assertEquals("fp-2", item.get("fingerprint").s());
+        assertEquals("평일 오전 조회가 많습니다.", item.get("insight").s());
+        assertNotNull(item.get("expiresAt").n());
+    }
+
+    private SQSEvent.SQSMessage message(String id, String shortId, String fingerprint, long totalClicks) {
+        SQSEvent.SQSMessage msg = new SQSEvent.SQSMessage();
+        msg.setMessageId(id);
+        msg.setBody(gson.toJson(Map.of("shortId", String.valueOf(shortId), "period", "7d", "fingerprint", String.valueOf(fingerprint),
+                "stats", Map.of("totalClicks", totalClicks, "countries", Map.of("KR", totalClicks)))));
+        return msg;
+    }
+}
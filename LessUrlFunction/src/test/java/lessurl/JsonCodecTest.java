@@ -0,0 +1,82 @@
+package lessurl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonCodecTest {
+
+    @Test
+    @DisplayName("Gemini 응답에서 필드 순서와 관계없이 첫 후보의 text만 읽고, 경로가 없으면 null을 돌려준다")
+    void testGeminiText() {
+        // given
+        String response = """
+            {"usageMetadata":{"promptTokenCount":12},
+             "candidates":[{"finishReason":"STOP","safetyRatings":[{"category":"HARM","probability":"LOW"}],
+                            "content":{"role":"model","parts":[{"text":"첫 번째 \\"답\\""},{"text":"무시"}]}},
+                           {"content":{"parts":[{"text":"두 번째 후보"}]}}]}
+            """;
+
+        // when & then
+        assertEquals("첫 번째 \"답\"", JsonCodec.geminiText(response));
+        assertNull(JsonCodec.geminiText("{\"candidates\":[]}"));
+        assertNull(JsonCodec.geminiText("{\"error\":{\"code\":429}}"));
+        assertNull(JsonCodec.geminiText("not json"));
+    }
+
+    @Test
+    @DisplayName("클릭 이벤트는 RedirectHandler가 만든 본문을 그대로 읽고, 응답은 공백 없이 직렬화된다")
+    void testClickEventAndCompactOutput() throws Exception {
+        // given
+        String payload = RedirectHandler.clickPayload("abc1234", "6694f83c9f476da3", "Mozilla \"5.0\"\n", "direct", "KR", "MOBILE", null);
+
+        // when
+        JsonCodec.ClickEvent event = JsonCodec.CLICK_EVENT.fromJson(payload);
+        JsonCodec.ShortenRequest request = JsonCodec.SHORTEN_REQUEST.fromJson("{\"url\":\"https://a.com\",\"extra\":{\"x\":[1,2]},\"visibility\":null}");
+
+        // then
+        assertEquals("abc1234", event.shortId());
+        assertEquals("Mozilla \"5.0\"\n", event.userAgent());
+        assertNull(event.clickedAt());
+        assertEquals("https://a.com", request.url());
+        assertNull(request.visibility());
+        assertEquals("{\"a\":1}", JsonCodec.GSON.toJson(Map.of("a", 1)));
+    }
+
+    @Test
+    @DisplayName("Safe Browsing 목록 응답은 타입이 있는 레코드로 읽히고, 접두사를 모으면서 목록별 checksum을 확인한다")
+    void testSafeBrowsingListUpdates() throws Exception {
+        // given: 4바이트 접두사 두 개(정렬 전)와 그 checksum
+        byte[] first = {0x7f, 0x00, 0x00, 0x01};
+        byte[] second = {0x01, 0x02, 0x03, 0x04};
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        sha256.update(second);
+        sha256.update(first);
+        Base64.Encoder base64 = Base64.getEncoder();
+        String raw = base64.encodeToString(new byte[]{0x7f, 0x00, 0x00, 0x01, 0x01, 0x02, 0x03, 0x04});
+        String response = "{\"listUpdateResponses\":[{\"threatType\":\"MALWARE\",\"threatEntryType\":\"URL\",\"platformType\":\"ANY_PLATFORM\","
+                + "\"responseType\":\"FULL_UPDATE\",\"additions\":[{\"compressionType\":\"RAW\",\"rawHashes\":{\"prefixSize\":4,\"rawHashes\":\"" + raw + "\"}}],"
+                + "\"newClientState\":\"abc\",\"checksum\":{\"sha256\":\"" + base64.encodeToString(sha256.digest()) + "\"}}],"
+                + "\"minimumWaitDuration\":\"300s\"}";
+
+        // when
+        JsonCodec.ListUpdates updates = JsonCodec.GSON.fromJson(response, JsonCodec.ListUpdates.class);
+        int[] prefixes = SafeBrowsingSyncHandler.prefixesOf(updates, 1);
+
+        // then
+        JsonCodec.ListUpdateResponse list = updates.listUpdateResponses().get(0);
+        assertEquals("MALWARE", list.threatType());
+        assertEquals(4, list.additions().get(0).rawHashes().prefixSize());
+        assertEquals(2, prefixes.length);
+        assertThrows(IllegalStateException.class, () -> SafeBrowsingSyncHandler.prefixesOf(updates, 2));
+        assertThrows(IllegalStateException.class, () -> SafeBrowsingSyncHandler.prefixesOf(
+                JsonCodec.GSON.fromJson(response.replace("FULL_UPDATE", "PARTIAL_UPDATE"), JsonCodec.ListUpdates.class), 1));
+        assertThrows(IllegalStateException.class, () -> SafeBrowsingSyncHandler.prefixesOf(
+                JsonCodec.GSON.fromJson(response.replace("\"prefixSize\":4", "\"prefixSize\":0"), JsonCodec.ListUpdates.class), 1));
+    }
+}
@@ -0,0 +1,183 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LinkFilterGuardTest {
+
+    private static final long RETENTION_SECONDS = 48 * 3600;
+
+    @Mock
+    private S3Client mockS3;
+    @Mock
+    private DynamoDbClient mockDdb;
+    @Mock
+    private LambdaLogger mockLogger;
+
+    // 델타 로그 테이블에 기록된 ID. 테스트 중간에 다른 컨테이너가 링크를 만든 것처럼 추가한다
+    private final List<String> deltaIds = new CopyOnWriteArrayList<>();
+
+    @Test
+    @DisplayName("스냅샷 이후 델타 로그에 기록된 새 ID는 있다고 판정하고, 어디에도 없는 ID는 첫 미스 이후 동기화를 거친 뒤에만 거른다")
+    void testDeltaLoggedIdsPassAfterSnapshot() throws Exception {
+        // given: 스냅샷에는 abc1234만, new0001은 스냅샷 이후 생성되어 델타 로그에만 있다
+        givenSnapshot(System.currentTimeMillis() - 600_000, "abc1234");
+        givenDeltaLog();
+        deltaIds.add("new0001");
+        LinkFilterGuard guard = guard(60_000, 0);
+
+        // when
+        guard.load();
+        boolean firstMiss = guard.mightExist("zzz9999");
+        guard.syncDelta();
+
+        // then
+        assertTrue(guard.mightExist("abc1234"));
+        assertTrue(guard.mightExist("new0001"));
+        assertTrue(firstMiss);
+        assertFalse(guard.mightExist("zzz9999"));
+        assertEquals(1L, guard.stats().get("rejected"));
+    }
+
+    @Test
+    @DisplayName("필터를 동기화한 직후 다른 컨테이너가 만든 링크는 첫 요청부터 조회로 넘기고, 유예 시간이 지난 구간까지 동기화해야 미스를 믿는다")
+    void testNewlyCreatedIdIsNotRejectedWithinGrace() throws Exception {
+        // given: 마지막 동기화 직후 brand01이 만들어졌지만 델타 로그 기록은 아직 보이지 않는다
+        givenSnapshot(System.currentTimeMillis() - 600_000, "abc1234");
+        givenDeltaLog();
+        LinkFilterGuard guard = guard(60_000, 300);
+        guard.load();
+
+        // when: 유예 시간 안의 동기화로는 미스를 믿지 않는다
+        boolean firstRequest = guard.mightExist("brand01");
+        guard.syncDelta();
+        boolean withinGrace = guard.mightExist("brand01");
+        boolean unknownWithinGrace = guard.mightExist("unknown1");
+
+        // when: 기록이 보인 뒤 유예 시간이 지나 다시 동기화했다
+        deltaIds.add("brand01");
+        Thread.sleep(350);
+        guard.syncDelta();
+
+        // then
+        assertTrue(firstRequest);
+        assertTrue(withinGrace);
+        assertTrue(unknownWithinGrace);
+        assertTrue(guard.mightExist("brand01"));
+        assertFalse(guard.mightExist("unknown1"));
+        assertEquals(1L, guard.stats().get("rejected"));
+    }
+
+    @Test
+    @DisplayName("미스는 요청 스레드에서 델타를 조회하지 않고, 백그라운드 동기화가 반영한 뒤에는 다른 컨테이너가 만든 링크를 찾는다")
+    void testMissesAreAnsweredFromBackgroundSyncedFilter() throws Exception {
+        // given: 필터를 읽은 직후 다른 컨테이너가 fresh01을 만들었다
+        givenSnapshot(System.currentTimeMillis() - 600_000, "abc1234");
+        givenDeltaLog();
+        LinkFilterGuard guard = guard(100, 0);
+        guard.load();
+        assertTrue(guard.mightExist("unknown1"));
+        deltaIds.add("fresh01");
+
+        // when: 다음 백그라운드 동기화를 기다린다
+        long deadline = System.currentTimeMillis() + 5_000;
+        while ((long) guard.stats().get("deltaSyncs") < 1 && System.currentTimeMillis() < deadline) Thread.sleep(20);
+        int queriesBefore = mockingDetails(mockDdb).getInvocations().size();
+        boolean fresh = guard.mightExist("fresh01");
+        boolean unknown = guard.mightExist("unknown1");
+
+        // then
+        assertTrue(fresh);
+        assertFalse(unknown);
+        assertEquals(queriesBefore, mockingDetails(mockDdb).getInvocations().size());
+        assertEquals(1L, guard.stats().get("rejected"));
+    }
+
+    @Test
+    @DisplayName("스냅샷이 델타 로그 보존 기간보다 오래됐거나, 없거나, 델타를 읽지 못하면 모든 ID를 통과시킨다 (fail-open)")
+    void testFailsOpenWithoutTrustworthySnapshot() throws Exception {
+        // given: 사흘 전 스냅샷. 보존 기간(48시간)이 지난 구간의 생성 기록은 이미 없다
+        givenSnapshot(System.currentTimeMillis() - 3 * 86_400_000L, "abc1234");
+        LinkFilterGuard stale = guard(60_000, 0);
+
+        // when
+        stale.load();
+
+        // then
+        assertTrue(stale.mightExist("anything"));
+        assertEquals(false, stale.stats().get("enabled"));
+        verify(mockLogger, atLeastOnce()).log(contains("guard stays open"));
+        verifyNoInteractions(mockDdb);
+
+        // given: 스냅샷 객체가 없다
+        reset(mockS3);
+        when(mockS3.getObject(any(GetObjectRequest.class))).thenThrow(NoSuchKeyException.builder().message("missing").build());
+        LinkFilterGuard missing = guard(60_000, 0);
+
+        // when
+        missing.load();
+
+        // then
+        assertTrue(missing.mightExist("anything"));
+
+        // given: 스냅샷은 읽었지만 이후 델타 조회가 계속 실패해 동기화가 syncInterval 두 번보다 밀렸다
+        reset(mockS3);
+        givenSnapshot(System.currentTimeMillis() - 600_000, "abc1234");
+        givenDeltaLog();
+        LinkFilterGuard unsynced = guard(50, 0);
+        unsynced.load();
+        reset(mockDdb);
+        when(mockDdb.query(any(QueryRequest.class))).thenThrow(new RuntimeException("throttled"));
+        Thread.sleep(200);
+
+        // when & then
+        assertTrue(unsynced.mightExist("unknown1"));
+        assertEquals(0L, unsynced.stats().get("rejected"));
+    }
+
+    private LinkFilterGuard guard(long syncIntervalMillis, long missGraceMillis) {
+        return new LinkFilterGuard(mockS3, "bucket", "link-filter/latest.bin",
+                new LinkDeltaLog(mockDdb, "LinkDeltaTable", RETENTION_SECONDS), syncIntervalMillis, 3_600_000, missGraceMillis, mockLogger);
+    }
+
+    private void givenSnapshot(long snapshotAt, String... ids) throws Exception {
+        BloomFilter filter = BloomFilter.create(1_000, 0.001);
+        for (String id : ids) filter.put(id);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        filter.writeTo(out, snapshotAt);
+        when(mockS3.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> new ResponseInputStream<>(
+                GetObjectResponse.builder().build(), AbortableInputStream.create(new ByteArrayInputStream(out.toByteArray()))));
+    }
+
+    private void givenDeltaLog() {
+        when(mockDdb.query(any(QueryRequest.class))).thenAnswer(invocation -> QueryResponse.builder()
+                .items(deltaIds.stream().map(id -> Map.of("linkId", AttributeValue.builder().s(id).build())).toList())
+                .build());
+    }
+}
@@ -13,6 +13,9 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
 import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
 import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
 import software.amazon.awssdk.services.lambda.LambdaClient;
@@ -47,17 +50,18 @@ class ListPublicHandlerTest {
     @BeforeEach
     void setUp() {
         lenient().when(mockContext.getLogger()).thenReturn(mockLogger);
-        listPublicHandler = new ListPublicHandler(mockDdb, mockLambda, mockSqs, gson, "UrlsTable");
+        listPublicHandler = new ListPublicHandler(mockDdb, mockLambda, mockSqs, gson, "UrlsTable", "CountersTable");
     }
 
     @Test
-    @DisplayName("공개 URL 목록을 성공적으로 조회하여 반환한다")
+    @DisplayName("공개 URL 목록을 조회하고 클릭 수는 기존 clickCount와 샤드 카운터를 합쳐 반환한다")
     void testHandleRequest_Success() {
         // given
         Map<String, AttributeValue> item = Map.of(
                 "shortId", AttributeValue.builder().s("abc12345").build(),
                 "createdAt", AttributeValue.builder().s("2026-02-19T10:00:00Z").build(),
                 "clickCount", AttributeValue.builder().n("5").build(),
+                "counterShards", AttributeValue.builder().n("4").build(),
                 "title", AttributeValue.builder().s("Example").build()
         );
 
@@ -66,6 +70,19 @@ class ListPublicHandlerTest {
                 .build();
 
         when(mockDdb.query(any(QueryRequest.class))).thenReturn(queryResponse);
+        // 첫 호출에서 샤드 하나가 처리되지 않아 다시 읽는다
+        Map<String, AttributeValue> shard3 = Map.of("counterKey", AttributeValue.builder().s("abc12345#3").build());
+        when(mockDdb.batchGetItem(any(BatchGetItemRequest.class)))
+                .thenReturn(BatchGetItemResponse.builder()
+                        .responses(Map.of("CountersTable", List.of(
+                                Map.of("counterKey", AttributeValue.builder().s("abc12345#0").build(), "clicks", AttributeValue.builder().n("3").build()),
+                                Map.of("counterKey", AttributeValue.builder().s("abc12345#2").build(), "clicks", AttributeValue.builder().n("1").build()))))
+                        .unprocessedKeys(Map.of("CountersTable", KeysAndAttributes.builder().keys(List.of(shard3)).build()))
+                        .build())
+                .thenReturn(BatchGetItemResponse.builder()
+                        .responses(Map.of("CountersTable", List.of(
+                                Map.of("counterKey", AttributeValue.builder().s("abc12345#3").build(), "clicks", AttributeValue.builder().n("2").build()))))
+                        .build());
 
         APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
 
@@ -77,6 +94,7 @@ class ListPublicHandlerTest {
         List<Map<String, String>> body = gson.fromJson(response.getBody(), List.class);
         assertEquals(1, body.size());
         assertEquals("abc12345", body.get(0).get("shortId"));
+        assertEquals("11", body.get(0).get("clickCount"));
     }
 
     @Test
@@ -16,19 +16,21 @@ import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
 import software.amazon.awssdk.services.lambda.LambdaClient;
 import software.amazon.awssdk.services.sqs.SqsClient;
-import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
-import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
 
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.startsWith;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class RedirectHandlerTest {
 
+    private static final String EDGE_SECRET = "edge-secret-for-tests";
+
     private RedirectHandler redirectHandler;
 
     @Mock
@@ -48,14 +50,15 @@ class RedirectHandlerTest {
 
     @BeforeEach
     void setUp() {
-        redirectHandler = new RedirectHandler(mockDdb, mockLambda, mockSqs, "mock-urls-table", "mock-analytics-queue-url");
+        redirectHandler = new RedirectHandler(mockDdb, mockLambda, mockSqs, "mock-urls-table", RedirectHandler.createLinkCache(),
+                LinkFilterGuard.disabled(), EDGE_SECRET);
 
         lenient().when(mockContext.getLogger()).thenReturn(mockLogger);
     }
 
     @Test
-    @DisplayName("유효한 shortId로 요청 시 SQS로 분석 데이터를 전송하고 301 리다이렉트한다")
-    void testHandleRequest_Success_WithSqsAnalytics() {
+    @DisplayName("유효한 shortId로 요청 시 클릭을 로그 한 줄로 남기고 SQS를 기다리지 않은 채 캐시 금지 302로 리다이렉트한다")
+    void testHandleRequest_Success_LogsClick() {
         // given
         String testShortId = "abc1234";
         String originalUrl = "https://www.example.com";
@@ -74,16 +77,87 @@ class RedirectHandlerTest {
                 .build();
 
         lenient().when(mockDdb.getItem(any(GetItemRequest.class))).thenReturn(getItemResponse);
-        lenient().when(mockSqs.sendMessage(any(SendMessageRequest.class))).thenReturn(SendMessageResponse.builder().build());
 
         // when
         APIGatewayProxyResponseEvent response = redirectHandler.handleRequest(request, mockContext);
 
         // then
-        assertEquals(301, response.getStatusCode());
+        assertEquals(302, response.getStatusCode());
         assertEquals(originalUrl, response.getHeaders().get("Location"));
+        assertTrue(response.getHeaders().get("Cache-Control").contains("no-store"));
+
+        verify(mockLogger).log(argThat((String line) -> line.startsWith(RedirectHandler.CLICK_LOG_MARKER) && line.contains("\"country\":\"KR\"")));
+        verifyNoInteractions(mockSqs);
+    }
+
+    @Test
+    @DisplayName("CACHEABLE 링크는 CDN 캐시 헤더와 함께 301을 반환하고, CDN을 거친 요청이면 분석 이벤트를 보내지 않는다")
+    void testHandleRequest_CacheableLinkViaEdge() {
+        // given
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
+        request.setPathParameters(Map.of("shortId", "abc1234"));
+        request.setHeaders(Map.of(RedirectHandler.EDGE_HEADER, EDGE_SECRET, "User-Agent", "Mozilla/5.0"));
+
+        GetItemResponse getItemResponse = GetItemResponse.builder()
+                .item(Map.of(
+                        "originalUrl", AttributeValue.builder().s("https://www.example.com").build(),
+                        RedirectPolicy.ATTRIBUTE, AttributeValue.builder().s("CACHEABLE").build()))
+                .build();
+        when(mockDdb.getItem(any(GetItemRequest.class))).thenReturn(getItemResponse);
+
+        // when
+        APIGatewayProxyResponseEvent response = redirectHandler.handleRequest(request, mockContext);
+
+        // then
+        assertEquals(301, response.getStatusCode());
+        assertTrue(response.getHeaders().get("Cache-Control").contains("s-maxage="));
+        verify(mockLogger, never()).log(startsWith(RedirectHandler.CLICK_LOG_MARKER));
+    }
+
+    @Test
+    @DisplayName("X-LessUrl-Edge 값이 비밀과 다르면 CDN을 거친 요청으로 보지 않고 CACHEABLE 클릭도 집계한다")
+    void testHandleRequest_ForgedEdgeHeaderIsCounted() {
+        // given: API Gateway 도메인으로 직접 보낸 요청이 헤더만 흉내 냈다
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
+        request.setPathParameters(Map.of("shortId", "abc1234"));
+        request.setHeaders(Map.of(RedirectHandler.EDGE_HEADER, "1", "User-Agent", "Mozilla/5.0"));
+
+        when(mockDdb.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder()
+                .item(Map.of(
+                        "originalUrl", AttributeValue.builder().s("https://www.example.com").build(),
+                        RedirectPolicy.ATTRIBUTE, AttributeValue.builder().s("CACHEABLE").build()))
+                .build());
+
+        // when
+        APIGatewayProxyResponseEvent response = redirectHandler.handleRequest(request, mockContext);
+
+        // then
+        assertEquals(301, response.getStatusCode());
+        verify(mockLogger, times(1)).log(startsWith(RedirectHandler.CLICK_LOG_MARKER));
+    }
+
+    @Test
+    @DisplayName("CDN을 거친 TRACKED 클릭은 엣지 서버의 sourceIp 대신 CloudFront-Viewer-Address의 뷰어 IP로 해시한다")
+    void testHandleRequest_EdgeClickUsesViewerAddress() {
+        // given
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
+        request.setPathParameters(Map.of("shortId", "abc1234"));
+        request.setHeaders(Map.of(RedirectHandler.EDGE_HEADER, EDGE_SECRET, RedirectHandler.VIEWER_ADDRESS_HEADER, "1.2.3.4:46532"));
+        request.setRequestContext(new APIGatewayProxyRequestEvent.ProxyRequestContext());
+        request.getRequestContext().setIdentity(new APIGatewayProxyRequestEvent.RequestIdentity());
+        request.getRequestContext().getIdentity().setSourceIp("130.176.0.1");
+
+        when(mockDdb.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder()
+                .item(Map.of("originalUrl", AttributeValue.builder().s("https://www.example.com").build()))
+                .build());
+
+        // when
+        APIGatewayProxyResponseEvent response = redirectHandler.handleRequest(request, mockContext);
 
-        verify(mockSqs, atLeastOnce()).sendMessage(any(SendMessageRequest.class));
+        // then
+        assertEquals(302, response.getStatusCode());
+        verify(mockLogger).log(contains("\"ip\":\"" + RedirectHandler.hashIp("1.2.3.4") + "\""));
+        assertEquals("2001:db8::1", RedirectHandler.viewerIp("2001:db8::1:443"));
     }
 
     @Test
@@ -98,15 +172,117 @@ class RedirectHandlerTest {
         GetItemResponse getItemResponse = GetItemResponse.builder().build();
         when(mockDdb.getItem(any(GetItemRequest.class))).thenReturn(getItemResponse);
 
-        when(mockDdb.query(any(software.amazon.awssdk.services.dynamodb.model.QueryRequest.class)))
-                .thenReturn(software.amazon.awssdk.services.dynamodb.model.QueryResponse.builder().items(java.util.Collections.emptyList()).build());
-
         // when
         APIGatewayProxyResponseEvent response = redirectHandler.handleRequest(request, mockContext);
 
         // then
         assertEquals(404, response.getStatusCode());
         assertTrue(response.getBody().contains("URL not found"));
+        verify(mockDdb, never()).query(any(software.amazon.awssdk.services.dynamodb.model.QueryRequest.class));
+    }
+
+    @Test
+    @DisplayName("alias로 요청하면 포인터 아이템 한 번의 GetItem으로 원본 URL을 찾고 실제 shortId로 분석 데이터를 보낸다")
+    void testHandleRequest_AliasPointerResolvesInSingleRead() {
+        // given
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
+        request.setPathParameters(Map.of("shortId", "my-google"));
+
+        GetItemResponse pointerResponse = GetItemResponse.builder()
+                .item(LinkResolver.aliasPointerItem("my-google", "abc1234", "https://www.google.com", "2024-01-01T00:00:00Z", RedirectPolicy.TRACKED))
+                .build();
+        when(mockDdb.getItem(any(GetItemRequest.class))).thenReturn(pointerResponse);
+
+        // when
+        APIGatewayProxyResponseEvent response = redirectHandler.handleRequest(request, mockContext);
+
+        // then
+        assertEquals(302, response.getStatusCode());
+        assertEquals("https://www.google.com", response.getHeaders().get("Location"));
+        verify(mockDdb, times(1)).getItem(any(GetItemRequest.class));
+        verify(mockDdb, never()).query(any(software.amazon.awssdk.services.dynamodb.model.QueryRequest.class));
+        verify(mockLogger).log(argThat((String line) -> line.startsWith(RedirectHandler.CLICK_LOG_MARKER) && line.contains("\"shortId\":\"abc1234\"")));
+    }
+
+    @Test
+    @DisplayName("같은 shortId를 다시 요청하면 캐시에서 원본 URL을 찾고 DynamoDB를 조회하지 않는다")
+    void testHandleRequest_CachedLinkSkipsDynamoDb() {
+        // given
+        String testShortId = "abc1234";
+        String originalUrl = "https://www.example.com";
+
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
+        request.setPathParameters(Map.of("shortId", testShortId));
+
+        GetItemResponse getItemResponse = GetItemResponse.builder()
+                .item(Map.of("originalUrl", AttributeValue.builder().s(originalUrl).build()))
+                .build();
+        when(mockDdb.getItem(any(GetItemRequest.class))).thenReturn(getItemResponse);
+
+        // when
+        redirectHandler.handleRequest(request, mockContext);
+        APIGatewayProxyResponseEvent response = redirectHandler.handleRequest(request, mockContext);
+
+        // then
+        assertEquals(302, response.getStatusCode());
+        assertEquals(originalUrl, response.getHeaders().get("Location"));
+        verify(mockDdb, times(1)).getItem(any(GetItemRequest.class));
+        assertEquals(1, redirectHandler.linkCache().hits());
+    }
+
+    @Test
+    @DisplayName("존재하지 않는 shortId는 음성 캐시에 기록되어 재요청 시 DynamoDB를 조회하지 않는다")
+    void testHandleRequest_NotFoundIsNegativelyCached() {
+        // given
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
+        request.setPathParameters(Map.of("shortId", "missing1"));
+
+        when(mockDdb.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder().build());
+
+        // when
+        redirectHandler.handleRequest(request, mockContext);
+        APIGatewayProxyResponseEvent response = redirectHandler.handleRequest(request, mockContext);
+
+        // then
+        assertEquals(404, response.getStatusCode());
+        verify(mockDdb, times(1)).getItem(any(GetItemRequest.class));
+        assertEquals(1, redirectHandler.linkCache().negativeHits());
+    }
+
+    @Test
+    @DisplayName("Bloom filter가 없다고 판정한 shortId는 DynamoDB 조회 없이 404를 반환한다")
+    void testHandleRequest_FilterRejectsUnknownId() {
+        // given
+        LinkFilterGuard guard = mock(LinkFilterGuard.class);
+        when(guard.mightExist("unknown1")).thenReturn(false);
+        RedirectHandler handler = new RedirectHandler(mockDdb, mockLambda, mockSqs, "mock-urls-table", RedirectHandler.createLinkCache(), guard);
+
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
+        request.setPathParameters(Map.of("shortId", "unknown1"));
+
+        // when
+        APIGatewayProxyResponseEvent response = handler.handleRequest(request, mockContext);
+
+        // then
+        assertEquals(404, response.getStatusCode());
+        assertEquals("no-cache, no-store, must-revalidate", response.getHeaders().get("Cache-Control"));
+        verifyNoInteractions(mockDdb);
+    }
+
+    @Test
+    @DisplayName("직접 조립한 클릭 이벤트 JSON은 특수문자가 포함되어도 Gson으로 그대로 읽힌다")
+    void testClickPayloadEscaping() {
+        // given
+        String userAgent = "Mozilla/5.0 \"quoted\" \\ back\tslash\u0001 \u2028 한글";
+
+        // when
+        String json = RedirectHandler.clickPayload("abc1234", RedirectHandler.hashIp("1.2.3.4"), userAgent, "direct", "KR", RedirectHandler.deviceType("Mozilla/5.0 (iPAD; CPU OS 17_0)"), null);
+        Map<?, ?> parsed = new com.google.gson.Gson().fromJson(json, Map.class);
+
+        // then
+        assertEquals(userAgent, parsed.get("userAgent"));
+        assertEquals("Tablet", parsed.get("deviceType"));
+        assertEquals("6694f83c9f476da3", parsed.get("ip")); // sha256("1.2.3.4")의 앞 8바이트
     }
 
     @Test
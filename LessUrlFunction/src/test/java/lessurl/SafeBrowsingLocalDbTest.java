@@ -0,0 +1,118 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SafeBrowsingLocalDbTest {
+
+    @Mock
+    private S3Client mockS3;
+
+    @Mock
+    private HttpClient mockHttpClient;
+
+    @Mock
+    private LambdaLogger mockLogger;
+
+    @Test
+    @DisplayName("URL을 Safe Browsing 규칙대로 정규화하고 host/path 조합을 만든다")
+    void testCanonicalizeAndExpressions() {
+        // when & then
+        assertEquals("http://host/%25", SafeBrowsingUrl.canonicalize("http://host/%25%32%35").toString());
+        assertEquals("http://host/%25%25%25asd%25%25", SafeBrowsingUrl.canonicalize("http://host/%%%25%32%35asd%%").toString());
+        assertEquals("http://168.188.99.26/.secure/www.ebay.com/", SafeBrowsingUrl.canonicalize("http://%31%36%38%2e%31%38%38%2e%39%39%2e%32%36/%2E%73%65%63%75%72%65/%77%77%77%2E%65%62%61%79%2E%63%6F%6D/").toString());
+        assertEquals("http://host%23.com/~a!b@c%23d$e%25f^00&11*22(33)44_55+", SafeBrowsingUrl.canonicalize("http://host%23.com/%257Ea%2521b%2540c%2523d%2524e%25f%255E00%252611%252A22%252833%252944_55%252B").toString());
+        assertEquals("http://195.127.0.11/blah", SafeBrowsingUrl.canonicalize("http://3279880203/blah").toString());
+        assertEquals("http://www.google.com/", SafeBrowsingUrl.canonicalize("http://www.google.com/blah/..").toString());
+        assertEquals("http://www.google.com/", SafeBrowsingUrl.canonicalize("www.GOOgle.com.../").toString());
+        assertEquals("http://www.google.com/foobarbaz2", SafeBrowsingUrl.canonicalize("http://www.google.com/foo\tbar\rbaz\n2").toString());
+        assertEquals("http://www.google.com/q?r?", SafeBrowsingUrl.canonicalize("http://www.google.com/q?r?").toString());
+        assertEquals("http://evil.com/foo", SafeBrowsingUrl.canonicalize("http://evil.com/foo#bar#baz").toString());
+        assertEquals("http://www.gotaport.com/", SafeBrowsingUrl.canonicalize("http://user:pw@www.gotaport.com:1234/").toString());
+        assertEquals("http://%20leadingspace.com/", SafeBrowsingUrl.canonicalize("http:// leadingspace.com/").toString());
+        assertEquals("http://host.com/twoslashes?more//slashes", SafeBrowsingUrl.canonicalize("http://host.com//twoslashes?more//slashes").toString());
+
+        assertEquals(List.of(
+                "a.b.c/1/2.html?param=1", "a.b.c/1/2.html", "a.b.c/", "a.b.c/1/",
+                "b.c/1/2.html?param=1", "b.c/1/2.html", "b.c/", "b.c/1/"),
+                SafeBrowsingUrl.expressions(SafeBrowsingUrl.canonicalize("http://a.b.c/1/2.html?param=1")));
+        assertEquals(List.of(
+                "a.b.c.d.e.f.g/1.html", "a.b.c.d.e.f.g/", "c.d.e.f.g/1.html", "c.d.e.f.g/",
+                "d.e.f.g/1.html", "d.e.f.g/", "e.f.g/1.html", "e.f.g/", "f.g/1.html", "f.g/"),
+                SafeBrowsingUrl.expressions(SafeBrowsingUrl.canonicalize("http://a.b.c.d.e.f.g/1.html")));
+        assertEquals(List.of("1.2.3.4/1/", "1.2.3.4/"), SafeBrowsingUrl.expressions(SafeBrowsingUrl.canonicalize("http://1.2.3.4/1/")));
+    }
+
+    @Test
+    @DisplayName("로컬 접두사에 없는 URL은 원격 호출 없이 통과하고, 접두사에 걸린 URL만 전체 해시로 확인한다")
+    @SuppressWarnings("unchecked")
+    void testPrefixHitTriggersFullHashVerification() throws Exception {
+        // given: 고정 스냅샷에 악성 도메인과, 접두사만 겹치는 경우를 흉내 낸 도메인을 넣는다
+        byte[] evil = sha256("evil.example.com/");
+        byte[] prefixOnly = sha256("innocent.example.org/");
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        SafeBrowsingLocalDb.writeTo(snapshot, new int[]{SafeBrowsingLocalDb.prefixOf(evil), SafeBrowsingLocalDb.prefixOf(prefixOnly), 7, -42}, System.currentTimeMillis());
+        when(mockS3.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(
+                GetObjectResponse.builder().eTag("\"v1\"").build(),
+                AbortableInputStream.create(new ByteArrayInputStream(snapshot.toByteArray()))));
+
+        SafeBrowsingLocalDb db = new SafeBrowsingLocalDb(mockS3, "bucket", "safe-browsing/prefixes.bin", 60_000, 3_600_000, mockLogger);
+        db.load();
+        verify(mockLogger).log(contains("Loaded snapshot"));
+
+        HttpResponse<String> fullHashes = mock(HttpResponse.class);
+        when(fullHashes.statusCode()).thenReturn(200);
+        when(fullHashes.body()).thenReturn("{\"matches\":[{\"threatType\":\"MALWARE\",\"platformType\":\"ANY_PLATFORM\",\"threatEntryType\":\"URL\",\"threat\":{\"hash\":\""
+                + Base64.getEncoder().encodeToString(evil) + "\"},\"cacheDuration\":\"300s\"}]}");
+        when(mockHttpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(fullHashes);
+        UrlSafetyChecker checker = new UrlSafetyChecker(mockHttpClient, new Gson(), null, "sb-key", db);
+
+        // when
+        boolean clean = checker.isMaliciousWithSafeBrowsing("https://clean.example.net/page?x=1");
+        int callsAfterClean = mockingDetails(mockHttpClient).getInvocations().size();
+        boolean malicious = checker.isMaliciousWithSafeBrowsing("https://login.evil.example.com/account/verify.php");
+        boolean collision = checker.isMaliciousWithSafeBrowsing("http://innocent.example.org");
+
+        // then
+        assertTrue(db.isReady());
+        assertFalse(clean);
+        assertEquals(0, callsAfterClean);
+        assertTrue(malicious);
+        assertFalse(collision);
+
+        ArgumentCaptor<HttpRequest> captor = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(mockHttpClient, times(2)).send(captor.capture(), any(HttpResponse.BodyHandler.class));
+        assertTrue(captor.getAllValues().stream().allMatch(req -> req.uri().getPath().endsWith("fullHashes:find")));
+    }
+
+    private static byte[] sha256(String expression) throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(expression.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,72 @@
+package lessurl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SequenceIdAllocatorTest {
+
+    @Mock
+    private DynamoDbClient mockDdb;
+
+    private static UpdateItemResponse counterAt(long value) {
+        return UpdateItemResponse.builder()
+                .attributes(Map.of("nextValue", AttributeValue.builder().n(Long.toString(value)).build()))
+                .build();
+    }
+
+    @Test
+    @DisplayName("연속된 순번도 겹치지 않는 7자리 Base62 ID로 섞인다")
+    void testScrambleIsCollisionFree() {
+        // given
+        SequenceIdAllocator allocator = new SequenceIdAllocator(mockDdb, "TestSeq", 1000, "secret");
+        Set<String> ids = new HashSet<>();
+
+        // when & then
+        for (long seq = 0; seq < 200_000; seq++) {
+            long scrambled = allocator.scramble(seq);
+            assertTrue(scrambled >= 0 && scrambled < SequenceIdAllocator.ID_SPACE);
+            String id = SequenceIdAllocator.encode(scrambled);
+            assertTrue(id.matches("^[0-9A-Za-z]{7}$"));
+            assertTrue(ids.add(id), "duplicate id for sequence " + seq);
+        }
+        // 키가 다르면 다른 순열이 된다
+        assertNotEquals(allocator.scramble(1), new SequenceIdAllocator(mockDdb, "TestSeq", 1000, "other").scramble(1));
+    }
+
+    @Test
+    @DisplayName("블록을 다 쓸 때만 카운터를 갱신하고 스냅샷 복원 후에는 새 블록을 받는다")
+    void testLeasesBlockOnlyWhenExhausted() {
+        // given
+        SequenceIdAllocator allocator = new SequenceIdAllocator(mockDdb, "TestSeq", 3, "secret");
+        when(mockDdb.updateItem(any(UpdateItemRequest.class))).thenReturn(counterAt(3), counterAt(6), counterAt(9));
+
+        // when
+        String first = allocator.next();
+        allocator.next();
+        allocator.next();
+        String fourth = allocator.next();
+        allocator.afterRestore(null);
+        allocator.next();
+
+        // then
+        assertEquals(SequenceIdAllocator.encode(allocator.scramble(0)), first);
+        assertEquals(SequenceIdAllocator.encode(allocator.scramble(3)), fourth);
+        verify(mockDdb, times(3)).updateItem(any(UpdateItemRequest.class));
+    }
+}
@@ -16,13 +16,21 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.lambda.LambdaClient;
 import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
 
 import java.io.IOException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -63,6 +71,9 @@ class ShortenHandlerTest {
     @Captor
     private ArgumentCaptor<PutItemRequest> putItemRequestCaptor;
 
+    @Captor
+    private ArgumentCaptor<TransactWriteItemsRequest> transactRequestCaptor;
+
     @BeforeEach
     void setUp() throws IOException, InterruptedException {
         lenient().when(mockContext.getLogger()).thenReturn(mockLogger);
@@ -163,6 +174,89 @@ class ShortenHandlerTest {
         verify(mockDdb, never()).putItem(any(PutItemRequest.class));
     }
 
+    @Test
+    @DisplayName("검사는 동시에 실행되며, Gemini가 악성으로 판정하면 느린 Safe Browsing 응답을 기다리지 않고 400을 반환한다")
+    void testHandleRequest_MaliciousVerdictCancelsSlowChecks() throws IOException, InterruptedException {
+        // given
+        shortenHandler = new ShortenHandler(mockDdb, mockLambda, mockSqs, gson, "TestTable", testApiKey, testSafeBrowsingApiKey, mockHttpClient, 10_000);
+        APIGatewayProxyRequestEvent request = createApiRequest("{\"url\": \"http://malicious-site.com\"}");
+
+        HttpResponse<String> maliciousResponse = mock(HttpResponse.class);
+        lenient().when(maliciousResponse.statusCode()).thenReturn(200);
+        lenient().when(maliciousResponse.body()).thenReturn("""
+            { "candidates": [ { "content": { "parts": [ { "text": "{\\"classification\\": \\"MALWARE\\"}" } ] } } ] }
+            """);
+        when(mockHttpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenAnswer(invocation -> {
+            HttpRequest req = invocation.getArgument(0);
+            if (req.uri().getHost().startsWith("safebrowsing")) {
+                Thread.sleep(5_000);
+                return mockHttpResponse;
+            }
+            return maliciousResponse;
+        });
+
+        // when
+        long start = System.currentTimeMillis();
+        APIGatewayProxyResponseEvent response = shortenHandler.handleRequest(request, mockContext);
+        long elapsed = System.currentTimeMillis() - start;
+
+        // then
+        assertEquals(400, response.getStatusCode());
+        assertTrue(elapsed < 2_000, "elapsed " + elapsed + "ms");
+        verify(mockDdb, never()).putItem(any(PutItemRequest.class));
+    }
+
+    @Test
+    @DisplayName("도메인 SAFE 재사용으로 찾은 판정은 Gemini만 생략하고 Safe Browsing으로 URL 그대로 검사해, 같은 도메인의 피싱 경로를 막는다")
+    void testHandleRequest_DomainSafeStillChecksSafeBrowsing() throws IOException, InterruptedException {
+        // given: 같은 공유 호스트의 정상 URL이 SAFE로 기록되어 있다
+        VerdictCache verdictCache = new VerdictCache(null, null, new TtlCache<>(100, 1 << 20, 60_000, 0, hit -> 64), 86_400, 604_800, 21_600, true);
+        verdictCache.record(UrlNormalizer.normalize("https://sites.example.com/team/home"), VerdictCache.Verdict.SAFE, null);
+        shortenHandler = new ShortenHandler(mockDdb, mockLambda, mockSqs, gson, "TestTable", testApiKey, testSafeBrowsingApiKey, mockHttpClient, 2_500, verdictCache, "title-queue");
+
+        HttpResponse<String> threatResponse = mock(HttpResponse.class);
+        when(threatResponse.statusCode()).thenReturn(200);
+        when(threatResponse.body()).thenReturn("{\"matches\":[{\"threatType\":\"SOCIAL_ENGINEERING\"}]}");
+        List<String> hosts = new java.util.concurrent.CopyOnWriteArrayList<>();
+        when(mockHttpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenAnswer(invocation -> {
+            HttpRequest req = invocation.getArgument(0);
+            hosts.add(req.uri().getHost());
+            return threatResponse;
+        });
+
+        // when
+        APIGatewayProxyResponseEvent response = shortenHandler.handleRequest(createApiRequest("{\"url\": \"https://sites.example.com/login/verify\"}"), mockContext);
+
+        // then
+        assertEquals(400, response.getStatusCode());
+        assertEquals(1, hosts.size());
+        assertTrue(hosts.get(0).startsWith("safebrowsing"));
+        verify(mockDdb, never()).putItem(any(PutItemRequest.class));
+    }
+
+    @Test
+    @DisplayName("검사가 기한을 넘기면 기다리지 않고 안전/기본 제목으로 간주해 저장한다")
+    void testHandleRequest_ChecksExceedDeadline() throws IOException, InterruptedException {
+        // given
+        shortenHandler = new ShortenHandler(mockDdb, mockLambda, mockSqs, gson, "TestTable", testApiKey, testSafeBrowsingApiKey, mockHttpClient, 200);
+        APIGatewayProxyRequestEvent request = createApiRequest("{\"url\": \"https://slow.example.com\"}");
+
+        when(mockHttpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenAnswer(invocation -> {
+            Thread.sleep(5_000);
+            return mockHttpResponse;
+        });
+
+        // when
+        long start = System.currentTimeMillis();
+        APIGatewayProxyResponseEvent response = shortenHandler.handleRequest(request, mockContext);
+        long elapsed = System.currentTimeMillis() - start;
+
+        // then
+        assertEquals(200, response.getStatusCode());
+        assertTrue(elapsed < 2_000, "elapsed " + elapsed + "ms");
+        verify(mockDdb).putItem(putItemRequestCaptor.capture());
+        assertEquals("Untitled Link", putItemRequestCaptor.getValue().item().get("title").s());
+    }
 
     @Test
     @DisplayName("URL에 프로토콜이 없으면 https:// 를 추가하고 shortUrl을 반환한다")
@@ -246,15 +340,65 @@ class ShortenHandlerTest {
         assertTrue(responseBody.containsKey("shortId"));
         assertTrue(responseBody.containsKey("shortUrl"));
 
-        verify(mockDdb).putItem(putItemRequestCaptor.capture());
-        PutItemRequest capturedRequest = putItemRequestCaptor.getValue();
-        String savedShortId = capturedRequest.item().get("shortId").s();
+        verify(mockDdb, never()).putItem(any(PutItemRequest.class));
+        verify(mockDdb).transactWriteItems(transactRequestCaptor.capture());
+        TransactWriteItemsRequest capturedRequest = transactRequestCaptor.getValue();
+        assertEquals(2, capturedRequest.transactItems().size());
+
+        Map<String, AttributeValue> linkItem = capturedRequest.transactItems().get(0).put().item();
+        Map<String, AttributeValue> pointerItem = capturedRequest.transactItems().get(1).put().item();
+        String savedShortId = linkItem.get("shortId").s();
         String returnedShortUrl = responseBody.get("shortUrl");
 
-        assertEquals(inputAlias, capturedRequest.item().get("customAlias").s());
-        assertEquals("https://" + inputUrl, capturedRequest.item().get("originalUrl").s());
+        assertEquals(inputAlias, linkItem.get("customAlias").s());
+        assertEquals("https://" + inputUrl, linkItem.get("originalUrl").s());
+        assertEquals(inputAlias, pointerItem.get("shortId").s());
+        assertEquals(savedShortId, pointerItem.get(LinkResolver.TARGET_ID).s());
+        assertEquals("attribute_not_exists(shortId)", capturedRequest.transactItems().get(1).put().conditionExpression());
         assertTrue(returnedShortUrl.endsWith(inputAlias));
         assertTrue(returnedShortUrl.startsWith("https://test-api.com/prod/"));
+        // alias 중복은 저장 조건이 걸러 내므로 alias를 미리 읽지 않는다
+        verify(mockDdb, never()).getItem(argThat((GetItemRequest req) -> inputAlias.equals(req.key().get("shortId").s())));
+        verify(mockDdb, never()).query(argThat((QueryRequest req) -> inputAlias.equals(req.expressionAttributeValues().get(":v").s())));
+    }
+
+    @Test
+    @DisplayName("ALIAS_INDEX_FALLBACK이 켜져 있으면 포인터 없는 과거 alias를 인덱스로 확인해 400 에러를 반환한다")
+    void testHandleRequest_LegacyAliasTakenWithIndexFallback() {
+        // given
+        shortenHandler = new ShortenHandler(mockDdb, mockLambda, mockSqs, gson, "TestTable", testApiKey, testSafeBrowsingApiKey, mockHttpClient, 2_500, VerdictCache.disabled(), null, null, false, true);
+        when(mockDdb.query(any(QueryRequest.class))).thenReturn(QueryResponse.builder().count(1).build());
+
+        // when
+        APIGatewayProxyResponseEvent response = shortenHandler.handleRequest(createApiRequest("{\"url\": \"google.com\", \"customAlias\": \"old-name\"}"), mockContext);
+
+        // then
+        assertEquals(400, response.getStatusCode());
+        assertTrue(response.getBody().contains("이미 사용 중인 이름입니다."));
+        verify(mockDdb, never()).getItem(any(GetItemRequest.class));
+        verify(mockDdb, never()).transactWriteItems(any(TransactWriteItemsRequest.class));
+    }
+
+    @Test
+    @DisplayName("alias 포인터 저장 조건이 실패하면 이미 사용 중인 이름으로 400 에러를 반환한다")
+    void testHandleRequest_AliasPointerConflict() {
+        // given
+        String requestBody = "{\"url\": \"google.com\", \"customAlias\": \"taken-name\"}";
+        APIGatewayProxyRequestEvent request = createApiRequest(requestBody);
+
+        when(mockDdb.transactWriteItems(any(TransactWriteItemsRequest.class))).thenThrow(TransactionCanceledException.builder()
+                .cancellationReasons(
+                        CancellationReason.builder().code("None").build(),
+                        CancellationReason.builder().code("ConditionalCheckFailed").build())
+                .build());
+
+        // when
+        APIGatewayProxyResponseEvent response = shortenHandler.handleRequest(request, mockContext);
+
+        // then
+        assertEquals(400, response.getStatusCode());
+        assertTrue(response.getBody().contains("이미 사용 중인 이름입니다."));
+        verify(mockDdb, times(1)).transactWriteItems(any(TransactWriteItemsRequest.class));
     }
 
     @Test
@@ -291,4 +435,110 @@ class ShortenHandlerTest {
         PutItemRequest capturedRequest = putItemRequestCaptor.getValue();
         assertEquals("PRIVATE", capturedRequest.item().get("visibility").s());
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("redirectPolicy를 CACHEABLE로 요청하면 링크에 해당 정책이 저장되고, 알 수 없는 값이면 400을 반환한다")
+    void testHandleRequest_RedirectPolicy() {
+        // given
+        APIGatewayProxyRequestEvent cacheable = createApiRequest("{\"url\": \"google.com\", \"redirectPolicy\": \"cacheable\"}");
+        APIGatewayProxyRequestEvent invalid = createApiRequest("{\"url\": \"google.com\", \"redirectPolicy\": \"forever\"}");
+
+        // when
+        shortenHandler.handleRequest(cacheable, mockContext);
+        APIGatewayProxyResponseEvent invalidResponse = shortenHandler.handleRequest(invalid, mockContext);
+
+        // then
+        verify(mockDdb).putItem(putItemRequestCaptor.capture());
+        assertEquals("CACHEABLE", putItemRequestCaptor.getValue().item().get(RedirectPolicy.ATTRIBUTE).s());
+        assertEquals(400, invalidResponse.getStatusCode());
+    }
+
+    @Test
+    @DisplayName("제목 큐가 설정되면 제목을 생성하지 않고 임시 제목으로 저장한 뒤 제목 작업을 큐에 넣는다")
+    void testHandleRequest_DefersTitleToQueue() throws IOException, InterruptedException {
+        // given
+        shortenHandler = new ShortenHandler(mockDdb, mockLambda, mockSqs, gson, "TestTable", testApiKey, testSafeBrowsingApiKey, mockHttpClient, 2_500, VerdictCache.disabled(), "title-queue");
+        APIGatewayProxyRequestEvent request = createApiRequest("{\"url\": \"https://www.google.com\"}");
+
+        // when
+        APIGatewayProxyResponseEvent response = shortenHandler.handleRequest(request, mockContext);
+
+        // then
+        assertEquals(200, response.getStatusCode());
+        verify(mockDdb).putItem(putItemRequestCaptor.capture());
+        assertEquals("Untitled Link", putItemRequestCaptor.getValue().item().get("title").s());
+        assertEquals("PENDING", putItemRequestCaptor.getValue().item().get("titleStatus").s());
+        // Gemini 판정 + Safe Browsing 두 번만 호출된다
+        verify(mockHttpClient, times(2)).send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+        verify(mockSqs).sendMessage(argThat((software.amazon.awssdk.services.sqs.model.SendMessageRequest req) ->
+                req.queueUrl().equals("title-queue") && req.messageBody().contains("https://www.google.com")));
+    }
+
+    @Test
+    @DisplayName("순번 ID 모드에서는 존재 확인 없이 조건부 저장 한 번으로 링크를 만든다")
+    void testHandleRequest_SequenceIdsSkipExistenceCheck() {
+        // given
+        SequenceIdAllocator allocator = new SequenceIdAllocator(mockDdb, "TestSeq", 1000, "secret");
+        when(mockDdb.updateItem(any(software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest.class))).thenReturn(
+                software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse.builder()
+                        .attributes(Map.of("nextValue", AttributeValue.builder().n("1000").build())).build());
+        shortenHandler = new ShortenHandler(mockDdb, mockLambda, mockSqs, gson, "TestTable", testApiKey, testSafeBrowsingApiKey, mockHttpClient, 2_500, VerdictCache.disabled(), null, allocator);
+
+        // when
+        APIGatewayProxyResponseEvent response = shortenHandler.handleRequest(createApiRequest("{\"url\": \"https://www.google.com\"}"), mockContext);
+
+        // then
+        assertEquals(200, response.getStatusCode());
+        verify(mockDdb, never()).getItem(any(software.amazon.awssdk.services.dynamodb.model.GetItemRequest.class));
+        verify(mockDdb, never()).query(any(software.amazon.awssdk.services.dynamodb.model.QueryRequest.class));
+        verify(mockDdb).putItem(putItemRequestCaptor.capture());
+        assertEquals(SequenceIdAllocator.encode(allocator.scramble(0)), putItemRequestCaptor.getValue().item().get("shortId").s());
+    }
+
+    @Test
+    @DisplayName("중복 제거 모드에서 같은 URL을 다시 단축하면 검사와 저장 없이 기존 shortId를 돌려준다")
+    void testHandleRequest_DedupReturnsExistingLink() throws IOException, InterruptedException {
+        // given
+        shortenHandler = new ShortenHandler(mockDdb, mockLambda, mockSqs, gson, "TestTable", testApiKey, testSafeBrowsingApiKey, mockHttpClient, 2_500, VerdictCache.disabled(), null, null, true);
+        when(mockDdb.getItem(any(software.amazon.awssdk.services.dynamodb.model.GetItemRequest.class))).thenAnswer(invocation -> {
+            software.amazon.awssdk.services.dynamodb.model.GetItemRequest req = invocation.getArgument(0);
+            String key = req.key().get("shortId").s();
+            Map<String, AttributeValue> item = key.startsWith(LinkResolver.URL_HASH_PREFIX)
+                    ? LinkResolver.urlHashPointerItem(key, "exist01", "2026-01-01T00:00:00Z")
+                    : Map.of("shortId", AttributeValue.builder().s("exist01").build(),
+                             "originalUrl", AttributeValue.builder().s("https://www.google.com").build(),
+                             "title", AttributeValue.builder().s("구글").build());
+            return software.amazon.awssdk.services.dynamodb.model.GetItemResponse.builder().item(item).build();
+        });
+
+        // when
+        APIGatewayProxyResponseEvent response = shortenHandler.handleRequest(createApiRequest("{\"url\": \"https://WWW.Google.com:443\"}"), mockContext);
+
+        // then
+        assertEquals(200, response.getStatusCode());
+        Map<String, Object> body = gson.fromJson(response.getBody(), Map.class);
+        assertEquals("exist01", body.get("shortId"));
+        assertEquals("구글", body.get("title"));
+        assertEquals(true, body.get("deduplicated"));
+        verifyNoInteractions(mockHttpClient);
+        verify(mockDdb, never()).putItem(any(PutItemRequest.class));
+    }
+
+    @Test
+    @DisplayName("중복 제거 모드에서 새 링크를 만들면 URL 해시 포인터를 함께 저장하고, alias 요청은 중복 제거를 거치지 않는다")
+    void testHandleRequest_DedupStoresPointerForNewLink() {
+        // given
+        shortenHandler = new ShortenHandler(mockDdb, mockLambda, mockSqs, gson, "TestTable", testApiKey, testSafeBrowsingApiKey, mockHttpClient, 2_500, VerdictCache.disabled(), null, null, true);
+
+        // when
+        APIGatewayProxyResponseEvent response = shortenHandler.handleRequest(createApiRequest("{\"url\": \"https://www.google.com\"}"), mockContext);
+
+        // then
+        assertEquals(200, response.getStatusCode());
+        verify(mockDdb, times(2)).putItem(putItemRequestCaptor.capture());
+        Map<String, AttributeValue> pointer = putItemRequestCaptor.getAllValues().get(1).item();
+        assertTrue(pointer.get("shortId").s().startsWith(LinkResolver.URL_HASH_PREFIX));
+        assertEquals(putItemRequestCaptor.getAllValues().get(0).item().get("shortId").s(), pointer.get(LinkResolver.TARGET_ID).s());
+        assertTrue(LinkResolver.isUrlHashPointer(pointer));
+    }
+}
@@ -9,6 +9,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
@@ -22,8 +23,7 @@ import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.lenient;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class StatsHandlerTest {
@@ -43,15 +43,17 @@ class StatsHandlerTest {
     private LambdaLogger mockLogger;
     @Mock
     private HttpClient mockHttpClient;
+    @Mock
+    private InsightGenerator mockInsightGenerator;
 
     @BeforeEach
     void setUp() {
         lenient().when(mockContext.getLogger()).thenReturn(mockLogger);
-        statsHandler = new StatsHandler(mockDdb, mockLambda, mockSqs, gson, "UrlsTable", "ClicksTable", "TrendTable");
+        statsHandler = new StatsHandler(mockDdb, mockLambda, mockSqs, gson, "UrlsTable", "ClickRollupsTable", "ClickCountersTable", "TrendTable");
     }
 
     @Test
-    @DisplayName("통계 조회 시 클릭 데이터와 트렌드 데이터를 정상적으로 집계하여 반환한다")
+    @DisplayName("통계 조회 시 클릭 데이터와 트렌드 데이터를 샤드별로 읽어 합쳐 반환한다")
     void testHandleRequest_Success() {
         // given
         String shortId = "stats123";
@@ -61,27 +63,56 @@ class StatsHandlerTest {
         Map<String, AttributeValue> urlItem = new HashMap<>();
         urlItem.put("shortId", AttributeValue.builder().s(shortId).build());
         urlItem.put("originalUrl", AttributeValue.builder().s("https://target.com").build());
-        urlItem.put("clickCount", AttributeValue.builder().n("10").build());
+        urlItem.put("clickCount", AttributeValue.builder().n("4").build());
+        urlItem.put("counterShards", AttributeValue.builder().n("2").build());
 
-        when(mockDdb.getItem(any(GetItemRequest.class)))
-                .thenReturn(GetItemResponse.builder().item(urlItem).build());
+        // 샤드 2개로 나뉜 트렌드 문서
+        List<Map<String, AttributeValue>> trendDocs = List.of(
+                Map.of("shortId", AttributeValue.builder().s(shortId).build(),
+                        "category", AttributeValue.builder().s("ALL").build(),
+                        "countries", AttributeValue.builder().m(Map.of("KR", AttributeValue.builder().n("5").build(), "JP", AttributeValue.builder().n("2").build())).build(),
+                        "devices", AttributeValue.builder().m(Map.of("MOBILE", AttributeValue.builder().n("6").build())).build(),
+                        "referers", AttributeValue.builder().m(Map.of()).build(),
+                        "lastUpdated", AttributeValue.builder().s("2026-10-16T01:00:00Z").build()),
+                Map.of("shortId", AttributeValue.builder().s(shortId).build(),
+                        "category", AttributeValue.builder().s("ALL#1").build(),
+                        "countries", AttributeValue.builder().m(Map.of("KR", AttributeValue.builder().n("3").build())).build(),
+                        "devices", AttributeValue.builder().m(Map.of("MOBILE", AttributeValue.builder().n("4").build())).build(),
+                        "referers", AttributeValue.builder().m(Map.of()).build(),
+                        "lastUpdated", AttributeValue.builder().s("2026-10-16T02:00:00Z").build()));
+        when(mockDdb.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder().item(urlItem).build());
+        when(mockDdb.batchGetItem(any(BatchGetItemRequest.class))).thenAnswer(invocation -> {
+            BatchGetItemRequest req = invocation.getArgument(0);
+            if (req.requestItems().containsKey("TrendTable")) {
+                return BatchGetItemResponse.builder().responses(Map.of("TrendTable", trendDocs)).build();
+            }
+            return BatchGetItemResponse.builder()
+                    .responses(Map.of("ClickCountersTable", List.of(
+                            Map.of("counterKey", AttributeValue.builder().s(shortId + "#0").build(), "clicks", AttributeValue.builder().n("2").build()),
+                            Map.of("counterKey", AttributeValue.builder().s(shortId + "#1").build(), "clicks", AttributeValue.builder().n("4").build()))))
+                    .build();
+        });
 
-        Map<String, AttributeValue> clickLog = new HashMap<>();
-        clickLog.put("timestamp", AttributeValue.builder().s(Instant.now().toString()).build());
-        clickLog.put("referer", AttributeValue.builder().s("https://google.com").build());
-        
-        QueryResponse clicksQueryRes = QueryResponse.builder().items(List.of(clickLog)).build();
-
-        Map<String, AttributeValue> trendItem = new HashMap<>();
-        trendItem.put("category", AttributeValue.builder().s("COUNTRY").build());
-        trendItem.put("KR", AttributeValue.builder().n("5").build());
-        trendItem.put("shortId", AttributeValue.builder().s(shortId).build());
-        
-        QueryResponse trendQueryRes = QueryResponse.builder().items(List.of(trendItem)).build();
+        String today = ClickRollups.dayBucket(Instant.now());
+        Map<String, AttributeValue> dayRollup = new HashMap<>();
+        dayRollup.put("shortId", AttributeValue.builder().s(shortId).build());
+        dayRollup.put("bucket", AttributeValue.builder().s(today).build());
+        dayRollup.put("clicks", AttributeValue.builder().n("5").build());
+        dayRollup.put("c#KR", AttributeValue.builder().n("5").build());
+        dayRollup.put("d#MOBILE", AttributeValue.builder().n("5").build());
+        dayRollup.put("r#https://google.com", AttributeValue.builder().n("1").build());
+        dayRollup.put("r#direct", AttributeValue.builder().n("4").build());
+        dayRollup.put("h#9", AttributeValue.builder().n("5").build());
+        dayRollup.put("expiresAt", AttributeValue.builder().n("1900000000").build());
+        Map<String, AttributeValue> dayRollupShard = new HashMap<>();
+        dayRollupShard.put("shortId", AttributeValue.builder().s(shortId).build());
+        dayRollupShard.put("bucket", AttributeValue.builder().s(today + "#1").build());
+        dayRollupShard.put("clicks", AttributeValue.builder().n("2").build());
+        dayRollupShard.put("c#KR", AttributeValue.builder().n("2").build());
+        dayRollupShard.put("h#9", AttributeValue.builder().n("2").build());
 
         when(mockDdb.query(any(QueryRequest.class)))
-                .thenReturn(clicksQueryRes)
-                .thenReturn(trendQueryRes);
+                .thenReturn(QueryResponse.builder().items(List.of(dayRollup, dayRollupShard)).build());
 
         // when
         APIGatewayProxyResponseEvent response = statsHandler.handleRequest(request, mockContext);
@@ -91,14 +122,285 @@ class StatsHandlerTest {
         Map responseBody = gson.fromJson(response.getBody(), Map.class);
         Map stats = (Map) responseBody.get("stats");
 
-        assertEquals(10.0, responseBody.get("clicks")); // clickCount
+        assertEquals(10.0, responseBody.get("clicks")); // 기존 clickCount 4 + 샤드 2 + 4
         assertTrue(stats.containsKey("clicksByDay"));
         assertTrue(stats.containsKey("countryStats"));
         
         Map countryStats = (Map) stats.get("countryStats");
-        assertEquals(5.0, countryStats.get("KR"));
+        assertEquals(7.0, countryStats.get("KR"));
         
         Map refererStats = (Map) stats.get("clicksByReferer");
         assertEquals(1.0, refererStats.get("https://google.com"));
+        assertEquals(7.0, ((Map) stats.get("clicksByDay")).get(today.substring(4)));
+        assertEquals(9.0, stats.get("peakHour"));
+        Map allTime = (Map) stats.get("allTime");
+        assertEquals(Map.of("KR", 8.0, "JP", 2.0), allTime.get("countries"));
+        assertEquals(Map.of("MOBILE", 10.0), allTime.get("devices"));
+        assertEquals("7d", stats.get("period"));
+    }
+
+    @Test
+    @DisplayName("샤드가 여러 개인 링크는 버전 확인에 필요한 트렌드 문서를 BatchGetItem 한 번으로 읽고, 304여도 트렌드 테이블에 GetItem을 하지 않는다")
+    void testHandleRequest_ShardedTrendReadUsesBatchGetItem() {
+        // given
+        String shortId = "shard123";
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
+        request.setPathParameters(Collections.singletonMap("shortId", shortId));
+
+        Map<String, AttributeValue> urlItem = Map.of(
+                "shortId", AttributeValue.builder().s(shortId).build(),
+                "originalUrl", AttributeValue.builder().s("https://target.com").build(),
+                "counterShards", AttributeValue.builder().n("3").build());
+        when(mockDdb.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder().item(urlItem).build());
+        List<BatchGetItemRequest> trendReads = new ArrayList<>();
+        when(mockDdb.batchGetItem(any(BatchGetItemRequest.class))).thenAnswer(invocation -> {
+            BatchGetItemRequest req = invocation.getArgument(0);
+            if (req.requestItems().containsKey("TrendTable")) {
+                trendReads.add(req);
+                return BatchGetItemResponse.builder().responses(Map.of("TrendTable", List.of(
+                        Map.of("shortId", AttributeValue.builder().s(shortId).build(),
+                                "category", AttributeValue.builder().s("ALL#2").build(),
+                                "countries", AttributeValue.builder().m(Map.of("KR", AttributeValue.builder().n("1").build())).build(),
+                                "lastUpdated", AttributeValue.builder().s("2026-10-16T03:00:00Z").build())))).build();
+            }
+            return BatchGetItemResponse.builder().build();
+        });
+        when(mockDdb.query(any(QueryRequest.class))).thenReturn(QueryResponse.builder().build());
+
+        // when
+        APIGatewayProxyResponseEvent first = statsHandler.handleRequest(request, mockContext);
+        request.setHeaders(Map.of("If-None-Match", first.getHeaders().get("ETag")));
+        APIGatewayProxyResponseEvent revalidated = statsHandler.handleRequest(request, mockContext);
+
+        // then
+        assertEquals(200, first.getStatusCode());
+        assertEquals(Map.of("KR", 1.0), ((Map) ((Map) gson.fromJson(first.getBody(), Map.class).get("stats")).get("allTime")).get("countries"));
+        assertEquals(304, revalidated.getStatusCode());
+        assertEquals(2, trendReads.size());
+        assertEquals(3, trendReads.get(1).requestItems().get("TrendTable").keys().size());
+        verify(mockDdb, never()).getItem(argThat((GetItemRequest req) -> req.tableName().equals("TrendTable")));
+    }
+
+    @Test
+    @DisplayName("24h 조회는 시간 롤업 버킷 범위 하나만 읽고, 클릭 원본 테이블은 읽지 않는다")
+    void testHandleRequest_HourlyWindowReadsRollupRange() {
+        // given
+        String shortId = "stats123";
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
+        request.setPathParameters(Collections.singletonMap("shortId", shortId));
+        request.setQueryStringParameters(Map.of("period", "24h"));
+
+        Map<String, AttributeValue> urlItem = new HashMap<>();
+        urlItem.put("shortId", AttributeValue.builder().s(shortId).build());
+        urlItem.put("originalUrl", AttributeValue.builder().s("https://target.com").build());
+        urlItem.put("clickCount", AttributeValue.builder().n("100").build());
+        when(mockDdb.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder().item(urlItem).build());
+        when(mockDdb.batchGetItem(any(BatchGetItemRequest.class))).thenReturn(BatchGetItemResponse.builder().build());
+
+        List<Map<String, AttributeValue>> hours = new ArrayList<>();
+        for (String[] h : new String[][]{{"2026-10-15T23", "3"}, {"2026-10-16T07", "4"}}) {
+            hours.add(Map.of(
+                    "shortId", AttributeValue.builder().s(shortId).build(),
+                    "bucket", AttributeValue.builder().s("HOUR#" + h[0]).build(),
+                    "clicks", AttributeValue.builder().n(h[1]).build(),
+                    "c#US", AttributeValue.builder().n(h[1]).build()));
+        }
+        ArgumentCaptor<QueryRequest> captor = ArgumentCaptor.forClass(QueryRequest.class);
+        when(mockDdb.query(captor.capture())).thenReturn(QueryResponse.builder().items(hours).build());
+
+        // when
+        APIGatewayProxyResponseEvent response = statsHandler.handleRequest(request, mockContext);
+
+        // then
+        assertEquals(200, response.getStatusCode());
+        Map stats = (Map) gson.fromJson(response.getBody(), Map.class).get("stats");
+        assertEquals("24h", stats.get("period"));
+        assertEquals(7.0, stats.get("periodClicks"));
+        assertEquals(Map.of("2026-10-15", 3.0, "2026-10-16", 4.0), stats.get("clicksByDay"));
+        assertEquals(Map.of("23", 3.0, "7", 4.0), stats.get("clicksByHour"));
+        assertEquals(7.0, ((Map) stats.get("countryStats")).get("US"));
+
+        QueryRequest query = captor.getValue();
+        assertEquals("ClickRollupsTable", query.tableName());
+        assertTrue(query.expressionAttributeValues().get(":from").s().startsWith("HOUR#"));
+        assertTrue(query.expressionAttributeValues().get(":to").s().startsWith("HOUR#"));
+
+        request.setQueryStringParameters(Map.of("period", "1y"));
+        assertEquals(400, statsHandler.handleRequest(request, mockContext).getStatusCode());
+    }
+
+    @Test
+    @DisplayName("캐시된 AI 인사이트가 있으면 입력이 바뀌었어도 바로 돌려주고, 재생성은 큐로 한 번만 넘긴다")
+    void testHandleRequest_ServesCachedInsightAndRevalidates() {
+        // given
+        String shortId = "stats123";
+        StatsHandler handler = new StatsHandler(mockDdb, mockLambda, mockSqs, gson, "UrlsTable", "ClickRollupsTable", "ClickCountersTable", "TrendTable",
+                null, null, "AiTable", mockInsightGenerator, "https://sqs/insights");
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
+        request.setPathParameters(Collections.singletonMap("shortId", shortId));
+
+        Map<String, AttributeValue> urlItem = Map.of(
+                "shortId", AttributeValue.builder().s(shortId).build(),
+                "originalUrl", AttributeValue.builder().s("https://target.com").build(),
+                "clickCount", AttributeValue.builder().n("40").build());
+        when(mockDdb.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder().item(urlItem).build());
+        when(mockDdb.batchGetItem(any(BatchGetItemRequest.class))).thenReturn(BatchGetItemResponse.builder().build());
+        when(mockInsightGenerator.isEnabled()).thenReturn(true);
+
+        Map<String, AttributeValue> cached = Map.of(
+                "shortId", AttributeValue.builder().s(shortId).build(),
+                "generatedAt", AttributeValue.builder().s("7d#2026-10-15T00:00:00Z").build(),
+                "fingerprint", AttributeValue.builder().s("0123456789abcdef").build(),
+                "insight", AttributeValue.builder().s("주로 한국 모바일에서 조회됩니다.").build());
+        ArgumentCaptor<QueryRequest> queries = ArgumentCaptor.forClass(QueryRequest.class);
+        when(mockDdb.query(queries.capture())).thenAnswer(invocation -> {
+            QueryRequest req = invocation.getArgument(0);
+            return QueryResponse.builder().items(req.tableName().equals("AiTable") ? List.of(cached) : List.of()).build();
+        });
+        when(mockDdb.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(UpdateItemResponse.builder().build())
+                .thenThrow(ConditionalCheckFailedException.builder().build());
+
+        // when: 같은 화면을 두 번 새로 고친다
+        APIGatewayProxyResponseEvent first = handler.handleRequest(request, mockContext);
+        APIGatewayProxyResponseEvent second = handler.handleRequest(request, mockContext);
+
+        // then: 두 번 모두 Gemini를 기다리지 않고 이전 인사이트를 보여 준다
+        for (APIGatewayProxyResponseEvent response : List.of(first, second)) {
+            assertEquals(200, response.getStatusCode());
+            assertEquals("주로 한국 모바일에서 조회됩니다.", ((Map) gson.fromJson(response.getBody(), Map.class).get("stats")).get("aiInsight"));
+        }
+        verify(mockInsightGenerator, never()).generate(any());
+
+        QueryRequest insightQuery = queries.getAllValues().stream().filter(q -> q.tableName().equals("AiTable")).findFirst().orElseThrow();
+        assertEquals("7d#", insightQuery.expressionAttributeValues().get(":p").s());
+        assertFalse(insightQuery.scanIndexForward());
+        assertEquals(1, insightQuery.limit());
+
+        // 재생성 요청 자격은 첫 조회만 얻었다
+        ArgumentCaptor<software.amazon.awssdk.services.sqs.model.SendMessageRequest> sent =
+                ArgumentCaptor.forClass(software.amazon.awssdk.services.sqs.model.SendMessageRequest.class);
+        verify(mockSqs, times(1)).sendMessage(sent.capture());
+        Map job = gson.fromJson(sent.getValue().messageBody(), Map.class);
+        assertEquals(shortId, job.get("shortId"));
+        assertEquals("7d", job.get("period"));
+        assertNotEquals("0123456789abcdef", job.get("fingerprint"));
+        assertEquals(40.0, ((Map) job.get("stats")).get("totalClicks"));
+    }
+
+    @Test
+    @DisplayName("shortId를 찾은 뒤의 조회는 동시에 실행되어 가장 느린 호출만큼 걸리고, 늦은 트렌드 조회는 비워 두며, 늦은 카운터 조회는 504로 끝난다")
+    void testHandleRequest_FansOutWithPerCallTimeouts() {
+        // given: 카운터·롤업·트렌드·인사이트 캐시 조회가 각각 300ms 걸린다
+        String shortId = "stats123";
+        StatsHandler handler = new StatsHandler(mockDdb, mockLambda, mockSqs, gson, "UrlsTable", "ClickRollupsTable", "ClickCountersTable", "TrendTable",
+                null, null, "AiTable", mockInsightGenerator, null, 1_000, 1_000);
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
+        request.setPathParameters(Collections.singletonMap("shortId", shortId));
+
+        Map<String, AttributeValue> urlItem = Map.of(
+                "shortId", AttributeValue.builder().s(shortId).build(),
+                "originalUrl", AttributeValue.builder().s("https://target.com").build(),
+                "clickCount", AttributeValue.builder().n("3").build());
+        long[] trendDelay = {300};
+        when(mockDdb.getItem(any(GetItemRequest.class))).thenAnswer(invocation -> {
+            GetItemRequest req = invocation.getArgument(0);
+            if (req.tableName().equals("UrlsTable")) return GetItemResponse.builder().item(urlItem).build();
+            Thread.sleep(trendDelay[0]);
+            return GetItemResponse.builder().item(Map.of("countries", AttributeValue.builder().m(Map.of("KR", AttributeValue.builder().n("3").build())).build())).build();
+        });
+        long[] counterDelay = {300};
+        when(mockDdb.batchGetItem(any(BatchGetItemRequest.class))).thenAnswer(invocation -> {
+            Thread.sleep(counterDelay[0]);
+            return BatchGetItemResponse.builder().build();
+        });
+        when(mockDdb.query(any(QueryRequest.class))).thenAnswer(invocation -> {
+            Thread.sleep(300);
+            return QueryResponse.builder().build();
+        });
+        when(mockInsightGenerator.isEnabled()).thenReturn(true);
+        when(mockInsightGenerator.generate(any())).thenReturn("요약");
+
+        // when
+        long start = System.nanoTime();
+        APIGatewayProxyResponseEvent response = handler.handleRequest(request, mockContext);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        // then: 순서대로 했다면 1,200ms 이상
+        assertEquals(200, response.getStatusCode());
+        assertTrue(elapsedMs < 900, "took " + elapsedMs + "ms");
+        Map stats = (Map) gson.fromJson(response.getBody(), Map.class).get("stats");
+        assertEquals(Map.of("KR", 3.0), ((Map) stats.get("allTime")).get("countries"));
+        assertEquals("요약", stats.get("aiInsight"));
+
+        // when: 트렌드 문서가 기한을 넘긴다
+        trendDelay[0] = 3_000;
+        response = handler.handleRequest(request, mockContext);
+
+        // then: 누적 분포만 비운다
+        assertEquals(200, response.getStatusCode());
+        stats = (Map) gson.fromJson(response.getBody(), Map.class).get("stats");
+        assertEquals(Map.of(), ((Map) stats.get("allTime")).get("countries"));
+        assertEquals(3.0, gson.fromJson(response.getBody(), Map.class).get("clicks"));
+
+        // when: 총 클릭 수를 기한 안에 못 읽는다
+        counterDelay[0] = 3_000;
+        response = handler.handleRequest(request, mockContext);
+
+        // then
+        assertEquals(504, response.getStatusCode());
+    }
+
+    @Test
+    @DisplayName("같은 버전의 재조회는 If-None-Match면 304, 아니면 메모리의 응답을 돌려주고, 트렌드 문서의 lastUpdated가 바뀌면 다시 계산한다")
+    void testHandleRequest_ConditionalGetAndResponseCache() {
+        // given
+        String shortId = "stats123";
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
+        request.setPathParameters(Collections.singletonMap("shortId", shortId));
+
+        Map<String, AttributeValue> urlItem = Map.of(
+                "shortId", AttributeValue.builder().s(shortId).build(),
+                "originalUrl", AttributeValue.builder().s("https://target.com").build(),
+                "clickCount", AttributeValue.builder().n("3").build());
+        String[] lastUpdated = {"2026-10-16T05:00:00Z"};
+        when(mockDdb.getItem(any(GetItemRequest.class))).thenAnswer(invocation -> {
+            GetItemRequest req = invocation.getArgument(0);
+            return GetItemResponse.builder().item(req.tableName().equals("TrendTable")
+                    ? Map.of("lastUpdated", AttributeValue.builder().s(lastUpdated[0]).build())
+                    : urlItem).build();
+        });
+        when(mockDdb.batchGetItem(any(BatchGetItemRequest.class))).thenReturn(BatchGetItemResponse.builder().build());
+        when(mockDdb.query(any(QueryRequest.class))).thenReturn(QueryResponse.builder().build());
+
+        // when
+        APIGatewayProxyResponseEvent first = statsHandler.handleRequest(request, mockContext);
+        String etag = first.getHeaders().get("ETag");
+        request.setHeaders(Map.of("if-none-match", etag));
+        APIGatewayProxyResponseEvent revalidated = statsHandler.handleRequest(request, mockContext);
+        request.setHeaders(null);
+        APIGatewayProxyResponseEvent cached = statsHandler.handleRequest(request, mockContext);
+
+        // then: 두 번째와 세 번째 조회는 링크와 트렌드 문서만 읽는다
+        assertEquals(200, first.getStatusCode());
+        assertNotNull(etag);
+        assertEquals("private, no-cache", first.getHeaders().get("Cache-Control"));
+        assertEquals(304, revalidated.getStatusCode());
+        assertEquals(etag, revalidated.getHeaders().get("ETag"));
+        assertEquals("", revalidated.getBody());
+        assertEquals(200, cached.getStatusCode());
+        assertEquals(first.getBody(), cached.getBody());
+        verify(mockDdb, times(1)).query(any(QueryRequest.class));
+        verify(mockDdb, times(1)).batchGetItem(any(BatchGetItemRequest.class));
+
+        // when: 새 클릭이 반영됐다
+        lastUpdated[0] = "2026-10-16T05:01:00Z";
+        request.setHeaders(Map.of("If-None-Match", etag));
+        APIGatewayProxyResponseEvent changed = statsHandler.handleRequest(request, mockContext);
+
+        // then
+        assertEquals(200, changed.getStatusCode());
+        assertNotEquals(etag, changed.getHeaders().get("ETag"));
+        verify(mockDdb, times(2)).query(any(QueryRequest.class));
     }
 }
@@ -0,0 +1,132 @@
+package lessurl;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.sqs.SqsClient;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TitleEnrichmentHandlerTest {
+
+    @Mock
+    private DynamoDbClient mockDdb;
+
+    @Mock
+    private LambdaClient mockLambda;
+
+    @Mock
+    private SqsClient mockSqs;
+
+    @Mock
+    private Context mockContext;
+
+    @Mock
+    private LambdaLogger mockLogger;
+
+    @Mock
+    private HttpClient mockHttpClient;
+
+    @Mock
+    private HttpResponse<String> mockHttpResponse;
+
+    private TitleEnrichmentHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(mockContext.getLogger()).thenReturn(mockLogger);
+        handler = new TitleEnrichmentHandler(mockDdb, mockLambda, mockSqs, new Gson(), "TestTable", "test-api-key", mockHttpClient);
+    }
+
+    private SQSEvent jobs(String... shortIdsAndUrls) {
+        SQSEvent event = new SQSEvent();
+        List<SQSEvent.SQSMessage> records = new java.util.ArrayList<>();
+        for (int i = 0; i < shortIdsAndUrls.length; i += 2) {
+            SQSEvent.SQSMessage msg = new SQSEvent.SQSMessage();
+            msg.setMessageId("m" + i / 2);
+            msg.setBody(String.format("{\"shortId\":\"%s\",\"url\":\"%s\"}", shortIdsAndUrls[i], shortIdsAndUrls[i + 1]));
+            records.add(msg);
+        }
+        event.setRecords(records);
+        return event;
+    }
+
+    private void geminiReturns(String text) throws Exception {
+        when(mockHttpResponse.statusCode()).thenReturn(200);
+        when(mockHttpResponse.body()).thenReturn(geminiBody(text));
+        when(mockHttpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(mockHttpResponse);
+    }
+
+    @Test
+    @DisplayName("배치의 URL들을 Gemini 요청 하나로 묻고 각 링크의 제목을 채운다")
+    void testBatchFillsTitles() throws Exception {
+        // given
+        geminiReturns("[\"구글\", \"네이버\"]");
+        when(mockDdb.updateItem(any(UpdateItemRequest.class))).thenReturn(UpdateItemResponse.builder().build());
+
+        // when
+        SQSBatchResponse response = handler.handleRequest(jobs("abc1234", "https://www.google.com", "def5678", "https://www.naver.com"), mockContext);
+
+        // then
+        assertTrue(response.getBatchItemFailures().isEmpty());
+        verify(mockHttpClient, times(1)).send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(mockDdb, times(2)).updateItem(captor.capture());
+        assertEquals("구글", captor.getAllValues().get(0).expressionAttributeValues().get(":title").s());
+        assertEquals("네이버", captor.getAllValues().get(1).expressionAttributeValues().get(":title").s());
+    }
+
+    @Test
+    @DisplayName("모델 응답이 입력 개수와 맞지 않으면 URL마다 따로 다시 묻고, 그래도 실패한 메시지만 재시도 대상으로 돌려준다")
+    @SuppressWarnings("unchecked")
+    void testMismatchedResponseFallsBackToPerUrl() throws Exception {
+        // given: 배치 응답은 하나가 빠졌고, 개별 요청은 구글만 성공한다
+        HttpResponse<String> single = mock(HttpResponse.class);
+        when(single.statusCode()).thenReturn(200);
+        when(single.body()).thenReturn(geminiBody("구글"));
+        HttpResponse<String> failed = mock(HttpResponse.class);
+        when(failed.statusCode()).thenReturn(503);
+        when(mockHttpResponse.statusCode()).thenReturn(200);
+        when(mockHttpResponse.body()).thenReturn(geminiBody("[\"구글\"]"));
+        when(mockHttpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(mockHttpResponse, single, failed);
+        when(mockDdb.updateItem(any(UpdateItemRequest.class))).thenReturn(UpdateItemResponse.builder().build());
+
+        // when
+        SQSBatchResponse response = handler.handleRequest(jobs("abc1234", "https://www.google.com", "def5678", "https://www.naver.com"), mockContext);
+
+        // then
+        assertEquals(List.of("m1"), response.getBatchItemFailures().stream().map(SQSBatchResponse.BatchItemFailure::getItemIdentifier).toList());
+        verify(mockHttpClient, times(3)).send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(mockDdb, times(1)).updateItem(captor.capture());
+        assertEquals("abc1234", captor.getValue().key().get("shortId").s());
+        assertEquals("구글", captor.getValue().expressionAttributeValues().get(":title").s());
+    }
+
+    private static String geminiBody(String text) {
+        return new Gson().toJson(java.util.Map.of("candidates", List.of(
+                java.util.Map.of("content", java.util.Map.of("parts", List.of(java.util.Map.of("text", text)))))));
+    }
+}
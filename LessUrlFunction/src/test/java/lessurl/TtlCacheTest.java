@@ -0,0 +1,81 @@
+package lessurl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TtlCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1_000);
+
+    private TtlCache<String> newCache(int maxEntries, long maxWeight) {
+        return new TtlCache<>(maxEntries, maxWeight, 1_000, 100, String::length, now::get);
+    }
+
+    @Test
+    @DisplayName("TTL이 지나면 엔트리가 만료되어 MISS로 처리된다")
+    void testExpiresAfterTtl() {
+        // given
+        TtlCache<String> cache = newCache(10, 10_000);
+        cache.put("abc1234", "https://example.com");
+
+        // when & then
+        assertTrue(cache.get("abc1234").isHit());
+        now.addAndGet(1_000);
+        assertEquals(TtlCache.State.MISS, cache.get("abc1234").state());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    @DisplayName("음성 엔트리는 짧은 TTL 동안만 유지된다")
+    void testNegativeEntryUsesShortTtl() {
+        // given
+        TtlCache<String> cache = newCache(10, 10_000);
+        cache.putNegative("nope");
+
+        // when & then
+        assertTrue(cache.get("nope").isNegative());
+        now.addAndGet(100);
+        assertEquals(TtlCache.State.MISS, cache.get("nope").state());
+        assertEquals(1, cache.negativeHits());
+    }
+
+    @Test
+    @DisplayName("최대 엔트리 수를 넘으면 가장 오래 사용되지 않은 엔트리를 제거한다")
+    void testEvictsLeastRecentlyUsed() {
+        // given
+        TtlCache<String> cache = newCache(2, 10_000);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+
+        // when
+        cache.put("c", "3");
+
+        // then
+        assertTrue(cache.get("a").isHit());
+        assertEquals(TtlCache.State.MISS, cache.get("b").state());
+        assertTrue(cache.get("c").isHit());
+        assertEquals(1, cache.evictions());
+    }
+
+    @Test
+    @DisplayName("weight 상한을 넘으면 엔트리 수와 무관하게 오래된 엔트리를 제거한다")
+    void testEvictsByWeight() {
+        // given
+        TtlCache<String> cache = newCache(100, 200);
+        cache.put("a", "x".repeat(20));
+
+        // when
+        cache.put("b", "y".repeat(20));
+
+        // then
+        assertEquals(1, cache.size());
+        assertTrue(cache.weight() <= 200);
+        assertTrue(cache.get("b").isHit());
+    }
+}
@@ -0,0 +1,39 @@
+package lessurl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class UrlNormalizerTest {
+
+    @Test
+    @DisplayName("스킴/호스트 대소문자, 기본 포트, 끝 슬래시, 프래그먼트, 추적 파라미터가 달라도 같은 키로 정규화된다")
+    void testNormalize() {
+        // given
+        String a = "HTTPS://WWW.Example.com:443/path/?b=2&utm_source=x&a=1&fbclid=abc#top";
+        String b = "https://www.example.com/path?a=1&b=2";
+
+        // when
+        UrlNormalizer.Normalized na = UrlNormalizer.normalize(a);
+        UrlNormalizer.Normalized nb = UrlNormalizer.normalize(b);
+
+        // then
+        assertEquals("https://www.example.com/path?a=1&b=2", na.url());
+        assertEquals(nb.url(), na.url());
+        assertEquals("example.com", na.registrableDomain());
+        assertEquals("https://example.com/", UrlNormalizer.normalize("https://example.com").url());
+        assertNull(UrlNormalizer.normalize("ftp://example.com/file"));
+    }
+
+    @Test
+    @DisplayName("등록 가능 도메인은 다단계 접미사와 호스팅 서비스 도메인을 구분한다")
+    void testRegistrableDomain() {
+        assertEquals("naver.com", UrlNormalizer.registrableDomain("news.naver.com"));
+        assertEquals("example.co.kr", UrlNormalizer.registrableDomain("shop.example.co.kr"));
+        assertEquals("alice.github.io", UrlNormalizer.registrableDomain("alice.github.io"));
+        assertEquals("bucket.s3.amazonaws.com", UrlNormalizer.registrableDomain("bucket.s3.amazonaws.com"));
+        assertEquals("203.0.113.7", UrlNormalizer.registrableDomain("203.0.113.7"));
+    }
+}
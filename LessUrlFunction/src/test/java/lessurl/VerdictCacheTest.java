@@ -0,0 +1,136 @@
+package lessurl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class VerdictCacheTest {
+
+    @Mock
+    private DynamoDbClient mockDdb;
+
+    private VerdictCache newCache(boolean domainSafeReuse) {
+        return new VerdictCache(mockDdb, "verdicts", new TtlCache<>(100, 1 << 20, 60_000, 0, hit -> 64), 86_400, 604_800, 21_600, domainSafeReuse);
+    }
+
+    private static Map<String, AttributeValue> item(String key, String verdict, long expiresAt) {
+        return Map.of(
+                "verdictKey", AttributeValue.builder().s(key).build(),
+                "verdict", AttributeValue.builder().s(verdict).build(),
+                "expiresAt", AttributeValue.builder().n(Long.toString(expiresAt)).build());
+    }
+
+    @Test
+    @DisplayName("URL MALICIOUS 판정만 차단에 쓰고, 같은 도메인의 MALICIOUS 기록은 다른 URL에 적용하지 않는다. 이후 조회는 메모리에서 끝난다")
+    void testOnlyUrlLevelMaliciousApplies() {
+        // given: docs.google.com/forms/... 하나가 악성이어도 google.com 전체를 막으면 안 된다
+        VerdictCache cache = newCache(false);
+        long future = System.currentTimeMillis() / 1000 + 3600;
+        when(mockDdb.batchGetItem(any(BatchGetItemRequest.class))).thenAnswer(invocation -> {
+            BatchGetItemRequest req = invocation.getArgument(0);
+            List<Map<String, AttributeValue>> items = new ArrayList<>();
+            for (Map<String, AttributeValue> key : req.requestItems().get("verdicts").keys()) {
+                String k = key.get("verdictKey").s();
+                if (k.equals("url#https://docs.google.com/forms/d/phish") || k.equals("domain#google.com")) items.add(item(k, "MALICIOUS", future));
+            }
+            return BatchGetItemResponse.builder().responses(Map.of("verdicts", items)).build();
+        });
+        UrlNormalizer.Normalized phish = UrlNormalizer.normalize("https://docs.google.com/forms/d/phish");
+        UrlNormalizer.Normalized other = UrlNormalizer.normalize("https://docs.google.com/document/d/report");
+
+        // when
+        VerdictCache.Hit first = cache.lookup(phish);
+        VerdictCache.Hit second = cache.lookup(phish);
+        VerdictCache.Hit sameDomain = cache.lookup(other);
+
+        // then
+        assertEquals(VerdictCache.Verdict.MALICIOUS, first.verdict());
+        assertEquals("url", first.scope());
+        assertEquals(first, second);
+        assertNull(sameDomain);
+        verify(mockDdb, times(2)).batchGetItem(any(BatchGetItemRequest.class));
+    }
+
+    @Test
+    @DisplayName("재사용을 꺼 둔 기본 설정에서는 SAFE 판정을 도메인 키로 남기지 않는다")
+    void testDomainSafeNotWrittenByDefault() {
+        // given
+        VerdictCache cache = newCache(false);
+        when(mockDdb.batchWriteItem(any(BatchWriteItemRequest.class))).thenReturn(BatchWriteItemResponse.builder().build());
+
+        // when
+        cache.record(UrlNormalizer.normalize("https://sites.example.com/clean"), VerdictCache.Verdict.SAFE, null);
+        cache.record(UrlNormalizer.normalize("https://sites.example.com/evil"), VerdictCache.Verdict.MALICIOUS, "AI");
+
+        // then: URL 키만 쓰고 도메인 SAFE 조건부 저장은 하지 않는다
+        verify(mockDdb, times(2)).batchWriteItem(argThat((BatchWriteItemRequest req) -> req.requestItems().get("verdicts").size() == 1
+                && req.requestItems().get("verdicts").get(0).putRequest().item().get("verdictKey").s().startsWith("url#")));
+        verify(mockDdb, never()).putItem(any(PutItemRequest.class));
+    }
+
+    @Test
+    @DisplayName("스로틀링으로 처리되지 않은 판정 쓰기는 그 항목만 다시 보낸다")
+    void testRetriesUnprocessedVerdictWrites() {
+        // given: 첫 요청에서 도메인 항목만 처리되지 않았다
+        VerdictCache cache = newCache(true);
+        List<BatchWriteItemRequest> requests = new ArrayList<>();
+        when(mockDdb.batchWriteItem(any(BatchWriteItemRequest.class))).thenAnswer(invocation -> {
+            BatchWriteItemRequest req = invocation.getArgument(0);
+            requests.add(req);
+            List<WriteRequest> writes = req.requestItems().get("verdicts");
+            return requests.size() == 1
+                    ? BatchWriteItemResponse.builder().unprocessedItems(Map.of("verdicts", writes.subList(1, writes.size()))).build()
+                    : BatchWriteItemResponse.builder().build();
+        });
+
+        // when
+        cache.record(UrlNormalizer.normalize("https://sites.example.com/evil"), VerdictCache.Verdict.MALICIOUS, "AI");
+
+        // then
+        assertEquals(2, requests.size());
+        assertEquals(2, requests.get(0).requestItems().get("verdicts").size());
+        List<WriteRequest> retried = requests.get(1).requestItems().get("verdicts");
+        assertEquals(1, retried.size());
+        assertEquals("domain#example.com", retried.get(0).putRequest().item().get("verdictKey").s());
+    }
+
+    @Test
+    @DisplayName("도메인 SAFE 판정은 재사용 설정이 꺼져 있으면 적용하지 않고, 만료된 항목은 무시한다")
+    void testDomainSafeReuseAndExpiry() {
+        // given
+        long now = System.currentTimeMillis() / 1000;
+        when(mockDdb.batchGetItem(any(BatchGetItemRequest.class))).thenReturn(BatchGetItemResponse.builder()
+                .responses(Map.of("verdicts", List.of(
+                        item("domain#example.com", "SAFE", now + 3600),
+                        item("url#https://example.com/old", "MALICIOUS", now - 10))))
+                .build());
+
+        // when
+        VerdictCache.Hit withoutReuse = newCache(false).lookup(UrlNormalizer.normalize("https://example.com/old"));
+        VerdictCache.Hit withReuse = newCache(true).lookup(UrlNormalizer.normalize("https://example.com/old"));
+
+        // then
+        assertNull(withoutReuse);
+        assertEquals(VerdictCache.Verdict.SAFE, withReuse.verdict());
+        assertTrue(withReuse.isDomainSafe());
+    }
+}